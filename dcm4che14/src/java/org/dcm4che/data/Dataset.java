@@ -68,6 +68,17 @@ public interface Dataset extends DcmObject, Serializable {
 
     void shareElements();
 
+    /**
+     * Holds the elements of this Dataset and its sequence items in a compact
+     * representation, to reduce the memory footprint of Datasets, which are
+     * retained over a longer period. Tags are kept in a primitive array and
+     * short values in one byte array, from which element objects are
+     * created on access. The Dataset is expanded again on its first
+     * modification. Stream positions of compacted elements are not
+     * preserved.
+     */
+    void compact();
+
     Dataset setFileMetaInfo(FileMetaInfo fmi);
 
     FileMetaInfo getFileMetaInfo();
@@ -41,6 +41,7 @@ package org.dcm4che.net;
 import org.dcm4che.Implementation;
 import org.dcm4che.data.Command;
 import org.dcm4che.data.Dataset;
+import org.dcm4che.util.ThreadExecutor;
 
 import java.net.Socket;
 import java.io.IOException;
@@ -77,6 +78,22 @@ public abstract class AssociationFactory {
     // Constructors --------------------------------------------------
 
     // Public --------------------------------------------------------
+    /**
+     * Returns the executor, by which active associations, which are not
+     * served by non-blocking I/O, take their threads.
+     */
+    public abstract ThreadExecutor getExecutor();
+
+    /**
+     * Sets the executor, by which active associations created afterwards
+     * take their threads. <code>null</code> = start new threads.
+     * <p>
+     * The factory returned by {@link #getInstance()} is shared by all users
+     * in the JVM, so the executor also applies to associations initiated by
+     * other components. The executor shall stay usable until it is reset.
+     */
+    public abstract void setExecutor(ThreadExecutor executor);
+
     public abstract AAssociateRQ newAAssociateRQ();
 
     public abstract AAssociateAC newAAssociateAC();
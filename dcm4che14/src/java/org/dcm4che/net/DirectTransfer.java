@@ -0,0 +1,67 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by the output stream passed to {@link DataSource#writeTo}, if
+ * bytes of a file may be transferred from the file channel directly to the
+ * socket of the association, without copying them through PDU buffers.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public interface DirectTransfer {
+
+    /**
+     * Writes <code>count</code> bytes of the file channel, starting at
+     * <code>position</code>, to the stream, as if read from the file and
+     * passed to {@link java.io.OutputStream#write(byte[], int, int)}. The
+     * position of the file channel is not modified, and the channel is not
+     * accessed after return.
+     *
+     * @return <code>false</code>, if the connection of the association does
+     *         not support direct transfer - e.g. if it is secured by TLS -
+     *         and nothing was written to the stream.
+     */
+    boolean transferFrom(FileChannel src, long position, long count)
+            throws IOException;
+}
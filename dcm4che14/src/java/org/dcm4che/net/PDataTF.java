@@ -49,6 +49,13 @@ public interface PDataTF extends PDU {
 
     public static final int DEF_MAX_PDU_LENGTH = 16352;
 
+    /**
+     * Returns the next PDV of a received P-DATA-TF, or <code>null</code>, if
+     * all PDVs were read. Implementations may return the same PDV object -
+     * and the same stream by {@link PDV#getInputStream} - positioned to the
+     * next PDV on each invocation, so a PDV and its stream are only valid
+     * until the next invocation of this method.
+     */
     public PDV readPDV();
 
     public int free();
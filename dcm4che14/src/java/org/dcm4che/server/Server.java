@@ -44,6 +44,7 @@ import javax.net.ServerSocketFactory;
 import javax.net.ssl.HandshakeCompletedListener;
 
 import org.dcm4che.util.HandshakeFailedListener;
+import org.dcm4che.util.ThreadExecutor;
 
 /**
  * <description>
@@ -101,6 +102,56 @@ public interface Server
     
     int getNumIdleThreads();
     
+    /**
+     * Getter for property selectorThreads.
+     *
+     * @return    Value of property selectorThreads.
+     */
+    int getSelectorThreads();
+    
+    /**
+     * Setter for property selectorThreads. If &gt; 0, connections are
+     * received by the specified number of selector threads using
+     * non-blocking I/O, and only associations with received PDUs occupy a
+     * (worker) thread. Only supported for DICOM connections without TLS.
+     * Takes effect on next {@link #start()}.
+     *
+     * @param  selectorThreads  New value of property selectorThreads.
+     */
+    void setSelectorThreads(int selectorThreads);
+    
+    /**
+     * Getter for property maxWorkerThreads.
+     *
+     * @return    Value of property maxWorkerThreads.
+     */
+    int getMaxWorkerThreads();
+    
+    /**
+     * Setter for property maxWorkerThreads. Limits the number of worker
+     * threads, if connections are received by non-blocking I/O. 0 = no
+     * limit. Takes effect on next {@link #start()}.
+     *
+     * @param  max  New value of property maxWorkerThreads.
+     */
+    void setMaxWorkerThreads(int max);
+    
+    /**
+     * Getter for property executor.
+     *
+     * @return    Value of property executor.
+     */
+    ThreadExecutor getExecutor();
+    
+    /**
+     * Setter for property executor, which executes the threads accepting
+     * and handling connections by blocking I/O. <code>null</code> = start a
+     * new thread for each. Takes effect on next {@link #start()}.
+     *
+     * @param  executor  New value of property executor.
+     */
+    void setExecutor(ThreadExecutor executor);
+    
     /**
      * @param  port             Description of the Parameter
      * @exception  IOException  Description of the Exception
@@ -184,6 +184,10 @@ abstract class BaseDatasetImpl extends DcmObjectImpl implements Dataset {
        return retval;
    }
 
+   public void compact() {
+       compactElements();
+   }
+
    /**
     *  Description of the Method
     *
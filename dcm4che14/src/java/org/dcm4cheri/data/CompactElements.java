@@ -0,0 +1,283 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4cheri.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.dcm4che.data.DcmElement;
+import org.dcm4che.dict.VRs;
+
+/**
+ * Compact representation of the elements of a {@link DcmObjectImpl}. Tags
+ * are indexed in an <code>int</code> array, and values of up to
+ * {@link #MAX_PACKED_LENGTH} bytes are packed into one byte array. Element
+ * objects for packed values are created on each access, with their own copy
+ * of the value. Sequences, fragment sequences, larger values and values of
+ * binary VRs in big endian byte order are kept as element objects.
+ * Stream positions of packed elements are not preserved.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+final class CompactElements {
+
+    static final int MAX_PACKED_LENGTH = 256;
+
+    private final int[] tags;
+
+    private final int[] vrs;
+
+    // offsets[i+1] - offsets[i] = length of packed value i
+    private final int[] offsets;
+
+    private final byte[] values;
+
+    // element objects of not packed elements, null for packed elements
+    private final DcmElement[] elements;
+
+    /**
+     * Creates the compact representation of the elements in the list,
+     * which are sorted by tag.
+     */
+    CompactElements(List list) {
+        final int n = list.size();
+        tags = new int[n];
+        vrs = new int[n];
+        offsets = new int[n + 1];
+        elements = new DcmElement[n];
+        int len = 0;
+        for (int i = 0; i < n; ++i) {
+            DcmElement el = (DcmElement) list.get(i);
+            tags[i] = el.tag();
+            vrs[i] = el.vr();
+            offsets[i] = len;
+            if (isPackable(el)) {
+                len += ((ValueElement) el).data.limit();
+            } else {
+                elements[i] = el;
+            }
+        }
+        offsets[n] = len;
+        values = new byte[len];
+        for (int i = 0; i < n; ++i) {
+            if (elements[i] == null) {
+                ByteBuffer data = ((ValueElement) list.get(i)).data;
+                System.arraycopy(data.array(), data.arrayOffset(), values,
+                        offsets[i], offsets[i + 1] - offsets[i]);
+            }
+        }
+    }
+
+    private static boolean isPackable(DcmElement el) {
+        if (!(el instanceof ValueElement)) {
+            return false;
+        }
+        ByteBuffer data = ((ValueElement) el).data;
+        if (!data.hasArray() || data.limit() > MAX_PACKED_LENGTH) {
+            return false;
+        }
+        switch (el.vr()) {
+        case VRs.AE:
+        case VRs.AS:
+        case VRs.CS:
+        case VRs.DA:
+        case VRs.DS:
+        case VRs.DT:
+        case VRs.IS:
+        case VRs.LO:
+        case VRs.LT:
+        case VRs.OB:
+        case VRs.PN:
+        case VRs.SH:
+        case VRs.ST:
+        case VRs.TM:
+        case VRs.UI:
+        case VRs.UN:
+        case VRs.UT:
+            return true;
+        case VRs.AT:
+        case VRs.FD:
+        case VRs.FL:
+        case VRs.OF:
+        case VRs.OW:
+        case VRs.SL:
+        case VRs.SS:
+        case VRs.UL:
+        case VRs.US:
+            return data.order() == ByteOrder.LITTLE_ENDIAN;
+        }
+        return false;
+    }
+
+    int size() {
+        return tags.length;
+    }
+
+    int tag(int index) {
+        return tags[index];
+    }
+
+    int indexOf(int tag) {
+        int low = 0;
+        int high = tags.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >> 1;
+            long cmp = (tags[mid] & 0xffffffffL) - (tag & 0xffffffffL);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid; // key found
+        }
+        return -(low + 1); // key not found
+    }
+
+    DcmElement get(int index) {
+        if (elements[index] != null) {
+            return elements[index];
+        }
+        int off = offsets[index];
+        byte[] b = new byte[offsets[index + 1] - off];
+        System.arraycopy(values, off, b, 0, b.length);
+        return create(tags[index], vrs[index],
+                ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /** Shares the element objects of not packed elements. */
+    void shareElements() {
+        for (int i = 0; i < elements.length; ++i) {
+            if (elements[i] != null) {
+                elements[i] = elements[i].share();
+            }
+        }
+    }
+
+    /** Adds all elements to the - empty - list. */
+    void addTo(List list) {
+        for (int i = 0; i < tags.length; ++i) {
+            list.add(get(i));
+        }
+    }
+
+    Iterator iterator() {
+        return new Iterator() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < tags.length;
+            }
+
+            public Object next() {
+                if (next >= tags.length) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static DcmElement create(int tag, int vr, ByteBuffer value) {
+        switch (vr) {
+        case VRs.AE:
+            return StringElement.createAE(tag, value);
+        case VRs.AS:
+            return StringElement.createAS(tag, value);
+        case VRs.AT:
+            return ValueElement.createAT(tag, value);
+        case VRs.CS:
+            return StringElement.createCS(tag, value);
+        case VRs.DA:
+            return StringElement.createDA(tag, value);
+        case VRs.DS:
+            return StringElement.createDS(tag, value);
+        case VRs.DT:
+            return StringElement.createDT(tag, value);
+        case VRs.FL:
+            return ValueElement.createFL(tag, value);
+        case VRs.FD:
+            return ValueElement.createFD(tag, value);
+        case VRs.IS:
+            return StringElement.createIS(tag, value);
+        case VRs.LO:
+            return StringElement.createLO(tag, value);
+        case VRs.LT:
+            return StringElement.createLT(tag, value);
+        case VRs.OB:
+            return ValueElement.createOB(tag, value);
+        case VRs.OF:
+            return ValueElement.createOF(tag, value);
+        case VRs.OW:
+            return ValueElement.createOW(tag, value);
+        case VRs.PN:
+            return StringElement.createPN(tag, value);
+        case VRs.SH:
+            return StringElement.createSH(tag, value);
+        case VRs.SL:
+            return ValueElement.createSL(tag, value);
+        case VRs.SS:
+            return ValueElement.createSS(tag, value);
+        case VRs.ST:
+            return StringElement.createST(tag, value);
+        case VRs.TM:
+            return StringElement.createTM(tag, value);
+        case VRs.UI:
+            return StringElement.createUI(tag, value);
+        case VRs.UN:
+            return ValueElement.createUN(tag, value);
+        case VRs.UL:
+            return ValueElement.createUL(tag, value);
+        case VRs.US:
+            return ValueElement.createUS(tag, value);
+        case VRs.UT:
+            return StringElement.createUT(tag, value);
+        }
+        throw new IllegalStateException("vr: " + VRs.toString(vr));
+    }
+}
@@ -83,6 +83,9 @@ abstract class DcmObjectImpl implements DcmObject {
 
     protected ArrayList list = new ArrayList();
 
+    // elements in compact representation, list is empty if set
+    private volatile CompactElements compact;
+
     public DcmHandler getDcmHandler() {
         return new DcmObjectHandlerImpl(this);
     }
@@ -108,26 +111,80 @@ abstract class DcmObjectImpl implements DcmObject {
     }
 
     public int size() {
-        return list.size();
+        return count();
     }
 
     public boolean isEmpty() {
-        return list.isEmpty();
+        return count() == 0;
     }
 
     public void clear() {
-        list.clear();
+        synchronized (list) {
+            compact = null;
+            list.clear();
+        }
     }
 
     public void shareElements() {
         synchronized (list) {
+            if (compact != null) {
+                compact.shareElements();
+                return;
+            }
             final int size = list.size();
             for (int i = 0; i < size; ++i)
                 list.set(i, ((DcmElement) list.get(i)).share());
         }
     }
 
+    /**
+     * Replaces the element list by its compact representation, which is
+     * expanded again on the first modification. Items of contained sequences
+     * are compacted too.
+     */
+    protected void compactElements() {
+        synchronized (list) {
+            final int size = list.size();
+            if (size == 0) {
+                return;
+            }
+            for (int i = 0; i < size; ++i) {
+                DcmElement el = (DcmElement) list.get(i);
+                if (el.vr() == VRs.SQ) {
+                    for (int j = 0, n = el.countItems(); j < n; ++j) {
+                        el.getItem(j).compact();
+                    }
+                }
+            }
+            compact = new CompactElements(list);
+            list.clear();
+            list.trimToSize();
+        }
+    }
+
+    /** Must be called with lock on list held. */
+    private void expandElements() {
+        if (compact != null) {
+            compact.addTo(list);
+            compact = null;
+        }
+    }
+
+    private int count() {
+        CompactElements c = compact;
+        return c != null ? c.size() : list.size();
+    }
+
+    private DcmElement elementAt(int index) {
+        CompactElements c = compact;
+        return c != null ? c.get(index) : (DcmElement) list.get(index);
+    }
+
     private int indexOf(int tag) {
+        CompactElements c = compact;
+        if (c != null) {
+            return c.indexOf(tag);
+        }
         int low = 0;
         int high = list.size() - 1;
 
@@ -179,7 +236,7 @@ abstract class DcmObjectImpl implements DcmObject {
             }
         }
         int index = indexOf(tag);
-        return index >= 0 ? ((DcmElement) list.get(index))
+        return index >= 0 ? elementAt(index)
                 .vm(getSpecificCharacterSet()) : -1;
     }
 
@@ -189,14 +246,14 @@ abstract class DcmObjectImpl implements DcmObject {
         int tagOfCreatorID = gr | 0x10;
         int index = indexOf(tagOfCreatorID);
         if (index >= 0) {
-            DcmElement elm = (DcmElement) list.get(index);
-            final int size = list.size();
+            DcmElement elm = elementAt(index);
+            final int size = count();
             while (++index < size) {
                 if (creatorID.equals(elm.getString(getSpecificCharacterSet()))) {
                     return elm.tag();
                 }
                 tagOfCreatorID = elm.tag() + 1;
-                elm = (DcmElement) list.get(index);
+                elm = elementAt(index);
                 if ((elm.tag() & 0xffffff00) != gr) {
                     break;
                 }
@@ -236,7 +293,7 @@ abstract class DcmObjectImpl implements DcmObject {
             }
         }
         int index = indexOf(tag);
-        return index >= 0 ? (DcmElement) list.get(index) : null;
+        return index >= 0 ? elementAt(index) : null;
     }
 
     public DcmElement remove(int tag) {
@@ -252,6 +309,7 @@ abstract class DcmObjectImpl implements DcmObject {
             }
         }
         synchronized (list) {
+            expandElements();
             int index = indexOf(tag);
             return index >= 0 ? (DcmElement) list.remove(index) : null;
         }
@@ -668,6 +726,7 @@ abstract class DcmObjectImpl implements DcmObject {
 
     private DcmElement doPut(DcmElement newElem) {
         synchronized (list) {
+            expandElements();
             final int size = list.size();
             final int newTag = newElem.tag();
             if (size == 0
@@ -2560,7 +2619,8 @@ abstract class DcmObjectImpl implements DcmObject {
      * @return Description of the Return Value
      */
     public Iterator iterator() {
-        return list.iterator();
+        CompactElements c = compact;
+        return c != null ? c.iterator() : list.iterator();
     }
 
     public int hashCode() {
@@ -2716,12 +2776,12 @@ abstract class DcmObjectImpl implements DcmObject {
             throws IOException {
         byte[] b4 = { (byte) grLen, (byte) (grLen >>> 8),
                 (byte) (grLen >>> 16), (byte) (grLen >>> 24) };
-        long el1Pos = ((DcmElement) list.get(0)).getStreamPosition();
+        long el1Pos = elementAt(0).getStreamPosition();
         handler.startElement(grTag, VRs.UL, el1Pos == -1L ? -1L : el1Pos - 12);
         handler.value(b4, 0, 4);
         handler.endElement();
-        for (int i = 0, n = list.size(); i < n; ++i) {
-            DcmElement el = (DcmElement) list.get(i);
+        for (int i = 0, n = count(); i < n; ++i) {
+            DcmElement el = elementAt(i);
             int len = el.length();
             handler.startElement(el.tag(), el.vr(), el.getStreamPosition());
             ByteBuffer bb = el.getByteBuffer(ByteOrder.LITTLE_ENDIAN);
@@ -89,6 +89,7 @@ import org.dcm4che.net.Dimse;
 import org.dcm4che.net.DimseListener;
 import org.dcm4che.net.FutureRSP;
 import org.dcm4che.net.PDU;
+import org.dcm4che.util.ThreadExecutor;
 import org.dcm4cheri.util.IntHashtable2;
 import org.dcm4cheri.util.LF_ThreadPool;
 
@@ -122,20 +123,59 @@ final class ActiveAssociationImpl implements ActiveAssociation,
 
     private final IntHashtable2 cancelDispatcher = new IntHashtable2();
 
-    private final LF_ThreadPool threadPool = new LF_ThreadPool(this, name);
+    private final LF_ThreadPool threadPool;
+
+    private final NioConnection conn;
+
+    private final ThreadExecutor executor;
+
+    private final Runnable resumeTask = new Runnable() {
+        public void run() {
+            threadPool.resume();
+        }
+    };
 
     private boolean running = false;
 
     // Static --------------------------------------------------------
 
     // Constructors --------------------------------------------------
-    ActiveAssociationImpl(Association assoc, DcmServiceRegistry services) {
+    /**
+     * Creates an active association, which takes its threads from the
+     * specified executor, or starts new threads if <code>null</code>.
+     */
+    ActiveAssociationImpl(Association assoc, DcmServiceRegistry services,
+            ThreadExecutor executor) {
+        this(assoc, services, null, executor);
+    }
+
+    /**
+     * Creates an active association on a connection of a
+     * {@link NioTransport}, which releases its thread while there is no
+     * received PDU to read. In this case, {@link #run} returns already, when
+     * the association becomes idle.
+     */
+    ActiveAssociationImpl(Association assoc, DcmServiceRegistry services,
+            NioConnection conn) {
+        this(assoc, services, conn, null);
+    }
+
+    private ActiveAssociationImpl(Association assoc,
+            DcmServiceRegistry services, NioConnection conn,
+            ThreadExecutor executor) {
         if (assoc.getState() != Association.ASSOCIATION_ESTABLISHED)
             throw new IllegalStateException("Association not established - "
                     + assoc.getState());
 
         this.assoc = (AssociationImpl) assoc;
         this.services = services;
+        this.conn = conn;
+        this.executor = executor;
+        this.threadPool = conn != null ? conn.newThreadPool(this, name)
+                : new LF_ThreadPool(this, name);
+        if (conn == null) {
+            threadPool.setExecutor(executor);
+        }
         ((AssociationImpl) assoc).setThreadPool(threadPool);
         assoc.addAssociationListener(this);
     }
@@ -168,7 +208,11 @@ final class ActiveAssociationImpl implements ActiveAssociation,
         if (running)
             throw new IllegalStateException("Already running: " + threadPool);
 
-        new Thread(this, name).start();
+        if (executor != null) {
+            executor.execute(this);
+        } else {
+            new Thread(this, name).start();
+        }
     }
 
     public Association getAssociation() {
@@ -214,6 +258,13 @@ final class ActiveAssociationImpl implements ActiveAssociation,
 
     // LF_ThreadPool.Handler implementation --------------------------
     public void run(LF_ThreadPool pool) {
+        if (conn != null && !assoc.hasPendingPDV() && !conn.hasInput()) {
+            // release thread and buffer until the next PDU is received
+            assoc.releaseReadBuffer();
+            pool.leave();
+            conn.park(assoc.getDimseTimeout(), resumeTask);
+            return;
+        }
         Dimse dimse = null;
         try {
             dimse = assoc.read();
@@ -103,6 +103,7 @@ import org.dcm4che.data.Command;
 import org.dcm4che.data.Dataset;
 import org.dcm4che.dict.UIDs;
 
+import org.dcm4che.util.ThreadExecutor;
 import org.dcm4cheri.util.StringUtils;
 
 import java.io.IOException;
@@ -116,9 +117,19 @@ import java.net.Socket;
  */
 public final class AssociationFactoryImpl extends AssociationFactory {
 
+    private volatile ThreadExecutor executor;
+
     public AssociationFactoryImpl() {
     }
 
+    public ThreadExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ThreadExecutor executor) {
+        this.executor = executor;
+    }
+
     public AAssociateRQ newAAssociateRQ() {
         return new AAssociateRQImpl();
     }
@@ -245,7 +256,7 @@ public final class AssociationFactoryImpl extends AssociationFactory {
 
     public ActiveAssociation newActiveAssociation(Association assoc,
             DcmServiceRegistry services) {
-        return new ActiveAssociationImpl(assoc, services);
+        return new ActiveAssociationImpl(assoc, services, executor);
     }
 
     public Dimse newDimse(int pcid, Command cmd) {
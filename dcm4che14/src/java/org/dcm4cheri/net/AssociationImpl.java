@@ -132,6 +132,13 @@ final class AssociationImpl implements Association {
         this.reader = new DimseReaderImpl(fsm);
         this.writer = new DimseWriterImpl(fsm);
     }
+
+    /** Creates a new acceptor on a connection of a {@link NioTransport} */
+    AssociationImpl(NioConnection conn) throws IOException {
+        this.fsm = new FsmImpl(this, conn);
+        this.reader = new DimseReaderImpl(fsm);
+        this.writer = new DimseWriterImpl(fsm);
+    }
     
     public final boolean isRequestor() {
         return fsm.isRequestor();
@@ -201,6 +208,20 @@ final class AssociationImpl implements Association {
         return fsm.getCalledAET();
     }
 
+    /** Returns <code>true</code>, if PDVs of the last received P-DATA-TF
+     * are not yet read.
+     */
+    final boolean hasPendingPDV() {
+        return reader.hasPendingPDV();
+    }
+
+    /** Returns the read buffer to the {@link BufferPool}, if all PDVs of the
+     * last received P-DATA-TF were read.
+     */
+    final void releaseReadBuffer() {
+        reader.releaseBuffer();
+    }
+
     public void setThreadPool(LF_ThreadPool pool) {
         fsm.setThreadPool(pool);
         reader.setThreadPool(pool);
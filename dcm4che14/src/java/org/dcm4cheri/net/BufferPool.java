@@ -0,0 +1,101 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4cheri.net;
+
+import java.util.LinkedList;
+
+import org.dcm4cheri.util.IntHashtable2;
+
+/**
+ * Pool of PDU buffers shared by all associations. Buffers are pooled by
+ * size, which is typically the negotiated maximal PDU length + 6, so
+ * associations with the same PDU length reuse the buffers of each other,
+ * instead of allocating new ones. Released buffers exceeding the total of
+ * {@link #MAX_RETAINED_BYTES} are left to the garbage collector.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+final class BufferPool {
+
+    static final int MAX_RETAINED_BYTES = 0x4000000; // 64 MB
+
+    private static final BufferPool instance =
+            new BufferPool(MAX_RETAINED_BYTES);
+
+    private final IntHashtable2 free = new IntHashtable2();
+
+    private final int maxRetained;
+
+    private int retained = 0;
+
+    BufferPool(int maxRetained) {
+        this.maxRetained = maxRetained;
+    }
+
+    static BufferPool getInstance() {
+        return instance;
+    }
+
+    synchronized byte[] allocate(int size) {
+        LinkedList list = (LinkedList) free.get(size);
+        if (list != null && !list.isEmpty()) {
+            byte[] buf = (byte[]) list.removeLast();
+            retained -= buf.length;
+            return buf;
+        }
+        return new byte[size];
+    }
+
+    synchronized void release(byte[] buf) {
+        if (buf == null || retained + buf.length > maxRetained) {
+            return;
+        }
+        LinkedList list = (LinkedList) free.get(buf.length);
+        if (list == null) {
+            free.put(buf.length, list = new LinkedList());
+        }
+        list.addLast(buf);
+        retained += buf.length;
+    }
+
+    synchronized int getRetainedBytes() {
+        return retained;
+    }
+}
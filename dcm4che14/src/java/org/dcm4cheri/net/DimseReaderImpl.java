@@ -72,14 +72,36 @@ final class DimseReaderImpl {
        this.pool = pool;
     }
         
+    /** Returns <code>true</code>, if the last received P-DATA-TF contains
+     * further PDVs, which were not yet read.
+     */
+    synchronized boolean hasPendingPDV() {
+        return pDataTF != null && ((PDataTFImpl) pDataTF).hasNextPDV();
+    }
+    
+    /** Returns the PDU buffer to the {@link BufferPool}, if all PDVs of the
+     * last received P-DATA-TF were read, e.g. before the association becomes
+     * idle. A new buffer is allocated from the pool on the next read.
+     */
+    synchronized void releaseBuffer() {
+        if (buf != null && !hasPendingPDV()) {
+            pDataTF = null;
+            pdv = null;
+            BufferPool.getInstance().release(buf);
+            buf = null;
+        }
+    }
+    
     public synchronized Dimse read(int timeout) throws IOException {
         this.timeout = timeout;
         try {
             if (!nextPDV()) {
+                releaseBuffer();
                 return null;
             }
         } catch (EOFException e) {
             FsmImpl.log.warn("Socket closed on open association:" + fsm.socket());
+            releaseBuffer();
             return null;
         }
         if (!pdv.cmd()) {
@@ -183,11 +205,17 @@ final class DimseReaderImpl {
 
     private boolean nextPDataTF() throws IOException {
         if (buf == null) {
-            buf = new byte[fsm.getReadMaxLength() + 6];
+            buf = BufferPool.getInstance().allocate(
+                    fsm.getReadMaxLength() + 6);
         }
         PDU pdu = fsm.read(timeout, buf);
         if (pdu instanceof PDataTF) {
             pDataTF = (PDataTF)pdu;
+            byte[] b = ((PDataTFImpl) pDataTF).buffer();
+            if (b.length > buf.length) {
+                // keep buffer allocated for PDU exceeding the max length
+                buf = b;
+            }
             return true;
         }
         if (pdu instanceof AReleaseRP) {
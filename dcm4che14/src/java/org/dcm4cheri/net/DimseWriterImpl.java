@@ -42,6 +42,7 @@ import org.dcm4che.net.*;
 import org.dcm4che.data.Command;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 /**
  *
@@ -71,30 +72,35 @@ final class DimseWriterImpl {
         }
         ((DimseImpl)dimse).setTransferSyntaxUID(tsUID);
         fsm.fireWrite(dimse);
-        if (pDataTF == null) {
-            pDataTF = new PDataTFImpl(fsm.getWriteMaxLength());
-        }
-        pDataTF.openPDV(pcid, cmd = true);
-        OutputStream out = new PDataTFOutputStream();
-        Command c = dimse.getCommand();
+        // buffer of max PDU length is only held during write of the DIMSE
+        pDataTF = new PDataTFImpl(BufferPool.getInstance().allocate(
+                fsm.getWriteMaxLength() + 6));
         try {
-            c.write(out);
-        } finally {
-            out.close();
-        }
-        if (c.hasDataset()) {
-            if (!packPDVs) {
-                flushPDataTF();
-            }
-            pDataTF.openPDV(pcid, cmd = false);
-            out = new PDataTFOutputStream();
+            pDataTF.openPDV(pcid, cmd = true);
+            OutputStream out = new PDataTFOutputStream();
+            Command c = dimse.getCommand();
             try {
-                dimse.writeTo(out, tsUID);
+                c.write(out);
             } finally {
                 out.close();
-            }                
+            }
+            if (c.hasDataset()) {
+                if (!packPDVs) {
+                    flushPDataTF();
+                }
+                pDataTF.openPDV(pcid, cmd = false);
+                out = new PDataTFOutputStream();
+                try {
+                    dimse.writeTo(out, tsUID);
+                } finally {
+                    out.close();
+                }                
+            }
+            flushPDataTF();
+        } finally {
+            BufferPool.getInstance().release(pDataTF.buffer());
+            pDataTF = null;
         }
-        flushPDataTF();
     }
     
     public void flushPDataTF() throws IOException {
@@ -133,7 +139,8 @@ final class DimseWriterImpl {
         this.packPDVs = packPDVs;
     }
     
-    private class PDataTFOutputStream extends OutputStream {
+    private class PDataTFOutputStream extends OutputStream
+            implements DirectTransfer {
         public final void write(int b) throws IOException {
             if (pDataTF.free() == 0) {
                 flushPDataTF();
@@ -157,6 +164,32 @@ final class DimseWriterImpl {
                 flushPDataTF();
             }
         }
+        /**
+         * Writes the PDU and PDV headers and preceding data of each PDU
+         * itself, and lets the connection transfer the file region sliced
+         * by the maximal PDU length from the file channel to the socket.
+         * The remainder, which does not fill the last PDU, is read into the
+         * PDU buffer, so the PDV can be completed by following data or
+         * marked as last.
+         */
+        public boolean transferFrom(FileChannel src, long position,
+                long count) throws IOException {
+            TransferTarget target = fsm.getTransferTarget();
+            if (target == null) {
+                return false;
+            }
+            int n;
+            while (count > (n = pDataTF.free())) {
+                if (n > 0) {
+                    pDataTF.writeFileRegion(src, position, n, target);
+                    position += n;
+                    count -= n;
+                }
+                flushPDataTF();
+            }
+            pDataTF.write(src, position, (int) count);
+            return true;
+        }
         public void close() throws IOException {
             closeStream();
         }
@@ -82,6 +82,7 @@ final class FsmImpl
     private final Socket s;
     private final InputStream in;
     private final OutputStream out;
+    private final NioConnection conn;
     private int soCloseDelay = 500;
     private AAssociateRQ rq = null;
     private AAssociateAC ac = null;
@@ -101,14 +102,36 @@ final class FsmImpl
      */
     public FsmImpl(AssociationImpl assoc, Socket s, boolean requestor)
         throws IOException
+    {
+        this(assoc, s, s.getInputStream(), s.getOutputStream(), null,
+                requestor);
+    }
+
+
+    /**
+     *  Creates a new instance for an accepted connection of a
+     *  {@link NioTransport}.
+     */
+    FsmImpl(AssociationImpl assoc, NioConnection conn)
+        throws IOException
+    {
+        this(assoc, conn.socket(), conn.getInputStream(),
+                conn.getOutputStream(), conn, false);
+    }
+
+
+    private FsmImpl(AssociationImpl assoc, Socket s, InputStream in,
+            OutputStream out, NioConnection conn, boolean requestor)
+        throws IOException
     {
         this.assoc = assoc;
         this.requestor = requestor;
         this.s = s;
+        this.in = in;
+        this.out = out;
+        this.conn = conn;
         initMDC();
         try {
-            this.in = s.getInputStream();
-            this.out = s.getOutputStream();
             log.info(s.toString());
             changeState(requestor ? STA4 : STA2);
         } finally {
@@ -162,6 +185,17 @@ final class FsmImpl
     }
 
 
+    /**
+     *  Returns the target for direct transfer of file regions to the
+     *  connection, or <code>null</code> if the socket does not support it.
+     */
+    final TransferTarget getTransferTarget()
+    {
+        return conn != null ? conn.getTransferTarget()
+                : TransferTarget.forChannel(s.getChannel());
+    }
+
+
     /**
      *  Gets the requestor attribute of the FsmImpl object
      *
@@ -496,6 +530,7 @@ final class FsmImpl
     {
         try {
             UnparsedPDUImpl raw = null;
+            // blocks in read - pins a virtual thread before Java 24
             synchronized (in) {
                 s.setSoTimeout(timeout);
                 try {
@@ -1517,7 +1552,11 @@ final class FsmImpl
                     pool.shutdown();
                 }
                 try {
-                    Thread.sleep(soCloseDelay);
+                    if (conn != null) {
+                        conn.awaitEOF(soCloseDelay);
+                    } else {
+                        Thread.sleep(soCloseDelay);
+                    }
                 } catch (InterruptedException e) {
                     log.warn("Socket close Delay was interrupted: ", e);
                 }
@@ -0,0 +1,548 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4cheri.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+
+import org.dcm4che.net.ActiveAssociation;
+import org.dcm4che.net.Association;
+import org.dcm4che.net.DcmServiceRegistry;
+import org.dcm4cheri.util.LF_ThreadPool;
+
+/**
+ * Connection of a {@link NioTransport}. Data received by the selector thread
+ * is queued and framed into PDUs, so a worker thread is only dispatched
+ * after a complete PDU was received. Worker threads read and write PDUs by
+ * blocking streams, which honour the socket timeout as the streams of a
+ * {@link Socket}.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public final class NioConnection {
+
+    /**
+     * Reading from the channel is suspended, if more bytes are queued, and
+     * resumed, if less than the half are left or if all completely received
+     * PDUs were read, so a partially received PDU, which is not dispatched
+     * yet, is always completed. PDUs, which do not fit into
+     * this size together with their 6 byte header, are dispatched after
+     * receive of the PDU header, so reading is not suspended before the PDU
+     * is complete.
+     */
+    static final int MAX_QUEUED_BYTES = 1048576;
+
+    private final NioTransport transport;
+
+    private final NioTransport.SelectorThread selector;
+
+    private final SocketChannel ch;
+
+    private final Socket s;
+
+    private final InputStream in = new ChannelInputStream();
+
+    private final OutputStream out = new ChannelOutputStream();
+
+    private final TransferTarget transferTarget = new ChannelTransferTarget();
+
+    private SelectionKey key;
+
+    // accessed only by the selector thread
+    private final byte[] header = new byte[6];
+
+    private int headerPos = 0;
+
+    private long pduEnd = 0L;
+
+    // guarded by lock
+    private final Object lock = new Object();
+
+    private final LinkedList queue = new LinkedList();
+
+    private Chunk chunk;
+
+    private int chunkPos;
+
+    private long received = 0L;
+
+    private long consumed = 0L;
+
+    private long completeEnd = 0L;
+
+    private boolean eof = false;
+
+    private boolean closed = false;
+
+    private boolean timedOut = false;
+
+    private boolean readSuspended = false;
+
+    private boolean writeWaiting = false;
+
+    private Runnable resume;
+
+    private long deadline;
+
+    NioConnection(NioTransport transport,
+            NioTransport.SelectorThread selector, SocketChannel ch) {
+        this.transport = transport;
+        this.selector = selector;
+        this.ch = ch;
+        this.s = ch.socket();
+    }
+
+    public Socket socket() {
+        return s;
+    }
+
+    public Association newAcceptor() throws IOException {
+        return new AssociationImpl(this);
+    }
+
+    public ActiveAssociation newActiveAssociation(Association assoc,
+            DcmServiceRegistry services) {
+        return new ActiveAssociationImpl(assoc, services, this);
+    }
+
+    public String toString() {
+        return "Nio" + s;
+    }
+
+    SocketChannel channel() {
+        return ch;
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    TransferTarget getTransferTarget() {
+        return transferTarget;
+    }
+
+    /**
+     * Returns a thread pool for an association on this connection, which
+     * takes new threads from the worker pool of the transport.
+     */
+    LF_ThreadPool newThreadPool(LF_ThreadPool.Handler handler, String name) {
+        LF_ThreadPool pool = new LF_ThreadPool(handler, name) {
+            // promoted leader shall resume the pool, even if other threads
+            // of the pool are still running
+            protected void addThread(Runnable r) {
+                transport.execute(new Runnable() {
+                    public void run() {
+                        resume();
+                    }
+                });
+            }
+        };
+        // let threads return to the worker pool after processing a request
+        pool.setMaxWaiting(0);
+        return pool;
+    }
+
+    /**
+     * Returns <code>true</code>, if a complete PDU - or the header of a PDU
+     * not fitting into {@link #MAX_QUEUED_BYTES} - was received and not yet read,
+     * or if the peer closed the connection.
+     */
+    boolean hasInput() {
+        synchronized (lock) {
+            return hasInput0();
+        }
+    }
+
+    private boolean hasInput0() {
+        return completeEnd > consumed || eof || closed || timedOut;
+    }
+
+    /**
+     * Schedules <code>task</code> for execution by a worker thread after
+     * receive of the next PDU, or after <code>timeout</code> ms without
+     * input. Read operations will throw a {@link SocketTimeoutException}
+     * after the timeout elapsed.
+     */
+    void park(int timeout, Runnable task) {
+        synchronized (lock) {
+            if (!hasInput0()) {
+                resume = task;
+                deadline = timeout > 0
+                        ? System.currentTimeMillis() + timeout : 0L;
+                return;
+            }
+        }
+        transport.execute(task);
+    }
+
+    void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            resume = null;
+            if (chunk != null) {
+                chunk.release();
+                chunk = null;
+            }
+            while (!queue.isEmpty()) {
+                ((Chunk) queue.removeFirst()).release();
+            }
+            lock.notifyAll();
+        }
+        try {
+            ch.close();
+        } catch (IOException ignore) {}
+        transport.connectionClosed();
+    }
+
+    // invoked by the selector thread ----------------------------------
+    void setSelectionKey(SelectionKey key) {
+        this.key = key;
+        updateInterestOps();
+    }
+
+    void updateInterestOps() {
+        int ops;
+        synchronized (lock) {
+            ops = (eof || closed || readSuspended ? 0 : SelectionKey.OP_READ)
+                    | (writeWaiting ? SelectionKey.OP_WRITE : 0);
+        }
+        try {
+            if (key.isValid() && key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        } catch (CancelledKeyException ignore) {}
+    }
+
+    void readable(NioTransport.SelectorThread st) {
+        ByteBuffer buf = st.readBuffer();
+        int n;
+        try {
+            n = ch.read(buf);
+        } catch (IOException e) {
+            NioTransport.log.debug("Failed to read from " + this, e);
+            n = -1;
+        }
+        if (n == 0) {
+            return;
+        }
+        boolean suspend;
+        Runnable task = null;
+        synchronized (lock) {
+            if (n < 0) {
+                eof = true;
+            } else if (!closed) {
+                // take over the pooled receive buffer only if it is filled,
+                // so queued bytes match the memory pinned by the queue
+                Chunk b;
+                if (n == buf.capacity()) {
+                    b = new Chunk(st.takeReadBuffer(), n, true);
+                } else {
+                    b = new Chunk(new byte[n], n, false);
+                    System.arraycopy(buf.array(), 0, b.buf, 0, n);
+                }
+                frame(b.buf, n);
+                queue.addLast(b);
+                received += n;
+                if (received - consumed >= MAX_QUEUED_BYTES) {
+                    readSuspended = true;
+                }
+            }
+            suspend = eof || readSuspended;
+            lock.notifyAll();
+            if (resume != null && hasInput0()) {
+                task = resume;
+                resume = null;
+            }
+        }
+        buf.clear();
+        if (suspend) {
+            updateInterestOps();
+        }
+        if (task != null) {
+            transport.execute(task);
+        }
+    }
+
+    // tracks the end of the last completely received PDU
+    private void frame(byte[] b, int len) {
+        long offset = received;
+        int pos = 0;
+        while (pos < len) {
+            if (headerPos < 6) {
+                int n = Math.min(6 - headerPos, len - pos);
+                System.arraycopy(b, pos, header, headerPos, n);
+                headerPos += n;
+                pos += n;
+                if (headerPos == 6) {
+                    long pduLength = ((header[2] & 0xffL) << 24)
+                            | ((header[3] & 0xff) << 16)
+                            | ((header[4] & 0xff) << 8)
+                            | (header[5] & 0xff);
+                    pduEnd = offset + pos + pduLength;
+                    if (pduLength + 6 >= MAX_QUEUED_BYTES) {
+                        completeEnd = offset + pos;
+                    }
+                    if (pduLength == 0) {
+                        completeEnd = pduEnd;
+                        headerPos = 0;
+                    }
+                }
+            } else {
+                int n = (int) Math.min(pduEnd - offset - pos, len - pos);
+                pos += n;
+                if (offset + pos == pduEnd) {
+                    completeEnd = pduEnd;
+                    headerPos = 0;
+                }
+            }
+        }
+    }
+
+    void writable() {
+        synchronized (lock) {
+            writeWaiting = false;
+            lock.notifyAll();
+        }
+        updateInterestOps();
+    }
+
+    void checkTimeout(long now) {
+        Runnable task = null;
+        synchronized (lock) {
+            if (resume != null && deadline != 0L && now >= deadline) {
+                timedOut = true;
+                task = resume;
+                resume = null;
+            }
+        }
+        if (task != null) {
+            transport.execute(task);
+        }
+    }
+
+    // invoked by worker threads ---------------------------------------
+    /**
+     * Waits until the peer closed the connection, but at most
+     * <code>timeout</code> ms.
+     */
+    void awaitEOF(int timeout) throws InterruptedException {
+        long until = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            long wait;
+            while (!eof && !closed
+                    && (wait = until - System.currentTimeMillis()) > 0L) {
+                lock.wait(wait);
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new SocketException("Socket closed");
+            }
+            writeWaiting = true;
+        }
+        selector.updateInterestOps(this);
+        synchronized (lock) {
+            while (writeWaiting) {
+                if (closed) {
+                    throw new SocketException("Socket closed");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static final class Chunk {
+
+        final byte[] buf;
+
+        final int len;
+
+        final boolean pooled;
+
+        Chunk(byte[] buf, int len, boolean pooled) {
+            this.buf = buf;
+            this.len = len;
+            this.pooled = pooled;
+        }
+
+        void release() {
+            if (pooled) {
+                BufferPool.getInstance().release(buf);
+            }
+        }
+    }
+
+    private final class ChannelInputStream extends InputStream {
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n;
+            boolean resumeReading;
+            synchronized (lock) {
+                int timeout = s.getSoTimeout();
+                long until = timeout > 0
+                        ? System.currentTimeMillis() + timeout : 0L;
+                while (chunk == null) {
+                    if (!queue.isEmpty()) {
+                        chunk = (Chunk) queue.removeFirst();
+                        chunkPos = 0;
+                        break;
+                    }
+                    if (closed) {
+                        throw new SocketException("Socket closed");
+                    }
+                    if (eof) {
+                        return -1;
+                    }
+                    long wait = 0L;
+                    if (timedOut || until != 0L
+                            && (wait = until - System.currentTimeMillis()) <= 0L) {
+                        timedOut = false;
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    try {
+                        lock.wait(wait);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                n = Math.min(len, chunk.len - chunkPos);
+                System.arraycopy(chunk.buf, chunkPos, b, off, n);
+                if ((chunkPos += n) == chunk.len) {
+                    chunk.release();
+                    chunk = null;
+                }
+                consumed += n;
+                timedOut = false;
+                resumeReading = readSuspended
+                        && (received - consumed <= MAX_QUEUED_BYTES / 2
+                                || consumed >= completeEnd);
+                if (resumeReading) {
+                    readSuspended = false;
+                }
+            }
+            if (resumeReading) {
+                selector.updateInterestOps(NioConnection.this);
+            }
+            return n;
+        }
+
+        public int available() {
+            synchronized (lock) {
+                return (int) Math.min(received - consumed, Integer.MAX_VALUE);
+            }
+        }
+
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+
+    private final class ChannelOutputStream extends OutputStream {
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+            while (bb.hasRemaining()) {
+                if (ch.write(bb) == 0) {
+                    awaitWritable();
+                }
+            }
+        }
+
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+
+    private final class ChannelTransferTarget extends TransferTarget {
+
+        void transferFrom(FileChannel src, long position, long count)
+                throws IOException {
+            while (count > 0) {
+                long n = src.transferTo(position, count, ch);
+                if (n == 0) {
+                    if (position >= src.size()) {
+                        throw new EOFException();
+                    }
+                    awaitWritable();
+                }
+                position += n;
+                count -= n;
+            }
+        }
+    }
+}
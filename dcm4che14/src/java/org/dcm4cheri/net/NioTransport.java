@@ -0,0 +1,430 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4cheri.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Transport for accepted DICOM connections, which receives PDUs by
+ * non-blocking I/O with a few selector threads, and dispatches associations
+ * with received PDUs to a shared, bounded pool of worker threads. So idle
+ * associations do not occupy any thread.
+ * <p>
+ * Worker threads block as before on reading further PDUs of a DIMSE message
+ * which is processed, and on writing PDUs, until the selector thread signals
+ * the availability of data or of space in the send buffer.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public final class NioTransport {
+
+    /**
+     * Handler of connections of a {@link NioTransport}, invoked by a worker
+     * thread after the first PDU was received, or after the request timeout
+     * elapsed.
+     */
+    public interface Handler {
+        int getRqTimeout();
+
+        void handle(NioConnection conn) throws IOException;
+    }
+
+    static final Logger log = Logger.getLogger(NioTransport.class);
+
+    static final int RECEIVE_BUFFER_SIZE = 65536;
+
+    private static final long CHECK_TIMEOUT_INTERVAL = 1000L;
+
+    private static final long WORKER_KEEP_ALIVE = 60000L;
+
+    private final String name;
+
+    private final SelectorThread[] selectors;
+
+    private final int maxWorkers;
+
+    private final LinkedList tasks = new LinkedList();
+
+    private int workers = 0;
+
+    private int idleWorkers = 0;
+
+    private int workerNo = 0;
+
+    private int nextSelector = 0;
+
+    private int numConnections = 0;
+
+    private boolean shutdown = false;
+
+    /**
+     * Creates a new transport and starts its selector threads.
+     * 
+     * @param name
+     *            prefix of the names of the started threads
+     * @param selectorThreads
+     *            number of selector threads
+     * @param maxWorkers
+     *            maximal number of worker threads, or 0 for no limit
+     */
+    public NioTransport(String name, int selectorThreads, int maxWorkers)
+            throws IOException {
+        if (selectorThreads <= 0) {
+            throw new IllegalArgumentException("selectorThreads: "
+                    + selectorThreads);
+        }
+        if (maxWorkers < 0) {
+            throw new IllegalArgumentException("maxWorkers: " + maxWorkers);
+        }
+        this.name = name;
+        this.maxWorkers = maxWorkers;
+        this.selectors = new SelectorThread[selectorThreads];
+        for (int i = 0; i < selectors.length; i++) {
+            selectors[i] = new SelectorThread(Selector.open());
+        }
+        for (int i = 0; i < selectors.length; i++) {
+            new Thread(selectors[i], name + "-Selector-" + (i + 1)).start();
+        }
+    }
+
+    /**
+     * Registers an accepted connection. <code>handler</code> is invoked by a
+     * worker thread, after the first PDU was received or after the request
+     * timeout of the handler elapsed.
+     */
+    public void register(SocketChannel ch, Handler handler)
+            throws IOException {
+        ch.configureBlocking(false);
+        SelectorThread selector;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IOException("Transport shut down");
+            }
+            selector = selectors[nextSelector++ % selectors.length];
+            ++numConnections;
+        }
+        NioConnection conn = new NioConnection(this, selector, ch);
+        conn.park(handler.getRqTimeout(), new Dispatcher(handler, conn));
+        selector.register(conn);
+    }
+
+    public synchronized int getNumConnections() {
+        return numConnections;
+    }
+
+    /**
+     * Waits until the number of open connections falls below
+     * <code>max</code>. Returns immediately, if <code>max</code> is 0.
+     */
+    public synchronized void awaitFreeConnection(int max)
+            throws InterruptedException {
+        while (max > 0 && numConnections >= max && !shutdown) {
+            wait();
+        }
+    }
+
+    public int getNumWorkers() {
+        synchronized (tasks) {
+            return workers;
+        }
+    }
+
+    public int getNumIdleWorkers() {
+        synchronized (tasks) {
+            return idleWorkers;
+        }
+    }
+
+    /**
+     * Closes all connections and stops the selector threads. Worker threads
+     * terminate after completion of their current task.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            notifyAll();
+        }
+        for (int i = 0; i < selectors.length; i++) {
+            selectors[i].close();
+        }
+        synchronized (tasks) {
+            tasks.clear();
+            tasks.notifyAll();
+        }
+    }
+
+    public String toString() {
+        return "NioTransport[" + name + ", connections: "
+                + getNumConnections() + ", workers: " + getNumWorkers()
+                + "(" + maxWorkers + ")]";
+    }
+
+    /**
+     * Executes <code>task</code> by a worker thread. Starts a new worker
+     * thread, if there is no idle worker thread and the maximal number of
+     * worker threads is not yet reached. Otherwise the task is queued, until
+     * a worker thread becomes available.
+     */
+    void execute(Runnable task) {
+        synchronized (tasks) {
+            if (shutdown) {
+                return;
+            }
+            tasks.addLast(task);
+            if (tasks.size() <= idleWorkers) {
+                tasks.notify();
+            } else if (maxWorkers == 0 || workers < maxWorkers) {
+                ++workers;
+                new Thread(new Worker(), name + "-Worker-" + ++workerNo)
+                        .start();
+            }
+        }
+    }
+
+    void connectionClosed() {
+        synchronized (this) {
+            --numConnections;
+            notifyAll();
+        }
+    }
+
+    private Runnable nextTask() {
+        synchronized (tasks) {
+            long until = System.currentTimeMillis() + WORKER_KEEP_ALIVE;
+            while (tasks.isEmpty()) {
+                long wait = until - System.currentTimeMillis();
+                if (shutdown || wait <= 0) {
+                    --workers;
+                    return null;
+                }
+                ++idleWorkers;
+                try {
+                    tasks.wait(wait);
+                } catch (InterruptedException e) {
+                    --workers;
+                    return null;
+                } finally {
+                    --idleWorkers;
+                }
+            }
+            return (Runnable) tasks.removeFirst();
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        public void run() {
+            Runnable task;
+            while ((task = nextTask()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable th) {
+                    log.warn("Exception thrown in "
+                            + Thread.currentThread().getName(), th);
+                }
+            }
+        }
+    }
+
+    private static final class Dispatcher implements Runnable {
+
+        private final Handler handler;
+
+        private final NioConnection conn;
+
+        Dispatcher(Handler handler, NioConnection conn) {
+            this.handler = handler;
+            this.conn = conn;
+        }
+
+        public void run() {
+            try {
+                handler.handle(conn);
+            } catch (Throwable th) {
+                log.error("Failed to handle " + conn, th);
+                conn.close();
+            }
+        }
+    }
+
+    /**
+     * Receives data from the registered connections and signals their
+     * ability to send. All operations on the selector and its keys are
+     * performed by this thread.
+     */
+    static final class SelectorThread implements Runnable {
+
+        private final Selector selector;
+
+        private byte[] readBuf =
+                BufferPool.getInstance().allocate(RECEIVE_BUFFER_SIZE);
+
+        private ByteBuffer readBuffer = ByteBuffer.wrap(readBuf);
+
+        private final LinkedList pending = new LinkedList();
+
+        private volatile boolean closed = false;
+
+        SelectorThread(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(final NioConnection conn) {
+            invokeLater(new Runnable() {
+                public void run() {
+                    try {
+                        conn.setSelectionKey(conn.channel().register(
+                                selector, SelectionKey.OP_READ, conn));
+                    } catch (IOException e) {
+                        log.warn("Failed to register " + conn, e);
+                        conn.close();
+                    }
+                }
+            });
+        }
+
+        void updateInterestOps(final NioConnection conn) {
+            invokeLater(new Runnable() {
+                public void run() {
+                    conn.updateInterestOps();
+                }
+            });
+        }
+
+        void close() {
+            closed = true;
+            selector.wakeup();
+        }
+
+        ByteBuffer readBuffer() {
+            return readBuffer;
+        }
+
+        /**
+         * Hands over the filled receive buffer to the caller, and continues
+         * with a new buffer from the {@link BufferPool}.
+         */
+        byte[] takeReadBuffer() {
+            byte[] b = readBuf;
+            readBuf = BufferPool.getInstance().allocate(RECEIVE_BUFFER_SIZE);
+            readBuffer = ByteBuffer.wrap(readBuf);
+            return b;
+        }
+
+        private void invokeLater(Runnable r) {
+            synchronized (pending) {
+                pending.addLast(r);
+            }
+            selector.wakeup();
+        }
+
+        private void runPending() {
+            for (;;) {
+                Runnable r;
+                synchronized (pending) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    r = (Runnable) pending.removeFirst();
+                }
+                r.run();
+            }
+        }
+
+        public void run() {
+            long nextTimeoutCheck = 0L;
+            try {
+                while (!closed) {
+                    selector.select(CHECK_TIMEOUT_INTERVAL);
+                    runPending();
+                    for (Iterator it = selector.selectedKeys().iterator();
+                            it.hasNext();) {
+                        SelectionKey key = (SelectionKey) it.next();
+                        it.remove();
+                        NioConnection conn = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                conn.readable(this);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.writable();
+                            }
+                        } catch (CancelledKeyException e) {
+                            // connection closed by worker thread
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now >= nextTimeoutCheck) {
+                        for (Iterator it = selector.keys().iterator();
+                                it.hasNext();) {
+                            ((NioConnection) ((SelectionKey) it.next())
+                                    .attachment()).checkTimeout(now);
+                        }
+                        nextTimeoutCheck = now + CHECK_TIMEOUT_INTERVAL;
+                    }
+                }
+            } catch (Throwable th) {
+                log.error("Exception thrown in "
+                        + Thread.currentThread().getName(), th);
+            } finally {
+                for (Iterator it = selector.keys().iterator(); it.hasNext();) {
+                    ((NioConnection) ((SelectionKey) it.next()).attachment())
+                            .close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignore) {}
+                BufferPool.getInstance().release(readBuf);
+            }
+        }
+    }
+}
@@ -41,9 +41,14 @@ package org.dcm4cheri.net;
 import org.dcm4che.net.*;
 
 import java.io.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
+ * P-DATA-TF PDU, which PDVs are accessed in place in the PDU buffer. On
+ * read, {@link #readPDV} returns the same PDV object, positioned to the next
+ * PDV, and {@link PDVImpl#getInputStream} the same stream, so a PDV and its
+ * stream are only valid until the next invocation of {@link #readPDV}.
  *
  * @author  gunter.zeilinger@tiani.com
  * @version 1.0.0
@@ -55,9 +60,16 @@ final class PDataTFImpl implements PDataTF {
    private final byte[] buf;
    private int pdulen;
    private int wpos;
-   private final LinkedList pdvs = new LinkedList();
-   private final Iterator it;
-   private PDVImpl curPDV = null;
+   private int numPDVs = 0;
+   private final boolean readOnly;
+   private int rpos;
+   private final PDVImpl pdv = new PDVImpl();
+   private PDVInputStream pdvIn = null;
+   private boolean openPDV = false;
+   private FileChannel tailSrc = null;
+   private long tailPos;
+   private int tailLen = 0;
+   private TransferTarget tailTarget = null;
    
    static PDataTFImpl parse(UnparsedPDUImpl raw) throws PDUException {
       if (raw.buffer() == null) {
@@ -73,21 +85,39 @@ final class PDataTFImpl implements PDataTF {
       this.pdulen = pdulen;
       this.wpos = pdulen + 12;
       this.buf = buf;
+      this.readOnly = true;
       int off = 6;
       while (off <= pdulen) {
-         PDVImpl pdv = new PDVImpl(off);
-         pdvs.add(pdv);
-         off += 4 + pdv.length();
+         buf[off+5] &= 3;
+         off += 4 + pdvLength(off);
+         ++numPDVs;
       }
       if (off != pdulen + 6) {
          throw new PDUException("Illegal " + toString(),
          new AAbortImpl(AAbort.SERVICE_PROVIDER,
          AAbort.INVALID_PDU_PARAMETER_VALUE));
       }
-      this.it = pdvs.iterator();
+      this.rpos = 6;
    }
    
    PDataTFImpl(int maxLength) {
+      this(new byte[6 + checkMaxLength(maxLength)]);
+   }
+   
+   /**
+    * Creates a P-DATA-TF for write, using the specified buffer - e.g.
+    * allocated from the {@link BufferPool} - which length determines the
+    * maximal length of the PDU.
+    */
+   PDataTFImpl(byte[] buf) {
+      checkMaxLength(buf.length - 6);
+      this.pdulen = 0;
+      this.wpos = 12;
+      this.buf = buf;
+      this.readOnly = false;
+   }
+   
+   private static int checkMaxLength(int maxLength) {
       if (maxLength == 0) {
          maxLength = DEF_MAX_LENGTH;
       }
@@ -95,26 +125,39 @@ final class PDataTFImpl implements PDataTF {
       || maxLength > UnparsedPDUImpl.MAX_LENGTH) {
          throw new IllegalArgumentException("maxLength:" + maxLength);
       }
-      this.pdulen = 0;
-      this.wpos = 12;
-      this.buf = new byte[6 + maxLength];
-      this.it = null;
+      return maxLength;
+   }
+   
+   final byte[] buffer() {
+      return buf;
    }
    
    public void clear() {
-      if (it != null) {
+      if (readOnly) {
          throw new IllegalStateException("P-DATA-TF read only");
       }
       pdulen = 0;
       wpos = 12;
-      pdvs.clear();
+      numPDVs = 0;
+      tailSrc = null;
+      tailLen = 0;
+      tailTarget = null;
    }
    
    public PDV readPDV() {
-      if (it == null) {
+      if (!readOnly) {
          throw new IllegalStateException("P-DATA-TF write only");
       }
-      return it.hasNext() ? (PDV)it.next() : null;
+      if (rpos > pdulen) {
+         return null;
+      }
+      pdv.off = rpos;
+      rpos += 4 + pdvLength(rpos);
+      return pdv;
+   }
+   
+   final boolean hasNextPDV() {
+      return readOnly && rpos <= pdulen;
    }
    
    public String toString(boolean verbose) {
@@ -127,76 +170,122 @@ final class PDataTFImpl implements PDataTF {
    
    StringBuffer toStringBuffer(StringBuffer sb) {
       sb.append("P-DATA-TF[pdulen=").append(pdulen).append("]");
-      Iterator it = pdvs.iterator();
-      while (it.hasNext()) {
-         sb.append("\n\t").append(it.next());
+      PDVImpl tmp = new PDVImpl();
+      for (int i = 0, off = 6; i < numPDVs; ++i, off += 4 + pdvLength(off)) {
+         tmp.off = off;
+         tmp.toStringBuffer(sb.append("\n\t"));
       }
       return sb;
    }
    
    public final int free() {
-      return buf.length - wpos;
+      return tailLen > 0 ? 0 : buf.length - wpos;
    }
    
    public void openPDV(int pcid, boolean cmd) {
-      if (it != null) {
+      if (readOnly) {
          throw new IllegalStateException("P-DATA-TF read only");
       }
-      if (curPDV != null) {
-         throw new IllegalStateException("Open PDV " + curPDV);
+      if (openPDV) {
+         throw new IllegalStateException("Open PDV " + pdv);
+      }
+      if (tailLen > 0) {
+         throw new IllegalStateException("P-DATA-TF with file region");
       }
       if (free() < 0) {
          throw new IllegalStateException("Maximal length of PDU reached");
       }
-      curPDV = new PDVImpl(6 + pdulen);
-      curPDV.pcid(pcid);
-      curPDV.cmd(cmd);
+      pdv.off = 6 + pdulen;
+      buf[pdv.off+5] &= 3;
+      pdv.pcid(pcid);
+      pdv.cmd(cmd);
       pdulen += 6;
+      openPDV = true;
    }
    
    boolean isOpenPDV() {
-      return curPDV != null;
+      return openPDV;
    }
    
    boolean isEmpty() {
-      return pdvs.isEmpty();
+      return numPDVs == 0;
    }
    
    public void closePDV(boolean last) {
-      if (curPDV == null) {
+      if (!openPDV) {
          throw new IllegalStateException("No open PDV");
       }
-      curPDV.last(last);
-      curPDV.close();
-      pdvs.add(curPDV);
-      curPDV = null;
+      pdv.last(last);
+      pdv.close();
+      ++numPDVs;
+      openPDV = false;
       wpos += 6;
    }
    
    public final boolean write(int b) {
-      if (curPDV == null) {
+      if (!openPDV) {
          throw new IllegalStateException("No open PDV");
       }
-      if (wpos >= buf.length) return false;
+      if (free() <= 0) return false;
       buf[wpos++] = (byte)b;
       ++pdulen;
       return true;
    }
    
    public final int write(byte[] b, int off, int len) {
-      if (curPDV == null) {
+      if (!openPDV) {
          throw new IllegalStateException("No open PDV");
       }
-      int wlen = Math.min(len, buf.length - wpos);
+      int wlen = Math.min(len, free());
       System.arraycopy(b, off, buf, wpos, wlen);
       wpos += wlen;
       pdulen += wlen;
       return wlen;
    }
    
+   final void write(FileChannel src, long position, int len)
+         throws IOException {
+      if (!openPDV) {
+         throw new IllegalStateException("No open PDV");
+      }
+      if (len < 0 || len > free()) {
+         throw new IllegalArgumentException("len:" + len);
+      }
+      ByteBuffer bb = ByteBuffer.wrap(buf, wpos, len);
+      while (bb.hasRemaining()) {
+         if (src.read(bb, position + bb.position() - wpos) < 0) {
+            throw new EOFException();
+         }
+      }
+      wpos += len;
+      pdulen += len;
+   }
+   
+   /**
+    * Appends <code>len</code> bytes of the file channel, starting at
+    * <code>position</code>, to the open PDV, which are transferred by
+    * <code>target</code> after the preceding part of the PDU was written by
+    * {@link #writeTo}. No further data can be written to the PDU.
+    */
+   final void writeFileRegion(FileChannel src, long position, int len,
+         TransferTarget target) {
+      if (!openPDV) {
+         throw new IllegalStateException("No open PDV");
+      }
+      if (len <= 0 || len > free()) {
+         throw new IllegalArgumentException("len:" + len);
+      }
+      tailSrc = src;
+      tailPos = position;
+      tailLen = len;
+      tailTarget = target;
+      wpos += len;
+      pdulen += len;
+   }
+   
    public void writeTo(OutputStream out) throws IOException {
-      if (curPDV != null) {
-         throw new IllegalStateException("Open PDV " + curPDV);
+      if (openPDV) {
+         throw new IllegalStateException("Open PDV " + pdv);
       }
       buf[0] = (byte)4;
       buf[1] = (byte)0;
@@ -204,15 +293,22 @@ final class PDataTFImpl implements PDataTF {
       buf[3] = (byte)(pdulen >> 16);
       buf[4] = (byte)(pdulen >> 8);
       buf[5] = (byte)(pdulen >> 0);
-      out.write(buf, 0, pdulen + 6);
+      out.write(buf, 0, pdulen + 6 - tailLen);
+      if (tailLen > 0) {
+         out.flush();
+         tailTarget.transferFrom(tailSrc, tailPos, tailLen);
+      }
+   }
+   
+   private int pdvLength(int off) {
+      return ((buf[off] & 0xff) << 24)
+      | ((buf[off+1] & 0xff) << 16)
+      | ((buf[off+2] & 0xff) << 8)
+      | ((buf[off+3] & 0xff) << 0);
    }
    
    final class PDVImpl implements PDataTF.PDV {
-      final int off;
-      PDVImpl(int off) {
-         this.off = off;
-         buf[off+5] &= 3;
-      }
+      int off;
       
       final void pcid(int pcid) {
          buf[off+4] = (byte)pcid;
@@ -246,10 +342,7 @@ final class PDataTFImpl implements PDataTF {
       }
       
       public final int length() {
-         return ((buf[off] & 0xff) << 24)
-         | ((buf[off+1] & 0xff) << 16)
-         | ((buf[off+2] & 0xff) << 8)
-         | ((buf[off+3] & 0xff) << 0);
+         return pdvLength(off);
       }
       
       public final int pcid() {
@@ -265,7 +358,11 @@ final class PDataTFImpl implements PDataTF {
       }
       
       public final InputStream getInputStream() {
-         return new ByteArrayInputStream(buf, off + 6, length() - 2);
+         if (pdvIn == null) {
+            pdvIn = new PDVInputStream(buf);
+         }
+         pdvIn.reset(off + 6, length() - 2);
+         return pdvIn;
       }
            
       public String toString() {
@@ -280,4 +377,16 @@ final class PDataTFImpl implements PDataTF {
          .append("]");
       }
    }
+   
+   private static final class PDVInputStream extends ByteArrayInputStream {
+      PDVInputStream(byte[] buf) {
+         super(buf);
+      }
+      
+      void reset(int offset, int length) {
+         this.pos = offset;
+         this.count = Math.min(offset + length, buf.length);
+         this.mark = offset;
+      }
+   }
 }
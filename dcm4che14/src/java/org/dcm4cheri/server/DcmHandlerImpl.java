@@ -45,6 +45,8 @@ import org.dcm4che.net.AssociationListener;
 import org.dcm4che.net.AcceptorPolicy;
 import org.dcm4che.net.DcmServiceRegistry;
 import org.dcm4che.net.AssociationFactory;
+import org.dcm4cheri.net.NioConnection;
+import org.dcm4cheri.net.NioTransport;
 
 import java.io.IOException;
 import java.net.Socket;
@@ -56,7 +58,7 @@ import java.util.LinkedList;
  *@created    June, 2002
  *@version    $Revision: 7898 $ $Date: 2008-11-03 11:15:52 +0000 (Mon, 03 Nov 2008) $
  */
-class DcmHandlerImpl implements DcmHandler
+class DcmHandlerImpl implements DcmHandler, NioTransport.Handler
 {
 
     // Constants -----------------------------------------------------
@@ -238,19 +240,32 @@ class DcmHandlerImpl implements DcmHandler
         throws IOException
     {
         Association assoc = fact.newAcceptor(s);
-        assoc.setRqTimeout(rqTimeout);
-        assoc.setDimseTimeout(dimseTimeout);
-        assoc.setSoCloseDelay(soCloseDelay);
-        assoc.setPackPDVs(packPDVs);
-        for (Iterator it = listeners.iterator(); it.hasNext(); ) {
-            assoc.addAssociationListener((AssociationListener) it.next());
-        }
+        init(assoc);
         if (assoc.accept(policy) instanceof AAssociateAC) {
             fact.newActiveAssociation(assoc, services).run();
         }
     }
 
 
+    // NioTransport.Handler implementation ---------------------------
+    /**
+     *  Handles a connection of a {@link NioTransport}. Returns already, when
+     *  the accepted association becomes idle.
+     *
+     *@param  conn             connection with a received PDU
+     *@exception  IOException  Description of the Exception
+     */
+    public void handle(NioConnection conn)
+        throws IOException
+    {
+        Association assoc = conn.newAcceptor();
+        init(assoc);
+        if (assoc.accept(policy) instanceof AAssociateAC) {
+            conn.newActiveAssociation(assoc, services).run();
+        }
+    }
+
+
     /**
      *  Adds a feature to the AssociationListener attribute of the
      *  DcmHandlerImpl object
@@ -296,6 +311,16 @@ class DcmHandlerImpl implements DcmHandler
     // Protected -----------------------------------------------------
 
     // Private -------------------------------------------------------
+    private void init(Association assoc)
+    {
+        assoc.setRqTimeout(rqTimeout);
+        assoc.setDimseTimeout(dimseTimeout);
+        assoc.setSoCloseDelay(soCloseDelay);
+        assoc.setPackPDVs(packPDVs);
+        for (Iterator it = listeners.iterator(); it.hasNext(); ) {
+            assoc.addAssociationListener((AssociationListener) it.next());
+        }
+    }
 
     // Inner classes -------------------------------------------------
 }
@@ -40,10 +40,13 @@ package org.dcm4cheri.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -52,6 +55,7 @@ import java.util.List;
 import javax.net.ServerSocketFactory;
 import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
@@ -59,6 +63,8 @@ import org.apache.log4j.Logger;
 import org.dcm4che.server.Server;
 import org.dcm4che.util.HandshakeFailedEvent;
 import org.dcm4che.util.HandshakeFailedListener;
+import org.dcm4che.util.ThreadExecutor;
+import org.dcm4cheri.net.NioTransport;
 import org.dcm4cheri.util.LF_ThreadPool;
 
 /**
@@ -85,6 +91,11 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     private int soRcvBuf;
     private int soSndBuf;
     private boolean tcpNoDelay = true;
+    private int selectorThreads = 0;
+    private int maxWorkerThreads = 0;
+    private ThreadExecutor executor;
+    private ServerSocketChannel ssc;
+    private NioTransport transport;
     
     private InetAddress laddr;
     
@@ -140,6 +151,37 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
         this.tcpNoDelay = on;
     }
 
+    public final int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public final void setSelectorThreads(int selectorThreads) {
+        if (selectorThreads < 0) {
+            throw new IllegalArgumentException("selectorThreads: "
+                    + selectorThreads);
+        }
+        this.selectorThreads = selectorThreads;
+    }
+
+    public final int getMaxWorkerThreads() {
+        return maxWorkerThreads;
+    }
+
+    public final void setMaxWorkerThreads(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max: " + max);
+        }
+        this.maxWorkerThreads = max;
+    }
+
+    public final ThreadExecutor getExecutor() {
+        return executor;
+    }
+
+    public final void setExecutor(ThreadExecutor executor) {
+        this.executor = executor;
+    }
+
     // Server implementation -----------------------------------------
     public void addHandshakeCompletedListener(
             HandshakeCompletedListener listener) {
@@ -208,6 +250,10 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     }
     
     public int getNumClients() {
+        NioTransport tmp = transport;
+        if (tmp != null) {
+            return tmp.getNumConnections();
+        }
         return threadPool.running()-1;
     }
     
@@ -220,6 +266,10 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     }
 
     public int getNumIdleThreads() {
+        NioTransport tmp = transport;
+        if (tmp != null) {
+            return tmp.getNumIdleWorkers();
+        }
         return threadPool.waiting();
     }
     
@@ -235,15 +285,36 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     
     public void start() throws IOException {
         checkNotRunning();
+        if (selectorThreads > 0) {
+            if (!(handler instanceof NioTransport.Handler)) {
+                log.warn(handler.getClass().getName()
+                        + " does not support non-blocking I/O - use blocking I/O");
+            } else if (ssf instanceof SSLServerSocketFactory) {
+                log.info("Non-blocking I/O not supported for TLS - use blocking I/O");
+            } else {
+                startNio();
+                return;
+            }
+        }
         if (log.isInfoEnabled())
             log.info("Start Server listening on " + getLocalAddress() + ":" + port);
         ss = ssf.createServerSocket(port,0,laddr);
-        new Thread(new Runnable() {
+        threadPool.setExecutor(executor);
+        Runnable r = new Runnable() {
             public void run() { threadPool.join(); }
-        }, name).start();
+        };
+        if (executor != null) {
+            executor.execute(r);
+        } else {
+            new Thread(r, name).start();
+        }
     }
     
     public void stop() {
+        if (ssc != null) {
+            stopNio();
+            return;
+        }
         if (ss == null)
             return;
         
@@ -311,6 +382,69 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     // Protected -----------------------------------------------------
     
     // Private -------------------------------------------------------
+    private void startNio() throws IOException {
+        if (log.isInfoEnabled())
+            log.info("Start Server listening on " + getLocalAddress() + ":"
+                    + port + " with " + selectorThreads + " selector threads");
+        final ServerSocketChannel ssc = ServerSocketChannel.open();
+        final NioTransport transport;
+        try {
+            ssc.socket().bind(new InetSocketAddress(laddr, port));
+            transport = new NioTransport(name, selectorThreads,
+                    maxWorkerThreads);
+        } catch (IOException e) {
+            try { ssc.close(); } catch (IOException ignore) {}
+            throw e;
+        }
+        this.ssc = ssc;
+        this.transport = transport;
+        new Thread(new Runnable() {
+            public void run() { accept(ssc, transport); }
+        }, name).start();
+    }
+
+    private void stopNio() {
+        if (log.isInfoEnabled()) {
+            log.info("Stop Server listening at port " + port);
+        }
+        try {
+            ssc.close();
+        } catch (IOException ignore) {}
+        transport.shutdown();
+        ssc = null;
+        transport = null;
+    }
+
+    private void accept(ServerSocketChannel ssc, NioTransport transport) {
+        NioTransport.Handler nioHandler = (NioTransport.Handler) handler;
+        while (ssc.isOpen()) {
+            SocketChannel ch = null;
+            try {
+                transport.awaitFreeConnection(getMaxClients());
+                ch = ssc.accept();
+                Socket s = ch.socket();
+                if (log.isInfoEnabled()) {
+                    log.info("handle - " + s);
+                }
+                initSendBufferSize(s);
+                initReceiveBufferSize(s);
+                if (s.getTcpNoDelay() != tcpNoDelay) {
+                    s.setTcpNoDelay(tcpNoDelay );
+                }
+                transport.register(ch, nioHandler);
+            } catch (Exception e) {
+                if (ch == null && !ssc.isOpen()) {
+                    log.info("Blocking ServerSocketChannel.accept method canceled");
+                } else {
+                    log.error(e, e);
+                }
+                if (ch != null) {
+                    try { ch.close(); } catch (IOException ignore) {};
+                }
+            }
+        }
+    }
+
     private void initSendBufferSize(Socket s) throws SocketException {
         int tmp = s.getSendBufferSize();
         if (soSndBuf == 0) {
@@ -334,7 +468,7 @@ class ServerImpl implements LF_ThreadPool.Handler, Server {
     }
 
     private void checkNotRunning() {
-        if (ss != null) {
+        if (ss != null || ssc != null) {
             throw new IllegalStateException("Already Running - " + threadPool);
         }
     }
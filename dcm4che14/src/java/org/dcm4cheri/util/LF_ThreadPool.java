@@ -38,7 +38,11 @@
 
 package org.dcm4cheri.util;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.log4j.Logger;
+import org.dcm4che.util.ThreadExecutor;
 
 /**
  * Leader/Follower Thread Pool 
@@ -62,15 +66,19 @@ public class LF_ThreadPool
    
    // Attributes ----------------------------------------------------
    private final Handler handler;
-   private boolean shutdown = false;
-   private Thread leader = null;
+   private volatile boolean shutdown = false;
+   private volatile Thread leader = null;
+   // followers wait() on mutex - pins virtual threads before Java 24
    private Object mutex = new Object();
+   // guarded by mutex
    private int waiting = 0;
    private int running = 0;
-   private int maxRunning = 0;
-   private int maxWaiting = -1;
+   private volatile int maxRunning = 0;
+   private volatile int maxWaiting = -1;
+   private volatile ThreadExecutor executor = null;
    private final int instNo = ++instCount;
    private int threadNo = 0;
+   private final Set left = new HashSet();
    private final String name;
    
    // Static --------------------------------------------------------
@@ -88,12 +96,18 @@ public class LF_ThreadPool
    // Public --------------------------------------------------------
    public int waiting()
    {
-      return waiting;
+      synchronized (mutex)
+      {
+         return waiting;
+      }
    }
    
    public int running()
    {
-      return running;
+      synchronized (mutex)
+      {
+         return running;
+      }
    }
    
    public boolean isShutdown()
@@ -127,6 +141,20 @@ public class LF_ThreadPool
       this.maxWaiting = maxWaiting;
    }
    
+   public ThreadExecutor getExecutor()
+   {
+      return executor;
+   }
+   
+   /**
+    * Sets the executor, by which new threads are added to the pool.
+    * <code>null</code> = start a new thread for each.
+    */
+   public void setExecutor(ThreadExecutor executor)
+   {
+      this.executor = executor;
+   }
+   
    public String toString()
    {
       return "LF_ThreadPool-" + instNo + "[leader:"
@@ -140,49 +168,62 @@ public class LF_ThreadPool
    {
       log.debug("Thread: " + Thread.currentThread().getName() + " JOIN ThreadPool " + name);
       try {
-	      while (!shutdown && (running == 0 || maxWaiting == -1 || waiting < maxWaiting)
-	              && (maxRunning == 0 || (waiting + running) < maxRunning))
-	      {
-	         synchronized (mutex)
-	         {
-	            while (leader != null)
-	            {
-	               if (log.isDebugEnabled())
-	                  log.debug("" + this + " - "
-	                     + Thread.currentThread().getName() + " enter wait()");
-	               ++waiting;
-	               try { mutex.wait(); }
-	               catch (InterruptedException ie)
-	               {
-	                  log.error(ie);
-	               }
-	               finally { --waiting; }
-	               if (log.isDebugEnabled())
-	                  log.debug("" + this + " - "
-	                     + Thread.currentThread().getName() + " awaked");
-	            }
-	            if (shutdown)
-	               return;
-	
-	            leader = Thread.currentThread();
-	            if (log.isDebugEnabled())
-	               log.debug("" + this + " - New Leader"); 
-	            ++running;
-	         }
-	         try {  
-	            do {
-	               handler.run(this);
-	            } while (!shutdown && leader == Thread.currentThread());
-	         } catch (Throwable th) {
-	            log.warn("Exception thrown in " + Thread.currentThread().getName(), th);
-	            shutdown();
-	         } finally { synchronized (mutex) { --running; } }
-	      }
+         for (;;)
+         {
+            synchronized (mutex)
+            {
+               if (!mayJoin() || !becomeLeader())
+                  return;
+            }
+            if (lead())
+               return;
+         }
       } finally {
           log.debug("Thread: " + Thread.currentThread().getName() + " LEFT ThreadPool " + name);
       }
    }
    
+   /**
+    * Resumes a pool, which last leader left it by {@link #leave}, with the
+    * current thread as new leader - regardless of the limits for running
+    * and waiting threads, which would prevent a {@link #join} - and
+    * continues as {@link #join}.
+    */
+   public void resume()
+   {
+      synchronized (mutex)
+      {
+         if (!becomeLeader())
+            return;
+      }
+      if (!lead())
+         join();
+   }
+   
+   /**
+    * Lets the current leader leave the pool without promoting a new leader,
+    * so {@link #join} returns to the caller after the handler returned.
+    * The pool does not read any further, until it is resumed by
+    * {@link #resume}.
+    */
+   public void leave()
+   {
+      Thread current = Thread.currentThread();
+      if (leader != current)
+         throw new IllegalStateException();
+      
+      synchronized (mutex)
+      {
+         leader = null;
+         --running;
+         left.add(current);
+         if (waiting > 0)
+            mutex.notify();
+      }
+      if (log.isDebugEnabled())
+         log.debug("" + this + " - leader left"); 
+   }
+   
    public boolean promoteNewLeader()
    {
       if (shutdown)
@@ -194,8 +235,8 @@ public class LF_ThreadPool
       
       leader = null;
       
-      // notify (one) waiting thread in join()
       synchronized (mutex) {
+         // notify (one) waiting thread in join()
          if (waiting > 0)
          {
             if (log.isDebugEnabled())
@@ -203,14 +244,14 @@ public class LF_ThreadPool
             mutex.notify();
             return true;
          }
-      }
             
-      // if there is no waiting thread,
-      // and the maximum number of running threads is not yet reached,
-      if (maxRunning != 0 && running >= maxRunning) {
-         if (log.isDebugEnabled())
-            log.debug("" + this + " - Max number of threads reached"); 
-         return false;
+         // if there is no waiting thread,
+         // and the maximum number of running threads is not yet reached,
+         if (maxRunning != 0 && running >= maxRunning) {
+            if (log.isDebugEnabled())
+               log.debug("" + this + " - Max number of threads reached"); 
+            return false;
+         }
       }
       
       // start a new one
@@ -241,10 +282,72 @@ public class LF_ThreadPool
    // Protected -----------------------------------------------------
    // may be overloaded to take new thread from convential thread pool
    protected void addThread(Runnable r) {
-       new Thread(r, name + "-" + (++threadNo)).start();
+       ThreadExecutor tmp = executor;
+       if (tmp != null)
+          tmp.execute(r);
+       else
+          new Thread(r, name + "-" + (++threadNo)).start();
    }
    
    // Private -------------------------------------------------------
+   // called with lock on mutex
+   private boolean mayJoin()
+   {
+      return !shutdown
+            && (running == 0 || maxWaiting == -1 || waiting < maxWaiting)
+            && (maxRunning == 0 || (waiting + running) < maxRunning);
+   }
+   
+   // called with lock on mutex
+   private boolean becomeLeader()
+   {
+      while (leader != null)
+      {
+         if (log.isDebugEnabled())
+            log.debug("" + this + " - "
+               + Thread.currentThread().getName() + " enter wait()");
+         ++waiting;
+         try { mutex.wait(); }
+         catch (InterruptedException ie)
+         {
+            log.error(ie);
+         }
+         finally { --waiting; }
+         if (log.isDebugEnabled())
+            log.debug("" + this + " - "
+               + Thread.currentThread().getName() + " awaked");
+      }
+      if (shutdown)
+         return false;
+
+      leader = Thread.currentThread();
+      if (log.isDebugEnabled())
+         log.debug("" + this + " - New Leader"); 
+      ++running;
+      return true;
+   }
+   
+   // returns true, if the current thread left the pool by leave() 
+   private boolean lead()
+   {
+      Thread current = Thread.currentThread();
+      boolean hasLeft = false;
+      try {  
+         do {
+            handler.run(this);
+         } while (!shutdown && leader == current);
+      } catch (Throwable th) {
+         log.warn("Exception thrown in " + current.getName(), th);
+         shutdown();
+      } finally {
+         synchronized (mutex) {
+            hasLeft = left.remove(current);
+            if (!hasLeft)
+               --running;
+         }
+      }
+      return hasLeft;
+   }
    
    // Inner classes -------------------------------------------------
    public interface Handler {
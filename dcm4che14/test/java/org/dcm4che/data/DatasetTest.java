@@ -39,10 +39,12 @@
 package org.dcm4che.data;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.util.Arrays;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -511,6 +513,37 @@ public class DatasetTest extends TestCase {
         assertEquals(0, sub12.size());
         assertEquals(9, ds.size());
     }
+
+    public void testCompact() throws Exception {
+        putStrings();
+        byte[] expected = toByteArray(ds);
+        ds.compact();
+        assertEquals(21, ds.size());
+        assertEquals(SCHEDULED_STATION_AET, ds, Tags.ScheduledStationAET);
+        assertEquals(IMAGE_POSITION, ds, Tags.ImagePosition);
+        assertEquals(OTHER_PATIENT_NAMES, ds, Tags.OtherPatientNames);
+        assertEquals(DISPLAYED_AREA_BRHC,
+                ds, Tags.DisplayedAreaBottomRightHandCorner);
+        assertEquals(REF_FRAME_NUMBER, ds, Tags.RefFrameNumbers);
+        assertTrue(Arrays.equals(expected, toByteArray(ds)));
+        ds.putSH(Tags.AccessionNumber, "A-65432");
+        assertEquals(21, ds.size());
+        assertEquals("A-65432", ds.getString(Tags.AccessionNumber));
+        assertEquals(TEXT_VALUE, ds, Tags.TextValue);
+    }
+
+    public void testCompactDICOMDIR() throws Exception {
+        testReadDICOMDIR();
+        byte[] expected = toByteArray(ds);
+        ds.compact();
+        assertTrue(Arrays.equals(expected, toByteArray(ds)));
+    }
+
+    private static byte[] toByteArray(Dataset ds) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ds.writeDataset(out, DcmEncodeParam.EVR_LE);
+        return out.toByteArray();
+    }
  
     
     /**
@@ -0,0 +1,260 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2002-2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.dcm4che.net;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+import junit.framework.*;
+
+import org.dcm4che.data.Command;
+import org.dcm4che.data.Dataset;
+import org.dcm4che.data.DcmDecodeParam;
+import org.dcm4che.data.DcmEncodeParam;
+import org.dcm4che.data.DcmObjectFactory;
+import org.dcm4che.dict.Tags;
+import org.dcm4che.dict.UIDs;
+import org.dcm4che.dict.VRs;
+import org.dcm4che.server.DcmHandler;
+import org.dcm4che.server.Server;
+import org.dcm4che.server.ServerFactory;
+
+/**
+ * Sends native Pixel Data by {@link DirectTransfer} from a file channel to
+ * the socket - over a connection served by non-blocking I/O, and over a
+ * blocking socket channel - and compares the received bytes.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class DirectTransferTest extends ExtTestCase {
+
+    public DirectTransferTest(java.lang.String testName) {
+        super(testName);
+    }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite(DirectTransferTest.class);
+        return suite;
+    }
+
+    private static final int MAX_PDU_LENGTH = 16384;
+    private static final int PCID_ECHO = 1;
+    private static final int PCID_STORE = 3;
+    private static final String SOP_IUID = "1.2.40.0.13.1.1.9999.2";
+    private static final int TIMEOUT = 10000;
+    /** Offset of the Pixel Data value in the file */
+    private static final int OFFSET = 1000;
+    /** Not a multiple of the PDV payload of a PDU */
+    private static final int PIXEL_DATA_LENGTH = 5 * MAX_PDU_LENGTH + 1234;
+
+    private final AssociationFactory af = AssociationFactory.getInstance();
+    private final DcmObjectFactory of = DcmObjectFactory.getInstance();
+
+    private Server server;
+    private int port;
+    private File file;
+    private byte[] pixelData;
+    private byte[] received;
+    private volatile boolean transferred;
+
+    protected void setUp() throws Exception {
+        pixelData = new byte[PIXEL_DATA_LENGTH];
+        for (int i = 0; i < pixelData.length; i++) {
+            pixelData[i] = (byte) (i * 7);
+        }
+        file = File.createTempFile("DirectTransferTest", ".dat");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[OFFSET]);
+            out.write(pixelData);
+            out.write(new byte[OFFSET]);
+        } finally {
+            out.close();
+        }
+        AcceptorPolicy policy = af.newAcceptorPolicy();
+        policy.setMaxPDULength(MAX_PDU_LENGTH);
+        String[] ts = { UIDs.ImplicitVRLittleEndian };
+        policy.putPresContext(UIDs.Verification, ts);
+        policy.putPresContext(UIDs.SecondaryCaptureImageStorage, ts);
+        DcmServiceRegistry services = af.newDcmServiceRegistry();
+        services.bind(UIDs.SecondaryCaptureImageStorage, newStorageService());
+        // sends a C-STORE-RQ back to the requestor, before responding
+        services.unbind(UIDs.Verification);
+        services.bind(UIDs.Verification, new DcmServiceBase() {
+            protected void doCEcho(ActiveAssociation assoc, Dimse rq,
+                    Command rspCmd) throws IOException {
+                try {
+                    assoc.invoke(newCStoreRQ(2));
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+                rspCmd.putUS(Tags.Status, SUCCESS);
+            }
+        });
+        DcmHandler handler = ServerFactory.getInstance().newDcmHandler(
+                policy, services);
+        server = ServerFactory.getInstance().newServer(handler);
+        server.setSelectorThreads(1);
+        ServerSocket ss = new ServerSocket(0);
+        port = ss.getLocalPort();
+        ss.close();
+        server.setPort(port);
+        server.start();
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop();
+        file.delete();
+    }
+
+    /**
+     * The server sends the Pixel Data over its connection served by
+     * non-blocking I/O.
+     */
+    public void testNioConnection() throws Exception {
+        DcmServiceRegistry services = af.newDcmServiceRegistry();
+        services.bind(UIDs.SecondaryCaptureImageStorage, newStorageService());
+        ActiveAssociation active = openAssociation(
+                new Socket("localhost", port), services);
+        Dimse rsp = active.invoke(af.newDimse(PCID_ECHO,
+                of.newCommand().initCEchoRQ(1))).get();
+        assertEquals(0, rsp.getCommand().getStatus());
+        assertTrue(transferred);
+        assertEquals(pixelData, awaitReceived());
+        active.release(true);
+    }
+
+    /**
+     * The requestor sends the Pixel Data over a blocking socket channel.
+     */
+    public void testBlockingSocketChannel() throws Exception {
+        SocketChannel ch = SocketChannel.open(
+                new InetSocketAddress("localhost", port));
+        ActiveAssociation active = openAssociation(ch.socket(), null);
+        Dimse rsp = active.invoke(newCStoreRQ(1)).get();
+        assertEquals(0, rsp.getCommand().getStatus());
+        assertTrue(transferred);
+        assertEquals(pixelData, awaitReceived());
+        active.release(true);
+    }
+
+    private synchronized byte[] awaitReceived() throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        long remaining;
+        while (received == null
+                && (remaining = end - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+        }
+        return received;
+    }
+
+    private DcmServiceBase newStorageService() {
+        return new DcmServiceBase() {
+            protected void doCStore(ActiveAssociation assoc, Dimse rq,
+                    Command rspCmd) throws IOException {
+                Dataset ds = rq.getDataset();
+                synchronized (DirectTransferTest.this) {
+                    received = ds.getByteBuffer(Tags.PixelData).array();
+                    DirectTransferTest.this.notifyAll();
+                }
+            }
+        };
+    }
+
+    private Dimse newCStoreRQ(int msgID) {
+        final Dataset ds = of.newDataset();
+        ds.putUI(Tags.SOPClassUID, UIDs.SecondaryCaptureImageStorage);
+        ds.putUI(Tags.SOPInstanceUID, SOP_IUID);
+        return af.newDimse(PCID_STORE, of.newCommand().initCStoreRQ(msgID,
+                UIDs.SecondaryCaptureImageStorage, SOP_IUID, Command.MEDIUM),
+                new DataSource() {
+                    public void writeTo(OutputStream out, String tsUID)
+                            throws IOException {
+                        DcmEncodeParam enc = DcmDecodeParam.IVR_LE;
+                        ds.writeDataset(out, enc);
+                        ds.writeHeader(out, enc, Tags.PixelData, VRs.OW,
+                                PIXEL_DATA_LENGTH);
+                        RandomAccessFile raf = new RandomAccessFile(file, "r");
+                        try {
+                            FileChannel fc = raf.getChannel();
+                            transferred = out instanceof DirectTransfer
+                                    && ((DirectTransfer) out).transferFrom(
+                                            fc, OFFSET, PIXEL_DATA_LENGTH);
+                            if (!transferred) {
+                                out.write(pixelData);
+                            }
+                            assertEquals(0, fc.position());
+                        } finally {
+                            raf.close();
+                        }
+                    }
+                });
+    }
+
+    private ActiveAssociation openAssociation(Socket s,
+            DcmServiceRegistry services) throws Exception {
+        Association assoc = af.newRequestor(s);
+        assoc.setAcTimeout(TIMEOUT);
+        assoc.setDimseTimeout(TIMEOUT);
+        AAssociateRQ rq = af.newAAssociateRQ();
+        rq.setCalledAET("NIO_SCP");
+        rq.setCallingAET("NIO_SCU");
+        rq.setMaxPDULength(MAX_PDU_LENGTH);
+        String[] ts = { UIDs.ImplicitVRLittleEndian };
+        rq.addPresContext(af.newPresContext(PCID_ECHO, UIDs.Verification, ts));
+        rq.addPresContext(af.newPresContext(PCID_STORE,
+                UIDs.SecondaryCaptureImageStorage, ts));
+        assertTrue(assoc.connect(rq) instanceof AAssociateAC);
+        ActiveAssociation active = af.newActiveAssociation(assoc, services);
+        active.start();
+        return active;
+    }
+}
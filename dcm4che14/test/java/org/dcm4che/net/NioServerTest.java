@@ -0,0 +1,245 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2002-2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4che.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.*;
+
+import org.dcm4che.data.Command;
+import org.dcm4che.data.Dataset;
+import org.dcm4che.data.DcmDecodeParam;
+import org.dcm4che.data.DcmObjectFactory;
+import org.dcm4che.dict.Tags;
+import org.dcm4che.dict.UIDs;
+import org.dcm4che.server.DcmHandler;
+import org.dcm4che.server.Server;
+import org.dcm4che.server.ServerFactory;
+
+/**
+ * Echo and store round trips through a {@link Server} receiving connections
+ * by non-blocking I/O (<i>SelectorThreads</i> &gt; 0).
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class NioServerTest extends ExtTestCase {
+
+    public NioServerTest(java.lang.String testName) {
+        super(testName);
+    }
+
+    public static void main(java.lang.String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite(NioServerTest.class);
+        return suite;
+    }
+
+    /** Maximal PDU length supported by the implementation */
+    private static final int MAX_PDU_LENGTH = 1048576;
+    private static final int PCID_ECHO = 1;
+    private static final int PCID_STORE = 3;
+    private static final String SOP_IUID = "1.2.40.0.13.1.1.9999.1";
+    private static final int TIMEOUT = 10000;
+
+    private final AssociationFactory af = AssociationFactory.getInstance();
+    private final DcmObjectFactory of = DcmObjectFactory.getInstance();
+
+    private Server server;
+    private int port;
+    private byte[] received;
+
+    protected void setUp() throws Exception {
+        AcceptorPolicy policy = af.newAcceptorPolicy();
+        policy.setMaxPDULength(MAX_PDU_LENGTH);
+        String[] ts = { UIDs.ImplicitVRLittleEndian };
+        policy.putPresContext(UIDs.Verification, ts);
+        policy.putPresContext(UIDs.SecondaryCaptureImageStorage, ts);
+        DcmServiceRegistry services = af.newDcmServiceRegistry();
+        services.bind(UIDs.SecondaryCaptureImageStorage, new DcmServiceBase() {
+            protected void doCStore(ActiveAssociation assoc, Dimse rq,
+                    Command rspCmd) throws IOException {
+                Dataset ds = rq.getDataset();
+                received = ds.getByteBuffer(Tags.PixelData).array();
+            }
+        });
+        DcmHandler handler = ServerFactory.getInstance().newDcmHandler(
+                policy, services);
+        server = ServerFactory.getInstance().newServer(handler);
+        server.setSelectorThreads(1);
+        ServerSocket ss = new ServerSocket(0);
+        port = ss.getLocalPort();
+        ss.close();
+        server.setPort(port);
+        server.start();
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop();
+    }
+
+    public void testEcho() throws Exception {
+        ActiveAssociation active = openAssociation();
+        Dimse rsp = active.invoke(af.newDimse(PCID_ECHO,
+                of.newCommand().initCEchoRQ(1))).get();
+        assertEquals(0, rsp.getCommand().getStatus());
+        active.release(true);
+    }
+
+    public void testStore() throws Exception {
+        byte[] pixelData = pixelData(3 * MAX_PDU_LENGTH);
+        ActiveAssociation active = openAssociation();
+        Dimse rsp = active.invoke(newCStoreRQ(pixelData)).get();
+        assertEquals(0, rsp.getCommand().getStatus());
+        assertEquals(pixelData, received);
+        active.release(true);
+    }
+
+    /**
+     * Sends a C-STORE-RQ, packed with the first part of the data set into a
+     * P-DATA-TF PDU of maximal length, while no worker thread is reading
+     * from the connection. The PDU does not fit into the receive queue of
+     * the connection together with its header, and its last bytes are only
+     * sent after the queue was filled.
+     */
+    public void testMaxLengthPDU() throws Exception {
+        byte[] pixelData = pixelData(MAX_PDU_LENGTH + MAX_PDU_LENGTH / 2);
+        Dimse rq = newCStoreRQ(pixelData);
+        ByteArrayOutputStream cmd = new ByteArrayOutputStream();
+        rq.getCommand().write(cmd);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        rq.getDataset().writeDataset(data, DcmDecodeParam.IVR_LE);
+        byte[] cmdBytes = cmd.toByteArray();
+        byte[] dataBytes = data.toByteArray();
+        int dataInPDU1 = MAX_PDU_LENGTH - (6 + cmdBytes.length) - 6;
+        ByteArrayOutputStream pdus = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(pdus);
+        dout.writeShort(0x0400);
+        dout.writeInt(MAX_PDU_LENGTH);
+        writePDV(dout, cmdBytes, 0, cmdBytes.length, 0x03);
+        writePDV(dout, dataBytes, 0, dataInPDU1, 0x00);
+        dout.writeShort(0x0400);
+        dout.writeInt(6 + dataBytes.length - dataInPDU1);
+        writePDV(dout, dataBytes, dataInPDU1, dataBytes.length - dataInPDU1,
+                0x02);
+        byte[] b = pdus.toByteArray();
+
+        Socket s = new Socket("localhost", port);
+        try {
+            s.setSoTimeout(TIMEOUT);
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            newAAssociateRQ().writeTo(out);
+            assertTrue(af.readFrom(in, null) instanceof AAssociateAC);
+            out.write(b, 0, MAX_PDU_LENGTH);
+            out.flush();
+            Thread.sleep(500);
+            out.write(b, MAX_PDU_LENGTH, b.length - MAX_PDU_LENGTH);
+            out.flush();
+            PDU pdu = af.readFrom(in, null);
+            assertTrue(String.valueOf(pdu), pdu instanceof PDataTF);
+            Command rsp = of.newCommand();
+            rsp.read(((PDataTF) pdu).readPDV().getInputStream());
+            assertEquals(0, rsp.getStatus());
+            assertEquals(pixelData, received);
+            af.newAReleaseRQ().writeTo(out);
+            assertTrue(af.readFrom(in, null) instanceof AReleaseRP);
+        } finally {
+            s.close();
+        }
+    }
+
+    private static void writePDV(DataOutputStream dout, byte[] b, int off,
+            int len, int msgCtrlHdr) throws IOException {
+        dout.writeInt(2 + len);
+        dout.writeByte(PCID_STORE);
+        dout.writeByte(msgCtrlHdr);
+        dout.write(b, off, len);
+    }
+
+    private static byte[] pixelData(int length) {
+        byte[] pixelData = new byte[length];
+        for (int i = 0; i < pixelData.length; i++) {
+            pixelData[i] = (byte) i;
+        }
+        return pixelData;
+    }
+
+    private Dimse newCStoreRQ(byte[] pixelData) {
+        Dataset ds = of.newDataset();
+        ds.putUI(Tags.SOPClassUID, UIDs.SecondaryCaptureImageStorage);
+        ds.putUI(Tags.SOPInstanceUID, SOP_IUID);
+        ds.putOB(Tags.PixelData, pixelData);
+        return af.newDimse(PCID_STORE, of.newCommand().initCStoreRQ(1,
+                UIDs.SecondaryCaptureImageStorage, SOP_IUID, Command.MEDIUM),
+                ds);
+    }
+
+    private AAssociateRQ newAAssociateRQ() {
+        AAssociateRQ rq = af.newAAssociateRQ();
+        rq.setCalledAET("NIO_SCP");
+        rq.setCallingAET("NIO_SCU");
+        rq.setMaxPDULength(MAX_PDU_LENGTH);
+        String[] ts = { UIDs.ImplicitVRLittleEndian };
+        rq.addPresContext(af.newPresContext(PCID_ECHO, UIDs.Verification, ts));
+        rq.addPresContext(af.newPresContext(PCID_STORE,
+                UIDs.SecondaryCaptureImageStorage, ts));
+        return rq;
+    }
+
+    private ActiveAssociation openAssociation() throws Exception {
+        Association assoc = af.newRequestor(new Socket("localhost", port));
+        assoc.setAcTimeout(TIMEOUT);
+        assoc.setDimseTimeout(TIMEOUT);
+        assoc.setPackPDVs(true);
+        assertTrue(assoc.connect(newAAssociateRQ()) instanceof AAssociateAC);
+        ActiveAssociation active = af.newActiveAssociation(assoc, null);
+        active.start();
+        return active;
+    }
+}
@@ -165,5 +165,23 @@ public class PDataTFTest extends ExtTestCase {
         assertNull(pdu2.readPDV());
         assertEquals(DATA, data);
     }    
+
+    public void testReadPDVReusesPDV() throws Exception {
+        InputStream in1 = new FileInputStream(P_DATA_TF1);
+        PDataTF pdu1 = null;
+        try {
+            pdu1 = (PDataTF)fact.readFrom(in1, null);            
+        } finally {
+            try { in1.close(); } catch (IOException ignore) {}
+        }
+        PDataTF.PDV pdv11 = pdu1.readPDV();
+        assertTrue(pdv11.cmd());
+        PDataTF.PDV pdv12 = pdu1.readPDV();
+        // PDV of previous invocation is only valid until the next
+        assertSame(pdv11, pdv12);
+        assertTrue(!pdv11.cmd());
+        assertEquals(MAX_LEN-6-CMD.length-6+2, pdv11.length());
+        assertNull(pdu1.readPDV());
+    }
 }
 
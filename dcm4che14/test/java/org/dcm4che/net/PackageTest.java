@@ -66,6 +66,8 @@ public class PackageTest extends Object {
         suite.addTest(AReleaseRQTest.suite());
         suite.addTest(AReleaseRPTest.suite());
         suite.addTest(AAbortTest.suite());
+        suite.addTest(NioServerTest.suite());
+        suite.addTest(DirectTransferTest.suite());
         return suite;
     }
 }
@@ -26,6 +26,7 @@ QuerySeriesAttrsForRetrieveCmd=SELECT patient.pat_attrs,study.study_attrs,series
 QueryOldARRCmd=SELECT TOP ? pk,xml_data FROM audit_record_old WHERE pk>? ORDER BY pk
 QueryOldARRCmdLimitPos=1
 ClaimCompressingFileCmd=UPDATE files SET file_status=3 WHERE pk=? AND file_status=0 AND file_tsuid IN ('1.2.840.10008.1.2','1.2.840.10008.1.2.1','1.2.840.10008.1.2.2')
+MoveStudyFilesToTrashCmd=INSERT INTO priv_file (filesystem_fk,filepath,file_tsuid,file_md5,file_size,file_status) SELECT files.filesystem_fk,files.filepath,files.file_tsuid,files.file_md5,files.file_size,files.file_status FROM files INNER JOIN instance ON (files.instance_fk=instance.pk) INNER JOIN series ON (instance.series_fk=series.pk) WHERE series.study_fk=? AND files.filesystem_fk=?
 </xsl:text>
 <xsl:apply-templates select="jbosscmp-jdbc/enterprise-beans/entity[ejb-name = 'Patient']" mode="fk">
 <xsl:with-param name="fk" select="'merge_fk'"/>
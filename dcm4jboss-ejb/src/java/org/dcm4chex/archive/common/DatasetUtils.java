@@ -45,12 +45,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Arrays;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.log4j.Logger;
 import org.dcm4che.data.Dataset;
+import org.dcm4che.data.DcmDecodeParam;
 import org.dcm4che.data.DcmEncodeParam;
 import org.dcm4che.data.DcmObjectFactory;
 import org.dcm4che.data.FileMetaInfo;
@@ -99,6 +101,154 @@ public class DatasetUtils {
         return ds;
     }
 
+    /**
+     * Decodes only attributes with the specified tags from attributes encoded
+     * by {@link #toByteArray(Dataset)}. Other elements - including whole
+     * sequences - are skipped using their encoded lengths, without parsing
+     * their values. Specific Character Set (0008,0005) is always decoded.
+     * Falls back to decode all attributes and filter them afterwards, if the
+     * data is not encoded as Explicit VR Little Endian data set.
+     * 
+     * @param data encoded attributes
+     * @param tags tags of attributes to decode, in ascending order
+     * @param ds Dataset to add the decoded attributes, or <code>null</code>
+     * @return Dataset with the decoded attributes
+     */
+    public static Dataset fromByteArray(byte[] data, int[] tags, Dataset ds) {
+        if (data == null)
+            return ds != null ? ds : DcmObjectFactory.getInstance().newDataset();
+        byte[] selected = selectElements(data, tags);
+        if (selected == null) {
+            Dataset all = fromByteArray(data);
+            if (ds == null)
+                return all.subSet(tags);
+            ds.putAll(all.subSet(tags));
+            return ds;
+        }
+        if (ds == null)
+            ds = DcmObjectFactory.getInstance().newDataset();
+        try {
+            ds.readDataset(new ByteArrayInputStream(selected),
+                    DcmDecodeParam.EVR_LE, -1);
+        } catch (IOException e) {
+            log.warn("Failed to decode selected attributes! Return empty dataset", e);
+        }
+        return ds;
+    }
+
+    /**
+     * Returns the concatenated encoded elements with the specified tags, or
+     * <code>null</code>, if data is not encoded as Explicit VR Little
+     * Endian data set.
+     */
+    private static byte[] selectElements(byte[] data, int[] tags) {
+        if (data.length < 8 || !isUpperCaseLetter(data[4])
+                || !isUpperCaseLetter(data[5]))
+            return null;
+        // tags of private groups >= 0x8000 are sorted before other tags
+        long maxTag = tags.length == 0 ? 0L
+                : tags[0] < 0 ? 0xffffffffL : tags[tags.length - 1];
+        maxTag = Math.max(maxTag, Tags.SpecificCharacterSet);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                Math.min(data.length, 64 * (tags.length + 1)));
+        int pos = 0;
+        while (pos + 8 <= data.length) {
+            int tag = tagAt(data, pos);
+            if ((tag & 0xffffffffL) > maxTag)
+                break;
+            int end = skipElement(data, pos);
+            if (end < 0)
+                return null;
+            if (end > data.length) {
+                log.warn("Attributes truncated! (Maybe BLOB size not sufficient to store Attributes correctly)!");
+                break;
+            }
+            if (tag == Tags.SpecificCharacterSet
+                    || Arrays.binarySearch(tags, tag) >= 0)
+                out.write(data, pos, end - pos);
+            pos = end;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns position after the Explicit VR Little Endian encoded element
+     * at the specified position, or -1 if the encoding is not valid.
+     */
+    private static int skipElement(byte[] data, int pos) {
+        if (!isUpperCaseLetter(data[pos + 4])
+                || !isUpperCaseLetter(data[pos + 5]))
+            return -1;
+        int len;
+        int valpos;
+        if (hasLongHeader(data[pos + 4], data[pos + 5])) {
+            if (pos + 12 > data.length)
+                return data.length + 1;
+            len = intAt(data, pos + 8);
+            valpos = pos + 12;
+        } else {
+            len = (data[pos + 6] & 0xff) | (data[pos + 7] & 0xff) << 8;
+            valpos = pos + 8;
+        }
+        return len == -1 ? skipItems(data, valpos) : valpos + len;
+    }
+
+    /**
+     * Returns position after the Sequence Delimitation Item terminating the
+     * items of a sequence of undefined length, or -1 if the encoding is not
+     * valid.
+     */
+    private static int skipItems(byte[] data, int pos) {
+        while (pos + 8 <= data.length) {
+            int tag = tagAt(data, pos);
+            if (tag == Tags.SeqDelimitationItem)
+                return pos + 8;
+            if (tag != Tags.Item)
+                return -1;
+            int len = intAt(data, pos + 4);
+            pos += 8;
+            if (len != -1) {
+                pos += len;
+                continue;
+            }
+            while (pos + 8 <= data.length 
+                    && tagAt(data, pos) != Tags.ItemDelimitationItem) {
+                pos = skipElement(data, pos);
+                if (pos < 0)
+                    return -1;
+            }
+            pos += 8;
+        }
+        return data.length + 1;
+    }
+
+    private static boolean hasLongHeader(byte vr0, byte vr1) {
+        switch (vr0 << 8 | vr1) {
+            case ('O' << 8 | 'B'):
+            case ('O' << 8 | 'F'):
+            case ('O' << 8 | 'W'):
+            case ('S' << 8 | 'Q'):
+            case ('U' << 8 | 'N'):
+            case ('U' << 8 | 'T'):
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isUpperCaseLetter(byte b) {
+        return b >= 'A' && b <= 'Z';
+    }
+
+    private static int tagAt(byte[] data, int pos) {
+        return (data[pos] & 0xff) << 16 | (data[pos + 1] & 0xff) << 24
+                | (data[pos + 2] & 0xff) | (data[pos + 3] & 0xff) << 8;
+    }
+
+    private static int intAt(byte[] data, int pos) {
+        return (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8
+                | (data[pos + 2] & 0xff) << 16 | (data[pos + 3] & 0xff) << 24;
+    }
+
     public static byte[] toByteArray(Dataset ds) {
         if (ds == null)
             return null;
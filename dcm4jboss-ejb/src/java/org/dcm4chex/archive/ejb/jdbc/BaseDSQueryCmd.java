@@ -40,12 +40,14 @@
 package org.dcm4chex.archive.ejb.jdbc;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.dcm4che.data.Dataset;
 import org.dcm4che.data.DcmElement;
 import org.dcm4che.dict.Tags;
 import org.dcm4che.dict.VRs;
+import org.dcm4chex.archive.common.DatasetUtils;
 
 /**
  * @author <a href="mailto:gunter@tiani.com">Gunter Zeilinger</a>
@@ -53,6 +55,9 @@ import org.dcm4che.dict.VRs;
  */
 public abstract class BaseDSQueryCmd extends BaseReadCmd {
 
+    public static boolean decodeOnlyReturnKeys = true;
+
+    private static final int[] NO_TAGS = {};
 
     protected final Dataset keys;
 
@@ -62,6 +67,10 @@ public abstract class BaseDSQueryCmd extends BaseReadCmd {
 
     protected final boolean type2;
 
+    private int[] returnTags;
+
+    private boolean returnTagsInitialized;
+
     protected BaseDSQueryCmd(Dataset keys, boolean filterResult,
             boolean noMatchForNoValue, int transactionIsolationLevel)
             throws SQLException {
@@ -117,4 +126,52 @@ public abstract class BaseDSQueryCmd extends BaseReadCmd {
         }
     }
     
- }
\ No newline at end of file
+    protected void fillDataset(Dataset ds, int column) throws SQLException {
+        int[] tags = getReturnTags();
+        if (tags != null)
+            DatasetUtils.fromByteArray(rs.getBytes(column), tags, ds);
+        else
+            DatasetUtils.fromByteArray(rs.getBytes(column), ds);
+    }
+
+    /**
+     * Returns tags of attributes - additional to the return keys - which
+     * are needed to adjust the result dataset before it is filtered by the
+     * return keys.
+     */
+    protected int[] getAttributesToAdjust() {
+        return NO_TAGS;
+    }
+
+    /**
+     * Returns the tags of attributes which have to be decoded from the
+     * encoded attributes fetched from the database to build the result
+     * dataset, or <code>null</code> if all attributes have to be decoded.
+     * Only applies if the result is filtered by the return keys and no
+     * private return keys are requested.
+     */
+    private int[] getReturnTags() {
+        if (!returnTagsInitialized) {
+            returnTags = decodeOnlyReturnKeys && filterResult
+                    ? selectReturnTags() : null;
+            returnTagsInitialized = true;
+        }
+        return returnTags;
+    }
+
+    private int[] selectReturnTags() {
+        int[] adjustTags = getAttributesToAdjust();
+        int[] tags = new int[keys.size() + adjustTags.length];
+        int n = 0;
+        for (Iterator<DcmElement> iter = keys.iterator(); iter.hasNext();) {
+            int tag = iter.next().tag();
+            if (Tags.isPrivate(tag))
+                return null;
+            tags[n++] = tag;
+        }
+        System.arraycopy(adjustTags, 0, tags, n, adjustTags.length);
+        Arrays.sort(tags);
+        return tags;
+    }
+
+}
@@ -0,0 +1,94 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.ejb.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Deletes <tt>priv_file</tt> records by primary key, using one
+ * <tt>DELETE ... WHERE pk IN (...)</tt> statement per up to
+ * {@link #MAX_PKS_PER_STATEMENT} records.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public final class DeletePrivateFilesCmd extends BaseUpdateCmd {
+
+    public static final int MAX_PKS_PER_STATEMENT = 100;
+
+    public static final int transactionIsolationLevel = 0;
+
+    public static int delete(Collection<Long> pks) throws SQLException {
+        int count = 0;
+        Iterator<Long> iter = pks.iterator();
+        for (int remaining = pks.size(); remaining > 0;
+                remaining -= MAX_PKS_PER_STATEMENT) {
+            int n = Math.min(remaining, MAX_PKS_PER_STATEMENT);
+            DeletePrivateFilesCmd cmd = new DeletePrivateFilesCmd(n);
+            try {
+                for (int i = 1; i <= n; i++)
+                    cmd.setPk(i, iter.next());
+                count += cmd.execute();
+            } finally {
+                cmd.close();
+            }
+        }
+        return count;
+    }
+
+    private DeletePrivateFilesCmd(int numPks) throws SQLException {
+        super(JdbcProperties.getInstance().getDataSource(),
+                transactionIsolationLevel, toSQL(numPks));
+    }
+
+    private static String toSQL(int numPks) {
+        StringBuilder sb = new StringBuilder(
+                "DELETE FROM priv_file WHERE pk IN (?");
+        for (int i = 1; i < numPks; i++)
+            sb.append(",?");
+        return sb.append(')').toString();
+    }
+
+    private void setPk(int index, long pk) throws SQLException {
+        ((PreparedStatement) stmt).setLong(index, pk);
+    }
+}
@@ -48,7 +48,6 @@ import org.dcm4che.data.DcmObjectFactory;
 import org.dcm4che.dict.Status;
 import org.dcm4che.dict.Tags;
 import org.dcm4che.net.DcmServiceException;
-import org.dcm4chex.archive.common.DatasetUtils;
 import org.dcm4chex.archive.common.Priority;
 import org.dcm4chex.archive.common.GPSPSStatus;
 import org.dcm4chex.archive.common.InputAvailabilityFlag;
@@ -316,8 +315,8 @@ public class GPWLQueryCmd extends BaseDSQueryCmd {
 
     public Dataset getDataset() throws SQLException {
         Dataset ds = DcmObjectFactory.getInstance().newDataset();
-        DatasetUtils.fromByteArray( rs.getBytes(1), ds);
-        DatasetUtils.fromByteArray( rs.getBytes(2), ds);
+        fillDataset(ds, 1);
+        fillDataset(ds, 2);
         adjustDataset(ds, keys);
         return ds.subSet(keys);
     }
@@ -47,7 +47,6 @@ import org.dcm4che.data.Dataset;
 import org.dcm4che.data.DcmObjectFactory;
 import org.dcm4che.dict.Tags;
 import org.dcm4che.net.DcmServiceException;
-import org.dcm4chex.archive.common.DatasetUtils;
 import org.dcm4chex.archive.common.HPLevel;
 
 /**
@@ -193,7 +192,7 @@ public class HPQueryCmd extends BaseDSQueryCmd {
 
     public Dataset getDataset() throws SQLException {
         Dataset ds = DcmObjectFactory.getInstance().newDataset();
-        DatasetUtils.fromByteArray(rs.getBytes(1), ds);
+        fillDataset(ds, 1);
         adjustDataset(ds, keys);
         return ds.subSet(keys);
     }
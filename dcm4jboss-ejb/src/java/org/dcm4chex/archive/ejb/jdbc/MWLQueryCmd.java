@@ -47,7 +47,6 @@ import org.dcm4che.data.DcmObjectFactory;
 import org.dcm4che.dict.Status;
 import org.dcm4che.dict.Tags;
 import org.dcm4che.net.DcmServiceException;
-import org.dcm4chex.archive.common.DatasetUtils;
 import org.dcm4chex.archive.common.SPSStatus;
 import org.dcm4chex.archive.ejb.conf.AttributeFilter;
 
@@ -202,8 +201,8 @@ public class MWLQueryCmd extends BaseDSQueryCmd {
     public Dataset getDataset() throws SQLException {
         Dataset ds = DcmObjectFactory.getInstance().newDataset();    
         Dataset dsPat = DcmObjectFactory.getInstance().newDataset(); //It seems that Oracle has problems to read 1st BLOB after 2nd! 
-        DatasetUtils.fromByteArray(rs.getBytes(1), dsPat); //patient
-        DatasetUtils.fromByteArray(rs.getBytes(2), ds); //mwl item
+        fillDataset(dsPat, 1); //patient
+        fillDataset(ds, 2); //mwl item
         ds.putAll(dsPat);
         adjustDataset(ds, keys);
         return ds.subSet(keys);
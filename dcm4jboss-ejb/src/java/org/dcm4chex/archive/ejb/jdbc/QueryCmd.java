@@ -45,6 +45,7 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.Map.Entry;
 
@@ -77,6 +78,17 @@ public abstract class QueryCmd extends BaseDSQueryCmd {
             Tags.PatientBirthDate,
             Tags.PatientSex };
 
+    private static final int[] ADJUST_ATTRS = new int[] {
+            Tags.SpecificCharacterSet,
+            Tags.AccessionNumber,
+            Tags.PatientName,
+            Tags.PatientID,
+            Tags.IssuerOfPatientID,
+            Tags.PatientBirthDate,
+            Tags.PatientSex,
+            Tags.OtherPatientIDSeq,
+            Tags.IssuerOfAccessionNumberSeq };
+
     private static final String[] AVAILABILITY = { 
             "ONLINE", "NEARLINE", "OFFLINE", "UNAVAILABLE" };
 
@@ -91,8 +103,19 @@ public abstract class QueryCmd extends BaseDSQueryCmd {
     public static int seriesBlobAccessType = Types.BLOB;
     public static boolean lazyFetchSeriesAttrsOnImageLevelQuery = false;
     public static boolean cacheSeriesAttrsOnImageLevelQuery = true;
+    public static int maxPatientDemographicsToCheck = 1000;
+
+    private final LinkedHashMap<String,String[]> chkPatAttrs =
+            new LinkedHashMap<String,String[]>(16, 0.75f, true) {
 
-    private final HashMap<String,Dataset> chkPatAttrs = new HashMap<String,Dataset>();
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Entry<String, String[]> eldest) {
+                    return size() > maxPatientDemographicsToCheck;
+                }
+            };
 
     protected final Set<PIDWithIssuer> pidWithIssuers;
 
@@ -978,32 +1001,49 @@ public abstract class QueryCmd extends BaseDSQueryCmd {
 
     private void checkForDiffPatientDemographics(Dataset ds) {
         String patId = getPatIdString(ds);
-        if (!chkPatAttrs.containsKey(patId)) {
-            for (Entry<String, Dataset> entry : chkPatAttrs.entrySet()) {
+        if (chkPatAttrs.get(patId) == null) {
+            String[] demographics = getPatientDemographics(ds);
+            for (Entry<String, String[]> entry : chkPatAttrs.entrySet()) {
                 String patId2 = entry.getKey();
-                Dataset ds2 = entry.getValue();
-                for (int tag : PAT_DEMOGRAPHICS_ATTRS) {
-                    DcmElement elem = ds.get(tag);
-                    DcmElement elem2 = ds2.get(tag);
+                String[] demographics2 = entry.getValue();
+                for (int i = 0; i < PAT_DEMOGRAPHICS_ATTRS.length; i++) {
+                    String val = demographics[i];
+                    String val2 = demographics2[i];
                     if (log.isDebugEnabled())
-                        log.debug("compare:" + elem + " with " + elem2);
-                    if (elem != null && elem2 != null && !checkAttr(elem, elem2)) {
-                        log.warn("Different patient attribute found! " + patId
-                                + elem + " <-> " + patId2 + elem2);
+                        log.debug("compare:" + val + " with " + val2);
+                    if (val != null && val2 != null && !val.equals(val2)) {
+                        log.warn("Different patient attribute "
+                                + Tags.toString(PAT_DEMOGRAPHICS_ATTRS[i])
+                                + " found! " + patId + "[" + val + "] <-> "
+                                + patId2 + "[" + val2 + "]");
                     }
                 }
             }
-            chkPatAttrs.put(patId, ds);
+            chkPatAttrs.put(patId, demographics);
         }
     }
 
-    private boolean checkAttr(DcmElement elem, DcmElement elem1) {
-        if (elem.isEmpty() && elem1.isEmpty())
-            return true;
-        if (elem.vr() == VRs.PN) {
-            return getFnGn(elem).equals(getFnGn(elem1));
+    /**
+     * Returns the values of the patient demographic attributes compared
+     * by {@link #checkForDiffPatientDemographics}, so only these strings -
+     * and not the whole result Dataset - have to be kept for a patient.
+     * Person names are reduced to family and given name, missing attributes
+     * are represented by <code>null</code>.
+     */
+    private String[] getPatientDemographics(Dataset ds) {
+        String[] vals = new String[PAT_DEMOGRAPHICS_ATTRS.length];
+        for (int i = 0; i < vals.length; i++) {
+            DcmElement elem = ds.get(PAT_DEMOGRAPHICS_ATTRS[i]);
+            if (elem == null)
+                continue;
+            if (elem.isEmpty())
+                vals[i] = "";
+            else if (elem.vr() == VRs.PN)
+                vals[i] = getFnGn(elem);
+            else
+                vals[i] = ds.getString(PAT_DEMOGRAPHICS_ATTRS[i], "");
         }
-        return elem.equals(elem1);
+        return vals;
     }
 
     private String getFnGn(DcmElement el) {
@@ -1035,8 +1075,9 @@ public abstract class QueryCmd extends BaseDSQueryCmd {
 
     protected abstract void fillDataset(Dataset ds) throws SQLException;
 
-    protected void fillDataset(Dataset ds, int column) throws SQLException {
-        DatasetUtils.fromByteArray(rs.getBytes(column), ds);
+    @Override
+    protected int[] getAttributesToAdjust() {
+        return ADJUST_ATTRS;
     }
 
     public static class PatientQueryCmd extends QueryCmd {
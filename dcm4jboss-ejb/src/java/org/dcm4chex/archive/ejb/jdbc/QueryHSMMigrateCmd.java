@@ -41,7 +41,7 @@ package org.dcm4chex.archive.ejb.jdbc;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -75,7 +75,7 @@ public class QueryHSMMigrateCmd extends BaseReadCmd {
         sqlBuilder.setDistinct(true);
         sqlBuilder.setLimit(limit);
         sqlBuilder.setOffset(offset);
-        HashSet<String> result = new HashSet<String>();
+        LinkedHashSet<String> result = new LinkedHashSet<String>();
         try {
             execute(sqlBuilder.getSql());
             while (next()) {
@@ -0,0 +1,113 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.ejb.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dcm4chex.archive.ejb.interfaces.FileDTO;
+import org.dcm4chex.archive.ejb.interfaces.MD5;
+
+/**
+ * Selects the <tt>priv_file</tt> records created by
+ * {@link MoveStudyFilesToTrashCmd} for the files of a study on a file system,
+ * which are still referenced by <tt>files</tt> records.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public final class QueryTrashedFilesOfStudyCmd extends BaseReadCmd {
+
+    private static final String SQL = "SELECT priv_file.pk, "
+            + "priv_file.filepath, priv_file.file_tsuid, priv_file.file_md5, "
+            + "priv_file.file_size, priv_file.file_status, filesystem.pk, "
+            + "filesystem.fs_group_id, filesystem.dirpath, "
+            + "filesystem.retrieve_aet, filesystem.availability, "
+            + "filesystem.user_info "
+            + "FROM priv_file INNER JOIN filesystem "
+            + "ON (priv_file.filesystem_fk=filesystem.pk) "
+            + "WHERE priv_file.filesystem_fk=? AND priv_file.instance_fk IS NULL "
+            + "AND priv_file.filepath IN (SELECT files.filepath FROM files "
+            + "INNER JOIN instance ON (files.instance_fk=instance.pk) "
+            + "INNER JOIN series ON (instance.series_fk=series.pk) "
+            + "WHERE series.study_fk=? AND files.filesystem_fk=?)";
+
+    public static int transactionIsolationLevel = 0;
+
+    public QueryTrashedFilesOfStudyCmd(long studyPk, long fsPk)
+            throws SQLException {
+        super(JdbcProperties.getInstance().getDataSource(),
+                transactionIsolationLevel, SQL);
+        PreparedStatement pstmt = ((PreparedStatement) stmt);
+        pstmt.setLong(1, fsPk);
+        pstmt.setLong(2, studyPk);
+        pstmt.setLong(3, fsPk);
+        execute();
+    }
+
+    private FileDTO getFileDTO() throws SQLException {
+        FileDTO dto = new FileDTO();
+        dto.setPk(rs.getLong(1));
+        dto.setFilePath(rs.getString(2));
+        dto.setFileTsuid(rs.getString(3));
+        dto.setFileMd5(MD5.toBytes(rs.getString(4)));
+        dto.setFileSize(rs.getLong(5));
+        dto.setFileStatus(rs.getInt(6));
+        dto.setFileSystemPk(rs.getLong(7));
+        dto.setFileSystemGroupID(rs.getString(8));
+        dto.setDirectoryPath(rs.getString(9));
+        dto.setRetrieveAET(rs.getString(10));
+        dto.setAvailability(rs.getInt(11));
+        dto.setUserInfo(rs.getString(12));
+        return dto;
+    }
+
+    public List<FileDTO> getFileDTOs() throws SQLException {
+        List<FileDTO> list = new ArrayList<FileDTO>();
+        try {
+            while (next())
+                list.add(getFileDTO());
+        } finally {
+            close();
+        }
+        return list;
+    }
+}
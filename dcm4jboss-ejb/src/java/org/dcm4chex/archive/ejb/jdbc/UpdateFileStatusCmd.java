@@ -0,0 +1,159 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.ejb.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.dcm4chex.archive.common.FileStatus;
+
+/**
+ * Updates the status of <tt>files</tt> records by primary key, using one
+ * <tt>UPDATE ... WHERE pk IN (...)</tt> statement per up to
+ * {@link #MAX_PKS_PER_STATEMENT} records, and marks the referenced
+ * <tt>instance</tt> records as archived.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public final class UpdateFileStatusCmd extends BaseUpdateCmd {
+
+    public static final int MAX_PKS_PER_STATEMENT = 500;
+
+    public static final int transactionIsolationLevel = 0;
+
+    private int paramIndex;
+
+    public static int updateFileStatus(Collection<Long> pks, int status)
+            throws SQLException {
+        int count = 0;
+        Iterator<Long> iter = pks.iterator();
+        for (int remaining = pks.size(); remaining > 0;
+                remaining -= MAX_PKS_PER_STATEMENT) {
+            int n = Math.min(remaining, MAX_PKS_PER_STATEMENT);
+            UpdateFileStatusCmd cmd = new UpdateFileStatusCmd(
+                    appendPks(new StringBuilder(
+                            "UPDATE files SET file_status=? WHERE pk IN ("),
+                            n).toString());
+            try {
+                cmd.setInt(status);
+                for (int i = 0; i < n; i++)
+                    cmd.setLong(iter.next());
+                count += cmd.execute();
+            } finally {
+                cmd.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks instances of the specified files as archived. If
+     * <code>archiveFileSystems</code> contains more than one file system,
+     * only instances with an archived file on each of these file systems are
+     * marked.
+     */
+    public static int markInstancesArchived(Collection<Long> filePks,
+            List<String> archiveFileSystems) throws SQLException {
+        int numFS = archiveFileSystems != null
+                && archiveFileSystems.size() > 1
+                ? archiveFileSystems.size() : 0;
+        int count = 0;
+        Iterator<Long> iter = filePks.iterator();
+        for (int remaining = filePks.size(); remaining > 0;
+                remaining -= MAX_PKS_PER_STATEMENT) {
+            int n = Math.min(remaining, MAX_PKS_PER_STATEMENT);
+            StringBuilder sb = new StringBuilder(
+                    "UPDATE instance SET archived=? WHERE archived=?"
+                    + " AND pk IN (SELECT instance_fk FROM files WHERE pk IN (");
+            appendPks(sb, n).append(')');
+            for (int i = 0; i < numFS; i++)
+                sb.append(" AND EXISTS (SELECT f.pk FROM files f, filesystem fs"
+                        + " WHERE f.instance_fk=instance.pk"
+                        + " AND f.filesystem_fk=fs.pk"
+                        + " AND f.file_status=? AND fs.dirpath=?)");
+            UpdateFileStatusCmd cmd = new UpdateFileStatusCmd(sb.toString());
+            try {
+                cmd.setBoolean(true);
+                cmd.setBoolean(false);
+                for (int i = 0; i < n; i++)
+                    cmd.setLong(iter.next());
+                for (int i = 0; i < numFS; i++) {
+                    cmd.setInt(FileStatus.ARCHIVED);
+                    cmd.setString(archiveFileSystems.get(i));
+                }
+                count += cmd.execute();
+            } finally {
+                cmd.close();
+            }
+        }
+        return count;
+    }
+
+    private UpdateFileStatusCmd(String sql) throws SQLException {
+        super(JdbcProperties.getInstance().getDataSource(),
+                transactionIsolationLevel, sql);
+    }
+
+    private static StringBuilder appendPks(StringBuilder sb, int numPks) {
+        sb.append('?');
+        for (int i = 1; i < numPks; i++)
+            sb.append(",?");
+        return sb.append(')');
+    }
+
+    private void setInt(int value) throws SQLException {
+        ((PreparedStatement) stmt).setInt(++paramIndex, value);
+    }
+
+    private void setLong(long value) throws SQLException {
+        ((PreparedStatement) stmt).setLong(++paramIndex, value);
+    }
+
+    private void setBoolean(boolean value) throws SQLException {
+        ((PreparedStatement) stmt).setBoolean(++paramIndex, value);
+    }
+
+    private void setString(String value) throws SQLException {
+        ((PreparedStatement) stmt).setString(++paramIndex, value);
+    }
+}
@@ -37,6 +37,7 @@
  * ***** END LICENSE BLOCK ***** */
 package org.dcm4chex.archive.ejb.session;
 
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,7 +46,9 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJBException;
@@ -92,6 +95,12 @@ import org.dcm4chex.archive.ejb.interfaces.StudyLocal;
 import org.dcm4chex.archive.ejb.interfaces.StudyLocalHome;
 import org.dcm4chex.archive.ejb.interfaces.StudyOnFileSystemLocal;
 import org.dcm4chex.archive.ejb.interfaces.StudyOnFileSystemLocalHome;
+import org.dcm4chex.archive.ejb.jdbc.DeleteFilesOfStudyCmd;
+import org.dcm4chex.archive.ejb.jdbc.DeleteObjectsOfStudyCmd;
+import org.dcm4chex.archive.ejb.jdbc.DeletePrivateFilesCmd;
+import org.dcm4chex.archive.ejb.jdbc.MoveStudyFilesToTrashCmd;
+import org.dcm4chex.archive.ejb.jdbc.QueryTrashedFilesOfStudyCmd;
+import org.dcm4chex.archive.ejb.jdbc.UpdateFileStatusCmd;
 import org.dcm4chex.archive.exceptions.ConcurrentStudyStorageException;
 import org.dcm4chex.archive.exceptions.NoSuchSeriesException;
 import org.dcm4chex.archive.exceptions.NoSuchStudyException;
@@ -836,6 +845,76 @@ public abstract class FileSystemMgt2Bean implements SessionBean {
         }
     }
 
+    /**
+     * Delete studies of several orders in one transaction. In contrast to
+     * {@link #deleteStudy}, file records are moved to the trash and series
+     * and instance records are deleted by set-based SQL statements per study,
+     * instead of removing each record by its entity bean. Orders of studies
+     * which are already deleted or were stored concurrently are skipped.
+     *
+     * @return records of files to delete from the file system, by processed
+     *         order
+     *
+     * @ejb.interface-method
+     *
+     * @ejb.transaction type="RequiresNew"
+     */
+    public Map<DeleteStudyOrder, Collection<FileDTO>> deleteStudies(
+            Collection<DeleteStudyOrder> orders, boolean delStudyFromDB,
+            boolean delPatientWithoutObjects) {
+        Map<DeleteStudyOrder, Collection<FileDTO>> fileDTOsByOrder =
+                new LinkedHashMap<DeleteStudyOrder, Collection<FileDTO>>();
+        try {
+            for (DeleteStudyOrder order : orders) {
+                long studyPk = order.getStudyPk();
+                long fsPk = order.getFsPk();
+                StudyLocal study;
+                try {
+                    study = studyHome.findByPrimaryKey(studyPk);
+                    checkConcurrentStudyStorage(study,
+                            fileSystemHome.findByPrimaryKey(fsPk));
+                } catch (ObjectNotFoundException e) {
+                    log.info("Study[pk=" + studyPk + "] or file system[pk="
+                            + fsPk + "] no longer exists - skip " + order);
+                    continue;
+                } catch (ConcurrentStudyStorageException e) {
+                    log.info(e.getMessage());
+                    continue;
+                }
+                MoveStudyFilesToTrashCmd.move(studyPk, fsPk);
+                Collection<FileDTO> fileDTOs =
+                        new QueryTrashedFilesOfStudyCmd(studyPk, fsPk)
+                                .getFileDTOs();
+                DeleteFilesOfStudyCmd.delete(studyPk, fsPk);
+
+                if (delStudyFromDB && study.getAllFiles().isEmpty()) {
+                    PatientLocal pat = study.getPatient();
+                    markPublishedStudy(study, true);
+                    int numInsts = DeleteObjectsOfStudyCmd.delete(studyPk);
+                    if (log.isDebugEnabled())
+                        log.debug("Deleted " + numInsts
+                                + " instances of Study[pk=" + studyPk + "]");
+                    study.remove();
+                    if (delPatientWithoutObjects) {
+                        deletePatientWithoutObjects(pat);
+                    }
+                } else {
+                    updateStudyAvailability(study,
+                            order.getExternalRetrieveAvailability());
+                    markPublishedStudy(study, false);
+                }
+                fileDTOsByOrder.put(order, fileDTOs);
+            }
+        } catch (SQLException e) {
+            throw new EJBException(e);
+        } catch (FinderException e) {
+            throw new EJBException(e);
+        } catch (RemoveException e) {
+            throw new EJBException(e);
+        }
+        return fileDTOsByOrder;
+    }
+
 	private Collection<FileDTO> marshallPrivFiles(
 			Collection<PrivateFileLocal> privFiles) {
 		Collection<FileDTO> fileDTOs = new ArrayList<FileDTO>(privFiles.size());
@@ -1251,6 +1330,45 @@ public abstract class FileSystemMgt2Bean implements SessionBean {
         }
     }
 
+    /**
+     * Updates the status of files by one set-based UPDATE statement per
+     * status value, and marks the instances of files updated to ARCHIVED as
+     * archived - as {@link #setFileStatus(long, int, List)} for each file.
+     * 
+     * @return number of updated files
+     * 
+     * @ejb.interface-method
+     */
+    public int setFileStatus(Map<Long, Integer> statusByFilePk,
+            List<String> archiveFileSystems) {
+        Map<Integer, List<Long>> pksByStatus = new HashMap<Integer, List<Long>>();
+        for (Map.Entry<Long, Integer> entry : statusByFilePk.entrySet()) {
+            List<Long> pks = pksByStatus.get(entry.getValue());
+            if (pks == null) {
+                pks = new ArrayList<Long>();
+                pksByStatus.put(entry.getValue(), pks);
+            }
+            pks.add(entry.getKey());
+        }
+        try {
+            int count = 0;
+            for (Map.Entry<Integer, List<Long>> entry : pksByStatus.entrySet()) {
+                int status = entry.getKey();
+                List<Long> pks = entry.getValue();
+                count += UpdateFileStatusCmd.updateFileStatus(pks, status);
+                if (status == FileStatus.ARCHIVED) {
+                    int archived = UpdateFileStatusCmd.markInstancesArchived(
+                            pks, archiveFileSystems);
+                    log.info("Marked " + archived + " instances of "
+                            + pks.size() + " files as ARCHIVED");
+                }
+            }
+            return count;
+        } catch (SQLException e) {
+            throw new EJBException(e);
+        }
+    }
+
     private FileDTO[] toFileDTOs(Collection c) {
         FileDTO[] dto = new FileDTO[c.size()];
         Iterator it = c.iterator();
@@ -1285,6 +1403,17 @@ public abstract class FileSystemMgt2Bean implements SessionBean {
         privFileHome.remove(file_pk);
     }
 
+    /**
+     * @ejb.interface-method
+     */
+    public int deletePrivateFiles(Collection<Long> file_pks) {
+        try {
+            return DeletePrivateFilesCmd.delete(file_pks);
+        } catch (SQLException e) {
+            throw new EJBException(e);
+        }
+    }
+
     /**
      * @ejb.interface-method
      */
@@ -44,6 +44,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -223,13 +224,8 @@ public abstract class StorageBean implements SessionBean {
                 instance = instHome.findBySopIuid(iuid);
                 prevAvailability = instance.getAvailabilitySafe();
                 coerceInstanceIdentity(instance, ds, coercedElements);
-                if (clearExternalRetrieveAET && instance.getExternalRetrieveAET() != null) {
-                    if ( instance.getExternalRetrieveAET().equals(currentCallingAET)) {
-                        log.debug("CallingAET == ExternalRetrieveAET! Don't clear ExternalRetrieveAET of instance "+instance.getSopIuid());
-                    } else {
-                        log.info("Clear ExternalRetrieveAET of instance "+instance.getSopIuid());
-                        instance.setExternalRetrieveAET(null);
-                    }
+                if (clearExternalRetrieveAET) {
+                    clearExternalRetrieveAET(instance, currentCallingAET);
                 }
             } catch (ObjectNotFoundException onfe) {
                 instance = instHome.create(ds,
@@ -279,6 +275,149 @@ public abstract class StorageBean implements SessionBean {
         }
     }
 
+    /**
+     * Inserts records for several received instances of the same Series in
+     * one transaction. Patient, Study and Series records are resolved only
+     * once for the whole batch, and derived fields of the Series and Study
+     * are updated once after all Instance and File records were inserted.
+     * Instances with a SOP Instance UID already contained in the batch are
+     * handled like received duplicates, adding a File record to the Instance
+     * record inserted before. Invoked by the ingest pipeline of the Storage
+     * SCP.
+     * 
+     * @return coerced elements of each instance
+     * @ejb.interface-method
+     */
+    public org.dcm4che.data.Dataset[] store(org.dcm4che.data.Dataset[] dss,
+            String currentCallingAET, long fspk, java.lang.String[] fileids,
+            long[] sizes, byte[][] md5s, byte[][] origMd5s, int fileStatus,
+            boolean updateStudyAccessTime, boolean[] clearExternalRetrieveAET,
+            boolean dontChangeReceivedStatus, PatientMatching matching)
+            throws DcmServiceException, NonUniquePatientIDException {
+        Dataset[] coercedElements = new Dataset[dss.length];
+        if (dss.length == 0)
+            return coercedElements;
+        final String seriuid = dss[0].getString(Tags.SeriesInstanceUID);
+        log.info("inserting " + dss.length + " instances of series[uid="
+                + seriuid + "]");
+        try {
+            DcmObjectFactory df = DcmObjectFactory.getInstance();
+            for (int i = 0; i < dss.length; i++) {
+                if (!seriuid.equals(dss[i].getString(Tags.SeriesInstanceUID)))
+                    throw new DcmServiceException(Status.ProcessingFailure,
+                            "Instances of different Series in one batch");
+                coercedElements[i] = df.newDataset();
+            }
+            SeriesLocal series;
+            boolean newSeries = false;
+            try {
+                series = findBySeriesIuid(seriuid);
+                coerceSeriesIdentity(series, dss[0], coercedElements[0]);
+            } catch (ObjectNotFoundException onfe) {
+                series = getSeries(matching, dss[0], coercedElements[0]);
+                // Series record may be inserted by concurrent thread
+                newSeries = series.getInstances().isEmpty();
+            }
+            StudyLocal study = series.getStudy();
+            PatientLocal pat = study.getPatient();
+            FileSystemLocal fs = fspk != -1
+                    ? fileSystemHome.findByPrimaryKey(new Long(fspk))
+                    : null;
+            boolean newInstances = false;
+            // instances of the batch by SOP Instance UID, so a repeated
+            // SOP Instance UID adds a file to the already inserted record
+            HashMap<String, InstanceLocal> instances =
+                    new HashMap<String, InstanceLocal>(dss.length * 4 / 3 + 1);
+            for (int i = 0; i < dss.length; i++) {
+                Dataset ds = dss[i];
+                String iuid = ds.getFileMetaInfo()
+                        .getMediaStorageSOPInstanceUID();
+                InstanceLocal instance = instances.get(iuid);
+                int prevAvailability = Availability.UNAVAILABLE;
+                if (instance == null && !newSeries) {
+                    try {
+                        instance = instHome.findBySopIuid(iuid);
+                    } catch (ObjectNotFoundException onfe) {}
+                }
+                if (instance != null) {
+                    prevAvailability = instance.getAvailabilitySafe();
+                    coerceInstanceIdentity(instance, ds, coercedElements[i]);
+                    if (clearExternalRetrieveAET[i])
+                        clearExternalRetrieveAET(instance, currentCallingAET);
+                } else {
+                    if (i > 0) {
+                        pat.coerceAttributes(ds, coercedElements[i]);
+                        study.coerceAttributes(ds, coercedElements[i]);
+                        series.coerceAttributes(ds, coercedElements[i]);
+                    }
+                    instance = instHome.create(ds, series);
+                    newInstances = true;
+                }
+                instances.put(iuid, instance);
+                if (fs != null) {
+                    fileHome.create(fileids[i],
+                            ds.getFileMetaInfo().getTransferSyntaxUID(),
+                            sizes[i], md5s[i], origMd5s[i], fileStatus,
+                            instance, fs);
+                    instance.setAvailability(
+                            Math.min(fs.getAvailability(), prevAvailability));
+                    instance.addRetrieveAET(fs.getRetrieveAET());
+                } else {
+                    instance.setAvailability(Availability.toInt(
+                            ds.getString(Tags.InstanceAvailability)));
+                    instance.setExternalRetrieveAET(
+                            ds.getString(Tags.RetrieveAET));
+                }
+                if (fileStatus == FileStatus.ARCHIVED)
+                    instance.setArchived(true);
+                if (!dontChangeReceivedStatus)
+                    instance.setInstanceStatus(RECEIVED);
+            }
+            if (newInstances) {
+                Collection<PublishedStudyLocal> pStudies = publishedStudyHome
+                        .findByStudyPkAndStatus(study.getPk(),
+                                PublishedStudyStatus.STUDY_COMPLETE);
+                for (PublishedStudyLocal pStudy : pStudies) {
+                    pStudy.setStatus(PublishedStudyStatus.STUDY_CHANGED);
+                }
+            }
+            if (fs != null && updateStudyAccessTime) {
+                touchStudyOnFileSystem(study.getStudyIuid(), fs);
+            }
+            if (!dontChangeReceivedStatus) {
+                series.setSeriesStatus(RECEIVED);
+            }
+            UpdateDerivedFieldsUtils.updateDerivedFieldsOf(series);
+            UpdateDerivedFieldsUtils.updateDerivedFieldsOf(study);
+            log.info("inserted records for " + dss.length
+                    + " instances of series[uid=" + seriuid + "]");
+            return coercedElements;
+        } catch (Exception e) {
+            log.warn("inserting records for instances of series[uid="
+                    + seriuid + "] failed: " + e.getMessage());
+            sessionCtx.setRollbackOnly();
+            if (e instanceof NonUniquePatientIDException) {
+                throw (NonUniquePatientIDException) e;
+            } else if (e instanceof DcmServiceException){
+                throw (DcmServiceException) e;
+            } else {
+                throw new DcmServiceException(Status.ProcessingFailure, e);
+            }
+        }
+    }
+
+    private void clearExternalRetrieveAET(InstanceLocal instance,
+            String currentCallingAET) {
+        if (instance.getExternalRetrieveAET() == null)
+            return;
+        if (instance.getExternalRetrieveAET().equals(currentCallingAET)) {
+            log.debug("CallingAET == ExternalRetrieveAET! Don't clear ExternalRetrieveAET of instance "+instance.getSopIuid());
+        } else {
+            log.info("Clear ExternalRetrieveAET of instance "+instance.getSopIuid());
+            instance.setExternalRetrieveAET(null);
+        }
+    }
+
     /**
      * @ejb.interface-method
      */
@@ -104,6 +104,13 @@ public interface FileSystemMgt2
    public java.util.Collection deleteStudy( org.dcm4chex.archive.common.DeleteStudyOrder order,boolean delStudyFromDB,boolean delPatientWithoutObjects )
       throws org.dcm4chex.archive.exceptions.ConcurrentStudyStorageException, javax.ejb.CreateException, java.rmi.RemoteException;
 
+   /**
+    * Delete studies of several orders in one transaction. In contrast to {@link #deleteStudy}, file records are moved to the trash and series and instance records are deleted by set-based SQL statements per study, instead of removing each record by its entity bean. Orders of studies which are already deleted or were stored concurrently are skipped.
+    * @return records of files to delete from the file system, by processed order
+    */
+   public java.util.Map deleteStudies( java.util.Collection orders,boolean delStudyFromDB,boolean delPatientWithoutObjects )
+      throws java.rmi.RemoteException;
+
    public org.dcm4chex.archive.ejb.interfaces.FileDTO[][] getFilesOfStudy( org.dcm4chex.archive.common.DeleteStudyOrder order )
       throws org.dcm4chex.archive.exceptions.ConcurrentStudyStorageException, java.rmi.RemoteException;
 
@@ -165,6 +172,12 @@ public interface FileSystemMgt2
    public void deletePrivateFile( long file_pk )
       throws javax.ejb.RemoveException, java.rmi.RemoteException;
 
+   public int setFileStatus( java.util.Map statusByFilePk,java.util.List archiveFileSystems )
+      throws java.rmi.RemoteException;
+
+   public int deletePrivateFiles( java.util.Collection file_pks )
+      throws java.rmi.RemoteException;
+
    public void touchStudyOnFileSystem( java.lang.String siud,java.lang.String dirPath )
       throws javax.ejb.FinderException, javax.ejb.CreateException, java.rmi.RemoteException;
 
@@ -20,6 +20,9 @@ public interface Storage
    public org.dcm4che.data.Dataset store( org.dcm4che.data.Dataset ds,java.lang.String currentCallingAET,long fspk,java.lang.String fileid,long size,byte[] md5,byte[] origMd5,int fileStatus,boolean updateStudyAccessTime,boolean clearExternalRetrieveAET,boolean dontChangeReceivedStatus,org.dcm4chex.archive.common.PatientMatching matching,boolean canRollback )
       throws org.dcm4che.net.DcmServiceException, org.dcm4chex.archive.exceptions.NonUniquePatientIDException, java.rmi.RemoteException;
 
+   public org.dcm4che.data.Dataset[] store( org.dcm4che.data.Dataset[] dss,java.lang.String currentCallingAET,long fspk,java.lang.String[] fileids,long[] sizes,byte[][] md5s,byte[][] origMd5s,int fileStatus,boolean updateStudyAccessTime,boolean[] clearExternalRetrieveAET,boolean dontChangeReceivedStatus,org.dcm4chex.archive.common.PatientMatching matching )
+      throws org.dcm4che.net.DcmServiceException, org.dcm4chex.archive.exceptions.NonUniquePatientIDException, java.rmi.RemoteException;
+
    public java.util.Collection getDuplicateFiles( org.dcm4chex.archive.ejb.interfaces.FileDTO dto )
       throws javax.ejb.FinderException, java.rmi.RemoteException;
 
@@ -0,0 +1,77 @@
+package org.dcm4chex.archive.common;
+
+import junit.framework.TestCase;
+
+import org.dcm4che.data.Dataset;
+import org.dcm4che.data.DcmElement;
+import org.dcm4che.data.DcmObjectFactory;
+import org.dcm4che.dict.Tags;
+
+public class DatasetUtilsTest extends TestCase {
+
+	private static final DcmObjectFactory dof = DcmObjectFactory.getInstance();
+
+	private static Dataset newDataset() {
+		Dataset ds = dof.newDataset();
+		ds.putCS(Tags.SpecificCharacterSet, "ISO_IR 100");
+		ds.putDA(Tags.StudyDate, "20260101");
+		ds.putSH(Tags.AccessionNumber, "A123");
+		DcmElement sq = ds.putSQ(Tags.ProcedureCodeSeq);
+		Dataset item = sq.addNewItem();
+		item.putSH(Tags.CodeValue, "CV1");
+		item.putLO(Tags.CodeMeaning, "Meaning");
+		item.putSQ(Tags.ModifierCodeSeq).addNewItem().putSH(Tags.CodeValue, "CV2");
+		ds.putPN(Tags.PatientName, "Doe^John");
+		ds.putLO(Tags.PatientID, "P1");
+		ds.putUI(Tags.StudyInstanceUID, "1.2.3");
+		ds.putLO(0x00291010, "private");
+		return ds;
+	}
+
+	public void test_fromByteArray_shouldDecodeOnlySelectedTags() {
+		byte[] b = DatasetUtils.toByteArray(newDataset());
+		Dataset ds = DatasetUtils.fromByteArray(b,
+				new int[] { Tags.AccessionNumber, Tags.PatientID }, null);
+		assertEquals(3, ds.size());
+		assertEquals("ISO_IR 100", ds.getString(Tags.SpecificCharacterSet));
+		assertEquals("A123", ds.getString(Tags.AccessionNumber));
+		assertEquals("P1", ds.getString(Tags.PatientID));
+	}
+
+	public void test_fromByteArray_shouldSkipOverSequences() {
+		byte[] b = DatasetUtils.toByteArray(newDataset());
+		Dataset ds = DatasetUtils.fromByteArray(b,
+				new int[] { Tags.PatientName, Tags.StudyInstanceUID }, null);
+		assertEquals(3, ds.size());
+		assertEquals("Doe^John", ds.getString(Tags.PatientName));
+		assertEquals("1.2.3", ds.getString(Tags.StudyInstanceUID));
+	}
+
+	public void test_fromByteArray_shouldDecodeSelectedSequence() {
+		byte[] b = DatasetUtils.toByteArray(newDataset());
+		Dataset ds = DatasetUtils.fromByteArray(b,
+				new int[] { Tags.ProcedureCodeSeq }, null);
+		assertEquals(2, ds.size());
+		Dataset item = ds.getItem(Tags.ProcedureCodeSeq);
+		assertEquals("CV1", item.getString(Tags.CodeValue));
+		assertEquals("CV2", item.getItem(Tags.ModifierCodeSeq)
+				.getString(Tags.CodeValue));
+	}
+
+	public void test_fromByteArray_shouldDecodePrivateTags() {
+		byte[] b = DatasetUtils.toByteArray(newDataset());
+		Dataset ds = DatasetUtils.fromByteArray(b,
+				new int[] { Tags.PatientID, 0x00291010 }, null);
+		assertEquals(3, ds.size());
+		assertEquals("private", ds.getString(0x00291010));
+	}
+
+	public void test_fromByteArray_shouldEqualFullDecodeFilteredByTags() {
+		Dataset orig = newDataset();
+		int[] tags = { Tags.StudyDate, Tags.ProcedureCodeSeq, Tags.PatientID };
+		Dataset ds = DatasetUtils.fromByteArray(
+				DatasetUtils.toByteArray(orig), tags, null);
+		assertEquals(orig.subSet(new int[] { Tags.SpecificCharacterSet,
+				Tags.StudyDate, Tags.ProcedureCodeSeq, Tags.PatientID }), ds);
+	}
+}
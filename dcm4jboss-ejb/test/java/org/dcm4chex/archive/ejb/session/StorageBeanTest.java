@@ -0,0 +1,119 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.ejb.session;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+
+import junit.framework.TestCase;
+
+import org.dcm4che.data.Dataset;
+import org.dcm4che.data.DcmObjectFactory;
+import org.dcm4che.dict.Tags;
+import org.dcm4che.dict.UIDs;
+import org.dcm4chex.archive.common.PatientMatching;
+import org.dcm4chex.archive.ejb.interfaces.Storage;
+import org.dcm4chex.archive.ejb.interfaces.StorageHome;
+
+/**
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class StorageBeanTest extends TestCase {
+
+    private static final String AET = "STORAGE_TEST";
+    private static final String PID = "P-999998";
+    private static final String SUID = "1.2.40.0.13.1.1.9998";
+    private static final String SERIUID = "1.2.40.0.13.1.1.9998.1";
+    private static final String IUID1 = "1.2.40.0.13.1.1.9998.1.1";
+    private static final String IUID2 = "1.2.40.0.13.1.1.9998.1.2";
+
+    private static final DcmObjectFactory dof = DcmObjectFactory.getInstance();
+
+    private Storage storage;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(StorageBeanTest.class);
+    }
+
+    protected void setUp() throws Exception {
+        Context ctx = new InitialContext();
+        StorageHome home = (StorageHome) ctx.lookup(StorageHome.JNDI_NAME);
+        ctx.close();
+        storage = home.create();
+    }
+
+    protected void tearDown() throws Exception {
+        storage.deleteInstances(new String[] { IUID1, IUID2 }, true, true);
+        storage.remove();
+    }
+
+    public StorageBeanTest(String name) {
+        super(name);
+    }
+
+    public void testStoreBatchWithRepeatedSOPInstanceUID() throws Exception {
+        Dataset[] dss = { newInstance(IUID1), newInstance(IUID2),
+                newInstance(IUID1) };
+        Dataset[] coerced = storage.store(dss, AET, -1L,
+                new String[dss.length], new long[dss.length],
+                new byte[dss.length][], new byte[dss.length][], 0, false,
+                new boolean[dss.length], false,
+                new PatientMatching("pid,issuer?"));
+        assertEquals(dss.length, coerced.length);
+        assertTrue(storage.instanceExists(IUID1));
+        assertTrue(storage.instanceExists(IUID2));
+        assertEquals(2, storage.numberOfStudyRelatedInstances(SUID));
+    }
+
+    private static Dataset newInstance(String iuid) throws Exception {
+        Dataset ds = dof.newDataset();
+        ds.putLO(Tags.PatientID, PID);
+        ds.putPN(Tags.PatientName, "Test^StorageBean");
+        ds.putUI(Tags.StudyInstanceUID, SUID);
+        ds.putUI(Tags.SeriesInstanceUID, SERIUID);
+        ds.putUI(Tags.SOPClassUID, UIDs.SecondaryCaptureImageStorage);
+        ds.putUI(Tags.SOPInstanceUID, iuid);
+        ds.putAE(Tags.RetrieveAET, AET);
+        ds.putCS(Tags.InstanceAvailability, "NEARLINE");
+        ds.setFileMetaInfo(dof.newFileMetaInfo(ds,
+                UIDs.ImplicitVRLittleEndian));
+        return ds;
+    }
+}
@@ -56,6 +56,7 @@ import java.nio.charset.Charset;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
 
 import javax.management.Notification;
 import javax.management.NotificationFilter;
@@ -77,6 +78,7 @@ import org.dcm4cheri.util.StringUtils;
 import org.dcm4chex.archive.mbean.TLSConfigDelegate;
 import org.dcm4chex.archive.mbean.TemplatesDelegate;
 import org.dcm4chex.archive.util.FileUtils;
+import org.dcm4chex.archive.util.ThreadExecutors;
 import org.dom4j.Document;
 import org.dom4j.io.DocumentResult;
 import org.dom4j.io.DocumentSource;
@@ -127,6 +129,10 @@ public class HL7ServerService extends ServiceMBeanSupport implements
    
     private Server hl7srv = ServerFactory.getInstance().newServer(this);
 
+    private String threadExecutor = ThreadExecutors.THREADS;
+
+    private ExecutorService executorService;
+
     private MLLP_Protocol protocol = MLLP_Protocol.MLLP;
 
     private boolean fileReceivedHL7AsXML;
@@ -291,6 +297,16 @@ public class HL7ServerService extends ServiceMBeanSupport implements
         hl7srv.setMaxIdleThreads(max);
     }
 
+    public String getThreadExecutor() {
+        return threadExecutor;
+    }
+
+    public void setThreadExecutor(String mode) {
+        String trimmed = mode.trim();
+        ThreadExecutors.checkMode(trimmed);
+        this.threadExecutor = trimmed;
+    }
+
     public final boolean isFileReceivedHL7AsXML() {
         return fileReceivedHL7AsXML;
     }
@@ -375,6 +391,10 @@ public class HL7ServerService extends ServiceMBeanSupport implements
 
     protected void stopService() throws Exception {
         hl7srv.stop();
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
     }
 
     public void handleNotification(Notification msg, Object arg1) {
@@ -388,6 +408,9 @@ public class HL7ServerService extends ServiceMBeanSupport implements
     }
     
     private void startHL7Server() {
+        executorService = ThreadExecutors.newExecutorService(
+                threadExecutor, "HL7Server");
+        hl7srv.setExecutor(ThreadExecutors.toThreadExecutor(executorService));
         try {
             hl7srv.start();
         } catch (IOException x) {
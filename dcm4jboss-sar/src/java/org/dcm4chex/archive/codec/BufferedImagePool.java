@@ -49,11 +49,21 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.dcm4chex.archive.util.FileUtils;
 
 /**
+ * Pool of BufferedImage objects, bucketed by pixel matrix dimensions, bits,
+ * samples, number of banks and data type. Borrow and return operations are
+ * lock-free. If the limits of the pool are exceeded, BufferedImage objects
+ * of the least recently borrowed bucket are evicted first.
+ *
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @version $Revision$ $Date$
  * @since Jun 3, 2008
@@ -65,38 +75,112 @@ class BufferedImagePool {
     private static final int[] GRAY_BAND_OFFSETS = { 0 };
     private static final int[] RGB_BAND_OFFSETS = { 0, 1, 2 };
 
-    private List<BufferedImage> pool = new ArrayList<BufferedImage>();
-    private int maxSize = 10;
-    private long maxMemory = FileUtils.MEGA;
-    private long poolMemory = 0;
-    private float borrowOrCreateCount = 0.f;
-    private float borrowCount = 0.f;
+    private final ConcurrentMap<Key, Bucket> buckets =
+            new ConcurrentHashMap<Key, Bucket>();
+    private final AtomicInteger poolSize = new AtomicInteger();
+    private final AtomicLong poolMemory = new AtomicLong();
+    private final AtomicLong borrowOrCreateCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private volatile int maxSize = 10;
+    private volatile long maxMemory = FileUtils.MEGA;
 
-    public synchronized BufferedImage borrowOrCreateBufferedImage(int rows,
-            int columns, int bitsUsed, int samples, int planarConfiguration,
-            int dataType) {
-        borrowOrCreateCount++;
-        for (int index = pool.size(); --index >= 0;) {
-            BufferedImage bi = pool.get(index);
-            ColorModel cm = bi.getColorModel();
+    private static final class Key {
+        final int rows;
+        final int columns;
+        final int bitsUsed;
+        final int samples;
+        final int banks;
+        final int dataType;
+
+        Key(int rows, int columns, int bitsUsed, int samples, int banks,
+                int dataType) {
+            this.rows = rows;
+            this.columns = columns;
+            this.bitsUsed = bitsUsed;
+            this.samples = samples;
+            this.banks = banks;
+            this.dataType = dataType;
+        }
+
+        Key(BufferedImage bi) {
             WritableRaster raster = bi.getRaster();
             DataBuffer db = raster.getDataBuffer();
-            if (raster.getHeight() == rows
-                    && raster.getWidth() == columns
-                    && raster.getNumBands() == samples
-                    && cm.getComponentSize(0) == bitsUsed
-                    && db.getNumBanks() == (planarConfiguration != 0 ? samples
-                            : 1) && db.getDataType() == dataType) {
-                pool.remove(index);
-                poolMemory -= sizeOf(bi);
-                borrowCount++;
-                log("borrow", bi);
-                return bi;
-            }
+            this.rows = raster.getHeight();
+            this.columns = raster.getWidth();
+            this.bitsUsed = bi.getColorModel().getComponentSize(0);
+            this.samples = raster.getNumBands();
+            this.banks = db.getNumBanks();
+            this.dataType = db.getDataType();
+        }
+
+        @Override
+        public int hashCode() {
+            return ((((rows * 31 + columns) * 31 + bitsUsed) * 31 + samples)
+                    * 31 + banks) * 31 + dataType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return rows == other.rows && columns == other.columns
+                    && bitsUsed == other.bitsUsed && samples == other.samples
+                    && banks == other.banks && dataType == other.dataType;
+        }
+
+        @Override
+        public String toString() {
+            return "" + columns + "x" + rows + "x" + samples + " "
+                    + DataBuffer.getDataTypeSize(dataType) + "(" + bitsUsed
+                    + ") bits" + (banks > 1 ? " banded" : "");
+        }
+    }
+
+    private static final class Bucket {
+        final Key key;
+        final ConcurrentLinkedQueue<BufferedImage> images =
+                new ConcurrentLinkedQueue<BufferedImage>();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+        volatile long lastBorrowed;
+
+        Bucket(Key key) {
+            this.key = key;
+        }
+    }
+
+    private Bucket bucketOf(Key key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Bucket prev = buckets.putIfAbsent(key, bucket = new Bucket(key));
+            if (prev != null)
+                bucket = prev;
+        }
+        return bucket;
+    }
+
+    public BufferedImage borrowOrCreateBufferedImage(int rows,
+            int columns, int bitsUsed, int samples, int planarConfiguration,
+            int dataType) {
+        borrowOrCreateCount.incrementAndGet();
+        Bucket bucket = bucketOf(new Key(rows, columns, bitsUsed, samples,
+                planarConfiguration != 0 ? samples : 1, dataType));
+        bucket.lastBorrowed = System.currentTimeMillis();
+        BufferedImage bi = bucket.images.poll();
+        if (bi != null) {
+            poolSize.decrementAndGet();
+            poolMemory.addAndGet(-sizeOf(bi));
+            bucket.hits.incrementAndGet();
+            borrowCount.incrementAndGet();
+            log("borrow", bi);
+            return bi;
         }
+        bucket.misses.incrementAndGet();
         WritableRaster r = Raster.createWritableRaster(getSampleModel(
                 rows, columns, samples, planarConfiguration, dataType), null);
-        BufferedImage bi = new BufferedImage(
+        bi = new BufferedImage(
                 getColorModel(bitsUsed, samples, dataType), r, false, null);
         log("create", bi);
         return bi;
@@ -142,24 +226,36 @@ class BufferedImagePool {
         return biSize;
     }
     
-    public synchronized void returnBufferedImage(BufferedImage bi) {
+    public void returnBufferedImage(BufferedImage bi) {
         long biSize;
         if (maxSize == 0 || (biSize = sizeOf(bi)) > maxMemory) {
             log("trash", bi);
             return;
         }
-        pool.add(bi);
-        poolMemory += biSize;
+        bucketOf(new Key(bi)).images.offer(bi);
+        poolSize.incrementAndGet();
+        poolMemory.addAndGet(biSize);
         log("return", bi);
         resize();
     }
 
     private void resize() {
-        BufferedImage bi;
-        while (pool.size() > maxSize || poolMemory > maxMemory) {
-            bi = pool.remove(0);
-            poolMemory -= sizeOf(bi);
-            log("trash", bi);
+        while (poolSize.get() > maxSize || poolMemory.get() > maxMemory) {
+            Bucket victim = null;
+            for (Bucket bucket : buckets.values()) {
+                if (!bucket.images.isEmpty() && (victim == null
+                        || bucket.lastBorrowed < victim.lastBorrowed))
+                    victim = bucket;
+            }
+            if (victim == null)
+                return;
+            BufferedImage bi = victim.images.poll();
+            if (bi != null) {
+                poolSize.decrementAndGet();
+                poolMemory.addAndGet(-sizeOf(bi));
+                victim.evictions.incrementAndGet();
+                log("trash", bi);
+            }
         }
     }
 
@@ -184,21 +280,48 @@ class BufferedImagePool {
             throw new IllegalArgumentException("maxMemory: " + maxMemory);
         }
         this.maxMemory = maxMemory;
+        resize();
     }
 
     public final int getPoolSize() {
-        return pool.size();
+        return poolSize.get();
     }
 
     public final long getPoolMemory() {
-        return poolMemory;
+        return poolMemory.get();
     }
 
     public float getHitRate() {
-        return borrowCount / borrowOrCreateCount;
+        return (float) borrowCount.get() / borrowOrCreateCount.get();
     }
 
     public void resetHitRate() {
-        borrowOrCreateCount = borrowCount = 0.f;
+        borrowOrCreateCount.set(0);
+        borrowCount.set(0);
+        for (Bucket bucket : buckets.values()) {
+            bucket.hits.set(0);
+            bucket.misses.set(0);
+            bucket.evictions.set(0);
+        }
+    }
+
+    /**
+     * Returns number of pooled BufferedImage objects, hits, misses and
+     * evictions for each bucket of the pool.
+     */
+    public String showStatistics() {
+        List<Bucket> list = new ArrayList<Bucket>(buckets.values());
+        if (list.isEmpty())
+            return "Empty pool";
+        StringBuilder sb = new StringBuilder();
+        for (Bucket bucket : list) {
+            sb.append(bucket.key)
+                .append(": pooled=").append(bucket.images.size())
+                .append(", hits=").append(bucket.hits.get())
+                .append(", misses=").append(bucket.misses.get())
+                .append(", evictions=").append(bucket.evictions.get())
+                .append("\r\n");
+        }
+        return sb.toString();
     }
 }
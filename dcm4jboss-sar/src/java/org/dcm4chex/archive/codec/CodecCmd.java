@@ -186,6 +186,10 @@ public abstract class CodecCmd {
         biPool.resetHitRate();
     }
 
+    public static String showBufferedImagePoolStatistics() {
+        return biPool.showStatistics();
+    }
+
     public final String getTransferSyntaxUID() {
         return tsuid;
     }
@@ -40,6 +40,7 @@
 package org.dcm4chex.archive.dcm;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import javax.management.Notification;
 import javax.management.NotificationListener;
@@ -53,9 +54,11 @@ import org.dcm4che.server.DcmHandler;
 import org.dcm4che.server.Server;
 import org.dcm4che.server.ServerFactory;
 import org.dcm4che.util.DcmProtocol;
+import org.dcm4che.util.ThreadExecutor;
 import org.dcm4chex.archive.mbean.DicomSecurityDelegate;
 import org.dcm4chex.archive.mbean.TLSConfigDelegate;
 import org.dcm4chex.archive.notif.CallingAetChanged;
+import org.dcm4chex.archive.util.ThreadExecutors;
 import org.jboss.system.ServiceMBeanSupport;
 import org.jboss.system.server.ServerImplMBean;
 
@@ -84,6 +87,10 @@ public class DcmServerService extends ServiceMBeanSupport implements Notificatio
     
     private boolean jbossStarted;
 
+    private String threadExecutor = ThreadExecutors.THREADS;
+
+    private ExecutorService executorService;
+
     private DicomSecurityDelegate dicomSecurity =
             new DicomSecurityDelegate(this);
 
@@ -218,6 +225,32 @@ public class DcmServerService extends ServiceMBeanSupport implements Notificatio
     public void setMaxIdleThreads(int max) {
         dcmsrv.setMaxIdleThreads(max);
     }
+
+    public int getSelectorThreads() {
+        return dcmsrv.getSelectorThreads();
+    }
+
+    public void setSelectorThreads(int selectorThreads) {
+        dcmsrv.setSelectorThreads(selectorThreads);
+    }
+
+    public int getMaxWorkerThreads() {
+        return dcmsrv.getMaxWorkerThreads();
+    }
+
+    public void setMaxWorkerThreads(int max) {
+        dcmsrv.setMaxWorkerThreads(max);
+    }
+
+    public String getThreadExecutor() {
+        return threadExecutor;
+    }
+
+    public void setThreadExecutor(String mode) {
+        String trimmed = mode.trim();
+        ThreadExecutors.checkMode(trimmed);
+        this.threadExecutor = trimmed;
+    }
         
     public String[] getCallingAETs() {
         return policy.getCallingAETs();
@@ -280,6 +313,12 @@ public class DcmServerService extends ServiceMBeanSupport implements Notificatio
     }
 
     private void startDicomServer() {
+        ExecutorService es = ThreadExecutors.newExecutorService(
+                threadExecutor, "DcmServer");
+        ThreadExecutor te = ThreadExecutors.toThreadExecutor(es);
+        dcmsrv.setExecutor(te);
+        af.setExecutor(te);
+        executorService = es;
         try {
             dcmsrv.start();
         } catch (IOException x) {
@@ -289,6 +328,14 @@ public class DcmServerService extends ServiceMBeanSupport implements Notificatio
 
     protected void stopService() throws Exception {
         dcmsrv.stop();
+        if (executorService != null) {
+            // the AssociationFactory is shared by all services - stop
+            // passing associations initiated by them to the executor, before
+            // shutting it down
+            af.setExecutor(null);
+            executorService.shutdown();
+            executorService = null;
+        }
     }
     
 }
\ No newline at end of file
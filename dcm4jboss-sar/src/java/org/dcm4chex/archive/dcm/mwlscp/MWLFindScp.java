@@ -105,6 +105,10 @@ public class MWLFindScp extends DcmServiceBase {
         try {
             int pendingStatus = service.findMWLEntries(rqData,
                     fuzzyMatchingOfPN, l, forceLocal);
+            // hold matching items compact until they are sent
+            for (Iterator it = l.iterator(); it.hasNext();) {
+                ((Dataset) it.next()).compact();
+            }
             return new MultiCFindRsp(l, pendingStatus);
         } catch (DcmServiceException dse) {
             throw dse;
@@ -42,9 +42,12 @@ package org.dcm4chex.archive.dcm.qrscp;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -127,7 +130,7 @@ public class MoveTask implements Runnable {
 
     private int completed = 0;
 
-    private boolean canceled = false;
+    private volatile boolean canceled = false;
 
     private boolean moveAssocClosed = false;
     
@@ -196,7 +199,8 @@ public class MoveTask implements Runnable {
         this.retrieveInfo = new RetrieveInfo(service, fileInfo);
         this.remainingIUIDs = retrieveInfo.getAvailableIUIDs();
         this.failedIUIDs = retrieveInfo.getNotAvailableIUIDs();
-        this.failedOnlineRetrieveIUIDs = new HashSet<String>();
+        this.failedOnlineRetrieveIUIDs =
+                Collections.synchronizedSet(new HashSet<String>());
         this.failedNearlineRetrieveIUIDs = new HashSet<String>();
         moveAssoc.addCancelListener(msgID, cancelListener);
         this.pixQueryResults = service.isAdjustPatientIDOnRetrieval()
@@ -218,7 +222,7 @@ public class MoveTask implements Runnable {
         AAssociateRQ rq = asf.newAAssociateRQ();
         rq.setCalledAET(moveDest);
         rq.setCallingAET(moveAssoc.getAssociation().getCalledAET());
-        int maxOpsInvoked = service.getMaxStoreOpsInvoked();
+        int maxOpsInvoked = service.getMaxStoreOpsInvoked(moveDest);
         if (maxOpsInvoked != 1) {
             rq.setAsyncOpsWindow(asf.newAsyncOpsWindow(maxOpsInvoked, 1));
         }
@@ -247,6 +251,10 @@ public class MoveTask implements Runnable {
             throw new IOException("No Presentation Context for Storage accepted by "
                     + moveDest);
         }
+        if (log.isDebugEnabled())
+            log.debug("Negotiated maximum number of operations invoked on "
+                    + "association to " + moveDest + ": "
+                    + a.getMaxOpsInvoked());
         removeInstancesOfUnsupportedStorageSOPClasses(a);
         return storeAssoc;
     }
@@ -381,12 +389,18 @@ public class MoveTask implements Runnable {
     private void retrieveLocal(ActiveAssociation storeAssoc) {
         this.stgCmtActionInfo = DcmObjectFactory.getInstance().newDataset();
         this.refSOPSeq = stgCmtActionInfo.putSQ(Tags.RefSOPSeq);
-        Set<StudyInstanceUIDAndDirPath> studyInfos = 
-                new HashSet<StudyInstanceUIDAndDirPath>();
+        Set<StudyInstanceUIDAndDirPath> studyInfos = Collections.synchronizedSet(
+                new HashSet<StudyInstanceUIDAndDirPath>());
         Association a = storeAssoc.getAssociation();
-        Collection<List<FileInfo>> localFiles = retrieveInfo.getLocalFiles();
-
-        makeCStoreRQs(localFiles, storeAssoc, studyInfos, failedOnlineRetrieveIUIDs);
+        ActiveAssociation[] storeAssocs = openParallelAssociations(storeAssoc);
+        if (storeAssocs.length > 1) {
+            makeCStoreRQsInParallel(partitionBySeries(
+                    retrieveInfo.getLocalFiles(), storeAssocs.length),
+                    storeAssocs, studyInfos);
+        } else {
+            makeCStoreRQs(retrieveInfo.getLocalFiles(), storeAssoc, studyInfos,
+                    failedOnlineRetrieveIUIDs);
+        }
         
         // Failover to nearline retrieve in a single batch for all instances that failed during online retrievals 
         if (!failedOnlineRetrieveIUIDs.isEmpty()) {
@@ -398,9 +412,7 @@ public class MoveTask implements Runnable {
         			if (log.isDebugEnabled()) {
         				log.debug("instance failed online retrieval has no nearline location to fail over to, iuid " + iuid);
         			}
-        			failedIUIDs.add(iuid);
-                    remainingIUIDs.remove(iuid);
-                    --remaining;
+        			failed(iuid);
         		} else {
         			if (log.isDebugEnabled()) {
         				log.debug("retrieve failing over from online to nearline storage, iuid " + iuid);
@@ -418,6 +430,18 @@ public class MoveTask implements Runnable {
         	}
         }
         
+        for (ActiveAssociation assoc : storeAssocs) {
+            release(assoc);
+        }
+        if (!successfulTransferred.isEmpty()) {
+            service.logInstancesSent(moveAssoc.getAssociation(), a, successfulTransferred);
+            service.onInstancesRetrieved(moveCalledAET, moveDest, stgCmtActionInfo);
+        }
+        service.updateStudyAccessTime(studyInfos);
+    }
+
+    private void release(ActiveAssociation storeAssoc) {
+        Association a = storeAssoc.getAssociation();
         if (a.getState() == Association.ASSOCIATION_ESTABLISHED) {
             try {
             	perfMon.assocRelStart(a, Command.C_STORE_RQ);
@@ -439,11 +463,112 @@ public class MoveTask implements Runnable {
             } catch (IOException ignore) {
             }
         }
-        if (!successfulTransferred.isEmpty()) {
-            service.logInstancesSent(moveAssoc.getAssociation(), a, successfulTransferred);
-            service.onInstancesRetrieved(moveCalledAET, moveDest, stgCmtActionInfo);
+    }
+
+    /**
+     * Opens additional associations to the Move Destination, if more than
+     * one parallel association is configured for it and the instances to
+     * retrieve belong to more than one Series. Returns the opened
+     * associations, with the already opened association as first element.
+     */
+    private ActiveAssociation[] openParallelAssociations(
+            ActiveAssociation storeAssoc) {
+        int n = Math.min(service.getParallelStoreAssociations(moveDest),
+                countSeries(retrieveInfo.getLocalFiles()));
+        ArrayList<ActiveAssociation> assocs = new ArrayList<ActiveAssociation>(n);
+        assocs.add(storeAssoc);
+        while (assocs.size() < n && !canceled) {
+            try {
+                assocs.add(openAssociation());
+            } catch (Exception e) {
+                log.warn("Failed to open additional association to "
+                        + moveDest + " - retrieve over " + assocs.size()
+                        + " association(s)", e);
+                break;
+            }
+        }
+        if (assocs.size() > 1 && log.isDebugEnabled())
+            log.debug("Retrieve to " + moveDest + " over " + assocs.size()
+                    + " parallel associations");
+        return assocs.toArray(new ActiveAssociation[assocs.size()]);
+    }
+
+    private static int countSeries(Collection<List<FileInfo>> localFiles) {
+        HashSet<String> seriesIUIDs = new HashSet<String>();
+        for (List<FileInfo> list : localFiles) {
+            seriesIUIDs.add(list.get(0).seriesIUID);
+        }
+        return seriesIUIDs.size();
+    }
+
+    /**
+     * Distributes the instances to retrieve over n partitions, keeping
+     * instances of one Series together. Largest Series are assigned first,
+     * each to the partition with the fewest instances so far.
+     */
+    private static List<Collection<List<FileInfo>>> partitionBySeries(
+            Collection<List<FileInfo>> localFiles, int n) {
+        LinkedHashMap<String, List<List<FileInfo>>> bySeries =
+                new LinkedHashMap<String, List<List<FileInfo>>>();
+        for (List<FileInfo> list : localFiles) {
+            String seriesIUID = list.get(0).seriesIUID;
+            List<List<FileInfo>> series = bySeries.get(seriesIUID);
+            if (series == null) {
+                series = new ArrayList<List<FileInfo>>();
+                bySeries.put(seriesIUID, series);
+            }
+            series.add(list);
+        }
+        ArrayList<List<List<FileInfo>>> seriesList =
+                new ArrayList<List<List<FileInfo>>>(bySeries.values());
+        Collections.sort(seriesList, new Comparator<List<List<FileInfo>>>() {
+            public int compare(List<List<FileInfo>> o1,
+                    List<List<FileInfo>> o2) {
+                return o2.size() - o1.size();
+            }
+        });
+        ArrayList<Collection<List<FileInfo>>> parts =
+                new ArrayList<Collection<List<FileInfo>>>(n);
+        for (int i = 0; i < n; i++) {
+            parts.add(new ArrayList<List<FileInfo>>());
+        }
+        for (List<List<FileInfo>> series : seriesList) {
+            Collection<List<FileInfo>> min = parts.get(0);
+            for (Collection<List<FileInfo>> part : parts) {
+                if (part.size() < min.size())
+                    min = part;
+            }
+            min.addAll(series);
+        }
+        return parts;
+    }
+
+    private void makeCStoreRQsInParallel(
+            List<Collection<List<FileInfo>>> parts,
+            ActiveAssociation[] storeAssocs,
+            final Set<StudyInstanceUIDAndDirPath> studyInfos) {
+        Thread[] threads = new Thread[storeAssocs.length - 1];
+        for (int i = 0; i < threads.length; i++) {
+            final Collection<List<FileInfo>> part = parts.get(i + 1);
+            final ActiveAssociation storeAssoc = storeAssocs[i + 1];
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    makeCStoreRQs(part, storeAssoc, studyInfos,
+                            failedOnlineRetrieveIUIDs);
+                }
+            }, "MoveTask-" + moveDest + "-" + (i + 2));
+            threads[i].start();
+        }
+        makeCStoreRQs(parts.get(0), storeAssocs[0], studyInfos,
+                failedOnlineRetrieveIUIDs);
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for parallel retrieve to "
+                        + moveDest, e);
+            }
         }
-        service.updateStudyAccessTime(studyInfos);
     }
 
     private void makeCStoreRQs(Collection<List<FileInfo>> localFiles, ActiveAssociation storeAssoc, 
@@ -454,25 +579,7 @@ public class MoveTask implements Runnable {
             DimseListener storeScpListener = new DimseListener() {
 
                 public void dimseReceived(Association assoc, Dimse dimse) {
-                    switch (dimse.getCommand().getStatus()) {
-                    case Status.Success:
-                        ++completed;
-                        updateStgCmtActionInfo(fileInfo);
-                        successfulTransferred.add(fileInfo);
-                        break;
-                    case Status.CoercionOfDataElements:
-                    case Status.DataSetDoesNotMatchSOPClassWarning:
-                    case Status.ElementsDiscarded:
-                        ++warnings;
-                        updateStgCmtActionInfo(fileInfo);
-                        successfulTransferred.add(fileInfo);
-                        break;
-                    default:
-                        failedIUIDs.add(iuid);
-                        break;
-                    }
-                    remainingIUIDs.remove(iuid);
-                    --remaining;
+                    storeRspReceived(fileInfo, dimse.getCommand().getStatus());
                 }
             };
             
@@ -486,9 +593,7 @@ public class MoveTask implements Runnable {
             	log.error(frfe.getMessage(), frfe);
             	
             	if (fileInfo.availability == Availability.NEARLINE) {
-            		failedIUIDs.add(iuid);
-                    remainingIUIDs.remove(iuid);
-                    --remaining;
+            		failed(iuid);
             	} else {
             		// failed online retrieve, add to list for fail over to nearline later
             		failedStorageRetrieveIUIDs.add(iuid);
@@ -496,9 +601,7 @@ public class MoveTask implements Runnable {
             	continue;
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
-                failedIUIDs.add(iuid);
-                remainingIUIDs.remove(iuid);
-                --remaining;
+                failed(iuid);
                 continue;
             }
             
@@ -523,6 +626,34 @@ public class MoveTask implements Runnable {
         }   
     }
 
+    private synchronized void storeRspReceived(FileInfo fileInfo, int status) {
+        switch (status) {
+        case Status.Success:
+            ++completed;
+            updateStgCmtActionInfo(fileInfo);
+            successfulTransferred.add(fileInfo);
+            break;
+        case Status.CoercionOfDataElements:
+        case Status.DataSetDoesNotMatchSOPClassWarning:
+        case Status.ElementsDiscarded:
+            ++warnings;
+            updateStgCmtActionInfo(fileInfo);
+            successfulTransferred.add(fileInfo);
+            break;
+        default:
+            failedIUIDs.add(fileInfo.sopIUID);
+            break;
+        }
+        remainingIUIDs.remove(fileInfo.sopIUID);
+        --remaining;
+    }
+
+    private synchronized void failed(String iuid) {
+        failedIUIDs.add(iuid);
+        remainingIUIDs.remove(iuid);
+        --remaining;
+    }
+
     private void updateStgCmtActionInfo(FileInfo fileInfo) {
         Dataset item = refSOPSeq.addNewItem();
         item.putUI(Tags.RefSOPClassUID, fileInfo.sopCUID);
@@ -560,7 +691,7 @@ public class MoveTask implements Runnable {
         }
     }
 
-    private Command makeMoveRsp(int status) {
+    private synchronized Command makeMoveRsp(int status) {
         Command rspCmd = DcmObjectFactory.getInstance().newCommand();
         rspCmd.initCMoveRSP(msgID, sopClassUID, status);
         if (remaining > 0) {
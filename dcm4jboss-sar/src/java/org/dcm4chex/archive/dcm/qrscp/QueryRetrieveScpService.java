@@ -108,6 +108,7 @@ import org.dcm4chex.archive.ejb.interfaces.AEDTO;
 import org.dcm4chex.archive.ejb.interfaces.FileDTO;
 import org.dcm4chex.archive.ejb.interfaces.FileSystemMgt2;
 import org.dcm4chex.archive.ejb.interfaces.FileSystemMgt2Home;
+import org.dcm4chex.archive.ejb.jdbc.BaseDSQueryCmd;
 import org.dcm4chex.archive.ejb.jdbc.FileInfo;
 import org.dcm4chex.archive.ejb.jdbc.QueryCmd;
 import org.dcm4chex.archive.ejb.jdbc.QueryExternalRetrieveAETsOfSeriesCmd;
@@ -118,6 +119,8 @@ import org.dcm4chex.archive.exceptions.NoPresContextException;
 import org.dcm4chex.archive.exceptions.UnknownAETException;
 import org.dcm4chex.archive.mbean.DicomSecurityDelegate;
 import org.dcm4chex.archive.mbean.TLSConfigDelegate;
+import org.dcm4chex.archive.perf.PerfCounterEnum;
+import org.dcm4chex.archive.perf.PerfMetrics;
 import org.dcm4chex.archive.perf.PerfMonDelegate;
 import org.dcm4chex.archive.perf.PerfPropertyEnum;
 import org.dcm4chex.archive.util.DatasetUpdater;
@@ -142,6 +145,12 @@ public class QueryRetrieveScpService extends AbstractScpService {
 
     private static final String[] EMPTY = {};
 
+    private static final int[] PERF_COUNTERS = {
+            PerfCounterEnum.C_FIND_SCP_QUERY_DB,
+            PerfCounterEnum.C_FIND_SCP_RESP_OUT,
+            PerfCounterEnum.C_MOVE_SCP_QUERY_DB,
+            PerfCounterEnum.C_STORE_SCU_OBJ_OUT };
+
     private static final String SEND_BUFFER = "SEND_BUFFER";
 
     public static final String NEW_LINE = System.getProperty("line.separator", "\n");
@@ -237,6 +246,12 @@ public class QueryRetrieveScpService extends AbstractScpService {
 
     private int maxStoreOpsInvoked = 0;
 
+    private Map<String, Integer> maxStoreOpsInvokedByAET =
+            new HashMap<String, Integer>();
+
+    private Map<String, Integer> parallelStoreAssocs =
+            new HashMap<String, Integer>();
+
     private FindScp dicomFindScp = null;
 
     private FindScp tianiFindScp = new FindScp(this, false);
@@ -359,6 +374,14 @@ public class QueryRetrieveScpService extends AbstractScpService {
         tlsConfig.setTcpNoDelay(on);
     }
 
+    public final boolean isDirectTransfer() {
+        return tlsConfig.isSocketChannel();
+    }
+
+    public final void setDirectTransfer(boolean directTransfer) {
+        tlsConfig.setSocketChannel(directTransfer);
+    }
+
     public final ObjectName getStgCmtScuScpName() {
         return stgCmtScuScpName;
     }
@@ -571,6 +594,24 @@ public class QueryRetrieveScpService extends AbstractScpService {
         QueryCmd.cacheSeriesAttrsOnImageLevelQuery = enable;
     }
 
+    public final boolean isDecodeOnlyReturnKeysOnQuery() {
+        return BaseDSQueryCmd.decodeOnlyReturnKeys;
+    }
+
+    public final void setDecodeOnlyReturnKeysOnQuery(boolean enable) {
+        BaseDSQueryCmd.decodeOnlyReturnKeys = enable;
+    }
+
+    public final int getMaxPatientDemographicsToCheck() {
+        return QueryCmd.maxPatientDemographicsToCheck;
+    }
+
+    public final void setMaxPatientDemographicsToCheck(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("max: " + max);
+        QueryCmd.maxPatientDemographicsToCheck = max;
+    }
+
     public final boolean getAccessBlobAsLongVarBinaryOnQuery() {
         return QueryCmd.blobAccessType == Types.LONGVARBINARY;
     }
@@ -721,6 +762,64 @@ public class QueryRetrieveScpService extends AbstractScpService {
         this.maxStoreOpsInvoked = maxStoreOpsInvoked;
     }
 
+    public String getMaxStoreOpsInvokedByAET() {
+        return intByAETToString(maxStoreOpsInvokedByAET);
+    }
+
+    public void setMaxStoreOpsInvokedByAET(String s) {
+        maxStoreOpsInvokedByAET = parseIntByAET(s, 0,
+                "maximum number of operations");
+    }
+
+    int getMaxStoreOpsInvoked(String moveDest) {
+        Integer n = maxStoreOpsInvokedByAET.get(moveDest);
+        return n != null ? n.intValue() : maxStoreOpsInvoked;
+    }
+
+    public String getParallelStoreAssociations() {
+        return intByAETToString(parallelStoreAssocs);
+    }
+
+    public void setParallelStoreAssociations(String s) {
+        parallelStoreAssocs = parseIntByAET(s, 1, "number of associations");
+    }
+
+    int getParallelStoreAssociations(String moveDest) {
+        Integer n = parallelStoreAssocs.get(moveDest);
+        return n != null ? n.intValue() : 1;
+    }
+
+    private static String intByAETToString(Map<String, Integer> intByAET) {
+        if (intByAET.isEmpty())
+            return NONE;
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, Integer> entry : intByAET.entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append(NEW_LINE);
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Integer> parseIntByAET(String s, int min,
+            String name) {
+        HashMap<String, Integer> newMap = new HashMap<String, Integer>();
+        s = s.trim();
+        if (!NONE.equals(s)) {
+            StringTokenizer st = new StringTokenizer(s, " \t\n\r;");
+            int pos;
+            for (String tk ; st.hasMoreElements() ;) {
+                tk = st.nextToken();
+                pos = tk.indexOf('=');
+                if (pos == -1)
+                    throw new IllegalArgumentException("Wrong format: must be <AET>=<" + name + ">[<NewLine>...]");
+                int n = Integer.parseInt(tk.substring(pos + 1));
+                if (n < min)
+                    throw new IllegalArgumentException(name + " must be >= " + min + ": " + tk);
+                newMap.put(tk.substring(0, pos), n);
+            }
+        }
+        return newMap;
+    }
+
     public final boolean isSendPendingCMoveRSP() {
         return sendPendingCMoveRSP;
     }
@@ -1043,6 +1142,14 @@ public class QueryRetrieveScpService extends AbstractScpService {
         this.autoUpdateAttributesBeforeDate = new SimpleDateFormat(DATE_TIME_FORMAT).parse(autoUpdateAttributesBeforeDate);
     }
 
+    public String showPerfMetrics() {
+        return PerfMetrics.getInstance().toString(PERF_COUNTERS);
+    }
+
+    public void resetPerfMetrics() {
+        PerfMetrics.getInstance().reset(PERF_COUNTERS);
+    }
+
     public final ObjectName getPerfMonServiceName() {
 		return dicomFindScp.getPerfMonServiceName();
 	}
@@ -1504,6 +1611,7 @@ public class QueryRetrieveScpService extends AbstractScpService {
         DatasetUpdater datasetUpdater = createDatasetUpdater(assoc);
         FileDataSource ds = createFileDataSource(f, mergeAttrs, buf, datasetUpdater);
         ds.setWithoutPixeldata(isWithoutPixelData(dest));
+        ds.setDirectTransfer(isDirectTransfer());
         ds.setPatchJpegLS(patchJpegLS);
         ds.setPatchJpegLSImplCUID(patchJpegLSImplCUID);
         ds.setPatchJpegLSNewImplCUID(patchJpegLSNewImplCUID);
@@ -1838,8 +1946,12 @@ public class QueryRetrieveScpService extends AbstractScpService {
         return null;
     }
 
+    /**
+     * Submits all files on tar file systems at once to the TAR Retriever
+     * services, so fetches and extractions of different tars overlap.
+     */
     void prefetchTars(Collection<List<FileInfo>> localFiles) throws Exception {
-        HashSet<String> tarPaths = null;
+        LinkedHashMap<String, List<String>> fileIDsByFsID = null;
         for (List<FileInfo> list : localFiles) {
             FileInfo fileInfo = list.get(0);
             String fsID = fileInfo.basedir;
@@ -1847,23 +1959,46 @@ public class QueryRetrieveScpService extends AbstractScpService {
                 continue;
             }
             String fileID = fileInfo.fileID;
-            int tarEnd = fileID.indexOf('!');
-            if (tarEnd == -1) {
+            if (fileID.indexOf('!') == -1) {
                 // invalid fileID will be handled by retrieveLocal()
                 continue;
             }
-            String tarPath = fileID.substring(0, tarEnd);
-            if (tarPaths == null) {
-                tarPaths = new HashSet<String>(8);
+            if (fileIDsByFsID == null) {
+                fileIDsByFsID = new LinkedHashMap<String, List<String>>();
             }
-            if (tarPaths.add(tarPath)) {
-                try {
-                    retrieveFile(fsID, fileID);
-                } catch (Exception e) {
-                    throw new Exception("Failed to retrieve TAR " + tarPath
-                            + " from file system " + fsID, e);
-                }
-             }
+            List<String> fileIDs = fileIDsByFsID.get(fsID);
+            if (fileIDs == null) {
+                fileIDsByFsID.put(fsID, fileIDs = new ArrayList<String>());
+            }
+            fileIDs.add(fileID);
+        }
+        if (fileIDsByFsID == null) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> entry : fileIDsByFsID.entrySet()) {
+            String fsID = entry.getKey();
+            List<String> fileIDs = entry.getValue();
+            try {
+                prefetchFiles(fsID,
+                        fileIDs.toArray(new String[fileIDs.size()]));
+            } catch (Exception e) {
+                throw new Exception("Failed to retrieve TARs of "
+                        + fileIDs.size() + " files from file system " + fsID, e);
+            }
+        }
+    }
+
+    private void prefetchFiles(String fsID, String[] fileIDs) throws Exception {
+        try {
+            server.invoke(getRetrieverNameForProtocol(fsID), "prefetchFiles",
+                    new Object[] { fsID, fileIDs }, new String[] {
+                            String.class.getName(), String[].class.getName() });
+        } catch (InstanceNotFoundException e) {
+            throw new ConfigurationException(e.getMessage(), e);
+        } catch (MBeanException e) {
+            throw e.getTargetException();
+        } catch (ReflectionException e) {
+            throw new ConfigurationException(e.getMessage(), e);
         }
     }
 
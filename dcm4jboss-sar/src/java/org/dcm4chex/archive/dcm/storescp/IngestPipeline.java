@@ -0,0 +1,301 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.dcm.storescp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Decouples the DB registration of received objects from the association
+ * threads of the Storage SCP. Registrations are queued to a fixed number of
+ * registration workers, each draining its bounded queue in batches. All
+ * registrations of one association are processed by the same worker, so
+ * their order is preserved.
+ * <p>
+ * Consecutive {@link BatchRegistration}s of one batch with equal
+ * {@link BatchRegistration#batchKey()} are executed together by
+ * {@link BatchRegistration#executeBatch(List)}; the first of them is
+ * executed alone before, so it can create records shared by the others.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class IngestPipeline {
+
+    static abstract class Registration {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Throwable failure;
+
+        protected abstract void execute() throws Exception;
+
+        protected void failed(Throwable e) {
+            // default no-op behaviour, failure is returned by await()
+        }
+
+        final void run() {
+            try {
+                execute();
+            } catch (Throwable e) {
+                failure = e;
+                failed(e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        final Throwable await() throws InterruptedException {
+            done.await();
+            return failure;
+        }
+    }
+
+    /**
+     * Registration, which can be executed together with other registrations
+     * of the same batch key.
+     */
+    static abstract class BatchRegistration extends Registration {
+
+        /**
+         * Returns the key of registrations, which can be executed together
+         * with this registration by {@link #executeBatch(List)}, or
+         * <code>null</code> if this registration has to be executed alone.
+         */
+        protected abstract Object batchKey();
+
+        /**
+         * Executes this and the other registrations of the batch, which all
+         * have the same batch key as this registration, together. If it
+         * fails, each registration is executed alone by {@link #execute()}.
+         */
+        protected abstract void executeBatch(List<Registration> batch)
+                throws Exception;
+    }
+
+    private static final Registration STOP = new Registration() {
+        protected void execute() {}
+    };
+
+    private final Logger log;
+
+    private final Worker[] workers;
+
+    private final int queueSize;
+
+    private final int batchSize;
+
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private boolean closed;
+
+    IngestPipeline(Logger log, int numWorkers, int queueSize, int batchSize) {
+        if (numWorkers <= 0)
+            throw new IllegalArgumentException("numWorkers: " + numWorkers);
+        if (queueSize <= 0)
+            throw new IllegalArgumentException("queueSize: " + queueSize);
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize: " + batchSize);
+        this.log = log;
+        this.queueSize = queueSize;
+        this.batchSize = batchSize;
+        this.workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Worker("IngestPipeline-" + (i + 1), queueSize);
+            workers[i].start();
+        }
+    }
+
+    final int getNumberOfWorkers() {
+        return workers.length;
+    }
+
+    final int getQueueSize() {
+        return queueSize;
+    }
+
+    final int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns number of registrations waiting for processing by all workers.
+     */
+    int getPending() {
+        int n = 0;
+        for (Worker w : workers)
+            n += w.queue.size();
+        return n;
+    }
+
+    /**
+     * Queues registration for the specified association. Blocks if the
+     * queue of the responsible worker is full.
+     * 
+     * @return <code>false</code>, if the registration was not queued,
+     *         because the pipeline was already shut down
+     */
+    boolean submit(Object assocKey, Registration r)
+            throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if (closed)
+                return false;
+            workerFor(assocKey).queue.put(r);
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until all registrations previously submitted for the specified
+     * association are processed.
+     */
+    void flush(Object assocKey) throws InterruptedException {
+        Registration barrier = new Registration() {
+            protected void execute() {}
+        };
+        if (submit(assocKey, barrier))
+            barrier.await();
+        else
+            awaitTermination();
+    }
+
+    /**
+     * Rejects further registrations, processes all queued registrations and
+     * terminates the workers.
+     */
+    void shutdown() throws InterruptedException {
+        closeLock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                for (Worker w : workers)
+                    w.queue.put(STOP);
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        awaitTermination();
+    }
+
+    private void awaitTermination() throws InterruptedException {
+        for (Worker w : workers)
+            w.join();
+    }
+
+    private Worker workerFor(Object assocKey) {
+        return workers[(assocKey.hashCode() & 0x7fffffff) % workers.length];
+    }
+
+    private void runBatch(List<Registration> batch) {
+        if (batch.isEmpty())
+            return;
+        Registration first = batch.get(0);
+        if (batch.size() > 1) {
+            try {
+                ((BatchRegistration) first).executeBatch(batch);
+                for (Registration r : batch)
+                    r.done.countDown();
+                return;
+            } catch (Throwable e) {
+                log.warn("Failed to register " + batch.size()
+                        + " objects in one batch - register each object:", e);
+            }
+        }
+        for (Registration r : batch)
+            r.run();
+    }
+
+    private class Worker extends Thread {
+
+        final BlockingQueue<Registration> queue;
+
+        Worker(String name, int queueSize) {
+            super(name);
+            this.queue = new ArrayBlockingQueue<Registration>(queueSize);
+            setDaemon(true);
+        }
+
+        public void run() {
+            List<Registration> batch = new ArrayList<Registration>(batchSize);
+            List<Registration> run = new ArrayList<Registration>(batchSize);
+            try {
+                for (;;) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+                    if (log.isDebugEnabled())
+                        log.debug(getName() + ": process batch of "
+                                + batch.size() + " registrations");
+                    Object runKey = null;
+                    for (Registration r : batch) {
+                        Object key = r instanceof BatchRegistration
+                                ? ((BatchRegistration) r).batchKey()
+                                : null;
+                        if (key == null || !key.equals(runKey)) {
+                            runBatch(run);
+                            run.clear();
+                            if (r == STOP)
+                                return;
+                            // first registration of a run is executed alone
+                            r.run();
+                            runKey = key;
+                        } else {
+                            run.add(r);
+                        }
+                    }
+                    runBatch(run);
+                    run.clear();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                log.warn(getName() + " interrupted - "
+                        + queue.size() + " pending registrations discarded");
+            }
+        }
+    }
+}
@@ -57,9 +57,15 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.CreateException;
 import javax.ejb.FinderException;
@@ -155,6 +161,10 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
 
     private static final String ASSOC_START_TIME = "ASSOC_START_TIME";
 
+    public static final String ACK_AFTER_FSYNC = "FSYNC";
+
+    public static final String ACK_AFTER_DB_COMMIT = "DB_COMMIT";
+
 //    private static final String SOP_IUIDS = "SOP_IUIDS";
 
     protected final StoreScpService service;
@@ -218,6 +228,25 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
 
     private volatile Executor syncFileExecutor;
 
+    private int ingestPipelineWorkers = 0;
+
+    private int ingestPipelineQueueSize = 1000;
+
+    private int ingestPipelineBatchSize = 50;
+
+    private String ingestAckPolicy = ACK_AFTER_FSYNC;
+
+    private volatile IngestPipeline ingestPipeline;
+
+    private final Object ingestPipelineLock = new Object();
+
+    private long ingestRecoveryInterval = 60000L;
+
+    private ScheduledExecutorService ingestRecoveryExecutor;
+
+    private final Map<String, FileDTO> ingestRecoveryPending =
+            new ConcurrentHashMap<String, FileDTO>();
+
     public StoreScp(StoreScpService service) {
         this.service = service;
         this.log = service.getLog();
@@ -475,6 +504,190 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
         this.checkIncorrectWorklistEntry = checkIncorrectWorklistEntry;
     }
 
+    public final int getIngestPipelineWorkers() {
+        return ingestPipelineWorkers;
+    }
+
+    public final void setIngestPipelineWorkers(int workers) {
+        if (workers < 0)
+            throw new IllegalArgumentException("workers: " + workers);
+        this.ingestPipelineWorkers = workers;
+        stopIngestPipeline();
+    }
+
+    public final int getIngestPipelineQueueSize() {
+        return ingestPipelineQueueSize;
+    }
+
+    public final void setIngestPipelineQueueSize(int queueSize) {
+        if (queueSize <= 0)
+            throw new IllegalArgumentException("queueSize: " + queueSize);
+        this.ingestPipelineQueueSize = queueSize;
+        stopIngestPipeline();
+    }
+
+    public final int getIngestPipelineBatchSize() {
+        return ingestPipelineBatchSize;
+    }
+
+    public final void setIngestPipelineBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize: " + batchSize);
+        this.ingestPipelineBatchSize = batchSize;
+        stopIngestPipeline();
+    }
+
+    public final String getIngestAckPolicy() {
+        return ingestAckPolicy;
+    }
+
+    public final void setIngestAckPolicy(String policy) {
+        String s = policy.trim().toUpperCase();
+        if (!s.equals(ACK_AFTER_FSYNC) && !s.equals(ACK_AFTER_DB_COMMIT))
+            throw new IllegalArgumentException("policy: " + policy);
+        this.ingestAckPolicy = s;
+    }
+
+    final boolean isAckAfterDBCommit() {
+        return ingestAckPolicy.equals(ACK_AFTER_DB_COMMIT);
+    }
+
+    public final int getIngestPipelinePending() {
+        IngestPipeline pipeline = ingestPipeline;
+        return pipeline != null ? pipeline.getPending() : 0;
+    }
+
+    public final long getIngestRecoveryInterval() {
+        return ingestRecoveryInterval;
+    }
+
+    public final void setIngestRecoveryInterval(long interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("interval: " + interval);
+        this.ingestRecoveryInterval = interval;
+    }
+
+    public final int getIngestRecoveryPending() {
+        return ingestRecoveryPending.size();
+    }
+
+    /**
+     * Returns the current ingest pipeline, or <code>null</code> if DB
+     * registrations are not decoupled. Waits for the termination of a
+     * previous pipeline, which is shut down, so registrations of one
+     * association are processed in order of receipt.
+     */
+    private IngestPipeline ingestPipeline() {
+        IngestPipeline result = ingestPipeline;
+        if (result == null) {
+            synchronized (ingestPipelineLock) {
+                result = ingestPipeline;
+                if (result == null && ingestPipelineWorkers > 0) {
+                    ingestPipeline = result = new IngestPipeline(log,
+                            ingestPipelineWorkers, ingestPipelineQueueSize,
+                            ingestPipelineBatchSize);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits until all queued DB registrations are processed and terminates
+     * the registration workers. Invoked on service stop and on change of the
+     * pipeline configuration; a new pipeline is started on next C-STORE.
+     */
+    void stopIngestPipeline() {
+        synchronized (ingestPipelineLock) {
+            IngestPipeline pipeline = ingestPipeline;
+            if (pipeline != null) {
+                ingestPipeline = null;
+                try {
+                    pipeline.shutdown();
+                } catch (InterruptedException e) {
+                    log.warn("Shutdown of ingest pipeline interrupted:", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops retrying DB registrations, which failed after the C-STORE RSP
+     * was sent. Invoked on service stop.
+     */
+    void stopIngestRecovery() {
+        synchronized (ingestPipelineLock) {
+            if (ingestRecoveryExecutor != null) {
+                ingestRecoveryExecutor.shutdownNow();
+                ingestRecoveryExecutor = null;
+            }
+        }
+        for (FileDTO dto : ingestRecoveryPending.values()) {
+            log.error("Received object not registered in DB - keep file "
+                    + FileUtils.toFile(dto.getDirectoryPath(),
+                            dto.getFilePath()));
+        }
+        ingestRecoveryPending.clear();
+    }
+
+    private ScheduledExecutorService ingestRecoveryExecutor() {
+        synchronized (ingestPipelineLock) {
+            if (ingestRecoveryExecutor == null) {
+                ingestRecoveryExecutor = Executors
+                        .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "IngestRecovery");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+            }
+            return ingestRecoveryExecutor;
+        }
+    }
+
+    /**
+     * Retries the DB registration of a received object, which failed after
+     * the C-STORE RSP was sent, by importing its file in intervals of
+     * <code>IngestRecoveryInterval</code> until it succeeds.
+     */
+    private void scheduleRecovery(final FileDTO dto, final Dataset ds) {
+        final String key = dto.getDirectoryPath() + '/' + dto.getFilePath();
+        ingestRecoveryPending.put(key, dto);
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    service.importFile(dto, ds, null, false, false);
+                    ingestRecoveryPending.remove(key);
+                    log.info("Registered received Instance[uid="
+                            + dto.getSopInstanceUID() + "] of file " + key
+                            + " in DB");
+                } catch (Exception e) {
+                    log.warn("Failed to register received Instance[uid="
+                            + dto.getSopInstanceUID() + "] of file " + key
+                            + " - retry in " + ingestRecoveryInterval
+                            + "ms:", e);
+                    schedule(this);
+                }
+            }
+        };
+        schedule(task);
+    }
+
+    private void schedule(Runnable recovery) {
+        try {
+            ingestRecoveryExecutor().schedule(recovery,
+                    ingestRecoveryInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // service stopped - pending files logged by stopIngestRecovery()
+        }
+    }
+
+    private boolean fsyncBeforeCStoreRSP() {
+        return service.isSyncFileBeforeCStoreRSP()
+                || ingestPipelineWorkers > 0 && !isAckAfterDBCommit();
+    }
+
     protected void doCStore(ActiveAssociation activeAssoc, Dimse rq,
             Command rspCmd) throws IOException, DcmServiceException {
         InputStream in = rq.getDataAsStream();
@@ -707,73 +920,20 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
                 service.postCoercionProcessing(ds);
             }
             checkPatientIdAndName(ds, originalCallingAET);
-            Storage store = getStorage(assoc);
-            SeriesStored seriesStored = handleSeriesStored(assoc, store, ds);
-            boolean newSeries = seriesStored == null;
-            boolean newStudy = false;
-            boolean fsSwitched = false;
-            String seriuid = ds.getString(Tags.SeriesInstanceUID);
-            if (newSeries) {
-                Dataset mwlFilter = service.getCoercionAttributesFor(callingAET,
-                        STORE2MWL_XSL, ds, assoc);
-                if (mwlFilter != null) {
-                    coerced = merge(coerced, mergeMatchingMWLItem(assoc, ds,
-                            seriuid, mwlFilter));
-                }
-                if (!originalCallingAET.equals(calledAET)) {
-                    service.ignorePatientIDForUnscheduled(ds,
-                            Tags.RequestAttributesSeq, originalCallingAET);
-                     service.ignorePatientIDForUnscheduled(ds,
-                             Tags.RequestAttributesSeq, originalCallingAET);
-                     service.supplementIssuerOfPatientID(ds, assoc, 
-                             originalCallingAET, false);
-                     service.supplementIssuerOfAccessionNumber(ds, assoc,
-                             originalCallingAET, false);
-                    service.supplementInstitutionalData(ds, assoc, originalCallingAET);
-                    service.generatePatientID(ds, ds, originalCallingAET);
-                }
-                newStudy = !store.studyExists(ds.getString(Tags.StudyInstanceUID));
+            IngestPipeline pipeline = ingestPipeline();
+            if (pipeline != null) {
+                coerced = submitRegistration(pipeline,
+                        new InstanceRegistration(activeAssoc, rq, ds, coerced,
+                        callingAET, originalCallingAET, calledAET, fsDTO, file,
+                        filePath, md5sum, duplicates,
+                        dontChangeReceivedStatus[0], retrieveAET, availability));
             } else {
-                fsSwitched = fsDTO.getFileSystemDTOCreated() > ((Long)assoc.getProperty(ASSOC_START_TIME));
-            }
-            perfMon.start(activeAssoc, rq,
-                    PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
-            long fileLength = file != null ? file.length() : 0L;
-            long fspk = fsDTO != null ? fsDTO.getPk() : -1L;
-            boolean clearExternalRetrieveAET = hasDifferentMd5(duplicates, md5sum);
-            Dataset coercedElements;
-            try {
-                coercedElements = updateDB(store, ds, callingAET, fspk, filePath, fileLength, md5sum, md5sum,
-                        0, newSeries || fsSwitched, clearExternalRetrieveAET, dontChangeReceivedStatus[0]);
-            } catch (NonUniquePatientIDException e) {
-                service.coercePatientID(ds);
-                coerced.putLO(Tags.PatientID, ds.getString(Tags.PatientID));
-                coerced.putLO(Tags.IssuerOfPatientID,
-                        ds.getString(Tags.IssuerOfPatientID));
-                coercedElements = updateDB(store, ds, callingAET, fspk, filePath, fileLength, md5sum, md5sum, 
-                        0, newSeries || fsSwitched, clearExternalRetrieveAET, dontChangeReceivedStatus[0]);
-            }
-            if(newSeries) {
-               seriesStored = initSeriesStored(ds, originalCallingAET, retrieveAET);
-               assoc.putProperty(SERIES_STORED, seriesStored);
-               if (newStudy) {
-                   service.sendNewStudyNotification(ds);
-               }
+                coerced = registerInstance(activeAssoc, rq, ds, coerced,
+                        callingAET, originalCallingAET, calledAET, fsDTO, file,
+                        filePath, md5sum, duplicates,
+                        dontChangeReceivedStatus[0], retrieveAET, availability);
             }
-            appendInstanceToSeriesStored(seriesStored, ds, retrieveAET, availability);
-            coerced = merge(coerced, coercedElements);
-            try {
-                logCoercion(ds, coerced);
-            } catch (Exception e) {
-                log.warn("Failed to generate audit log for attribute coercion:", e);
-            }
-            ds.putAll(coercedElements, Dataset.MERGE_ITEMS);
-            
-            perfMon.setProperty(activeAssoc, rq, PerfPropertyEnum.REQ_DATASET,
-                    ds);
-            perfMon.stop(activeAssoc, rq,
-                    PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
-            if (coerced.isEmpty()
+            if (coerced == null || coerced.isEmpty()
                     || !contains(coerceWarnCallingAETs, callingAET)) {
                 rspCmd.putUS(Tags.Status, Status.Success);
             } else {
@@ -785,7 +945,6 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
                 rspCmd.putAT(Tags.OffendingElement, coercedTags);
                 rspCmd.putUS(Tags.Status, Status.CoercionOfDataElements);
             }
-            service.postProcess(ds);
         } catch (DcmServiceException e) {
             log.warn(e.getMessage(), e);
             if (!dcm4cheeURIReferenced) {
@@ -801,6 +960,277 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
         }
     }
 
+    private Dataset submitRegistration(IngestPipeline pipeline,
+            InstanceRegistration r) throws Exception {
+        while (!pipeline.submit(r.activeAssoc.getAssociation(), r)) {
+            // pipeline was shut down by change of its configuration
+            pipeline = ingestPipeline();
+            if (pipeline == null) {
+                r.execute();
+                return r.result;
+            }
+        }
+        if (!r.ackAfterDBCommit) {
+            return null;
+        }
+        Throwable e = r.await();
+        if (e != null) {
+            if (e instanceof Exception)
+                throw (Exception) e;
+            throw (Error) e;
+        }
+        return r.result;
+    }
+
+    private class InstanceRegistration
+            extends IngestPipeline.BatchRegistration {
+
+        final ActiveAssociation activeAssoc;
+        final Dimse rq;
+        final Dataset ds;
+        final Dataset coerced;
+        final String callingAET;
+        final String originalCallingAET;
+        final String calledAET;
+        final FileSystemDTO fsDTO;
+        final File file;
+        final String filePath;
+        final byte[] md5sum;
+        final List duplicates;
+        final boolean dontChangeReceivedStatus;
+        final String retrieveAET;
+        final String availability;
+        final boolean ackAfterDBCommit = isAckAfterDBCommit();
+        final Object batchKey;
+        Dataset result;
+
+        InstanceRegistration(ActiveAssociation activeAssoc, Dimse rq,
+                Dataset ds, Dataset coerced, String callingAET,
+                String originalCallingAET, String calledAET,
+                FileSystemDTO fsDTO, File file, String filePath,
+                byte[] md5sum, List duplicates,
+                boolean dontChangeReceivedStatus, String retrieveAET,
+                String availability) {
+            this.activeAssoc = activeAssoc;
+            this.rq = rq;
+            this.ds = ds;
+            this.coerced = coerced;
+            this.callingAET = callingAET;
+            this.originalCallingAET = originalCallingAET;
+            this.calledAET = calledAET;
+            this.fsDTO = fsDTO;
+            this.file = file;
+            this.filePath = filePath;
+            this.md5sum = md5sum;
+            this.duplicates = duplicates;
+            this.dontChangeReceivedStatus = dontChangeReceivedStatus;
+            this.retrieveAET = retrieveAET;
+            this.availability = availability;
+            this.batchKey = fsDTO != null
+                    ? Arrays.asList(activeAssoc.getAssociation(),
+                            ds.getString(Tags.SeriesInstanceUID),
+                            fsDTO.getPk(), dontChangeReceivedStatus)
+                    : null;
+        }
+
+        protected void execute() throws Exception {
+            result = registerInstance(activeAssoc, rq, ds, coerced,
+                    callingAET, originalCallingAET, calledAET, fsDTO, file,
+                    filePath, md5sum, duplicates, dontChangeReceivedStatus,
+                    retrieveAET, availability);
+        }
+
+        protected Object batchKey() {
+            return batchKey;
+        }
+
+        protected void executeBatch(List<IngestPipeline.Registration> batch)
+                throws Exception {
+            registerInstances(batch);
+        }
+
+        protected void failed(Throwable e) {
+            if (ackAfterDBCommit)
+                return;
+            // C-STORE RSP already sent - retry registration by import of file
+            String iuid = ds.getString(Tags.SOPInstanceUID);
+            if (fsDTO == null) {
+                log.error("Failed to register received Instance[uid="
+                        + iuid + "] - keep file " + file, e);
+                return;
+            }
+            log.error("Failed to register received Instance[uid=" + iuid
+                    + "] - retry by import of file " + file, e);
+            FileDTO dto = new FileDTO();
+            dto.setFileSystemPk(fsDTO.getPk());
+            dto.setDirectoryPath(fsDTO.getDirectoryPath());
+            dto.setFilePath(filePath);
+            dto.setFileSize(file != null ? file.length() : 0L);
+            dto.setFileMd5(md5sum);
+            dto.setOrigMd5(md5sum);
+            dto.setFileTsuid(ds.getFileMetaInfo().getTransferSyntaxUID());
+            dto.setSopClassUID(ds.getString(Tags.SOPClassUID));
+            dto.setSopInstanceUID(iuid);
+            scheduleRecovery(dto, ds);
+        }
+    }
+
+    /**
+     * Registers received instances of one Series, received by one
+     * association and stored to one file system, in one DB transaction.
+     * The Series was already registered by a previous registration.
+     */
+    private void registerInstances(List<IngestPipeline.Registration> batch)
+            throws Exception {
+        final int n = batch.size();
+        InstanceRegistration first = (InstanceRegistration) batch.get(0);
+        Association assoc = first.activeAssoc.getAssociation();
+        Storage store = getStorage(assoc);
+        SeriesStored seriesStored = handleSeriesStored(assoc, store, first.ds);
+        if (seriesStored == null) {
+            throw new IllegalStateException("Series[uid="
+                    + first.ds.getString(Tags.SeriesInstanceUID)
+                    + "] not yet registered");
+        }
+        long assocStartTime = ((Long) assoc.getProperty(ASSOC_START_TIME));
+        Dataset[] dss = new Dataset[n];
+        String[] filePaths = new String[n];
+        long[] fileLengths = new long[n];
+        byte[][] md5sums = new byte[n][];
+        boolean[] clearExternalRetrieveAET = new boolean[n];
+        boolean fsSwitched = false;
+        for (int i = 0; i < n; i++) {
+            InstanceRegistration r = (InstanceRegistration) batch.get(i);
+            dss[i] = r.ds;
+            filePaths[i] = r.filePath;
+            fileLengths[i] = r.file != null ? r.file.length() : 0L;
+            md5sums[i] = r.md5sum;
+            clearExternalRetrieveAET[i] = hasDifferentMd5(r.duplicates,
+                    r.md5sum);
+            fsSwitched = fsSwitched
+                    || r.fsDTO.getFileSystemDTOCreated() > assocStartTime;
+            perfMon.start(r.activeAssoc, r.rq,
+                    PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
+        }
+        Dataset[] coercedElements;
+        if (serializeDBUpdate) {
+            synchronized (store) {
+                coercedElements = store.store(dss, first.callingAET,
+                        first.fsDTO.getPk(), filePaths, fileLengths, md5sums,
+                        md5sums, 0, fsSwitched, clearExternalRetrieveAET,
+                        first.dontChangeReceivedStatus,
+                        service.patientMatching());
+            }
+        } else {
+            coercedElements = store.store(dss, first.callingAET,
+                    first.fsDTO.getPk(), filePaths, fileLengths, md5sums,
+                    md5sums, 0, fsSwitched, clearExternalRetrieveAET,
+                    first.dontChangeReceivedStatus,
+                    service.patientMatching());
+        }
+        // records committed - failures of the following steps must not
+        // cause the registration of the batch to be repeated
+        for (int i = 0; i < n; i++) {
+            InstanceRegistration r = (InstanceRegistration) batch.get(i);
+            try {
+                appendInstanceToSeriesStored(seriesStored, r.ds,
+                        r.retrieveAET, r.availability);
+                r.result = merge(r.coerced, coercedElements[i]);
+                try {
+                    logCoercion(r.ds, r.result);
+                } catch (Exception e) {
+                    log.warn("Failed to generate audit log for attribute coercion:", e);
+                }
+                r.ds.putAll(coercedElements[i], Dataset.MERGE_ITEMS);
+                perfMon.setProperty(r.activeAssoc, r.rq,
+                        PerfPropertyEnum.REQ_DATASET, r.ds);
+                perfMon.stop(r.activeAssoc, r.rq,
+                        PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
+                service.postProcess(r.ds);
+            } catch (Exception e) {
+                log.error("Failed to process registered Instance[uid="
+                        + r.ds.getString(Tags.SOPInstanceUID) + "]:", e);
+            }
+        }
+    }
+
+    private Dataset registerInstance(ActiveAssociation activeAssoc, Dimse rq,
+            Dataset ds, Dataset coerced, String callingAET,
+            String originalCallingAET, String calledAET, FileSystemDTO fsDTO,
+            File file, String filePath, byte[] md5sum, List duplicates,
+            boolean dontChangeReceivedStatus, String retrieveAET,
+            String availability) throws Exception {
+        Association assoc = activeAssoc.getAssociation();
+        Storage store = getStorage(assoc);
+        SeriesStored seriesStored = handleSeriesStored(assoc, store, ds);
+        boolean newSeries = seriesStored == null;
+        boolean newStudy = false;
+        boolean fsSwitched = false;
+        String seriuid = ds.getString(Tags.SeriesInstanceUID);
+        if (newSeries) {
+            Dataset mwlFilter = service.getCoercionAttributesFor(callingAET,
+                    STORE2MWL_XSL, ds, assoc);
+            if (mwlFilter != null) {
+                coerced = merge(coerced, mergeMatchingMWLItem(assoc, ds,
+                        seriuid, mwlFilter));
+            }
+            if (!originalCallingAET.equals(calledAET)) {
+                service.ignorePatientIDForUnscheduled(ds,
+                        Tags.RequestAttributesSeq, originalCallingAET);
+                 service.ignorePatientIDForUnscheduled(ds,
+                         Tags.RequestAttributesSeq, originalCallingAET);
+                 service.supplementIssuerOfPatientID(ds, assoc, 
+                         originalCallingAET, false);
+                 service.supplementIssuerOfAccessionNumber(ds, assoc,
+                         originalCallingAET, false);
+                service.supplementInstitutionalData(ds, assoc, originalCallingAET);
+                service.generatePatientID(ds, ds, originalCallingAET);
+            }
+            newStudy = !store.studyExists(ds.getString(Tags.StudyInstanceUID));
+        } else {
+            fsSwitched = fsDTO.getFileSystemDTOCreated() > ((Long)assoc.getProperty(ASSOC_START_TIME));
+        }
+        perfMon.start(activeAssoc, rq,
+                PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
+        long fileLength = file != null ? file.length() : 0L;
+        long fspk = fsDTO != null ? fsDTO.getPk() : -1L;
+        boolean clearExternalRetrieveAET = hasDifferentMd5(duplicates, md5sum);
+        Dataset coercedElements;
+        try {
+            coercedElements = updateDB(store, ds, callingAET, fspk, filePath, fileLength, md5sum, md5sum,
+                    0, newSeries || fsSwitched, clearExternalRetrieveAET, dontChangeReceivedStatus);
+        } catch (NonUniquePatientIDException e) {
+            service.coercePatientID(ds);
+            coerced.putLO(Tags.PatientID, ds.getString(Tags.PatientID));
+            coerced.putLO(Tags.IssuerOfPatientID,
+                    ds.getString(Tags.IssuerOfPatientID));
+            coercedElements = updateDB(store, ds, callingAET, fspk, filePath, fileLength, md5sum, md5sum, 
+                    0, newSeries || fsSwitched, clearExternalRetrieveAET, dontChangeReceivedStatus);
+        }
+        if(newSeries) {
+           seriesStored = initSeriesStored(ds, originalCallingAET, retrieveAET);
+           assoc.putProperty(SERIES_STORED, seriesStored);
+           if (newStudy) {
+               service.sendNewStudyNotification(ds);
+           }
+        }
+        appendInstanceToSeriesStored(seriesStored, ds, retrieveAET, availability);
+        coerced = merge(coerced, coercedElements);
+        try {
+            logCoercion(ds, coerced);
+        } catch (Exception e) {
+            log.warn("Failed to generate audit log for attribute coercion:", e);
+        }
+        ds.putAll(coercedElements, Dataset.MERGE_ITEMS);
+        
+        perfMon.setProperty(activeAssoc, rq, PerfPropertyEnum.REQ_DATASET,
+                ds);
+        perfMon.stop(activeAssoc, rq,
+                PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB);
+        service.postProcess(ds);
+        return coerced;
+    }
+
     protected SeriesStored handleSeriesStored(Association assoc, Storage store, Dataset ds) throws FinderException,
             RemoteException, Exception {
         String seriuid = ds.getString(Tags.SeriesInstanceUID);
@@ -1265,7 +1695,7 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
                 ds.subSet(Tags.PixelData, -1).writeDataset(bos, encParam);
             }
             bos.flush();
-            if (service.isSyncFileBeforeCStoreRSP()) {
+            if (fsyncBeforeCStoreRSP()) {
                 fos.getFD().sync();
             } else if (service.isSyncFileAfterCStoreRSP()) {
                 final FileOutputStream fos2 = fos;
@@ -1407,6 +1837,18 @@ public class StoreScp extends DcmServiceBase implements AssociationListener {
         if (assoc.getAAssociateAC() != null)
             perfMon.assocRelStart(assoc, Command.C_STORE_RQ);
 
+        IngestPipeline pipeline;
+        synchronized (ingestPipelineLock) {
+            // wait for termination of a pipeline in shutdown
+            pipeline = ingestPipeline;
+        }
+        if (pipeline != null) {
+            try {
+                pipeline.flush(assoc);
+            } catch (InterruptedException e) {
+                log.warn("Wait for pending DB registrations interrupted:", e);
+            }
+        }
         SeriesStored seriesStored = (SeriesStored) assoc.getProperty(SERIES_STORED);
         if (seriesStored != null) {
             try {
@@ -95,6 +95,8 @@ import org.dcm4chex.archive.exceptions.UnknownAETException;
 import org.dcm4chex.archive.mbean.FileSystemMgt2Delegate;
 import org.dcm4chex.archive.mbean.HttpUserInfo;
 import org.dcm4chex.archive.mbean.SchedulerDelegate;
+import org.dcm4chex.archive.perf.PerfCounterEnum;
+import org.dcm4chex.archive.perf.PerfMetrics;
 import org.dcm4chex.archive.util.EJBHomeFactory;
 import org.dcm4chex.archive.util.FileUtils;
 import org.dcm4chex.archive.util.HomeFactoryException;
@@ -226,6 +228,11 @@ public class StoreScpService extends AbstractScpService {
 
     private static final int MIN_MAX_VALLEN = 0x10000; // 64K
 
+    private static final int[] PERF_COUNTERS = {
+            PerfCounterEnum.C_STORE_SCP_OBJ_IN,
+            PerfCounterEnum.C_STORE_SCP_OBJ_STORE,
+            PerfCounterEnum.C_STORE_SCP_OBJ_REGISTER_DB };
+
     private int maxValueLength = Integer.MAX_VALUE;
 
     private int bufferSize = 8192;
@@ -487,6 +494,54 @@ public class StoreScpService extends AbstractScpService {
         scp.setSerializeDBUpdate(serialize);
     }
 
+    public final int getIngestPipelineWorkers() {
+        return scp.getIngestPipelineWorkers();
+    }
+
+    public final void setIngestPipelineWorkers(int workers) {
+        scp.setIngestPipelineWorkers(workers);
+    }
+
+    public final int getIngestPipelineQueueSize() {
+        return scp.getIngestPipelineQueueSize();
+    }
+
+    public final void setIngestPipelineQueueSize(int queueSize) {
+        scp.setIngestPipelineQueueSize(queueSize);
+    }
+
+    public final int getIngestPipelineBatchSize() {
+        return scp.getIngestPipelineBatchSize();
+    }
+
+    public final void setIngestPipelineBatchSize(int batchSize) {
+        scp.setIngestPipelineBatchSize(batchSize);
+    }
+
+    public final String getIngestAckPolicy() {
+        return scp.getIngestAckPolicy();
+    }
+
+    public final void setIngestAckPolicy(String policy) {
+        scp.setIngestAckPolicy(policy);
+    }
+
+    public final int getIngestPipelinePending() {
+        return scp.getIngestPipelinePending();
+    }
+
+    public final String getIngestRecoveryInterval() {
+        return RetryIntervalls.formatInterval(scp.getIngestRecoveryInterval());
+    }
+
+    public final void setIngestRecoveryInterval(String interval) {
+        scp.setIngestRecoveryInterval(RetryIntervalls.parseInterval(interval));
+    }
+
+    public final int getIngestRecoveryPending() {
+        return scp.getIngestRecoveryPending();
+    }
+
     public ObjectName getSchedulerServiceName() {
         return scheduler.getSchedulerServiceName();
     }
@@ -728,6 +783,14 @@ public class StoreScpService extends AbstractScpService {
         this.timerIDCheckPendingSeriesStored = timerIDCheckPendingSeriesStored;
     }
 
+    public String showPerfMetrics() {
+        return PerfMetrics.getInstance().toString(PERF_COUNTERS);
+    }
+
+    public void resetPerfMetrics() {
+        PerfMetrics.getInstance().reset(PERF_COUNTERS);
+    }
+
     public final ObjectName getPerfMonServiceName() {
         return scp.getPerfMonServiceName();
     }
@@ -750,6 +813,8 @@ public class StoreScpService extends AbstractScpService {
     protected void stopService() throws Exception {
         stopSeriesStoredScheduler();
         super.stopService();
+        scp.stopIngestPipeline();
+        scp.stopIngestRecovery();
     }
 
     protected void stopSeriesStoredScheduler() throws Exception {
@@ -98,6 +98,16 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
 
     private int fetchSize;
 
+    private int maxConcurrencyPerDestination;
+
+    private long backpressureDelay = 30000L;
+
+    private long adaptConcurrencyInterval = 60000L;
+
+    private final CopyScheduler copyScheduler = new CopyScheduler();
+
+    private final ThreadLocal<long[]> copiedBytes = new ThreadLocal<long[]>();
+
     public final ObjectName getJmsServiceName() {
         return jmsDelegate.getJmsServiceName();
     }
@@ -199,11 +209,57 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
             if (restart)
                 stop();
             this.concurrency = concurrency;
+            updateMaxConcurrencyPerDestination();
             if (restart)
                 start();
         }
     }
 
+    public final int getMaxConcurrencyPerDestination() {
+        return maxConcurrencyPerDestination;
+    }
+
+    public final void setMaxConcurrencyPerDestination(int max) {
+        if (max < 0)
+            throw new IllegalArgumentException(
+                    "MaxConcurrencyPerDestination: " + max);
+        this.maxConcurrencyPerDestination = max;
+        updateMaxConcurrencyPerDestination();
+    }
+
+    private void updateMaxConcurrencyPerDestination() {
+        copyScheduler.setMaxConcurrency(maxConcurrencyPerDestination == 0
+                ? concurrency
+                : Math.min(maxConcurrencyPerDestination, concurrency));
+    }
+
+    public final String getBackpressureDelay() {
+        return RetryIntervalls.formatInterval(backpressureDelay);
+    }
+
+    public final void setBackpressureDelay(String delay) {
+        this.backpressureDelay = RetryIntervalls.parseInterval(delay);
+    }
+
+    public final String getAdaptConcurrencyInterval() {
+        return RetryIntervalls.formatIntervalZeroAsNever(
+                adaptConcurrencyInterval);
+    }
+
+    public final void setAdaptConcurrencyInterval(String interval) {
+        this.adaptConcurrencyInterval =
+                RetryIntervalls.parseIntervalOrNever(interval);
+        copyScheduler.setAdaptInterval(adaptConcurrencyInterval);
+    }
+
+    public final String getDestinationStatus() {
+        return copyScheduler.toString();
+    }
+
+    public final long getBackpressuredOrders() {
+        return copyScheduler.getBackpressured();
+    }
+
     public String getNotReadyDelay() {
         return RetryIntervalls.formatInterval(notReadyDelay);
     }
@@ -221,6 +277,7 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
     }
 
     protected void startService() throws Exception {
+        copyScheduler.clear();
         jmsDelegate.startListening(queueName, this, concurrency);
         server.addNotificationListener(storeScpServiceName, this,
                 SeriesStored.NOTIF_FILTER, null);
@@ -291,9 +348,22 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
                 schedule(order, System.currentTimeMillis() + notReadyDelay);
                 return;
             }
+            String dest = destinationOf(order);
+            if (dest != null && !copyScheduler.tryAcquire(dest,
+                    System.currentTimeMillis())) {
+                log.info("Max concurrency for destination " + dest
+                        + " reached! Rescheduled " + order + " with delay of "
+                        + backpressureDelay + "ms!");
+                schedule(order, System.currentTimeMillis() + backpressureDelay);
+                return;
+            }
             log.info("Start processing " + order);
+            long[] copied = new long[1];
+            copiedBytes.set(copied);
+            boolean success = false;
             try {
                 process(order);
+                success = true;
                 log.info("Finished processing " + order);
             } catch (Exception e) {
                 order.setThrowable(e);
@@ -308,6 +378,11 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
                             + ". Scheduling retry.", e);
                     schedule(order, System.currentTimeMillis() + delay);
                 }
+            } finally {
+                copiedBytes.remove();
+                if (dest != null)
+                    copyScheduler.release(dest, copied[0], success,
+                            System.currentTimeMillis());
             }
         } catch (Throwable e) {
             log.error("unexpected error during processing message: " + message,
@@ -316,6 +391,25 @@ public abstract class AbstractFileCopyService extends ServiceMBeanSupport
     }
 
     public abstract boolean isReady();
+
+    /**
+     * Returns the destination of the order, for which the number of
+     * concurrently processed orders shall be limited by
+     * <i>MaxConcurrencyPerDestination</i>, or <code>null</code>.
+     */
+    protected String destinationOf(BaseJmsOrder order) {
+        return null;
+    }
+
+    /**
+     * Accounts bytes copied by the current order to the throughput of its
+     * destination.
+     */
+    protected final void countCopiedBytes(long bytes) {
+        long[] copied = copiedBytes.get();
+        if (copied != null)
+            copied[0] += bytes;
+    }
     
     protected abstract BaseJmsOrder createOrder(Dataset ian);
 
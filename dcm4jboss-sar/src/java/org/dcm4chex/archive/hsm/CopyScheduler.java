@@ -0,0 +1,204 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dcm4chex.archive.util.FileUtils;
+
+/**
+ * Limits the number of File Copy orders processed concurrently per
+ * destination file system, so orders to a slow or degraded destination do
+ * not occupy all workers of the order queue. Workers which get an order for
+ * a saturated destination reschedule it, and continue with orders to other
+ * destinations.
+ * <p>
+ * The limit of each destination is adapted to the observed throughput:
+ * raised while the throughput does not decrease, lowered on decreasing
+ * throughput, and halved on failed orders. Time without active orders to a
+ * destination is not accounted to its throughput.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class CopyScheduler {
+
+    private static final String NEWLINE = System.getProperty(
+            "line.separator", "\n");
+
+    private static final double TOLERANCE = 0.1;
+
+    private final Map<String, Destination> destinations =
+            new TreeMap<String, Destination>();
+
+    private int maxConcurrency = 1;
+
+    private long adaptInterval;
+
+    private long backpressured;
+
+    private static class Destination {
+        int limit;
+        int active;
+        int peakActive;
+        long completed;
+        long failed;
+        long backpressured;
+        long windowStart;
+        long windowBytes;
+        long idleSince;
+        long throughput = -1L;
+
+        Destination(int limit, long now) {
+            this.limit = limit;
+            this.windowStart = now;
+            this.idleSince = now;
+        }
+    }
+
+    public synchronized void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        for (Destination dest : destinations.values()) {
+            dest.limit = adaptInterval > 0
+                    ? Math.min(dest.limit, maxConcurrency)
+                    : maxConcurrency;
+        }
+    }
+
+    public synchronized void setAdaptInterval(long adaptInterval) {
+        this.adaptInterval = adaptInterval;
+        if (adaptInterval == 0) {
+            for (Destination dest : destinations.values()) {
+                dest.limit = maxConcurrency;
+            }
+        }
+    }
+
+    public synchronized long getBackpressured() {
+        return backpressured;
+    }
+
+    public synchronized void clear() {
+        destinations.clear();
+        backpressured = 0L;
+    }
+
+    /**
+     * Returns <code>true</code>, if another order to the specified
+     * destination may be processed. Must be followed by {@link #release}.
+     */
+    public synchronized boolean tryAcquire(String dest, long now) {
+        Destination d = destinations.get(dest);
+        if (d == null) {
+            destinations.put(dest, d = new Destination(maxConcurrency, now));
+        }
+        if (d.active >= d.limit) {
+            d.backpressured++;
+            backpressured++;
+            return false;
+        }
+        if (d.active == 0) {
+            // exclude idle time from the throughput window
+            d.windowStart += now - d.idleSince;
+        }
+        d.peakActive = Math.max(d.peakActive, ++d.active);
+        return true;
+    }
+
+    public synchronized void release(String dest, long bytes, boolean success,
+            long now) {
+        Destination d = destinations.get(dest);
+        if (d == null) {
+            return;
+        }
+        d.active--;
+        d.windowBytes += bytes;
+        if (success) {
+            d.completed++;
+        } else {
+            d.failed++;
+            if (adaptInterval > 0) {
+                d.limit = Math.max(1, d.limit / 2);
+            }
+        }
+        if (adaptInterval > 0 && now - d.windowStart >= adaptInterval) {
+            adapt(d, now);
+        }
+        if (d.active == 0) {
+            d.idleSince = now;
+        }
+    }
+
+    private void adapt(Destination d, long now) {
+        long throughput = d.windowBytes * 1000L / (now - d.windowStart);
+        if (d.throughput >= 0) {
+            if (throughput < d.throughput * (1 - TOLERANCE)) {
+                d.limit = Math.max(1, d.limit - 1);
+            } else if (d.peakActive >= d.limit && d.limit < maxConcurrency) {
+                d.limit++;
+            }
+        }
+        d.throughput = throughput;
+        d.windowStart = now;
+        d.windowBytes = 0L;
+        d.peakActive = d.active;
+    }
+
+    public synchronized String toString() {
+        if (destinations.isEmpty()) {
+            return "NONE";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Destination> entry : destinations.entrySet()) {
+            Destination d = entry.getValue();
+            sb.append(entry.getKey())
+                .append(": active=").append(d.active)
+                .append(", limit=").append(d.limit)
+                .append(", throughput=")
+                .append(d.throughput < 0 ? "?"
+                        : FileUtils.formatSize(d.throughput) + "/s")
+                .append(", completed=").append(d.completed)
+                .append(", failed=").append(d.failed)
+                .append(", rescheduled=").append(d.backpressured)
+                .append(NEWLINE);
+        }
+        return sb.toString();
+    }
+}
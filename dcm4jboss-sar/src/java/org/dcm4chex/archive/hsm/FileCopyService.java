@@ -40,9 +40,6 @@
 package org.dcm4chex.archive.hsm;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -51,6 +48,10 @@ import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
@@ -59,8 +60,6 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 
-import org.apache.commons.compress.tar.TarEntry;
-import org.apache.commons.compress.tar.TarOutputStream;
 import org.dcm4che.data.Dataset;
 import org.dcm4che.data.DcmElement;
 import org.dcm4che.data.DcmObjectFactory;
@@ -91,6 +90,14 @@ public class FileCopyService extends AbstractFileCopyService {
     private static final int MD5SUM_ENTRY_LEN = 52;
     
     private ObjectName hsmModuleServicename = null;
+
+    private int tarVerifyThreads = 2;
+
+    private long maxPendingVerifyBytes = 64 * FileUtils.MEGA;
+
+    private ThreadPoolExecutor tarVerifyExecutor;
+
+    private boolean writeTarIndexForHSMModule;
     
     public final String getHSMModulServicename() {
         return hsmModuleServicename == null ? NONE : hsmModuleServicename.toString();
@@ -100,6 +107,62 @@ public class FileCopyService extends AbstractFileCopyService {
         this.hsmModuleServicename = NONE.equals(name) ? null : ObjectName.getInstance(name);
     }
     
+    public final boolean isWriteTarIndexForHSMModule() {
+        return writeTarIndexForHSMModule;
+    }
+
+    public final void setWriteTarIndexForHSMModule(boolean enable) {
+        this.writeTarIndexForHSMModule = enable;
+    }
+
+    public final int getTarVerifyThreads() {
+        return tarVerifyThreads;
+    }
+
+    public synchronized void setTarVerifyThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("tarVerifyThreads: " + threads);
+        }
+        if (tarVerifyExecutor != null) {
+            if (threads > tarVerifyThreads) {
+                tarVerifyExecutor.setMaximumPoolSize(threads);
+                tarVerifyExecutor.setCorePoolSize(threads);
+            } else {
+                tarVerifyExecutor.setCorePoolSize(threads);
+                tarVerifyExecutor.setMaximumPoolSize(threads);
+            }
+        }
+        this.tarVerifyThreads = threads;
+    }
+
+    public final String getMaxPendingVerifyBytes() {
+        return FileUtils.formatSize(maxPendingVerifyBytes);
+    }
+
+    public final void setMaxPendingVerifyBytes(String s) {
+        this.maxPendingVerifyBytes = FileUtils.parseSize(s, FileUtils.MEGA);
+    }
+
+    private synchronized Executor tarVerifyExecutor() {
+        if (tarVerifyExecutor == null) {
+            tarVerifyExecutor = new ThreadPoolExecutor(
+                    tarVerifyThreads, tarVerifyThreads,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+        }
+        return tarVerifyExecutor;
+    }
+
+    protected void stopService() throws Exception {
+        super.stopService();
+        synchronized (this) {
+            if (tarVerifyExecutor != null) {
+                tarVerifyExecutor.shutdown();
+                tarVerifyExecutor = null;
+            }
+        }
+    }
+
     public String getAvailableHSMModules() {
         try {
             Set names = server.queryNames(new ObjectName("*:service=FileCopyHSMModule,*") , null);
@@ -203,6 +266,10 @@ public class FileCopyService extends AbstractFileCopyService {
         return fileCopyOrder;
     }
 
+    protected String destinationOf(BaseJmsOrder order) {
+        return ((FileCopyOrder) order).getDestinationFileSystemPath();
+    }
+
     protected void process(BaseJmsOrder order) throws Exception {
         FileCopyOrder fileCopyOrder = (FileCopyOrder)order;
         String destPath = fileCopyOrder.getDestinationFileSystemPath();
@@ -256,6 +323,7 @@ public class FileCopyService extends AbstractFileCopyService {
                 storage.storeFile(finfo.sopIUID, finfo.tsUID, destPath,
                         finfo.fileID, (int) finfo.size, md5sum0,
                         origMd5sum0, fileStatus);
+                countCopiedBytes(finfo.size);
                 iter.remove();
             } catch (Exception e) {
                 dst.delete();
@@ -289,15 +357,17 @@ public class FileCopyService extends AbstractFileCopyService {
         }
         if (hsmModuleServicename == null) {
             File tarFile = FileUtils.toFile(destPath.substring(4), tarPath);
-            mkTar(fileInfos, tarFile, tarEntryNames);
+            mkTar(fileInfos, tarFile, tarEntryNames, true);
         } else {
             File tarFile = prepareHSMFile(destPath, tarPath);
             try {
-                mkTar(fileInfos, tarFile, tarEntryNames);
+                mkTar(fileInfos, tarFile, tarEntryNames,
+                        writeTarIndexForHSMModule);
                 tarPath = storeHSMFile(tarFile, destPath, tarPath);
             } catch (Exception x) {
                 log.error("Make Tar file failed!",x);
                 tarFile.delete();
+                TarIndex.toIndexFile(tarFile).delete();
                 failedHSMFile(tarFile,destPath, tarPath);
                 throw x;
             }
@@ -311,6 +381,7 @@ public class FileCopyService extends AbstractFileCopyService {
             storage.storeFile(finfo.sopIUID, finfo.tsUID, destPath, fileId,
                     (int) finfo.size, MD5.toBytes(finfo.md5), origMd5sum,
                     fileStatus);
+            countCopiedBytes(finfo.size);
         }
     }
 
@@ -335,29 +406,42 @@ public class FileCopyService extends AbstractFileCopyService {
                     new String[]{File.class.getName(),String.class.getName(),String.class.getName()});
 }
     
+    /**
+     * Writes the tar file and - if <code>writeIndex</code> - a sidecar
+     * {@link TarIndex} file, which allows the TarRetriever to extract
+     * single entries. If <i>VerifyCopy</i> is enabled, written entries are
+     * verified by <i>TarVerifyThreads</i> while further entries are written.
+     */
     private void mkTar(List<FileInfo> fileInfos, File tarFile,
-            String[] tarEntryNames) throws Exception {
+            String[] tarEntryNames, boolean writeIndex) throws Exception {
+        File indexFile = TarIndex.toIndexFile(tarFile);
         try {
             if (tarFile.getParentFile().mkdirs()) {
                 log.info("M-WRITE " + tarFile.getParent());
             }    
             log.info("M-WRITE " + tarFile);
-            TarOutputStream tar = new TarOutputStream(
-                    new FileOutputStream(tarFile));
+            TarBuilder tar = new TarBuilder(tarFile,
+                    verifyCopy ? tarVerifyExecutor() : null,
+                    maxPendingVerifyBytes, bufferSize);
             try {
                 writeMD5SUM(tar, fileInfos, tarEntryNames);
                 for (int i = 0; i < tarEntryNames.length; i++) {
                     writeFile(tar, fileInfos.get(i), tarEntryNames[i]);
                 }
+                tar.finish();
             } finally {
                 tar.close();
             }
-            if (verifyCopy) {
-                VerifyTar.verify(tarFile, new byte[bufferSize]);
+            if (writeIndex) {
+                log.info("M-WRITE " + indexFile);
+                tar.getIndex().write(indexFile);
             }
         } catch (Exception e) {
             log.error("M-DELETE tar file due to an error! "+tarFile);
             tarFile.delete();
+            if (writeIndex) {
+                indexFile.delete();
+            }
             throw e;
         }
     }
@@ -375,13 +459,10 @@ public class FileCopyService extends AbstractFileCopyService {
         return removed;
     }
 
-    private void writeMD5SUM(TarOutputStream tar, List<FileInfo> fileInfos,
+    private void writeMD5SUM(TarBuilder tar, List<FileInfo> fileInfos,
             String[] tarEntryNames)
             throws IOException {
         byte[] md5sum = new byte[fileInfos.size() * MD5SUM_ENTRY_LEN];
-        final TarEntry tarEntry = new TarEntry("MD5SUM");
-        tarEntry.setSize(md5sum.length);
-        tar.putNextEntry(tarEntry);
         int i = 0;
         for (int j = 0; j < tarEntryNames.length; j++) {
             MD5Utils.toHexChars(MD5.toBytes(fileInfos.get(j).md5), md5sum, i);
@@ -393,29 +474,20 @@ public class FileCopyService extends AbstractFileCopyService {
             md5sum[i+51] = '\n';
             i += MD5SUM_ENTRY_LEN;
         }
-        tar.write(md5sum);
-        tar.closeEntry();
+        tar.putEntry("MD5SUM", md5sum);
     }
 
-    private void writeFile(TarOutputStream tar, FileInfo fileInfo,
+    private void writeFile(TarBuilder tar, FileInfo fileInfo,
             String tarEntryName) 
-    throws IOException, FileNotFoundException {
+    throws IOException, VerifyTarException {
         File file = FileUtils.toFile(fileInfo.basedir, fileInfo.fileID);
         if (file.length() != fileInfo.size) {
             log.error("Filesize doesn't match for file entry:"+fileInfo+"!("+
                     file.length()+" vs. "+fileInfo.size+") skipped!");
             throw new IOException("Filesize doesn't match! file:"+file);
         }
-        TarEntry entry = new TarEntry(tarEntryName);
-        entry.setSize(fileInfo.size);
-        tar.putNextEntry(entry);
-        FileInputStream fis = new FileInputStream(file);
-        try {
-            tar.copyEntryContents(fis);
-        } finally {
-            fis.close();
-        }
-        tar.closeEntry();
+        tar.putEntry(tarEntryName, file, fileInfo.size,
+                MD5.toBytes(fileInfo.md5));
     }
     
     private String mkTarEntryName(FileInfo fileInfo) {
@@ -117,6 +117,7 @@ public class FileMoveService extends AbstractDeleterService implements MessageLi
 
     public void setSrcFsGroup(String srcFsGroup) {
         this.srcFsGroup = NONE.equals(srcFsGroup) ? null : srcFsGroup;
+        invalidateDiskSpaceAccount();
     }
 
     public String getDestFsGroup() {
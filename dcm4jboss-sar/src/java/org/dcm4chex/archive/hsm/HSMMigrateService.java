@@ -42,6 +42,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -102,6 +103,10 @@ public class HSMMigrateService extends ServiceMBeanSupport {
     
     private boolean verifyTar;
     private boolean createNewTargetFilename;
+    private File migrationQueueDir;
+    private MigrationQueue migrationQueue;
+    private long maxMigrationRate;
+    private long throttleTime;
     private int filenameBase = (int) (System.currentTimeMillis() & 0xffffffff);
     
     private final NotificationListener timerListenerMigrate = new NotificationListener() {
@@ -211,6 +216,7 @@ public class HSMMigrateService extends ServiceMBeanSupport {
             try {
                 dto = this.newFileSystemMgt().getFileSystem(s);
                 srcFsPk = dto.getPk();
+                resetMigrationQueue();
             } catch (Exception x) {
                 if (this.getState() == STARTED) {
                     throw x;
@@ -235,6 +241,7 @@ public class HSMMigrateService extends ServiceMBeanSupport {
             try {
                 dto = this.newFileSystemMgt().getFileSystem(s);
                 targetFsPk = dto.getPk();
+                resetMigrationQueue();
             } catch (Exception x) {
                 if (this.getState() == STARTED) {
                     throw x;
@@ -279,6 +286,39 @@ public class HSMMigrateService extends ServiceMBeanSupport {
         this.verifyTar = verifyTar;
     }
 
+    public final String getMigrationQueueDirectory() {
+        return migrationQueueDir == null ? NONE : migrationQueueDir.getPath();
+    }
+
+    public final void setMigrationQueueDirectory(String dir) {
+        String trimmed = dir.trim();
+        migrationQueueDir = NONE.equals(trimmed) ? null : new File(trimmed);
+        resetMigrationQueue();
+    }
+
+    public final String getMaxMigrationRate() {
+        return maxMigrationRate == 0 ? NONE
+                : FileUtils.formatSize(maxMigrationRate);
+    }
+
+    public final void setMaxMigrationRate(String s) {
+        String trimmed = s.trim();
+        maxMigrationRate = NONE.equals(trimmed) ? 0L
+                : FileUtils.parseSize(trimmed, 1);
+    }
+
+    public String getMigrationProgress() {
+        MigrationQueue queue = migrationQueue;
+        if (queue == null) {
+            return NONE;
+        }
+        long completion = queue.getExpectedCompletionTime();
+        return queue.getProcessed() + " of " + queue.getTotal()
+                + " tar files processed, "
+                + FileUtils.formatSize(queue.getBytesPerSecond()) + "/s, ETA: "
+                + (completion == -1L ? "unknown" : new Date(completion));
+    }
+
     public int getConcurrency() {
         return concurrency;
     }
@@ -446,6 +486,7 @@ public class HSMMigrateService extends ServiceMBeanSupport {
     }
 
     protected void stopService() throws Exception {
+        resetMigrationQueue();
         scheduler.stopScheduler(timerIDs[0], listenerIDs[0],
                 timerListenerMigrate);
         scheduler.stopScheduler(timerIDs[1], listenerIDs[1],
@@ -484,18 +525,38 @@ public class HSMMigrateService extends ServiceMBeanSupport {
         }
         int[] counts = new int[]{0,0};
         FileSystemMgt2 mgr = newFileSystemMgt();
-        Collection<String> tarFiles = new QueryHSMMigrateCmd()
-            .getTarFilenamesToMigrate(srcFsPk, fileStati, lastPksFirst, 
-                    limitNumberOfFilesPerMigrateTask, retry ? offsetForRetry : 0);
-        int len = tarFiles.size();
-        if (retry)
-            offsetForRetry = len < 1 ? 0 : offsetForRetry + len;
-        log.info("Found "+len+" tar files to migrate on filesystem "+srcFilesystem);
-        Iterator<String> iter = tarFiles.iterator();
+        MigrationQueue queue = null;
+        Iterator<String> iter;
+        int len;
+        try {
+            if (!retry && migrationQueueDir != null) {
+                queue = migrationQueue(fileStati);
+                len = Math.min(queue.getRemaining(),
+                        limitNumberOfFilesPerMigrateTask > 0
+                                ? limitNumberOfFilesPerMigrateTask
+                                : Integer.MAX_VALUE);
+                iter = queue.take(len);
+                log.info("Resume migration of " + queue.getRemaining() + " of "
+                        + queue.getTotal() + " tar files on filesystem "
+                        + srcFilesystem);
+            } else {
+                Collection<String> tarFiles = new QueryHSMMigrateCmd()
+                    .getTarFilenamesToMigrate(srcFsPk, fileStati, lastPksFirst, 
+                            limitNumberOfFilesPerMigrateTask, retry ? offsetForRetry : 0);
+                len = tarFiles.size();
+                if (retry)
+                    offsetForRetry = len < 1 ? 0 : offsetForRetry + len;
+                log.info("Found "+len+" tar files to migrate on filesystem "+srcFilesystem);
+                iter = tarFiles.iterator();
+            }
+        } catch (Exception e) {
+            isQueryRunning = false;
+            throw e;
+        }
         synchronized(taskList) {
             counts[0] = Math.min(len, concurrency);
             for (int i = 0 ; i < counts[0] ; i++) {
-                MigrationTask t = new MigrationTask(this, iter, mgr, counts);
+                MigrationTask t = new MigrationTask(this, iter, queue, mgr, counts);
                 taskList.add(t);
                 log.debug("New "+t+"! request thread:"+Thread.currentThread());
                 new Thread(t).start();
@@ -506,9 +567,70 @@ public class HSMMigrateService extends ServiceMBeanSupport {
         while (counts[0] > 0) {
             Thread.sleep(1000);
         }
+        if (queue != null && queue.isCompleted()) {
+            log.info("Processed all " + queue.getTotal()
+                    + " enumerated tar files on filesystem " + srcFilesystem);
+            synchronized (this) {
+                if (migrationQueue == queue) {
+                    migrationQueue = null;
+                }
+            }
+            queue.close();
+        }
         return counts[1];
     }
 
+    /**
+     * Returns the queue of tar files to migrate, loaded from a previous run or
+     * - if there is none - enumerated from the database.
+     */
+    private synchronized MigrationQueue migrationQueue(int[] fileStati)
+            throws Exception {
+        if (migrationQueue == null) {
+            migrationQueue = MigrationQueue.load(
+                    FileUtils.resolve(migrationQueueDir), srcFsPk, targetFsPk);
+            if (migrationQueue == null) {
+                Collection<String> tarFiles = new QueryHSMMigrateCmd()
+                    .getTarFilenamesToMigrate(srcFsPk, fileStati, lastPksFirst, 
+                            0, 0);
+                log.info("Enumerated " + tarFiles.size()
+                        + " tar files to migrate on filesystem "
+                        + srcFilesystem);
+                migrationQueue = MigrationQueue.create(
+                        FileUtils.resolve(migrationQueueDir), srcFsPk,
+                        targetFsPk, tarFiles);
+            }
+        }
+        return migrationQueue;
+    }
+
+    private synchronized void resetMigrationQueue() {
+        if (migrationQueue != null) {
+            migrationQueue.close();
+            migrationQueue = null;
+        }
+    }
+
+    /**
+     * Delays the caller, so the transfer of <tt>size</tt> bytes by all
+     * migration tasks does not exceed the configured <i>MaxMigrationRate</i>.
+     */
+    protected void throttle(long size) throws InterruptedException {
+        long delay;
+        synchronized (this) {
+            if (maxMigrationRate == 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long start = Math.max(now, throttleTime);
+            throttleTime = start + size * 1000 / maxMigrationRate;
+            delay = start - now;
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
     public int removeSourceFiles() throws Exception  {
         if (srcFilesystem == null || this.targetFilesystem == null || removeSrcOnTargetFileStatus == null) {
             return 0;
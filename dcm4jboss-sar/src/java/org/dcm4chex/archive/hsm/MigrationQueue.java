@@ -0,0 +1,286 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Persistent queue of tar files to migrate from one file system to another.
+ * <p>
+ * The tar files are enumerated once into <tt>&lt;srcFsPk&gt;-&lt;targetFsPk&gt;.queue</tt>,
+ * and each processed tar file is appended to
+ * <tt>&lt;srcFsPk&gt;-&lt;targetFsPk&gt;.done</tt>, so an interrupted
+ * migration resumes with the tar files not yet processed, without querying
+ * the database again.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class MigrationQueue {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File queueFile;
+
+    private final File doneFile;
+
+    private final LinkedList<String> pending = new LinkedList<String>();
+
+    private final int total;
+
+    private int inProgress;
+
+    private int processed;
+
+    private int processedSinceLoad;
+
+    private long bytesSinceLoad;
+
+    private final long loadTime = System.currentTimeMillis();
+
+    private Writer doneWriter;
+
+    private MigrationQueue(File queueFile, File doneFile, Collection<String> tarFilenames,
+            Collection<String> done) {
+        this.queueFile = queueFile;
+        this.doneFile = doneFile;
+        for (String tarFilename : tarFilenames) {
+            if (!done.contains(tarFilename)) {
+                pending.add(tarFilename);
+            }
+        }
+        this.total = tarFilenames.size();
+        this.processed = total - pending.size();
+    }
+
+    private static File queueFile(File dir, long srcFsPk, long targetFsPk) {
+        return new File(dir, "" + srcFsPk + '-' + targetFsPk + ".queue");
+    }
+
+    private static File doneFile(File dir, long srcFsPk, long targetFsPk) {
+        return new File(dir, "" + srcFsPk + '-' + targetFsPk + ".done");
+    }
+
+    /**
+     * Loads the queue of a previous migration run.
+     * 
+     * @return the queue or <tt>null</tt>, if there is no queue for the
+     *         specified file systems.
+     */
+    public static MigrationQueue load(File dir, long srcFsPk, long targetFsPk)
+            throws IOException {
+        File queueFile = queueFile(dir, srcFsPk, targetFsPk);
+        if (!queueFile.isFile()) {
+            return null;
+        }
+        File doneFile = doneFile(dir, srcFsPk, targetFsPk);
+        LinkedList<String> tarFilenames = new LinkedList<String>();
+        readLines(queueFile, tarFilenames);
+        HashSet<String> done = new HashSet<String>();
+        if (doneFile.isFile()) {
+            readLines(doneFile, done);
+        }
+        return new MigrationQueue(queueFile, doneFile, tarFilenames, done);
+    }
+
+    /**
+     * Creates a new queue of the specified tar files, replacing a previous
+     * queue for the specified file systems.
+     */
+    public static MigrationQueue create(File dir, long srcFsPk,
+            long targetFsPk, Collection<String> tarFilenames)
+            throws IOException {
+        dir.mkdirs();
+        File queueFile = queueFile(dir, srcFsPk, targetFsPk);
+        File doneFile = doneFile(dir, srcFsPk, targetFsPk);
+        File tmpFile = new File(dir, queueFile.getName() + ".tmp");
+        Writer w = new OutputStreamWriter(new FileOutputStream(tmpFile),
+                ENCODING);
+        try {
+            for (String tarFilename : tarFilenames) {
+                w.write(tarFilename);
+                w.write('\n');
+            }
+        } finally {
+            w.close();
+        }
+        doneFile.delete();
+        queueFile.delete();
+        if (!tmpFile.renameTo(queueFile)) {
+            throw new IOException("Failed to rename " + tmpFile + " to "
+                    + queueFile);
+        }
+        return new MigrationQueue(queueFile, doneFile, tarFilenames,
+                new HashSet<String>());
+    }
+
+    private static void readLines(File f, Collection<String> lines)
+            throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(
+                new FileInputStream(f), ENCODING));
+        try {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.length() > 0) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Returns an iterator over at most <tt>limit</tt> pending tar files. Each
+     * tar file returned by the iterator is taken from the queue, and has to be
+     * reported by {@link #done}.
+     */
+    public Iterator<String> take(final int limit) {
+        return new Iterator<String>() {
+            int remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+
+            public boolean hasNext() {
+                synchronized (MigrationQueue.this) {
+                    return remaining > 0 && !pending.isEmpty();
+                }
+            }
+
+            public String next() {
+                synchronized (MigrationQueue.this) {
+                    if (remaining <= 0 || pending.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    remaining--;
+                    inProgress++;
+                    return pending.removeFirst();
+                }
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Checkpoints the processing of the specified tar file.
+     */
+    public synchronized void done(String tarFilename, long size)
+            throws IOException {
+        if (doneWriter == null) {
+            doneWriter = new OutputStreamWriter(
+                    new FileOutputStream(doneFile, true), ENCODING);
+        }
+        doneWriter.write(tarFilename);
+        doneWriter.write('\n');
+        doneWriter.flush();
+        inProgress--;
+        processed++;
+        processedSinceLoad++;
+        bytesSinceLoad += size;
+    }
+
+    /**
+     * Returns <tt>true</tt>, if all tar files of the queue were processed.
+     */
+    public synchronized boolean isCompleted() {
+        return pending.isEmpty() && inProgress == 0;
+    }
+
+    /**
+     * Closes the queue and deletes its files, if all tar files were
+     * processed.
+     */
+    public synchronized void close() {
+        if (doneWriter != null) {
+            try {
+                doneWriter.close();
+            } catch (IOException ignore) {
+            }
+            doneWriter = null;
+        }
+        if (isCompleted()) {
+            queueFile.delete();
+            doneFile.delete();
+        }
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public synchronized int getProcessed() {
+        return processed;
+    }
+
+    public synchronized int getRemaining() {
+        return total - processed;
+    }
+
+    public synchronized long getBytesPerSecond() {
+        long elapsed = System.currentTimeMillis() - loadTime;
+        return elapsed > 0 ? bytesSinceLoad * 1000 / elapsed : 0L;
+    }
+
+    /**
+     * Returns the expected time of completion, estimated from the rate of
+     * processed tar files since the queue was loaded, or <tt>-1</tt> if no
+     * tar file was processed yet.
+     */
+    public synchronized long getExpectedCompletionTime() {
+        if (processedSinceLoad == 0) {
+            return -1L;
+        }
+        long now = System.currentTimeMillis();
+        return now + (long) ((double) (now - loadTime)
+                * (total - processed) / processedSinceLoad);
+    }
+}
@@ -66,6 +66,7 @@ public class MigrationTask implements Runnable {
     
     private HSMMigrateService service;
     private Iterator<String> tarfilenames;
+    private MigrationQueue queue;
     FileSystemMgt2 mgr;
     String sourceFs, targetFs;
     int[] counts;
@@ -75,16 +76,20 @@ public class MigrationTask implements Runnable {
     private static final Logger log = Logger.getLogger(MigrationTask.class);
     
     public MigrationTask(HSMMigrateService service, Iterator<String> tarfilenames, 
-            FileSystemMgt2 mgr, int[] count) {
+            MigrationQueue queue, FileSystemMgt2 mgr, int[] count) {
         taskNumber = ++taskCounter;
         this.service = service;
         this.tarfilenames = tarfilenames;
+        this.queue = queue;
         this.mgr = mgr;
         sourceFs = service.getSourceFileSystem();
         targetFs = service.getTargetFileSystem();
         this.counts = count;
     }
-    private void migrateTarFile(String srcFsId, String srcTarFilename, String targetFsId) throws Exception {
+    /**
+     * @return number of bytes copied to the target file system
+     */
+    private long migrateTarFile(String srcFsId, String srcTarFilename, String targetFsId) throws Exception {
         int nrOfCopies = new QueryHSMMigrateCmd().countFileCopiesOfTarFile(service.getSrcFsPk(), srcTarFilename, service.getTargetFsPk());
         log.debug("########### nrOfCopies:"+nrOfCopies);
         FileDTO[] dtos = null;
@@ -94,7 +99,7 @@ public class MigrationTask implements Runnable {
             if (nrOfCopies > 0 && dtos.length == nrOfCopies) {
                 log.warn(this+" - File copies of all files in source tar file "+srcTarFilename+" already exists! Set file status of source to MIGRATED.");
                 mgr.setFilestatusOfFilesOfTarFile(srcFsId, srcTarFilename, FileStatus.MIGRATED);
-                return;
+                return 0L;
             }
         }
         File src = service.fetchTarFile(srcFsId, srcTarFilename);
@@ -108,10 +113,11 @@ public class MigrationTask implements Runnable {
                 log.error(x.getMessage()+" Set file status of source tar file entities to MD5_CHECK_FAILED and skip migration of "+srcTarFilename);
                 mgr.setFilestatusOfFilesOfTarFile(srcFsId, srcTarFilename, FileStatus.MD5_CHECK_FAILED);
                 service.fetchTarFileFinished(srcFsId, srcTarFilename, src);
-                return;
+                return 0L;
             }
         }
         int nrOfFiles = 0;
+        long size = 0L;
         String targetTarFilename = service.toTargetFilename(srcTarFilename);
         File target = null;
         try {
@@ -127,14 +133,16 @@ public class MigrationTask implements Runnable {
             if (target.length() > 0) {
                 log.warn(this+" - Target tar file "+target+" already exists! Skip migration with assumption that this file is already migrated and set file status of source to MIGRATED.");
                 mgr.setFilestatusOfFilesOfTarFile(srcFsId, srcTarFilename, FileStatus.MIGRATED);
-                return;
+                return 0L;
             } else {
                 FileChannel srcCh = null;
                 FileChannel destCh = null;
                 try {
                     srcCh = new FileInputStream(src).getChannel();
                     destCh = new FileOutputStream(target).getChannel();
-                    destCh.transferFrom(srcCh, 0, srcCh.size());
+                    size = srcCh.size();
+                    service.throttle(size);
+                    destCh.transferFrom(srcCh, 0, size);
                 } finally {
                   if(srcCh != null)
                       srcCh.close();
@@ -163,6 +171,7 @@ public class MigrationTask implements Runnable {
             counts[1] += nrOfFiles;
             log.info(nrOfFiles+" files migrated by "+this+" - Tasks in progress:"+counts[0]);
         }
+        return size;
     }
 
     private List<FileDTO> verifyTar(File file, FileDTO[] files, boolean markMissingFiles) throws IOException, VerifyTarException {
@@ -216,8 +225,9 @@ public class MigrationTask implements Runnable {
         }
         while(fn != null) {
             log.info(this+" - Migrate tar file: "+fn);
+            long size = 0L;
             try {
-                migrateTarFile(sourceFs, fn, targetFs);
+                size = migrateTarFile(sourceFs, fn, targetFs);
             } catch (Exception e) {
                 try {
                     log.error(this+" - Migration of "+fn+" failed!", e);
@@ -226,6 +236,13 @@ public class MigrationTask implements Runnable {
                     log.error(this+" - Set FileStatus (MIGRATION_FAILED) of "+fn+" failed!", x);
                 }
             }
+            if (queue != null) {
+                try {
+                    queue.done(fn, size);
+                } catch (Exception x) {
+                    log.warn(this+" - Checkpoint of "+fn+" failed!", x);
+                }
+            }
             synchronized (tarfilenames) {
                 fn = tarfilenames.hasNext() ? tarfilenames.next() : null;
             }
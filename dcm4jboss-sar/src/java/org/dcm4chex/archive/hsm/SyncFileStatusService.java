@@ -45,6 +45,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -97,6 +98,8 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
 
     private int limitNumberOfFilesPerTask;
 
+    private int statusUpdateBatchSize = 1000;
+
     private int checkFileStatus;
 
     private ArrayList<String> fileSystem = new ArrayList<String>();
@@ -290,6 +293,17 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
         this.limitNumberOfFilesPerTask = limit;
     }
 
+    public final int getStatusUpdateBatchSize() {
+        return statusUpdateBatchSize;
+    }
+
+    public final void setStatusUpdateBatchSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size: " + size);
+        }
+        this.statusUpdateBatchSize = size;
+    }
+
     public String getOldestCreatedTimeOfCheckFileStatus() {
         return oldestCreatedTimeOfCheckFileStatus == null ? "UNKNOWN" : 
             new SimpleDateFormat("yyyy/MM/dd hh:mm:ss").format(oldestCreatedTimeOfCheckFileStatus);
@@ -388,12 +402,15 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
             HashMap<String, Integer> checkedTarsStatus = new HashMap<String, Integer>();
             HashMap<String, Map<String, byte[]>> checkedTarsMD5 = verifyTar ? new HashMap<String, Map<String, byte[]>>() : null;
             ArrayList<Long> failedFilesystems = new ArrayList<Long>();
+            LinkedHashMap<Long, Integer> statusUpdates = new LinkedHashMap<Long, Integer>();
             for (int i = 0; i < c.length; i++) {
                 if (failedFilesystems.contains(c[i].getFileSystemPk()))
                         continue;
                 try {
-                    if (check(fsmgt, c[i], checkedTarsStatus, checkedTarsMD5))
+                    if (check(c[i], checkedTarsStatus, checkedTarsMD5, statusUpdates))
                         ++count;
+                    if (statusUpdates.size() >= statusUpdateBatchSize)
+                        flushStatusUpdates(fsmgt, statusUpdates);
                 } catch (HSMException x) {
                     if (x.getErrorLevel() == HSMException.ERROR_ON_FILESYSTEM_LEVEL) {
                         failedFilesystems.add(c[i].getFileSystemPk());
@@ -404,6 +421,7 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
                     log.warn("Check of file "+c[i].getFilePath()+" failed! skipped!");
                 }
             }
+            flushStatusUpdates(fsmgt, statusUpdates);
             log.info("SyncFileStatus finished! changed files:"+count);
             return count;
         } finally {
@@ -411,8 +429,9 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
         }
     }
 
-    private boolean check(FileSystemMgt2 fsmgt, FileDTO fileDTO,
-            HashMap<String, Integer> checkedTarsStatus, HashMap<String, Map<String, byte[]>> checkedTarsMD5) throws IOException, VerifyTarException, HSMException {
+    private boolean check(FileDTO fileDTO,
+            HashMap<String, Integer> checkedTarsStatus, HashMap<String, Map<String, byte[]>> checkedTarsMD5,
+            Map<Long, Integer> statusUpdates) throws IOException, VerifyTarException, HSMException {
         String fsId = fileDTO.getDirectoryPath();
         String filePath = fileDTO.getFilePath();
         String tarPathKey = null;
@@ -446,7 +465,7 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
             status = queryHSM(fsId, filePath, fileDTO.getUserInfo());
         }
         return status == null ? false : status == Integer.MIN_VALUE ? 
-                true : updateFileStatus(fsmgt, fileDTO, status);
+                true : updateFileStatus(fileDTO, status, statusUpdates);
     }
 
     private boolean checkSkipVerifyTarStatus(Integer status, FileDTO dto) {
@@ -556,20 +575,46 @@ public class SyncFileStatusService extends ServiceMBeanSupport {
         }
     }
 
-    private boolean updateFileStatus(FileSystemMgt2 fsmgt, FileDTO fileDTO,
-            int status) {
+    private boolean updateFileStatus(FileDTO fileDTO, int status,
+            Map<Long, Integer> statusUpdates) {
         if (fileDTO.getFileStatus() != status) {
             log.info("Change status of " + fileDTO + " to " + status);
-            try {
-                fsmgt.setFileStatus(fileDTO.getPk(), status, fileSystem);
-                return true;
-            } catch (Exception e) {
-                log.error("Failed to update status of file " + fileDTO, e);
-            }
+            statusUpdates.put(fileDTO.getPk(), status);
+            return true;
         }
         return false;
     }
 
+    /**
+     * Applies collected status changes by one set-based update per status
+     * value. Falls back to update the status of each file separately, if the
+     * batch update fails.
+     */
+    private void flushStatusUpdates(FileSystemMgt2 fsmgt,
+            Map<Long, Integer> statusUpdates) {
+        if (statusUpdates.isEmpty()) {
+            return;
+        }
+        try {
+            int updated = fsmgt.setFileStatus(statusUpdates, fileSystem);
+            if (log.isDebugEnabled())
+                log.debug("Updated status of " + updated + " files");
+        } catch (Exception e) {
+            log.warn("Failed to update status of " + statusUpdates.size()
+                    + " files - update each file separately", e);
+            for (Map.Entry<Long, Integer> entry : statusUpdates.entrySet()) {
+                try {
+                    fsmgt.setFileStatus(entry.getKey(), entry.getValue(),
+                            fileSystem);
+                } catch (Exception e1) {
+                    log.error("Failed to update status of file [pk="
+                            + entry.getKey() + "]", e1);
+                }
+            }
+        }
+        statusUpdates.clear();
+    }
+
     private Integer queryHSM(String fsID, String filePath, String userInfo) throws IOException, HSMException {
         try {
             return (Integer) server.invoke(hsmModuleServicename, 
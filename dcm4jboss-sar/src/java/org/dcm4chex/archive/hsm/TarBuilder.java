@@ -0,0 +1,299 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.compress.tar.TarEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes tar files through a {@link FileChannel}, copying the content of
+ * file entries by {@link FileChannel#transferTo} without passing it through
+ * Java buffers.
+ * <p>
+ * If an {@link Executor} for verification is specified, each written file
+ * entry is read back and its MD5 sum verified by the executor, while
+ * further entries are written. The number of written, but not yet verified
+ * bytes is limited, so entries are usually still in the page cache when
+ * they are verified.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class TarBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(TarBuilder.class);
+
+    private static final int BLOCK_SIZE = TarIndex.BLOCK_SIZE;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+
+    private final File tarFile;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final TarIndex index = new TarIndex();
+    private final Executor verifyExecutor;
+    private final long maxPendingVerifyBytes;
+    private final int bufferSize;
+    private long position;
+    private long pendingVerifyBytes;
+    private int pendingVerifies;
+    private VerifyTarException verifyException;
+
+    public TarBuilder(File tarFile, Executor verifyExecutor,
+            long maxPendingVerifyBytes, int bufferSize) throws IOException {
+        this.tarFile = tarFile;
+        this.raf = new RandomAccessFile(tarFile, "rw");
+        this.channel = raf.getChannel();
+        this.verifyExecutor = verifyExecutor;
+        this.maxPendingVerifyBytes = maxPendingVerifyBytes;
+        this.bufferSize = bufferSize;
+        channel.truncate(0L);
+    }
+
+    public TarIndex getIndex() {
+        return index;
+    }
+
+    public void putEntry(String name, byte[] data) throws IOException {
+        writeHeader(name, data.length);
+        writeFully(ByteBuffer.wrap(data));
+        pad();
+        index.add(name, data.length, null);
+    }
+
+    public void putEntry(String name, File file, long size, byte[] md5sum)
+            throws IOException, VerifyTarException {
+        checkVerifyException();
+        TarIndex.Entry entry = index.add(name, size, md5sum);
+        writeHeader(name, size);
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel src = in.getChannel();
+            long pos = 0;
+            while (pos < size) {
+                long n = src.transferTo(pos, size - pos, channel);
+                if (n <= 0) {
+                    throw new IOException("Unexpected EOF of " + file
+                            + " after " + pos + " of " + size + " bytes");
+                }
+                pos += n;
+            }
+        } finally {
+            in.close();
+        }
+        position += size;
+        channel.position(position);
+        pad();
+        if (verifyExecutor != null && md5sum != null) {
+            verifyLater(entry);
+        }
+    }
+
+    private void writeHeader(String name, long size) throws IOException {
+        if (name.length() >= TarEntry.NAMELEN) {
+            throw new IllegalArgumentException("Tar entry name too long: "
+                    + name);
+        }
+        TarEntry entry = new TarEntry(name);
+        entry.setSize(size);
+        byte[] header = new byte[BLOCK_SIZE];
+        entry.writeEntryHeader(header);
+        writeFully(ByteBuffer.wrap(header));
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            position += channel.write(bb);
+        }
+    }
+
+    private void pad() throws IOException {
+        int rem = (int) (position % BLOCK_SIZE);
+        if (rem != 0) {
+            writeFully(ByteBuffer.allocate(BLOCK_SIZE - rem));
+        }
+    }
+
+    private void verifyLater(final TarIndex.Entry entry)
+            throws VerifyTarException {
+        long size = entry.getSize();
+        synchronized (this) {
+            while (pendingVerifies > 0
+                    && pendingVerifyBytes + size > maxPendingVerifyBytes) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new VerifyTarException("Interrupted during"
+                            + " verification of " + tarFile);
+                }
+            }
+            pendingVerifyBytes += size;
+            pendingVerifies++;
+        }
+        verifyExecutor.execute(new Runnable() {
+            public void run() {
+                VerifyTarException e = null;
+                try {
+                    verify(entry);
+                } catch (VerifyTarException x) {
+                    e = x;
+                } catch (Exception x) {
+                    e = new VerifyTarException("Failed to verify TAR entry: "
+                            + entry.getName() + " in " + tarFile + ": " + x);
+                } finally {
+                    verified(entry.getSize(), e);
+                }
+            }
+        });
+    }
+
+    private synchronized void verified(long size, VerifyTarException e) {
+        pendingVerifyBytes -= size;
+        pendingVerifies--;
+        if (e != null && verifyException == null) {
+            verifyException = e;
+        }
+        notifyAll();
+    }
+
+    private void verify(TarIndex.Entry entry)
+            throws IOException, VerifyTarException {
+        String name = entry.getName();
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_SIZE);
+        readFully(header, entry.getHeaderOffset());
+        TarEntry tarEntry = new TarEntry(header.array());
+        if (!name.equals(tarEntry.getName())
+                || tarEntry.getSize() != entry.getSize()) {
+            throw new VerifyTarException("Unexpected TAR header: "
+                    + tarEntry.getName() + " in " + tarFile
+                    + " - expected " + name);
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(bufferSize);
+        long pos = entry.getDataOffset();
+        long remaining = entry.getSize();
+        while (remaining > 0) {
+            buf.clear();
+            if (remaining < buf.capacity()) {
+                buf.limit((int) remaining);
+            }
+            readFully(buf, pos);
+            digest.update(buf.array(), 0, buf.limit());
+            pos += buf.limit();
+            remaining -= buf.limit();
+        }
+        if (!Arrays.equals(digest.digest(), entry.getMD5Sum())) {
+            throw new VerifyTarException("Failed MD5 check of TAR entry: "
+                    + name + " in " + tarFile);
+        }
+        log.debug("MD5 check is successful for {} in {}", name, tarFile);
+    }
+
+    private void readFully(ByteBuffer bb, long pos) throws IOException {
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected EOF of " + tarFile);
+            }
+            pos += n;
+        }
+        bb.flip();
+    }
+
+    private void checkVerifyException() throws VerifyTarException {
+        synchronized (this) {
+            if (verifyException != null) {
+                throw verifyException;
+            }
+        }
+    }
+
+    /**
+     * Writes the end of archive marker and waits until all entries are
+     * verified.
+     */
+    public void finish() throws IOException, VerifyTarException {
+        writeFully(ByteBuffer.allocate(2 * BLOCK_SIZE));
+        int rem = (int) (position % RECORD_SIZE);
+        if (rem != 0) {
+            writeFully(ByteBuffer.allocate(RECORD_SIZE - rem));
+        }
+        awaitVerified();
+        checkVerifyException();
+    }
+
+    private synchronized void awaitVerified() {
+        boolean interrupted = false;
+        while (pendingVerifies > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for pending verifications and closes the tar file.
+     */
+    public void close() throws IOException {
+        awaitVerified();
+        raf.close();
+    }
+}
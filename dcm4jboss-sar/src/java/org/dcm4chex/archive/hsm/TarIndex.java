@@ -0,0 +1,173 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dcm4che.util.MD5Utils;
+
+/**
+ * Offset index of the entries of a tar file, stored as sidecar file
+ * <code>&lt;tar file&gt;.idx</code> next to the tar file, to read single
+ * entries without extracting the whole tar file.
+ * <p>
+ * Each line of the index file contains the MD5 sum (or <code>-</code>),
+ * the offset of the tar header, the size and the name of one entry.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class TarIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    /** Size of tar header and tar block */
+    public static final int BLOCK_SIZE = 512;
+
+    public static class Entry {
+        private final String name;
+        private final long headerOffset;
+        private final long size;
+        private final byte[] md5sum;
+
+        Entry(String name, long headerOffset, long size, byte[] md5sum) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.size = size;
+            this.md5sum = md5sum;
+        }
+
+        public final String getName() {
+            return name;
+        }
+
+        public final long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public final long getDataOffset() {
+            return headerOffset + BLOCK_SIZE;
+        }
+
+        public final long getSize() {
+            return size;
+        }
+
+        public final byte[] getMD5Sum() {
+            return md5sum;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final StringBuilder lines = new StringBuilder();
+    private long offset;
+
+    public static File toIndexFile(File tarFile) {
+        return new File(tarFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Adds the next entry written to the tar file. Only valid for entries
+     * with names of less than 100 characters, which are written without
+     * additional GNU long name header.
+     */
+    public Entry add(String name, long size, byte[] md5sum) {
+        Entry entry = new Entry(name, offset, size, md5sum);
+        entries.put(name, entry);
+        lines.append(md5sum != null
+                        ? new String(MD5Utils.toHexChars(md5sum)) : "-")
+             .append(' ').append(offset)
+             .append(' ').append(size)
+             .append(' ').append(name).append('\n');
+        offset += BLOCK_SIZE + (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        return entry;
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void write(File file) throws IOException {
+        Writer out = new FileWriter(file);
+        try {
+            out.write(lines.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    public static TarIndex read(File file) throws IOException {
+        TarIndex index = new TarIndex();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ", 4);
+                if (fields.length != 4) {
+                    throw new IOException("Invalid line in " + file + ": "
+                            + line);
+                }
+                try {
+                    long headerOffset = Long.parseLong(fields[1]);
+                    index.offset = headerOffset;
+                    index.add(fields[3], Long.parseLong(fields[2]),
+                            "-".equals(fields[0]) ? null
+                                    : MD5Utils.toBytes(fields[0]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid line in " + file + ": "
+                            + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+}
@@ -45,15 +45,22 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
@@ -75,8 +82,10 @@ public class TarRetrieverService extends ServiceMBeanSupport {
 
     private static final String NONE = "NONE";
 
-    private static final Set<String> extracting =
-            Collections.synchronizedSet(new HashSet<String>());
+    private static final int MAX_CACHED_INDEXES = 100;
+
+    private static final ConcurrentHashMap<String, Extraction> extractions =
+            new ConcurrentHashMap<String, Extraction>();
 
     private String dataRootDir;
 
@@ -94,6 +103,23 @@ public class TarRetrieverService extends ServiceMBeanSupport {
 
     private boolean checkMD5 = true;
 
+    private int maxConcurrentPrefetches = 4;
+
+    private boolean fetchTarEntriesFromHSMModule;
+
+    private ThreadPoolExecutor prefetchExecutor;
+
+    private final Map<File, TarIndex> indexes =
+            new LinkedHashMap<File, TarIndex>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 2786419370281524123L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, TarIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
     public String getCacheRoot() {
         return dataRootDir;
     }
@@ -137,6 +163,57 @@ public class TarRetrieverService extends ServiceMBeanSupport {
         this.checkMD5 = checkMD5;
     }
 
+    public final boolean isFetchTarEntriesFromHSMModule() {
+        return fetchTarEntriesFromHSMModule;
+    }
+
+    public final void setFetchTarEntriesFromHSMModule(boolean enable) {
+        this.fetchTarEntriesFromHSMModule = enable;
+    }
+
+    public final int getMaxConcurrentPrefetches() {
+        return maxConcurrentPrefetches;
+    }
+
+    public synchronized void setMaxConcurrentPrefetches(int max) {
+        if (max <= 0) {
+            throw new IllegalArgumentException(
+                    "maxConcurrentPrefetches: " + max);
+        }
+        if (prefetchExecutor != null) {
+            if (max > maxConcurrentPrefetches) {
+                prefetchExecutor.setMaximumPoolSize(max);
+                prefetchExecutor.setCorePoolSize(max);
+            } else {
+                prefetchExecutor.setCorePoolSize(max);
+                prefetchExecutor.setMaximumPoolSize(max);
+            }
+        }
+        this.maxConcurrentPrefetches = max;
+    }
+
+    private synchronized Executor prefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = new ThreadPoolExecutor(
+                    maxConcurrentPrefetches, maxConcurrentPrefetches,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+        }
+        return prefetchExecutor;
+    }
+
+    protected synchronized void stopService() throws Exception {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdown();
+            prefetchExecutor = null;
+        }
+        synchronized (indexes) {
+            indexes.clear();
+        }
+        journal.close();
+        super.stopService();
+    }
+
     public final int getBufferSize() {
         return bufferSize;
     }
@@ -178,18 +255,7 @@ public class TarRetrieverService extends ServiceMBeanSupport {
         
     public File retrieveFile(String fsID, String fileID)
             throws IOException, VerifyTarException {
-        if (!fsID.startsWith("tar:")) {
-            if ("true".equals(System.getProperty("tarretriever.dontcheck.protocol", "false"))) {
-                log.info("Protocol is not 'tar:' but tarretriever.dontcheck.protocol is set to true!");
-                if (fsID.length() < 4 || fsID.charAt(3) != ':') {
-                    throw new IllegalArgumentException(
-                            "Not a tar file system: " + fsID + " (length of protocol must be 3!)");
-                }
-            } else {
-                throw new IllegalArgumentException(
-                    "Not a tar file system: " + fsID);
-            }
-        }
+        checkTarFileSystem(fsID);
         int tarEnd = fileID.indexOf('!');
         if (tarEnd == -1) {
             throw new IllegalArgumentException("Missing ! in " + fileID);
@@ -204,32 +270,19 @@ public class TarRetrieverService extends ServiceMBeanSupport {
             journal.record(cacheDir, true);
             return f;
         } else {
-            boolean extracted = false;
-            if (extracting.add(tarPath)) {
-                try {
-                    fetchAndExtractTar(fsID, tarPath, cacheDir);
-                    extracted = true;
-                } finally {
-                    synchronized (extracting) {
-                        extracting.remove(tarPath);
-                        extracting.notifyAll();
-                    }
-                }
+            Extraction extraction = newExtraction(fsID, fileID);
+            Extraction pending = extractions.putIfAbsent(
+                    extraction.key, extraction);
+            if (pending == null) {
+                extraction.run();
             } else {
                 if (log.isDebugEnabled())
                     log.debug("Wait for concurrent fetch and extract of tar: "
-                            + tarPath);
-                synchronized (extracting) {
-                    while (extracting.contains(tarPath))
-                        try {
-                            extracting.wait();
-                        } catch (InterruptedException e) {
-                            log.warn("Wait for concurrent fetch and extract of tar: "
-                            + tarPath + " interrupted:", e);
-                        }
-                }
+                            + pending.key);
+                extraction = pending;
             }
-            journal.record(cacheDir, !extracted);
+            await(extraction);
+            journal.record(cacheDir, true);
         }
         if (!f.exists()) {
             log.error("Tar file "+tarPath+" doesn't contain file "+fpath+"!");
@@ -238,6 +291,335 @@ public class TarRetrieverService extends ServiceMBeanSupport {
         return f;
     }
 
+    /**
+     * Fetches and extracts the tar files - or, if indexed, the tar entries -
+     * containing the specified files, using up to
+     * <i>MaximumConcurrentPrefetches</i> threads, and waits until all files
+     * are extracted.
+     */
+    public void prefetchFiles(String fsID, String[] fileIDs)
+            throws IOException, VerifyTarException {
+        checkTarFileSystem(fsID);
+        Map<String, Extraction> pendings =
+                new LinkedHashMap<String, Extraction>();
+        for (String fileID : fileIDs) {
+            int tarEnd = fileID.indexOf('!');
+            if (tarEnd == -1) {
+                throw new IllegalArgumentException("Missing ! in " + fileID);
+            }
+            if (toCacheFile(fileID, tarEnd).exists()) {
+                continue;
+            }
+            Extraction extraction = newExtraction(fsID, fileID);
+            Extraction pending = extractions.putIfAbsent(
+                    extraction.key, extraction);
+            if (pending == null) {
+                prefetchExecutor().execute(extraction);
+                pendings.put(extraction.key, extraction);
+            } else if (!pendings.containsKey(pending.key)) {
+                pendings.put(pending.key, pending);
+            }
+        }
+        if (log.isDebugEnabled())
+            log.debug("Wait for " + pendings.size()
+                    + " fetches and extractions of tars from " + fsID);
+        IOException ioe = null;
+        VerifyTarException vte = null;
+        for (Extraction extraction : pendings.values()) {
+            try {
+                await(extraction);
+            } catch (IOException e) {
+                ioe = e;
+            } catch (VerifyTarException e) {
+                vte = e;
+            }
+        }
+        if (vte != null)
+            throw vte;
+        if (ioe != null)
+            throw ioe;
+    }
+
+    private void checkTarFileSystem(String fsID) {
+        if (!fsID.startsWith("tar:")) {
+            if ("true".equals(System.getProperty("tarretriever.dontcheck.protocol", "false"))) {
+                log.info("Protocol is not 'tar:' but tarretriever.dontcheck.protocol is set to true!");
+                if (fsID.length() < 4 || fsID.charAt(3) != ':') {
+                    throw new IllegalArgumentException(
+                            "Not a tar file system: " + fsID + " (length of protocol must be 3!)");
+                }
+            } else {
+                throw new IllegalArgumentException(
+                    "Not a tar file system: " + fsID);
+            }
+        }
+    }
+
+    private File toCacheFile(String fileID, int tarEnd) {
+        return new File(journal.getDataRootDir(), 
+                fileID.substring(0, tarEnd).replace('/', File.separatorChar)
+                + File.separatorChar
+                + fileID.substring(tarEnd + 1).replace('/', File.separatorChar));
+    }
+
+    /**
+     * Pending fetch and extraction of a tar file, or of a single entry of an
+     * indexed tar file. Removes itself from {@link #extractions} on
+     * completion.
+     */
+    private class Extraction extends FutureTask<Object> {
+        final String key;
+
+        Extraction(String key, Callable<Object> callable) {
+            super(callable);
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            extractions.remove(key, this);
+        }
+    }
+
+    private Extraction newExtraction(final String fsID, String fileID) {
+        int tarEnd = fileID.indexOf('!');
+        final String tarPath = fileID.substring(0, tarEnd);
+        final File cacheDir = new File(journal.getDataRootDir(),
+                tarPath.replace('/', File.separatorChar));
+        final File f = toCacheFile(fileID, tarEnd);
+        final File tarFile = hsmModuleServicename == null
+                ? FileUtils.toFile(fsID.substring(4), tarPath) : null;
+        final String entryName = fileID.substring(tarEnd + 1);
+        final TarIndex.Entry entry = tarFile != null
+                ? getTarIndexEntry(tarFile, entryName)
+                : null;
+        final boolean fetchEntry = hsmModuleServicename != null
+                && fetchTarEntriesFromHSMModule;
+        if (entry == null && !fetchEntry) {
+            return newTarExtraction(fsID, tarPath, cacheDir, f);
+        }
+        // extract single entries of indexed tar files concurrently
+        return new Extraction(fileID, new Callable<Object>() {
+            public Object call() throws Exception {
+                // may be extracted by just completed extraction
+                if (f.exists())
+                    return null;
+                if (fetchEntry
+                        ? !fetchHSMFileEntry(fsID, tarPath, entryName, f)
+                        : !extractTarEntry(tarFile, entry, f)) {
+                    extractTar(fsID, tarPath, cacheDir, f);
+                }
+                journal.record(cacheDir, false);
+                return null;
+            }
+        });
+    }
+
+    private Extraction newTarExtraction(final String fsID,
+            final String tarPath, final File cacheDir, final File f) {
+        return new Extraction(tarPath, new Callable<Object>() {
+            public Object call() throws Exception {
+                // may be extracted by just completed extraction
+                if (f.exists())
+                    return null;
+                fetchAndExtractTar(fsID, tarPath, cacheDir);
+                journal.record(cacheDir, false);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Fetches and extracts the whole tar file, if a single entry could not
+     * be extracted, or waits for a concurrent extraction of the tar file, so
+     * entries of one tar file falling back share one fetch.
+     */
+    private void extractTar(String fsID, String tarPath, File cacheDir,
+            File f) throws IOException, VerifyTarException {
+        Extraction extraction = newTarExtraction(fsID, tarPath, cacheDir, f);
+        Extraction pending = extractions.putIfAbsent(tarPath, extraction);
+        if (pending == null) {
+            extraction.run();
+        } else {
+            if (log.isDebugEnabled())
+                log.debug("Wait for concurrent fetch and extract of tar: "
+                        + tarPath);
+            extraction = pending;
+        }
+        await(extraction);
+    }
+
+    private void await(Extraction extraction)
+            throws IOException, VerifyTarException {
+        for (;;) {
+            try {
+                extraction.get();
+                return;
+            } catch (InterruptedException e) {
+                log.warn("Wait for concurrent fetch and extract of tar: "
+                        + extraction.key + " interrupted:", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof VerifyTarException)
+                    throw (VerifyTarException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                IOException ioe = new IOException(
+                        "Fetch and extract of tar: " + extraction.key
+                        + " failed");
+                ioe.initCause(cause);
+                throw ioe;
+            }
+        }
+    }
+
+    private TarIndex.Entry getTarIndexEntry(File tarFile, String entryName) {
+        TarIndex index = getTarIndex(tarFile);
+        if (index == null) {
+            return null;
+        }
+        TarIndex.Entry entry = index.get(entryName);
+        if (entry == null) {
+            log.warn("Tar index of " + tarFile
+                    + " doesn't contain entry " + entryName);
+        }
+        return entry;
+    }
+
+    private TarIndex getTarIndex(File tarFile) {
+        synchronized (indexes) {
+            TarIndex index = indexes.get(tarFile);
+            if (index != null) {
+                return index;
+            }
+        }
+        File indexFile = TarIndex.toIndexFile(tarFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            TarIndex index = TarIndex.read(indexFile);
+            synchronized (indexes) {
+                indexes.put(tarFile, index);
+            }
+            return index;
+        } catch (IOException e) {
+            log.warn("Failed to read tar index " + indexFile
+                    + " - extract whole tar file", e);
+            return null;
+        }
+    }
+
+    /**
+     * Extracts one entry of a tar file, using the offset of the entry
+     * provided by the tar index.
+     * 
+     * @return <code>false</code>, if the tar header at the indexed offset
+     *         does not match the index entry
+     */
+    private boolean extractTarEntry(File tarFile, TarIndex.Entry entry,
+            File f) throws IOException, VerifyTarException {
+        String entryName = entry.getName();
+        long free = FileSystemUtils.freeSpace(
+                journal.getDataRootDir().getPath());
+        long toDelete = entry.getSize() + minFreeDiskSpace - free;
+        if (toDelete > 0)
+            free += free(toDelete);
+        byte[] header = new byte[TarIndex.BLOCK_SIZE];
+        byte[] buf = new byte[bufferSize];
+        RandomAccessFile raf = new RandomAccessFile(tarFile, "r");
+        try {
+            raf.seek(entry.getHeaderOffset());
+            raf.readFully(header);
+            TarEntry tarEntry = new TarEntry(header);
+            if (!entryName.equals(tarEntry.getName())
+                    || entry.getSize() != tarEntry.getSize()) {
+                log.warn("Tar header at offset " + entry.getHeaderOffset()
+                        + " of " + tarFile + " doesn't match index entry "
+                        + entryName + " - extract whole tar file");
+                synchronized (indexes) {
+                    indexes.remove(tarFile);
+                }
+                return false;
+            }
+            MessageDigest digest = null;
+            byte[] md5sum = entry.getMD5Sum();
+            if (checkMD5 && md5sum != null) {
+                try {
+                    digest = MessageDigest.getInstance("MD5");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            File tmp = new File(f.getAbsolutePath() + ".part");
+            File dir = tmp.getParentFile();
+            if (dir.mkdirs()) {
+                log.info("M-WRITE " + dir);
+            }
+            log.info("M-WRITE " + tmp);
+            FileOutputStream out = new FileOutputStream(tmp);
+            boolean cleanup = true;
+            try {
+                long remaining = entry.getSize();
+                while (remaining > 0) {
+                    int len = raf.read(buf, 0,
+                            (int) Math.min(buf.length, remaining));
+                    if (len < 0) {
+                        throw new IOException("Unexpected EOF of "
+                                + tarFile + " in entry " + entryName);
+                    }
+                    if (digest != null) {
+                        digest.update(buf, 0, len);
+                    }
+                    out.write(buf, 0, len);
+                    remaining -= len;
+                }
+                cleanup = false;
+            } finally {
+                try {
+                    out.close();
+                } catch (Exception ignore) {
+                }
+                if (cleanup) {
+                    log.info("M-DELETE " + tmp);
+                    tmp.delete();
+                }
+            }
+            if (digest != null) {
+                if (!Arrays.equals(digest.digest(), md5sum)) {
+                    log.info("M-DELETE " + tmp);
+                    tmp.delete();
+                    throw new VerifyTarException(
+                            "Failed MD5 check of TAR entry: " + entryName
+                                    + " in " + tarFile);
+                }
+                log.info("MD5 check is successful for " + entryName
+                        + " in " + tarFile);
+            }
+            free -= tmp.length();
+            if (!tmp.renameTo(f)) {
+                log.info("M-DELETE " + tmp);
+                tmp.delete();
+                // may be extracted meanwhile by extraction of the whole tar
+                if (!f.exists()) {
+                    throw new IOException("Failed to rename " + tmp
+                            + " to " + f);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        toDelete = prefFreeDiskSpace - free;
+        if (toDelete > 0) {
+            freeNonBlocking(toDelete);
+        }
+        return true;
+    }
+
     private void fetchAndExtractTar(String fsID, String tarPath, File cacheDir) throws IOException,
             VerifyTarException {
         File tarFile = fetchTarFile(fsID, tarPath);
@@ -265,6 +647,39 @@ public class TarRetrieverService extends ServiceMBeanSupport {
         }
     }
 
+    /**
+     * Fetches a single entry of a tar file by the HSM Module, if supported.
+     * 
+     * @return <code>false</code>, if the HSM Module failed to fetch the
+     *         entry, so the whole tar file has to be fetched
+     */
+    private boolean fetchHSMFileEntry(String fsID, String tarPath,
+            String entryName, File f) throws IOException {
+        try {
+            Boolean fetched = (Boolean) server.invoke(hsmModuleServicename,
+                    "fetchHSMFileEntry",
+                    new Object[] { fsID, tarPath, entryName, f },
+                    new String[] { String.class.getName(),
+                            String.class.getName(), String.class.getName(),
+                            File.class.getName() });
+            if (!fetched.booleanValue()) {
+                log.info("HSM Module failed to fetch " + entryName + " of "
+                        + tarPath + " - fetch whole tar file");
+                return false;
+            }
+        } catch (Exception x) {
+            log.warn("Fetch of entry " + entryName + " of " + tarPath
+                    + " by HSM Module failed - fetch whole tar file", x);
+            return false;
+        }
+        long toDelete = prefFreeDiskSpace - FileSystemUtils.freeSpace(
+                journal.getDataRootDir().getPath());
+        if (toDelete > 0) {
+            freeNonBlocking(toDelete);
+        }
+        return true;
+    }
+
     private void fetchHSMFileFinished(String fsID, String tarPath, File tarFile) throws IOException {
         if (hsmModuleServicename != null) {
             try {
@@ -193,7 +193,9 @@ public class VerifyTar {
         if (file.isDirectory()) {
             String[] ss = file.list();
             for (int i = 0; i < ss.length; i++) {
-                errors += verify(new File(file, ss[i]), strip, buf);
+                if (!ss[i].endsWith(TarIndex.SUFFIX)) {
+                    errors += verify(new File(file, ss[i]), strip, buf);
+                }
             }
         } else {
              String tarname = file.getPath();
@@ -41,11 +41,14 @@ package org.dcm4chex.archive.hsm.module;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.management.ObjectName;
 
 import org.dcm4che.util.Executer;
 import org.dcm4cheri.util.StringUtils;
+import org.dcm4chex.archive.config.RetryIntervalls;
 import org.jboss.system.ServiceMBeanSupport;
 
 /**
@@ -56,8 +59,22 @@ import org.jboss.system.ServiceMBeanSupport;
 public abstract class AbstractHSMModule extends ServiceMBeanSupport {
 
     public static final String NONE = "NONE";    
+    private static final int MAX_CACHED_STATUS = 10000;
     protected ObjectName fileCopyServiceName;
 
+    private long queryStatusCacheTime;
+
+    private final Map<String, long[]> statusCache =
+            new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 5416339728437713473L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_CACHED_STATUS;
+        }
+    };
+
     public ObjectName getFileCopyServiceName() {
         return fileCopyServiceName;
     }
@@ -66,6 +83,57 @@ public abstract class AbstractHSMModule extends ServiceMBeanSupport {
         this.fileCopyServiceName = fileCopyServiceName;
     }
 
+    public String getQueryStatusCacheTime() {
+        return queryStatusCacheTime == 0 ? NONE
+                : RetryIntervalls.formatInterval(queryStatusCacheTime);
+    }
+
+    public void setQueryStatusCacheTime(String interval) {
+        this.queryStatusCacheTime = NONE.equalsIgnoreCase(interval) ? 0
+                : RetryIntervalls.parseInterval(interval);
+        synchronized (statusCache) {
+            statusCache.clear();
+        }
+    }
+
+    /**
+     * Returns the status of a file returned by {@link #queryStatus} within
+     * the last <i>QueryStatusCacheTime</i>, so repeated queries for the same
+     * (tar) file by SyncFileStatus Service do not query the HSM again.
+     * 
+     * @return cached status or <code>null</code>
+     */
+    protected Integer getCachedStatus(String fsID, String filePath) {
+        if (queryStatusCacheTime == 0) {
+            return null;
+        }
+        String key = fsID + '/' + filePath;
+        synchronized (statusCache) {
+            long[] cached = statusCache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached[0] < System.currentTimeMillis()) {
+                statusCache.remove(key);
+                return null;
+            }
+            if (log.isDebugEnabled())
+                log.debug("Use cached status " + cached[1] + " of " + key);
+            return Integer.valueOf((int) cached[1]);
+        }
+    }
+
+    protected void cacheStatus(String fsID, String filePath, Integer status) {
+        if (queryStatusCacheTime == 0 || status == null) {
+            return;
+        }
+        synchronized (statusCache) {
+            statusCache.put(fsID + '/' + filePath, new long[] {
+                    System.currentTimeMillis() + queryStatusCacheTime,
+                    status.intValue() });
+        }
+    }
+
     public abstract File prepareHSMFile(String fsID, String filePath) throws HSMException;
 
     public abstract String storeHSMFile(File file, String fsID, String filePath) throws HSMException;
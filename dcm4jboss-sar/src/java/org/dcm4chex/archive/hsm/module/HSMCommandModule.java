@@ -240,13 +240,19 @@ public class HSMCommandModule extends AbstractHSMModule {
             log.warn("No QueryCommand configured! HSM File Status can not be updated!");
             return null;
         }
+        Integer status = getCachedStatus(fsID, filePath);
+        if (status != null) {
+            return status;
+        }
         String cmd = makeQueryCommand(fsID, filePath, userInfo);
         try {
             ByteArrayOutputStream stdout = new ByteArrayOutputStream();
             doCommand(cmd, stdout, "queryStatus");
             String result = stdout.toString();
-            return pattern.matcher(result).matches() ? matchFileStatus
+            status = pattern.matcher(result).matches() ? matchFileStatus
                         : noMatchFileStatus;
+            cacheStatus(fsID, filePath, status);
+            return status;
         } catch (Exception e) {
             log.error("Failed to execute " + cmd, e);
             return commandFailedFileStatus;
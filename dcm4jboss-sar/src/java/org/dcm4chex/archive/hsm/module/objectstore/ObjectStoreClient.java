@@ -0,0 +1,442 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm.module.objectstore;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * HTTP client for an object store, which supports the multi-part upload and
+ * ranged GET requests of the Amazon S3 REST API.
+ * <p>
+ * Connections are taken from and returned to the keep-alive cache of
+ * {@link HttpURLConnection}, by reading each response body to its end.
+ * Failed requests are retried with exponential backoff, if the failure was
+ * caused by an I/O error, a server error (5xx), a timeout (408) or
+ * throttling (429), but not on a {@link ChecksumMismatchException}.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class ObjectStoreClient {
+
+    private static final Logger log = Logger.getLogger(ObjectStoreClient.class);
+
+    private static final Pattern UPLOAD_ID =
+            Pattern.compile("<UploadId>([^<]+)</UploadId>");
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final Map<String, String> headers;
+
+    interface Request<T> {
+        T execute() throws IOException;
+    }
+
+    static class HttpStatusException extends IOException {
+
+        private static final long serialVersionUID = 8372469532315087463L;
+
+        final int status;
+
+        HttpStatusException(String msg, int status) {
+            super(msg);
+            this.status = status;
+        }
+
+        boolean isRetriable() {
+            return status >= 500 || status == 408 || status == 429;
+        }
+    }
+
+    /**
+     * Signals that downloaded content does not match its stored MD5 sum.
+     * Not retried, because a retry would fetch the same corrupted object.
+     */
+    static class ChecksumMismatchException extends IOException {
+
+        private static final long serialVersionUID = -1851742935270183548L;
+
+        ChecksumMismatchException(String msg) {
+            super(msg);
+        }
+    }
+
+    ObjectStoreClient(int connectTimeout, int readTimeout, int maxRetries,
+            long retryBackoff, Map<String, String> headers) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.headers = headers;
+    }
+
+    /**
+     * Executes the request, and retries it on retriable failures up to
+     * <i>maxRetries</i> times, doubling the delay before each retry.
+     */
+    <T> T execute(String info, Request<T> request) throws IOException {
+        long backoff = retryBackoff;
+        for (int retry = 0;; retry++) {
+            try {
+                return request.execute();
+            } catch (IOException e) {
+                if (retry >= maxRetries || e instanceof FileNotFoundException
+                        || e instanceof ChecksumMismatchException
+                        || e instanceof HttpStatusException
+                                && !((HttpStatusException) e).isRetriable()) {
+                    throw e;
+                }
+                log.warn(info + " failed - retry #" + (retry + 1) + " in "
+                        + backoff + "ms: " + e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException(info + " interrupted");
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    private HttpURLConnection open(String url, String method)
+            throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url)
+                .openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setUseCaches(false);
+        conn.setRequestMethod(method);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return conn;
+    }
+
+    private static void checkStatus(HttpURLConnection conn, String info)
+            throws IOException {
+        int status = conn.getResponseCode();
+        if (status / 100 != 2) {
+            drain(conn.getErrorStream());
+            String msg = info + " failed: " + status + ' '
+                    + conn.getResponseMessage();
+            if (status == 404) {
+                throw new FileNotFoundException(msg);
+            }
+            throw new HttpStatusException(msg, status);
+        }
+    }
+
+    /**
+     * Reads the stream to its end, so the connection is returned to the
+     * keep-alive cache.
+     */
+    private static void drain(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buf = new byte[4096];
+            while (in.read(buf) != -1)
+                ;
+        } catch (IOException ignore) {
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static String readBody(HttpURLConnection conn) throws IOException {
+        InputStream in = conn.getInputStream();
+        try {
+            StringBuilder sb = new StringBuilder();
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                sb.append(new String(buf, 0, read, "UTF-8"));
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String enc(String s) throws IOException {
+        return URLEncoder.encode(s, "UTF-8");
+    }
+
+    /**
+     * Returns the size of the object or <tt>-1</tt>, if it does not exist.
+     */
+    long length(final String url) throws IOException {
+        return execute("HEAD " + url, new Request<Long>() {
+            public Long execute() throws IOException {
+                HttpURLConnection conn = open(url, "HEAD");
+                if (conn.getResponseCode() == 404) {
+                    drain(conn.getErrorStream());
+                    return -1L;
+                }
+                checkStatus(conn, "HEAD " + url);
+                drain(conn.getInputStream());
+                String len = conn.getHeaderField("Content-Length");
+                return len != null ? Long.parseLong(len.trim()) : 0L;
+            }
+        });
+    }
+
+    /**
+     * Uploads <tt>length</tt> bytes of the file starting at <tt>offset</tt>,
+     * as object or - if <tt>uploadId</tt> is not <tt>null</tt> - as part of a
+     * multi-part upload.
+     * 
+     * @return the ETag of the uploaded object or part
+     */
+    String put(String objectURL, final String uploadId, final int partNumber,
+            final File file, final long offset, final int length)
+            throws IOException {
+        final String url = uploadId == null ? objectURL
+                : objectURL + "?partNumber=" + partNumber + "&uploadId="
+                        + enc(uploadId);
+        return execute("PUT " + url, new Request<String>() {
+            public String execute() throws IOException {
+                HttpURLConnection conn = open(url, "PUT");
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(length);
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    raf.seek(offset);
+                    OutputStream out = conn.getOutputStream();
+                    byte[] buf = new byte[Math.min(BUFFER_SIZE, 
+                            Math.max(1, length))];
+                    int remaining = length;
+                    while (remaining > 0) {
+                        int read = raf.read(buf, 0,
+                                Math.min(buf.length, remaining));
+                        if (read == -1) {
+                            throw new IOException("Unexpected EOF of " + file);
+                        }
+                        out.write(buf, 0, read);
+                        remaining -= read;
+                    }
+                    out.close();
+                } finally {
+                    raf.close();
+                }
+                checkStatus(conn, "PUT " + url);
+                drain(conn.getInputStream());
+                return conn.getHeaderField("ETag");
+            }
+        });
+    }
+
+    String initiateMultipartUpload(String objectURL) throws IOException {
+        final String url = objectURL + "?uploads";
+        return execute("POST " + url, new Request<String>() {
+            public String execute() throws IOException {
+                HttpURLConnection conn = open(url, "POST");
+                checkStatus(conn, "POST " + url);
+                String body = readBody(conn);
+                Matcher m = UPLOAD_ID.matcher(body);
+                if (!m.find()) {
+                    throw new IOException("Missing UploadId in response of POST "
+                            + url);
+                }
+                return m.group(1);
+            }
+        });
+    }
+
+    void completeMultipartUpload(String objectURL, String uploadId,
+            List<String> etags) throws IOException {
+        final String url = objectURL + "?uploadId=" + enc(uploadId);
+        StringBuilder sb = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0, n = etags.size(); i < n; i++) {
+            sb.append("<Part><PartNumber>").append(i + 1)
+                .append("</PartNumber><ETag>").append(etags.get(i))
+                .append("</ETag></Part>");
+        }
+        sb.append("</CompleteMultipartUpload>");
+        final byte[] body = sb.toString().getBytes("UTF-8");
+        execute("POST " + url, new Request<Object>() {
+            public Object execute() throws IOException {
+                HttpURLConnection conn = open(url, "POST");
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(body.length);
+                conn.setRequestProperty("Content-Type", "application/xml");
+                OutputStream out = conn.getOutputStream();
+                out.write(body);
+                out.close();
+                checkStatus(conn, "POST " + url);
+                // S3 may report an error with status 200 after sending
+                // whitespace to keep the connection alive
+                if (readBody(conn).indexOf("<Error>") != -1) {
+                    throw new HttpStatusException("POST " + url + " failed",
+                            500);
+                }
+                return null;
+            }
+        });
+    }
+
+    void abortMultipartUpload(String objectURL, String uploadId) {
+        try {
+            final String url = objectURL + "?uploadId=" + enc(uploadId);
+            execute("DELETE " + url, new Request<Object>() {
+                public Object execute() throws IOException {
+                    HttpURLConnection conn = open(url, "DELETE");
+                    checkStatus(conn, "DELETE " + url);
+                    drain(conn.getInputStream());
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to abort multi-part upload of " + objectURL, e);
+        }
+    }
+
+    /**
+     * Downloads <tt>length</tt> bytes of the object starting at
+     * <tt>offset</tt> into the channel at the same position.
+     */
+    void get(final String url, final long offset, final long length,
+            final FileChannel ch) throws IOException {
+        execute("GET " + url, new Request<Object>() {
+            public Object execute() throws IOException {
+                InputStream in = openRange(url, offset, length);
+                try {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    long pos = offset;
+                    long remaining = length;
+                    while (remaining > 0) {
+                        int read = in.read(buf, 0,
+                                (int) Math.min(buf.length, remaining));
+                        if (read == -1) {
+                            throw new IOException("Unexpected EOF of " + url);
+                        }
+                        ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+                        while (bb.hasRemaining()) {
+                            pos += ch.write(bb, pos);
+                        }
+                        remaining -= read;
+                    }
+                } finally {
+                    in.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Downloads the object into the file.
+     * 
+     * @return <tt>false</tt>, if the object does not exist
+     */
+    boolean get(final String url, final File file) throws IOException {
+        return execute("GET " + url, new Request<Boolean>() {
+            public Boolean execute() throws IOException {
+                HttpURLConnection conn = open(url, "GET");
+                if (conn.getResponseCode() == 404) {
+                    drain(conn.getErrorStream());
+                    return Boolean.FALSE;
+                }
+                checkStatus(conn, "GET " + url);
+                InputStream in = conn.getInputStream();
+                try {
+                    OutputStream out = new FileOutputStream(file);
+                    try {
+                        byte[] buf = new byte[BUFFER_SIZE];
+                        int read;
+                        while ((read = in.read(buf)) != -1) {
+                            out.write(buf, 0, read);
+                        }
+                    } finally {
+                        out.close();
+                    }
+                } finally {
+                    in.close();
+                }
+                return Boolean.TRUE;
+            }
+        });
+    }
+
+    /**
+     * Opens a stream of <tt>length</tt> bytes of the object starting at
+     * <tt>offset</tt>. Does not retry on failures.
+     */
+    InputStream openRange(String url, long offset, long length)
+            throws IOException {
+        HttpURLConnection conn = open(url, "GET");
+        conn.setRequestProperty("Range", "bytes=" + offset + '-'
+                + (offset + length - 1));
+        checkStatus(conn, "GET " + url);
+        int status = conn.getResponseCode();
+        if (status != HttpURLConnection.HTTP_PARTIAL) {
+            // do not read the whole object to keep the connection alive
+            conn.disconnect();
+            throw new HttpStatusException("GET " + url
+                    + " does not support range requests", status);
+        }
+        return conn.getInputStream();
+    }
+}
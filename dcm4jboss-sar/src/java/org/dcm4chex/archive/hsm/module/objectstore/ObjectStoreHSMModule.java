@@ -0,0 +1,598 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm.module.objectstore;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.tar.TarEntry;
+import org.dcm4chex.archive.common.FileStatus;
+import org.dcm4chex.archive.config.RetryIntervalls;
+import org.dcm4chex.archive.hsm.TarIndex;
+import org.dcm4chex.archive.hsm.module.AbstractHSMModule;
+import org.dcm4chex.archive.hsm.module.HSMException;
+import org.dcm4chex.archive.util.FileUtils;
+
+/**
+ * HSM Module, which stores tar files as objects in an object store with an
+ * Amazon S3 compatible REST API. The file system ID specifies the URL of the
+ * bucket, e.g. <tt>tar:http://s3.example.com:9000/archive</tt>.
+ * <p>
+ * Files larger than <i>PartSize</i> are uploaded by multi-part upload and
+ * downloaded by ranged GET requests, transferring up to <i>Concurrency</i>
+ * parts in parallel. A {@link TarIndex} sidecar file of a tar file is stored
+ * as additional object, which allows to fetch single entries of the tar file
+ * by {@link #fetchHSMFileEntry}.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class ObjectStoreHSMModule extends AbstractHSMModule {
+
+    private static final String NEWLINE = System.getProperty(
+            "line.separator", "\n");
+
+    private static final int MAX_CACHED_INDEXES = 100;
+
+    private File outgoingDir;
+    private File absOutgoingDir;
+    private File incomingDir;
+    private File absIncomingDir;
+    private long partSize = 16 * FileUtils.MEGA;
+    private int concurrency = 8;
+    private int maxRetries = 3;
+    private long retryBackoff = 1000L;
+    private int connectTimeout = 10000;
+    private int readTimeout = 60000;
+    private final Map<String, String> requestHeaders =
+            new LinkedHashMap<String, String>();
+    private int fileStoredStatus;
+    private int fileNotStoredStatus;
+
+    private ObjectStoreClient client;
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, TarIndex> indexes =
+            new LinkedHashMap<String, TarIndex>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = -3190437652870381296L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TarIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    public final String getOutgoingDir() {
+        return outgoingDir.getPath();
+    }
+
+    public final void setOutgoingDir(String dir) {
+        this.outgoingDir = new File(dir);
+        this.absOutgoingDir = FileUtils.resolve(this.outgoingDir);
+    }
+
+    public final String getIncomingDir() {
+        return incomingDir.getPath();
+    }
+
+    public final void setIncomingDir(String dir) {
+        this.incomingDir = new File(dir);
+        this.absIncomingDir = FileUtils.resolve(this.incomingDir);
+    }
+
+    public final String getPartSize() {
+        return FileUtils.formatSize(partSize);
+    }
+
+    public final void setPartSize(String s) {
+        long size = FileUtils.parseSize(s, 5 * FileUtils.MEGA);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("PartSize: " + s);
+        }
+        this.partSize = size;
+    }
+
+    public final int getConcurrency() {
+        return concurrency;
+    }
+
+    public synchronized void setConcurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency: " + concurrency);
+        }
+        if (executor != null) {
+            if (concurrency > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(concurrency);
+                executor.setCorePoolSize(concurrency);
+            } else {
+                executor.setCorePoolSize(concurrency);
+                executor.setMaximumPoolSize(concurrency);
+            }
+        }
+        this.concurrency = concurrency;
+    }
+
+    public final int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public synchronized void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        this.client = null;
+    }
+
+    public final String getRetryBackoff() {
+        return RetryIntervalls.formatInterval(retryBackoff);
+    }
+
+    public synchronized void setRetryBackoff(String interval) {
+        this.retryBackoff = RetryIntervalls.parseInterval(interval);
+        this.client = null;
+    }
+
+    public final String getConnectTimeout() {
+        return RetryIntervalls.formatInterval(connectTimeout);
+    }
+
+    public synchronized void setConnectTimeout(String interval) {
+        this.connectTimeout = (int) RetryIntervalls.parseInterval(interval);
+        this.client = null;
+    }
+
+    public final String getReadTimeout() {
+        return RetryIntervalls.formatInterval(readTimeout);
+    }
+
+    public synchronized void setReadTimeout(String interval) {
+        this.readTimeout = (int) RetryIntervalls.parseInterval(interval);
+        this.client = null;
+    }
+
+    public synchronized String getRequestHeaders() {
+        if (requestHeaders.isEmpty()) {
+            return NONE;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue())
+                .append(NEWLINE);
+        }
+        return sb.toString();
+    }
+
+    public synchronized void setRequestHeaders(String s) {
+        requestHeaders.clear();
+        if (!NONE.equals(s.trim())) {
+            StringTokenizer st = new StringTokenizer(s, "\r\n;");
+            while (st.hasMoreTokens()) {
+                String token = st.nextToken().trim();
+                if (token.length() == 0) {
+                    continue;
+                }
+                int pos = token.indexOf(':');
+                if (pos <= 0) {
+                    throw new IllegalArgumentException(token);
+                }
+                requestHeaders.put(token.substring(0, pos).trim(),
+                        token.substring(pos + 1).trim());
+            }
+        }
+        this.client = null;
+    }
+
+    public final String getFileStoredStatus() {
+        return FileStatus.toString(fileStoredStatus);
+    }
+
+    public final void setFileStoredStatus(String status) {
+        this.fileStoredStatus = FileStatus.toInt(status);
+    }
+
+    public final String getFileNotStoredStatus() {
+        return FileStatus.toString(fileNotStoredStatus);
+    }
+
+    public final void setFileNotStoredStatus(String status) {
+        this.fileNotStoredStatus = FileStatus.toInt(status);
+    }
+
+    private synchronized ObjectStoreClient client() {
+        if (client == null) {
+            client = new ObjectStoreClient(connectTimeout, readTimeout,
+                    maxRetries, retryBackoff,
+                    new LinkedHashMap<String, String>(requestHeaders));
+        }
+        return client;
+    }
+
+    private synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(concurrency, concurrency,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+        }
+        return executor;
+    }
+
+    @Override
+    protected void stopService() throws Exception {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        super.stopService();
+    }
+
+    private String toURL(String fsID, String filePath) {
+        return stripTarIdentifier(fsID) + '/' + filePath;
+    }
+
+    @Override
+    public File prepareHSMFile(String fsID, String filePath) {
+        return new File(absOutgoingDir, new File(filePath).getName());
+    }
+
+    @Override
+    public String storeHSMFile(File file, String fsID, String filePath)
+            throws HSMException {
+        String url = toURL(fsID, filePath);
+        File indexFile = TarIndex.toIndexFile(file);
+        try {
+            log.info("Upload " + file + " to " + url);
+            upload(file, url);
+            if (indexFile.isFile()) {
+                upload(indexFile, url + TarIndex.SUFFIX);
+            }
+            return filePath;
+        } catch (Exception e) {
+            throw new HSMException("Upload of " + file + " to " + url
+                    + " failed", e);
+        } finally {
+            log.info("M-DELETE " + file);
+            file.delete();
+            if (indexFile.delete()) {
+                log.info("M-DELETE " + indexFile);
+            }
+        }
+    }
+
+    private void upload(File file, String url) throws Exception {
+        ObjectStoreClient client = client();
+        long size = file.length();
+        if (size <= partSize) {
+            client.put(url, null, 0, file, 0L, (int) size);
+            return;
+        }
+        String uploadId = client.initiateMultipartUpload(url);
+        List<Future<String>> parts = new ArrayList<Future<String>>();
+        try {
+            for (long offset = 0; offset < size; offset += partSize) {
+                parts.add(executor().submit(uploadPart(client, url, uploadId,
+                        parts.size() + 1, file, offset,
+                        (int) Math.min(partSize, size - offset))));
+            }
+            List<String> etags = new ArrayList<String>(parts.size());
+            for (Future<String> part : parts) {
+                etags.add(get(part));
+            }
+            client.completeMultipartUpload(url, uploadId, etags);
+        } catch (Exception e) {
+            for (Future<String> part : parts) {
+                part.cancel(true);
+            }
+            client.abortMultipartUpload(url, uploadId);
+            throw e;
+        }
+    }
+
+    private static Callable<String> uploadPart(final ObjectStoreClient client,
+            final String url, final String uploadId, final int partNumber,
+            final File file, final long offset, final int length) {
+        return new Callable<String>() {
+            public String call() throws Exception {
+                return client.put(url, uploadId, partNumber, file, offset,
+                        length);
+            }
+        };
+    }
+
+    private static <T> T get(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @Override
+    public void failedHSMFile(File file, String fsID, String filePath) {
+        file.delete();
+        TarIndex.toIndexFile(file).delete();
+    }
+
+    @Override
+    public File fetchHSMFile(String fsID, String filePath) throws HSMException {
+        if (absIncomingDir.mkdirs()) {
+            log.info("M-WRITE " + absIncomingDir);
+        }
+        File tarFile;
+        try {
+            tarFile = File.createTempFile("hsm_", ".tar", absIncomingDir);
+        } catch (IOException x) {
+            throw new HSMException("Failed to create temp file in "
+                    + absIncomingDir, x);
+        }
+        String url = toURL(fsID, filePath);
+        try {
+            log.info("Download " + url + " to " + tarFile);
+            download(url, tarFile);
+            return tarFile;
+        } catch (Exception e) {
+            tarFile.delete();
+            throw new HSMException("Download of " + url + " failed", e);
+        }
+    }
+
+    private void download(final String url, File file) throws Exception {
+        final ObjectStoreClient client = client();
+        long size = client.length(url);
+        if (size < 0) {
+            throw new HSMException("Object not found: " + url);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            final FileChannel ch = raf.getChannel();
+            if (size <= partSize) {
+                if (size > 0) {
+                    client.get(url, 0L, size, ch);
+                }
+                return;
+            }
+            List<Future<Object>> parts = new ArrayList<Future<Object>>();
+            try {
+                for (long offset = 0; offset < size; offset += partSize) {
+                    final long off = offset;
+                    final long len = Math.min(partSize, size - offset);
+                    parts.add(executor().submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            client.get(url, off, len, ch);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Object> part : parts) {
+                    get(part);
+                }
+            } catch (Exception e) {
+                for (Future<Object> part : parts) {
+                    part.cancel(true);
+                }
+                throw e;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public void fetchHSMFileFinished(String fsID, String filePath, File file) {
+        log.info("M-DELETE " + file);
+        file.delete();
+    }
+
+    /**
+     * Fetches one entry of a tar file by a ranged GET request, using the
+     * offset of the entry provided by the {@link TarIndex} stored with the
+     * tar file.
+     * 
+     * @return <tt>false</tt>, if there is no tar index stored with the tar
+     *         file, or if the tar index does not contain the entry or does
+     *         not match the tar file
+     */
+    public boolean fetchHSMFileEntry(String fsID, String filePath,
+            final String entryName, final File file) throws HSMException {
+        final String url = toURL(fsID, filePath);
+        try {
+            TarIndex index = getTarIndex(url);
+            final TarIndex.Entry entry = index != null
+                    ? index.get(entryName) : null;
+            if (entry == null) {
+                return false;
+            }
+            final ObjectStoreClient client = client();
+            boolean fetched = client.execute("GET " + url,
+                    new ObjectStoreClient.Request<Boolean>() {
+                        public Boolean execute() throws IOException {
+                            return fetchEntry(client, url, entry, file);
+                        }
+                    });
+            if (!fetched) {
+                log.warn("Tar header at offset " + entry.getHeaderOffset()
+                        + " of " + url + " doesn't match index entry "
+                        + entryName);
+                synchronized (indexes) {
+                    indexes.remove(url);
+                }
+            }
+            return fetched;
+        } catch (Exception e) {
+            throw new HSMException("Fetch of entry " + entryName + " of "
+                    + url + " failed", e);
+        }
+    }
+
+    private TarIndex getTarIndex(String url) throws IOException {
+        synchronized (indexes) {
+            TarIndex index = indexes.get(url);
+            if (index != null) {
+                return index;
+            }
+        }
+        if (absIncomingDir.mkdirs()) {
+            log.info("M-WRITE " + absIncomingDir);
+        }
+        File indexFile = File.createTempFile("hsm_", TarIndex.SUFFIX,
+                absIncomingDir);
+        try {
+            if (!client().get(url + TarIndex.SUFFIX, indexFile)) {
+                return null;
+            }
+            TarIndex index = TarIndex.read(indexFile);
+            synchronized (indexes) {
+                indexes.put(url, index);
+            }
+            return index;
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    private boolean fetchEntry(ObjectStoreClient client, String url,
+            TarIndex.Entry entry, File file) throws IOException {
+        InputStream in = client.openRange(url, entry.getHeaderOffset(),
+                TarIndex.BLOCK_SIZE + entry.getSize());
+        try {
+            byte[] header = new byte[TarIndex.BLOCK_SIZE];
+            new DataInputStream(in).readFully(header);
+            TarEntry tarEntry = new TarEntry(header);
+            if (!entry.getName().equals(tarEntry.getName())
+                    || entry.getSize() != tarEntry.getSize()) {
+                return false;
+            }
+            MessageDigest digest = null;
+            if (entry.getMD5Sum() != null) {
+                try {
+                    digest = MessageDigest.getInstance("MD5");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            File tmp = new File(file.getAbsolutePath() + ".part");
+            File dir = tmp.getParentFile();
+            if (dir.mkdirs()) {
+                log.info("M-WRITE " + dir);
+            }
+            log.info("M-WRITE " + tmp);
+            FileOutputStream out = new FileOutputStream(tmp);
+            boolean cleanup = true;
+            try {
+                byte[] buf = new byte[65536];
+                long remaining = entry.getSize();
+                while (remaining > 0) {
+                    int read = in.read(buf, 0,
+                            (int) Math.min(buf.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("Unexpected EOF of " + url
+                                + " in entry " + entry.getName());
+                    }
+                    if (digest != null) {
+                        digest.update(buf, 0, read);
+                    }
+                    out.write(buf, 0, read);
+                    remaining -= read;
+                }
+                cleanup = false;
+            } finally {
+                out.close();
+                if (cleanup) {
+                    log.info("M-DELETE " + tmp);
+                    tmp.delete();
+                }
+            }
+            if (digest != null
+                    && !Arrays.equals(digest.digest(), entry.getMD5Sum())) {
+                log.info("M-DELETE " + tmp);
+                tmp.delete();
+                throw new ObjectStoreClient.ChecksumMismatchException(
+                        "Failed MD5 check of tar entry "
+                        + entry.getName() + " of " + url);
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Failed to rename " + tmp + " to "
+                        + file);
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public Integer queryStatus(String fsID, String filePath, String userInfo)
+            throws HSMException {
+        Integer status = getCachedStatus(fsID, filePath);
+        if (status != null) {
+            return status;
+        }
+        String url = toURL(fsID, filePath);
+        try {
+            status = client().length(url) >= 0 ? fileStoredStatus
+                    : fileNotStoredStatus;
+            cacheStatus(fsID, filePath, status);
+            return status;
+        } catch (IOException e) {
+            throw new HSMException("Query status of " + url + " failed", e);
+        }
+    }
+}
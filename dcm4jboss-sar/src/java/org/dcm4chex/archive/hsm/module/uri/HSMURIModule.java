@@ -278,6 +278,16 @@ public class HSMURIModule extends AbstractHSMModule {
 
     @Override
     public Integer queryStatus(String fsID, String filePath, String userInfo) throws HSMException {
+        Integer status = getCachedStatus(fsID, filePath);
+        if (status != null) {
+            return status;
+        }
+        status = doQueryStatus(fsID, filePath);
+        cacheStatus(fsID, filePath, status);
+        return status;
+    }
+
+    private Integer doQueryStatus(String fsID, String filePath) throws HSMException {
         try {
             for (Map.Entry<String, Integer> entry : extensionStatusMap.entrySet()) {
                 if (Uri.exists(stripTarIdentifier(fsID) + '/' + filePath + entry.getKey(),
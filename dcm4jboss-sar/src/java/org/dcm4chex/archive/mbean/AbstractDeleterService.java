@@ -39,9 +39,12 @@ package org.dcm4chex.archive.mbean;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -85,6 +88,8 @@ public abstract class AbstractDeleterService extends ServiceMBeanSupport {
     
     protected static final String NEW_LINE = System.getProperty("line.separator", "\n");
 
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000L;
+
     private final FindScuDelegate findScu = new FindScuDelegate(this);
 
     protected final SchedulerDelegate scheduler = new SchedulerDelegate(this);
@@ -119,6 +124,11 @@ public abstract class AbstractDeleterService extends ServiceMBeanSupport {
 
     private Integer scheduleStudiesForDeletionListenerID;
 
+    private final DiskSpaceAccount diskSpaceAccount = new DiskSpaceAccount();
+
+    private long diskSpaceReconcileInterval = 60000L;
+
+    private long pendingDeletionTimeout = 3600000L;
 
     public AbstractDeleterService() {
     	this(new ReentrantLock());
@@ -277,17 +287,84 @@ public abstract class AbstractDeleterService extends ServiceMBeanSupport {
         if (deleterThresholds == null) {
             return -1L;
         }
-        FileSystemMgt2 fsMgt = fileSystemMgt();
-        return getCurrentDeleterThreshold(fsMgt,
-                fsMgt.getFileSystemsOfGroup(getFileSystemGroupIDForDeleter()));
+        return calcCurrentDeleterThreshold();
     }
 
-    private long getCurrentDeleterThreshold(FileSystemMgt2 fsMgt,
-            FileSystemDTO[] fsDTOs) throws Exception {
+    private long calcCurrentDeleterThreshold() throws Exception {
         long exp = getExpectedDataVolumePerDayBytes();
         return exp == -1L ? -1L : deleterThresholds.getDeleterThreshold(Calendar.getInstance()).getFreeSize(exp);
     }
 
+    public String getDiskSpaceReconcileInterval() {
+        return RetryIntervalls.formatInterval(diskSpaceReconcileInterval);
+    }
+
+    public void setDiskSpaceReconcileInterval(String interval) {
+        this.diskSpaceReconcileInterval = RetryIntervalls.parseInterval(interval);
+    }
+
+    public String getPendingDeletionTimeout() {
+        return RetryIntervalls.formatInterval(pendingDeletionTimeout);
+    }
+
+    public void setPendingDeletionTimeout(String interval) {
+        this.pendingDeletionTimeout = RetryIntervalls.parseInterval(interval);
+    }
+
+    public long getProjectedUsableDiskSpace() throws Exception {
+        return Math.max(0L, calcProjectedUsableDiskSpace(diskSpaceAccount()));
+    }
+
+    public String getProjectedUsableDiskSpaceString() throws Exception {
+        return FileUtils.formatSize(getProjectedUsableDiskSpace());
+    }
+
+    public String getPendingDeletionSize() {
+        return FileUtils.formatSize(diskSpaceAccount.getPendingDeletionBytes());
+    }
+
+    public String getExpectedDiskSpaceExhaustion() throws Exception {
+        long perDay = getExpectedDataVolumePerDayBytes();
+        if (perDay <= 0L) {
+            return "NEVER";
+        }
+        long usable = getProjectedUsableDiskSpace();
+        return new Date(System.currentTimeMillis()
+                + (long) ((double) usable * MS_PER_DAY / perDay)).toString();
+    }
+
+    public void reconcileDiskSpace() throws Exception {
+        diskSpaceAccount.invalidate();
+        diskSpaceAccount();
+    }
+
+    /**
+     * Forces the measurement of the free disk space of the file system group
+     * on next check, e.g. after file systems were added or removed.
+     */
+    protected void invalidateDiskSpaceAccount() {
+        diskSpaceAccount.invalidate();
+    }
+
+    private DiskSpaceAccount diskSpaceAccount() throws Exception {
+        long now = System.currentTimeMillis();
+        if (diskSpaceAccount.isReconcileDue(now, diskSpaceReconcileInterval)) {
+            diskSpaceAccount.reconcile(
+                    fileSystemMgt().getFileSystemsOfGroup(
+                            getFileSystemGroupIDForDeleter()),
+                    getMinFreeDiskSpaceBytes(),
+                    getExpectedDataVolumePerDayBytes(), now);
+        }
+        diskSpaceAccount.expirePendingDeletions(now - pendingDeletionTimeout);
+        return diskSpaceAccount;
+    }
+
+    private long calcProjectedUsableDiskSpace(DiskSpaceAccount account)
+            throws Exception {
+        return account.getProjectedUsable(getMinFreeDiskSpaceBytes(),
+                getExpectedDataVolumePerDayBytes(), System.currentTimeMillis());
+    }
+
     public String getDeleteStudyIfNotAccessedFor() {
         return RetryIntervalls.formatIntervalZeroAsNever(maxNotAccessedFor);
     }
@@ -431,27 +508,32 @@ public abstract class AbstractDeleterService extends ServiceMBeanSupport {
 
 	protected int doScheduleStudiesForDeletion() throws Exception {
         String fsGroup = getFileSystemGroupIDForDeleter();
-            FileSystemMgt2 fsMgt = fileSystemMgt();
-            FileSystemDTO[] fsDTOs = fsMgt.getFileSystemsOfGroup(fsGroup);
-            if (fsDTOs.length == 0) {
+            DiskSpaceAccount account = diskSpaceAccount();
+            if (account.getFileSystems().length == 0) {
 			log.info("No Filesystem configured in file system group "
 					+ fsGroup
 					+ "! Ignore check for deletion of studies!");
                 return 0;
             }
+            long threshold = deleterThresholds != null
+                    ? calcCurrentDeleterThreshold() : -1L;
+            if (maxNotAccessedFor == 0 && (threshold <= 0
+                    || threshold <= calcProjectedUsableDiskSpace(account))) {
+                return 0;
+            }
             log.info("Check file system group " + fsGroup
                     + " for deletion of studies");
+            FileSystemMgt2 fsMgt = fileSystemMgt();
             int countStudies = 0;
             if (maxNotAccessedFor > 0) {
                 countStudies = scheduleStudiesForDeletion(fsMgt,
                         System.currentTimeMillis() - maxNotAccessedFor,
                         Long.MAX_VALUE);
             }
-            if (deleterThresholds != null) {
-                long threshold = getCurrentDeleterThreshold(fsMgt, fsDTOs);
-			long usable = calcUsableDiskSpace(fsDTOs,
-					getMinFreeDiskSpaceBytes());
-                long sizeToDel = threshold - usable;
+            if (threshold > 0) {
+                // includes studies just scheduled as pending deletion
+                long sizeToDel = threshold
+                        - calcProjectedUsableDiskSpace(account);
                 if (sizeToDel > 0) {
 				log.info("Try to free " + sizeToDel
 						+ " of disk space on file system group "
@@ -520,27 +602,44 @@ public abstract class AbstractDeleterService extends ServiceMBeanSupport {
             Iterator<DeleteStudyOrder> iter = orders.iterator();
             boolean dontCheckMax = maxSize < 1;
             DeleteStudyOrder order;
+            List<DeleteStudyOrder> marked = new ArrayList<DeleteStudyOrder>();
             while (iter.hasNext() && (dontCheckMax || result[0] < maxSize )) {
                 order = iter.next();
                 if (!checkExternalRetrievable(order))
                     continue;
                 if (fsMgt.markStudyOnFSRecordForDeletion(order, true)) {
-                    try {
-                        scheduleDeleteOrder(order);
-                    } catch (Exception e) {
-                        fsMgt.markStudyOnFSRecordForDeletion(order, false);
-                        throw e;
-                    }
+                    marked.add(order);
                     result[0] += fsMgt.getStudySize(order);
                     result[1]++;
                 }
             }
+            try {
+                scheduleDeleteOrders(marked);
+                diskSpaceAccount.addPendingDeletion(result[0],
+                        System.currentTimeMillis());
+            } catch (Exception e) {
+                for (DeleteStudyOrder markedOrder : marked) {
+                    fsMgt.markStudyOnFSRecordForDeletion(markedOrder, false);
+                }
+                throw e;
+            }
         }
         return result;
     }
     
     protected abstract void scheduleDeleteOrder(DeleteStudyOrder order) throws Exception;
 
+    /**
+     * Schedules orders of studies already marked for deletion. Schedules each
+     * order separately by {@link #scheduleDeleteOrder}, if not overridden.
+     */
+    protected void scheduleDeleteOrders(Collection<DeleteStudyOrder> orders)
+            throws Exception {
+        for (DeleteStudyOrder order : orders) {
+            scheduleDeleteOrder(order);
+        }
+    }
+
     protected String showTriggerInfo() {
         return "Trigger intervall: "+getScheduleStudiesForDeletionInterval();
     }
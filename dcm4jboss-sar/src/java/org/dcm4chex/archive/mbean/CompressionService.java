@@ -325,6 +325,10 @@ public class CompressionService extends ServiceMBeanSupport {
         CodecCmd.resetBufferedImagePoolHitRate();
     }
 
+    public final String showBufferedImagePoolStatistics() {
+        return CodecCmd.showBufferedImagePoolStatistics();
+    }
+
     public final void setTempDir(String dirPath) {
         tmpDir = new File(dirPath);
     }
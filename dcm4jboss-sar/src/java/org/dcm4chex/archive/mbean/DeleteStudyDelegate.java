@@ -37,6 +37,8 @@
  * ***** END LICENSE BLOCK ***** */
 package org.dcm4chex.archive.mbean;
 
+import java.util.Collection;
+
 import javax.management.ObjectName;
 
 import org.dcm4chex.archive.common.DeleteStudyOrder;
@@ -70,4 +72,11 @@ public class DeleteStudyDelegate {
                 "scheduleDeleteOrder", new Object[] { order },
                 new String[] { DeleteStudyOrder.class.getName() });
     }
+
+    public void scheduleDeleteOrders(Collection<DeleteStudyOrder> orders)
+            throws Exception {
+        service.getServer().invoke(deleteStudyServiceName,
+                "scheduleDeleteOrders", new Object[] { orders },
+                new String[] { Collection.class.getName() });
+    }
 }
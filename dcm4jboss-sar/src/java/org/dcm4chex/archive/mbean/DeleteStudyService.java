@@ -39,8 +39,16 @@ package org.dcm4chex.archive.mbean;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.ejb.CreateException;
 import javax.ejb.FinderException;
@@ -90,6 +98,12 @@ public class DeleteStudyService extends ServiceMBeanSupport
 
     private boolean deleteSeriesBySeries;
 
+    private int deleteStudyBatchSize = 1;
+
+    private int deleteFileThreads = 4;
+
+    private ThreadPoolExecutor deleteFileExecutor;
+
     protected final JndiHelper jndiHelper;
     
     private final FileDeleter fileDeleter;
@@ -112,6 +126,47 @@ public class DeleteStudyService extends ServiceMBeanSupport
         this.deleteSeriesBySeries = deleteSeriesBySeries;
     }
 
+    public final int getDeleteStudyBatchSize() {
+        return deleteStudyBatchSize;
+    }
+
+    public void setDeleteStudyBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("deleteStudyBatchSize: " + batchSize);
+        }
+        this.deleteStudyBatchSize = batchSize;
+    }
+
+    public final int getDeleteFileThreads() {
+        return deleteFileThreads;
+    }
+
+    public synchronized void setDeleteFileThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("deleteFileThreads: " + threads);
+        }
+        if (deleteFileExecutor != null) {
+            if (threads > deleteFileThreads) {
+                deleteFileExecutor.setMaximumPoolSize(threads);
+                deleteFileExecutor.setCorePoolSize(threads);
+            } else {
+                deleteFileExecutor.setCorePoolSize(threads);
+                deleteFileExecutor.setMaximumPoolSize(threads);
+            }
+        }
+        this.deleteFileThreads = threads;
+    }
+
+    private synchronized ExecutorService deleteFileExecutor() {
+        if (deleteFileExecutor == null) {
+            deleteFileExecutor = new ThreadPoolExecutor(
+                    deleteFileThreads, deleteFileThreads,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+        }
+        return deleteFileExecutor;
+    }
+
     public boolean isDeleteStudyFromDB() {
         return deleteStudyFromDB;
     }
@@ -168,12 +223,48 @@ public class DeleteStudyService extends ServiceMBeanSupport
     @Override
 	protected void stopService() throws Exception {
         jmsDelegate.stopListening(deleteStudyQueueName);
+        synchronized (this) {
+            if (deleteFileExecutor != null) {
+                deleteFileExecutor.shutdown();
+                deleteFileExecutor = null;
+            }
+        }
     }
 
     public void scheduleDeleteOrder(DeleteStudyOrder order) throws Exception {
         schedule(order, 0);
     }
 
+    /**
+     * Schedules the orders in batches of <i>DeleteStudyBatchSize</i>, each
+     * processed by {@link #deleteStudies} in one transaction. If
+     * <i>DeleteStudyBatchSize</i> is 1 or <i>DeleteSeriesBySeries</i> is
+     * enabled, each order is scheduled separately.
+     */
+    public void scheduleDeleteOrders(Collection<DeleteStudyOrder> orders)
+            throws Exception {
+        if (deleteStudyBatchSize == 1 || deleteSeriesBySeries) {
+            for (DeleteStudyOrder order : orders) {
+                schedule(order, 0);
+            }
+            return;
+        }
+        ArrayList<DeleteStudyOrder> batch = null;
+        for (DeleteStudyOrder order : orders) {
+            if (batch == null) {
+                batch = new ArrayList<DeleteStudyOrder>(deleteStudyBatchSize);
+            }
+            batch.add(order);
+            if (batch.size() == deleteStudyBatchSize) {
+                schedule(new ActionOrder("deleteStudies", batch), 0);
+                batch = null;
+            }
+        }
+        if (batch != null) {
+            schedule(new ActionOrder("deleteStudies", batch), 0);
+        }
+    }
+
     protected void schedule(BaseJmsOrder order, long scheduledTime)
             throws Exception {
         if (log.isInfoEnabled()) {
@@ -275,33 +366,89 @@ public class DeleteStudyService extends ServiceMBeanSupport
             ians = fsMgt.createIANforStudy(order.getStudyPk());
         }
 
-		fileDeleter.deleteFiles(fsMgt, fsMgt.deleteStudy(order,
+		deleteFiles(fsMgt, fsMgt.deleteStudy(order,
 				deleteStudyFromDB, deletePatientWithoutObjects));
         
         performPostDeleteCleanup(order, fsMgt);
         
         if (createIANonStudyDelete) {
-            try {
+            notifyStudyDeleted(order, ians, fsMgt);
+        }
+    }
+
+    /**
+     * Action method of orders scheduled by {@link #scheduleDeleteOrders}.
+     * Deletes the studies of all orders of the batch from the database in
+     * one transaction, before the files of all processed orders are deleted
+     * concurrently by <i>DeleteFileThreads</i>.
+     */
+    @SuppressWarnings("unchecked")
+    private void deleteStudies(Object batch) throws Exception {
+        Collection<DeleteStudyOrder> orders = (Collection<DeleteStudyOrder>) batch;
+        FileSystemMgt2Local fsMgt = fileSystemMgt2();
+        Map<DeleteStudyOrder, Collection<Dataset>> iansByOrder =
+                new HashMap<DeleteStudyOrder, Collection<Dataset>>();
+        // prepare IANs if studies may be deleted from DB by fsMgt.deleteStudies()
+        if (createIANonStudyDelete && deleteStudyFromDB) {
+            for (DeleteStudyOrder order : orders) {
                 try {
-                    ians = fsMgt.createIANforStudy(order.getStudyPk());
-                    for (Dataset ian : ians) {
-                        updateRetrieveAET(ian, fsMgt.getFileSystem(order.getFsPk()).getRetrieveAET());
-                    }
+                    iansByOrder.put(order,
+                            fsMgt.createIANforStudy(order.getStudyPk()));
                 } catch (NoSuchStudyException e) {
-                    // OK, in case of study was deleted from DB
-                    if (ians == null) {
-                        throw e;
-                    }
-                    for (Dataset ian : ians) {
-                        updateAvailability(ian, "UNAVAILABLE");
-                    }
+                    // already deleted by previous attempt of this batch
                 }
+            }
+        }
+
+        Map<DeleteStudyOrder, Collection<FileDTO>> fileDTOsByOrder =
+                fsMgt.deleteStudies(orders, deleteStudyFromDB,
+                        deletePatientWithoutObjects);
+        List<FileDTO> fileDTOs = new ArrayList<FileDTO>();
+        for (Collection<FileDTO> fileDTOsOfOrder : fileDTOsByOrder.values()) {
+            fileDTOs.addAll(fileDTOsOfOrder);
+        }
+        deleteFiles(fsMgt, fileDTOs);
+
+        for (DeleteStudyOrder order : fileDTOsByOrder.keySet()) {
+            performPostDeleteCleanup(order, fsMgt);
+            if (createIANonStudyDelete) {
+                notifyStudyDeleted(order, iansByOrder.get(order), fsMgt);
+            }
+        }
+    }
+
+    private void deleteFiles(FileSystemMgt2Local fsMgt,
+            Collection<FileDTO> fileDTOs) throws InterruptedException {
+        if (deleteFileThreads > 1 && fileDTOs.size() > 1) {
+            fileDeleter.deleteFiles(fsMgt, fileDTOs, deleteFileExecutor());
+        } else {
+            fileDeleter.deleteFiles(fsMgt, fileDTOs);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyStudyDeleted(DeleteStudyOrder order,
+            Collection<Dataset> ians, FileSystemMgt2Local fsMgt) {
+        try {
+            try {
+                ians = fsMgt.createIANforStudy(order.getStudyPk());
                 for (Dataset ian : ians) {
-                    sendJMXNotification(new StudyDeleted(ian));
+                    updateRetrieveAET(ian, fsMgt.getFileSystem(order.getFsPk()).getRetrieveAET());
                 }
-            } catch (Exception e) {
-                log.error("Failed to create IAN on Study Delete:", e);
+            } catch (NoSuchStudyException e) {
+                // OK, in case of study was deleted from DB
+                if (ians == null) {
+                    throw e;
+                }
+                for (Dataset ian : ians) {
+                    updateAvailability(ian, "UNAVAILABLE");
+                }
+            }
+            for (Dataset ian : ians) {
+                sendJMXNotification(new StudyDeleted(ian));
             }
+        } catch (Exception e) {
+            log.error("Failed to create IAN on Study Delete:", e);
         }
     }
 
@@ -358,7 +505,8 @@ public class DeleteStudyService extends ServiceMBeanSupport
 	@SuppressWarnings("unchecked")
 	private void internalDeleteSeries(DeleteStudyOrder order, Long seriesPk,
 			FileSystemMgt2Local fsMgt) throws FinderException,
-			ConcurrentStudyStorageException, CreateException {
+			ConcurrentStudyStorageException, CreateException,
+			InterruptedException {
             Dataset ian = null;
             // prepare IAN if series may be deleted from DB by fsMgt.deleteSeries()
             if (createIANonStudyDelete && deleteStudyFromDB) {
@@ -376,7 +524,7 @@ public class DeleteStudyService extends ServiceMBeanSupport
 		    return;
             }
 		
-		fileDeleter.deleteFiles(fsMgt, fileDTOs);
+		deleteFiles(fsMgt, fileDTOs);
 
             if (createIANonStudyDelete) {
                 try {
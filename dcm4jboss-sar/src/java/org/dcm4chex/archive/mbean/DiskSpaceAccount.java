@@ -0,0 +1,217 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.mbean;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.dcm4chex.archive.common.FileSystemStatus;
+import org.dcm4chex.archive.ejb.interfaces.FileSystemDTO;
+import org.dcm4chex.archive.util.FileSystemUtils;
+import org.dcm4chex.archive.util.FileUtils;
+
+/**
+ * In-memory account of the disk space of the file systems of one file system
+ * group, which lets {@link AbstractDeleterService} decide if studies have to
+ * be deleted without querying the database and the file systems on each run.
+ * <p>
+ * The free space of the writable file systems is measured on
+ * {@link #reconcile}. Between two reconciliations, the space consumed by
+ * received objects is estimated from the expected data volume per day, and
+ * the size of studies scheduled for deletion is accounted as pending, until
+ * the gain of measured free space shows that they were deleted.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class DiskSpaceAccount {
+
+    private static final long MS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private FileSystemDTO[] fsDTOs;
+
+    private long[] free;
+
+    private long measuredTime;
+
+    private final LinkedList<long[]> pendingDeletions = new LinkedList<long[]>();
+
+    private long pendingDeletionBytes;
+
+    public synchronized boolean isReconcileDue(long now, long interval) {
+        return fsDTOs == null || now - measuredTime >= interval;
+    }
+
+    public synchronized void invalidate() {
+        fsDTOs = null;
+    }
+
+    /**
+     * Measures the free space of the writable file systems of the group, and
+     * releases pending deletions covered by the gain of free space since the
+     * last measurement. If there is no previous measurement of the same file
+     * systems to compare with - after {@link #invalidate} or a change of the
+     * file systems of the group - pending deletions are dropped, because the
+     * new measurement may already include them.
+     */
+    public synchronized void reconcile(FileSystemDTO[] fsDTOs, long minFree,
+            long expectedPerDay, long now) throws IOException {
+        boolean allRW = minFree != 0;
+        long[] measured = new long[fsDTOs.length];
+        for (int i = 0; i < fsDTOs.length; i++) {
+            int status = fsDTOs[i].getStatus();
+            measured[i] = -1L;
+            if ((allRW && status == FileSystemStatus.RW)
+                    || status == FileSystemStatus.DEF_RW) {
+                File dir = FileUtils.toFile(fsDTOs[i].getDirectoryPath());
+                if (dir.isDirectory()) {
+                    measured[i] = FileSystemUtils.freeSpace(dir.getPath());
+                }
+            }
+        }
+        if (this.fsDTOs != null && samePks(this.fsDTOs, fsDTOs)) {
+            long expected = sumFree(free) - consumed(expectedPerDay, now);
+            releasePendingDeletions(sumFree(measured) - expected);
+        } else {
+            pendingDeletions.clear();
+            pendingDeletionBytes = 0L;
+        }
+        this.fsDTOs = fsDTOs;
+        this.free = measured;
+        this.measuredTime = now;
+    }
+
+    /**
+     * Accounts the size of studies scheduled for deletion as pending, until
+     * released by {@link #reconcile} or expired by
+     * {@link #expirePendingDeletions}.
+     */
+    public synchronized void addPendingDeletion(long size, long now) {
+        if (size > 0) {
+            pendingDeletions.add(new long[] { now, size });
+            pendingDeletionBytes += size;
+        }
+    }
+
+    /**
+     * Drops pending deletions scheduled before <tt>before</tt>, which were
+     * not confirmed by measured free space, e.g. because the orders failed.
+     */
+    public synchronized void expirePendingDeletions(long before) {
+        for (Iterator<long[]> iter = pendingDeletions.iterator();
+                iter.hasNext();) {
+            long[] pending = iter.next();
+            if (pending[0] >= before) {
+                break;
+            }
+            pendingDeletionBytes -= pending[1];
+            iter.remove();
+        }
+    }
+
+    public synchronized FileSystemDTO[] getFileSystems() {
+        return fsDTOs;
+    }
+
+    public synchronized long getPendingDeletionBytes() {
+        return pendingDeletionBytes;
+    }
+
+    /**
+     * Returns the usable disk space at <tt>now</tt>, projected from the last
+     * measurement, the expected data volume per day and pending deletions.
+     */
+    public synchronized long getProjectedUsable(long minFree,
+            long expectedPerDay, long now) {
+        if (free == null) {
+            return pendingDeletionBytes;
+        }
+        long usable = 0L;
+        for (long l : free) {
+            if (l > 0L) {
+                usable += Math.max(0L, l - minFree);
+            }
+        }
+        return usable - consumed(expectedPerDay, now) + pendingDeletionBytes;
+    }
+
+    private long consumed(long expectedPerDay, long now) {
+        return expectedPerDay <= 0L ? 0L
+                : (long) ((double) expectedPerDay * (now - measuredTime)
+                        / MS_PER_DAY);
+    }
+
+    private void releasePendingDeletions(long gain) {
+        while (gain > 0L && !pendingDeletions.isEmpty()) {
+            long[] pending = pendingDeletions.getFirst();
+            long released = Math.min(gain, pending[1]);
+            pending[1] -= released;
+            pendingDeletionBytes -= released;
+            gain -= released;
+            if (pending[1] == 0L) {
+                pendingDeletions.removeFirst();
+            }
+        }
+    }
+
+    private static long sumFree(long[] free) {
+        long sum = 0L;
+        for (long l : free) {
+            if (l > 0L) {
+                sum += l;
+            }
+        }
+        return sum;
+    }
+
+    private static boolean samePks(FileSystemDTO[] a, FileSystemDTO[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].getPk() != b[i].getPk()
+                    || a[i].getStatus() != b[i].getStatus()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -43,6 +43,7 @@ import java.io.File;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -504,6 +505,7 @@ public class FileSystemMgt2Service extends AbstractDeleterService {
     
     protected FileSystemDTO addRWFileSystem( FileSystemDTO fsDTO ) throws Exception {
         FileSystemDTO dto = fileSystemMgt().addAndLinkFileSystem( fsDTO );
+        invalidateDiskSpaceAccount();
         if (dto.getStatus() == FileSystemStatus.DEF_RW){
         	storageFileSystem = dto;
         }
@@ -524,6 +526,7 @@ public class FileSystemMgt2Service extends AbstractDeleterService {
     public FileSystemDTO removeFileSystem(String dirPath) throws Exception {
         FileSystemDTO fsDTO = fileSystemMgt()
                 .removeFileSystem(getFileSystemGroupID(), dirPath);
+        invalidateDiskSpaceAccount();
         if (storageFileSystem != null
                 && storageFileSystem.getPk() == fsDTO.getPk()) {
             selectStorageFileSystem();
@@ -542,6 +545,7 @@ public class FileSystemMgt2Service extends AbstractDeleterService {
         FileSystemDTO fsDTO = fileSystemMgt().updateFileSystemStatus(
                 getFileSystemGroupID(), dirPath,
                 FileSystemStatus.toInt(status));
+        invalidateDiskSpaceAccount();
 		selectStorageFileSystem();
         return fsDTO;
     }
@@ -639,6 +643,7 @@ public class FileSystemMgt2Service extends AbstractDeleterService {
                     checkFreeDiskSpace(tmp)) {
                 storageFileSystem = fsMgt.updateFileSystemStatus(
                         tmp.getPk(), FileSystemStatus.DEF_RW);
+                invalidateDiskSpaceAccount();
                 log.info("Switch storage file system from " + fsDTO + " to "
                         + storageFileSystem);
                 sendJMXNotification(new StorageFileSystemSwitched(
@@ -860,6 +865,12 @@ public class FileSystemMgt2Service extends AbstractDeleterService {
         
     }
 
+    @Override
+    protected void scheduleDeleteOrders(Collection<DeleteStudyOrder> orders)
+            throws Exception {
+        this.deleteStudy.scheduleDeleteOrders(orders);
+    }
+
     @Override
     protected String getFileSystemGroupIDForDeleter() {
         return this.getFileSystemGroupID();
@@ -40,12 +40,27 @@
 package org.dcm4chex.archive.mbean;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ejb.FinderException;
 import javax.management.Notification;
@@ -81,6 +96,13 @@ public class MD5CheckService extends ServiceMBeanSupport {
     private int disabledEndHour;
     private int limitNumberOfFilesPerTask;
     private int bufferSize = 8192;
+    private int readersPerFileSystem = 1;
+    private long maxReadRate;
+    private long throttleTime = System.nanoTime();
+    private ThreadPoolExecutor readerExecutor;
+
+    private final Map<String, FileSystemProgress> progress =
+            new LinkedHashMap<String, FileSystemProgress>();
 
     private Integer listenerID;
 
@@ -124,6 +146,27 @@ public class MD5CheckService extends ServiceMBeanSupport {
         this.bufferSize = bufferSize;
     }
 
+    public final int getReadersPerFileSystem() {
+        return readersPerFileSystem;
+    }
+
+    public final void setReadersPerFileSystem(int readers) {
+        if (readers <= 0) {
+            throw new IllegalArgumentException("readers: " + readers);
+        }
+        this.readersPerFileSystem = readers;
+    }
+
+    public final String getMaxReadRate() {
+        return maxReadRate == 0 ? "NONE" : FileUtils.formatSize(maxReadRate);
+    }
+
+    public final void setMaxReadRate(String s) {
+        String trimmed = s.trim();
+        this.maxReadRate = "NONE".equalsIgnoreCase(trimmed) ? 0L
+                : FileUtils.parseSize(trimmed, 1);
+    }
+
     public final String getTaskInterval() {
         String s = RetryIntervalls.formatIntervalZeroAsNever(taskInterval);
         return (disabledEndHour == -1) ? s : s + "!" + disabledStartHour + "-"
@@ -194,32 +237,47 @@ public class MD5CheckService extends ServiceMBeanSupport {
             }
             isRunning = true;
         }
+        ThreadPoolExecutor executor = null;
         try {
             if ( log.isDebugEnabled() ) log.debug("MD5 check started!");
-            int corrupted = 0;
-            int total = 0;
             Timestamp before = new Timestamp( System.currentTimeMillis() - this.maxCheckedBefore );
             FileDTO[] files;
             int limit = limitNumberOfFilesPerTask;
             FileSystemMgt2 fsMgt = newFileSystemMgt();
             FileSystemDTO[] fsdirs =fsMgt.getAllFileSystems();
-            byte[] buffer = null;
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            int total = 0;
             for (int j = 0; j < fsdirs.length; j++) {
-                files = fsMgt.findFilesForMD5Check(fsdirs[j].getDirectoryPath(), before, limit);
+                String dirPath = fsdirs[j].getDirectoryPath();
+                files = fsMgt.findFilesForMD5Check(dirPath, before, limit);
                 if ( log.isDebugEnabled() ) log.debug("Check MD5 for " + files.length + " files on filesystem " + fsdirs[j]);
+                FileSystemProgress fsProgress = progressOf(dirPath);
+                fsProgress.found(files.length);
+                if (files.length < limit)
+                    fsProgress.completed();
                 if (files.length > 0) {
-                    if (buffer == null)
-                        buffer = new byte[bufferSize];
+                    if (executor == null)
+                        executor = readerExecutor(
+                                readersPerFileSystem * fsdirs.length);
                     total += files.length;
-                    for (int k = 0; k < files.length; k++) {
-                        if ( ! doCheck(fsMgt, files[k], buffer) ) 
-                            corrupted++;
+                    AtomicInteger next = new AtomicInteger();
+                    for (int k = 0; k < readersPerFileSystem; k++) {
+                        futures.add(executor.submit(
+                                new Reader(fsMgt, files, next, fsProgress)));
                     }
                     limit -= files.length;
                 }
                 if (limit < 1)
                     break;
             }
+            int corrupted = 0;
+            for (Future<Integer> future : futures) {
+                try {
+                    corrupted += future.get();
+                } catch (ExecutionException e) {
+                    log.error("MD5 check failed!", e.getCause());
+                }
+            }
             if ( corrupted > 0 ) 
                 log.warn( corrupted + " files are corrupted!");
             return corrupted + " of "+ total + " files corrupted!";
@@ -228,15 +286,119 @@ public class MD5CheckService extends ServiceMBeanSupport {
         }
     }
 
+    /**
+     * Returns the executor of the readers, created once per service and
+     * resized to the number of readers needed by the current check.
+     */
+    private synchronized ThreadPoolExecutor readerExecutor(int readers) {
+        if (readerExecutor == null) {
+            readerExecutor = new ThreadPoolExecutor(readers, readers,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+        } else if (readers > readerExecutor.getMaximumPoolSize()) {
+            readerExecutor.setMaximumPoolSize(readers);
+            readerExecutor.setCorePoolSize(readers);
+        } else if (readers < readerExecutor.getCorePoolSize()) {
+            readerExecutor.setCorePoolSize(readers);
+            readerExecutor.setMaximumPoolSize(readers);
+        }
+        return readerExecutor;
+    }
+
+    /**
+     * Shows number of files and bytes checked on each file system in the
+     * current pass over all files not checked within <i>MaxCheckedBefore</i>,
+     * and when the previous pass was completed.
+     */
+    public String showProgress() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (progress) {
+            for (FileSystemProgress fsProgress : progress.values()) {
+                fsProgress.appendTo(sb);
+            }
+        }
+        return sb.length() == 0 ? "No MD5 check performed yet." : sb.toString();
+    }
+
+    private FileSystemProgress progressOf(String dirPath) {
+        synchronized (progress) {
+            FileSystemProgress fsProgress = progress.get(dirPath);
+            if (fsProgress == null) {
+                fsProgress = new FileSystemProgress(dirPath);
+                progress.put(dirPath, fsProgress);
+            }
+            return fsProgress;
+        }
+    }
+
+    /**
+     * Delays the caller, so reading <tt>size</tt> bytes by all readers does
+     * not exceed the configured <i>MaxReadRate</i>.
+     */
+    private void throttle(long size) throws IOException {
+        long delay;
+        synchronized (this) {
+            if (maxReadRate == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long start = now - throttleTime > 0 ? now : throttleTime;
+            throttleTime = start + size * 1000000000L / maxReadRate;
+            delay = start - now;
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+            } catch (InterruptedException e) {
+                throw new IOException("MD5 check interrupted");
+            }
+        }
+    }
+
+    /**
+     * Checks files of one file system, shared with other readers of the same
+     * file system by the index of the next file to check.
+     */
+    private class Reader implements Callable<Integer> {
+
+        private final FileSystemMgt2 fsMgt;
+        private final FileDTO[] files;
+        private final AtomicInteger next;
+        private final FileSystemProgress fsProgress;
+
+        Reader(FileSystemMgt2 fsMgt, FileDTO[] files, AtomicInteger next,
+                FileSystemProgress fsProgress) {
+            this.fsMgt = fsMgt;
+            this.files = files;
+            this.next = next;
+            this.fsProgress = fsProgress;
+        }
+
+        public Integer call() throws Exception {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            int corrupted = 0;
+            int k;
+            while ((k = next.getAndIncrement()) < files.length) {
+                long size = doCheck(fsMgt, files[k], buffer);
+                if (size < 0) {
+                    corrupted++;
+                }
+                fsProgress.checked(Math.max(0L, size), size < 0);
+            }
+            return corrupted;
+        }
+    }
+
     /**
      * @param fsMgt
      * @param fileDTO
      * @param buffer 
+     * @return size of the file or -1 if the file is corrupted or missing
      * @throws IOException
      * @throws NoSuchAlgorithmException
      * @throws FinderException
      */
-    private boolean doCheck(FileSystemMgt2 fsMgt, FileDTO fileDTO, byte[] buffer)
+    private long doCheck(FileSystemMgt2 fsMgt, FileDTO fileDTO, ByteBuffer buffer)
     throws IOException, NoSuchAlgorithmException, FinderException {
         if ( log.isDebugEnabled() ) log.debug("check md5 for file "+fileDTO );
         char[] storedMD5 = MD5Utils.toHexChars(fileDTO.getFileMd5());
@@ -246,20 +408,100 @@ public class MD5CheckService extends ServiceMBeanSupport {
         fsMgt.updateTimeOfLastMd5Check(fileDTO.getPk());
         if (file.isFile()) {
             MessageDigest digest = MessageDigest.getInstance("MD5");
-            MD5Utils.md5sum(file, fileMD5, digest, buffer);
+            long size = md5sum(file, digest, buffer);
+            MD5Utils.toHexChars(digest.digest(), fileMD5);
             if (!Arrays.equals(fileMD5, storedMD5 ) ) {
                 fsMgt.setFileStatus( fileDTO.getPk(), FileStatus.MD5_CHECK_FAILED );
                 log.warn("File (pk="+fileDTO.getPk()+") " + file 
                         + " corrupted! MD5 of file:"+ new String(fileMD5)
                 +" should be "+ new String(storedMD5) );
-                return false;
+                return -1L;
             }
+            return size;
         } else {
             fsMgt.setFileStatus( fileDTO.getPk(), FileStatus.MD5_CHECK_FAILED );
             log.warn("File (pk="+fileDTO.getPk()+") " + file + " not found! Set Filestatus to MD5_CHECK_FAILED!");
-            return false;
+            return -1L;
+        }
+    }
+
+    private long md5sum(File file, MessageDigest digest, ByteBuffer buffer)
+            throws IOException {
+        FileChannel ch = new FileInputStream(file).getChannel();
+        try {
+            long size = 0L;
+            int read;
+            buffer.clear();
+            while ((read = ch.read(buffer)) != -1) {
+                throttle(read);
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+                size += read;
+            }
+            return size;
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static class FileSystemProgress {
+
+        private final String dirPath;
+        private long passStarted = System.currentTimeMillis();
+        private long passCompleted;
+        private boolean completed;
+        private int completedPasses;
+        private int checked;
+        private int corrupted;
+        private long bytes;
+
+        FileSystemProgress(String dirPath) {
+            this.dirPath = dirPath;
+        }
+
+        /**
+         * Starts a new pass, if files to check were found after the previous
+         * pass was completed.
+         */
+        synchronized void found(int count) {
+            if (completed && count > 0) {
+                completed = false;
+                passStarted = System.currentTimeMillis();
+                checked = 0;
+                corrupted = 0;
+                bytes = 0L;
+            }
+        }
+
+        /**
+         * Completes the pass, if less files than requested were found.
+         */
+        synchronized void completed() {
+            if (!completed) {
+                completed = true;
+                completedPasses++;
+                passCompleted = System.currentTimeMillis();
+            }
+        }
+
+        synchronized void checked(long size, boolean failed) {
+            checked++;
+            bytes += size;
+            if (failed)
+                corrupted++;
+        }
+
+        synchronized void appendTo(StringBuilder sb) {
+            sb.append(dirPath).append(": pass #")
+                .append(completed ? completedPasses : completedPasses + 1)
+                .append(" started at ").append(new Date(passStarted));
+            if (completed)
+                sb.append(", completed at ").append(new Date(passCompleted));
+            sb.append(" - ").append(checked).append(" files (")
+                .append(FileUtils.formatSize(bytes)).append(") checked, ")
+                .append(corrupted).append(" corrupted\n");
         }
-        return true;
     }
 
     private boolean isDisabled(int hour) {
@@ -275,6 +517,12 @@ public class MD5CheckService extends ServiceMBeanSupport {
 
     protected void stopService() throws Exception {
         scheduler.stopScheduler(timerIDCheckMD5, listenerID, timerListener);
+        synchronized (this) {
+            if (readerExecutor != null) {
+                readerExecutor.shutdown();
+                readerExecutor = null;
+            }
+        }
         super.stopService();
     }
 
@@ -45,6 +45,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanException;
@@ -53,6 +54,7 @@ import javax.management.ReflectionException;
 import javax.net.ServerSocketFactory;
 import javax.net.SocketFactory;
 import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocketFactory;
 
 import org.dcm4che.util.HandshakeFailedListener;
 import org.dcm4chex.archive.ejb.interfaces.AEDTO;
@@ -74,6 +76,8 @@ public final class TLSConfigDelegate {
 
     private boolean tcpNoDelay = true;
 
+    private boolean socketChannel = false;
+
     private ObjectName tlsConfigName;
 
     public TLSConfigDelegate(final ServiceMBeanSupport service) {
@@ -117,6 +121,18 @@ public final class TLSConfigDelegate {
     public final void setTcpNoDelay(boolean on) {
         this.tcpNoDelay = on;
     }
+
+    public final boolean isSocketChannel() {
+        return socketChannel;
+    }
+
+    /**
+     * If true, sockets without TLS are created by {@link SocketChannel}, so
+     * file data can be transferred directly to the socket.
+     */
+    public final void setSocketChannel(boolean socketChannel) {
+        this.socketChannel = socketChannel;
+    }
                 
     public HandshakeFailedListener handshakeFailedListener() {
         try {
@@ -182,7 +198,10 @@ public final class TLSConfigDelegate {
     public Socket createSocket(AEDTO localAE, AEDTO remoteAE)
             throws IOException {
         String[] cipherSuites = remoteAE.getCipherSuites();
-        Socket s = socketFactory(cipherSuites).createSocket();
+        SocketFactory sf = socketFactory(cipherSuites);
+        Socket s = socketChannel && !(sf instanceof SSLSocketFactory)
+                ? SocketChannel.open().socket()
+                : sf.createSocket();
         s.bind(toBindPoint(localAE));
         s.connect(toEndPoint(remoteAE));
         startHandshake(s);
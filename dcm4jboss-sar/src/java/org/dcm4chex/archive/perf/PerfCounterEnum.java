@@ -42,13 +42,13 @@ public class PerfCounterEnum {
     public static final int C_STORE_SCU_OBJ_OUT = 7;
     
     public static final String toString(int value) {
-       return ENUM[++value];
+       return ENUM[value - 1];
     }
 
     public static final int toInt(String s) {
     	final int index = Arrays.asList(ENUM).indexOf(s);
         if (index == -1)
             throw new IllegalArgumentException(s);
-        return index;
+        return index + 1;
     }
 }
@@ -0,0 +1,216 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.dcm4che.data.Command;
+import org.dcm4che.dict.DictionaryFactory;
+import org.dcm4che.dict.UIDDictionary;
+import org.dcm4che.net.Association;
+import org.dcm4che.net.Dimse;
+
+/**
+ * In-process registry of {@link LatencyHistogram}s per performance counter,
+ * remote AE and SOP Class, fed by {@link PerfMonDelegate#start} and
+ * {@link PerfMonDelegate#stop} without any JMX invocation. Start times of
+ * pending measurements are kept as property of the association, so they
+ * are released with the association even if a measurement is never
+ * stopped.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class PerfMetrics {
+
+    private static final String START_TIMES =
+            "org.dcm4chex.archive.perf.PerfMetrics.START_TIMES";
+
+    private static final UIDDictionary uidDict =
+            DictionaryFactory.getInstance().getDefaultUIDDictionary();
+
+    private static final PerfMetrics instance = new PerfMetrics();
+
+    private final ConcurrentMap<Key, LatencyHistogram> histograms =
+            new ConcurrentHashMap<Key, LatencyHistogram>();
+
+    public static PerfMetrics getInstance() {
+        return instance;
+    }
+
+    public void start(Association a, Dimse rq, int counterEnum) {
+        startTimes(a).put(timerKey(rq, counterEnum),
+                Long.valueOf(System.nanoTime()));
+    }
+
+    public void stop(Association a, Dimse rq, int counterEnum) {
+        Long start = startTimes(a).remove(timerKey(rq, counterEnum));
+        if (start == null)
+            return;
+        Command cmd = rq.getCommand();
+        String cuid = cmd.getAffectedSOPClassUID();
+        if (cuid == null)
+            cuid = cmd.getRequestedSOPClassUID();
+        String aet = a.isRequestor() ? a.getCalledAET() : a.getCallingAET();
+        record(counterEnum, aet != null ? aet : "", cuid,
+                (System.nanoTime() - start.longValue()) / 1000);
+    }
+
+    public void record(int counterEnum, String aet, String cuid, long micros) {
+        Key key = new Key(counterEnum, aet, cuid);
+        LatencyHistogram h = histograms.get(key);
+        if (h == null) {
+            LatencyHistogram prev =
+                    histograms.putIfAbsent(key, h = new LatencyHistogram());
+            if (prev != null)
+                h = prev;
+        }
+        h.record(micros);
+    }
+
+    public void reset(int[] counterEnums) {
+        for (Iterator<Key> iter = histograms.keySet().iterator();
+                iter.hasNext();) {
+            if (contains(counterEnums, iter.next().counterEnum))
+                iter.remove();
+        }
+    }
+
+    /**
+     * Returns count, mean, 50th, 90th, 99th percentile and maximum of
+     * latencies in ms recorded for the specified counters, one line per
+     * remote AE and SOP Class.
+     */
+    public String toString(int[] counterEnums) {
+        ArrayList<Key> keys = new ArrayList<Key>(histograms.keySet());
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder();
+        for (Key key : keys) {
+            if (!contains(counterEnums, key.counterEnum))
+                continue;
+            LatencyHistogram h = histograms.get(key);
+            if (h == null)
+                continue;
+            sb.append(PerfCounterEnum.toString(key.counterEnum))
+                .append(' ').append(key.aet)
+                .append(' ').append(key.cuid == null ? "*"
+                        : uidDict.toString(key.cuid))
+                .append(": count=").append(h.getCount())
+                .append(", mean=").append(toMillis(h.getMean()))
+                .append(", p50=").append(toMillis(h.getPercentile(50)))
+                .append(", p90=").append(toMillis(h.getPercentile(90)))
+                .append(", p99=").append(toMillis(h.getPercentile(99)))
+                .append(", max=").append(toMillis(h.getMax()))
+                .append("ms\r\n");
+        }
+        return sb.length() == 0 ? "No metrics recorded" : sb.toString();
+    }
+
+    private static String toMillis(long micros) {
+        return String.valueOf(micros / 1000) + '.'
+                + (char) ('0' + (micros / 100) % 10);
+    }
+
+    private static boolean contains(int[] a, int v) {
+        for (int i = 0; i < a.length; i++)
+            if (a[i] == v)
+                return true;
+        return false;
+    }
+
+    private static Long timerKey(Dimse rq, int counterEnum) {
+        return Long.valueOf((long) counterEnum << 32
+                | rq.getCommand().getMessageID() & 0xffffffffL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, Long> startTimes(Association a) {
+        synchronized (a) {
+            Map<Long, Long> startTimes = (Map<Long, Long>) a.getProperty(START_TIMES);
+            if (startTimes == null) {
+                startTimes = new ConcurrentHashMap<Long, Long>();
+                a.putProperty(START_TIMES, startTimes);
+            }
+            return startTimes;
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final int counterEnum;
+        final String aet;
+        final String cuid;
+
+        Key(int counterEnum, String aet, String cuid) {
+            this.counterEnum = counterEnum;
+            this.aet = aet;
+            this.cuid = cuid;
+        }
+
+        @Override
+        public int hashCode() {
+            return (counterEnum * 31 + aet.hashCode()) * 31
+                    + (cuid != null ? cuid.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return counterEnum == other.counterEnum
+                    && aet.equals(other.aet)
+                    && (cuid == null ? other.cuid == null
+                            : cuid.equals(other.cuid));
+        }
+
+        public int compareTo(Key o) {
+            int cmp = counterEnum - o.counterEnum;
+            if (cmp == 0)
+                cmp = aet.compareTo(o.aet);
+            if (cmp == 0)
+                cmp = String.valueOf(cuid).compareTo(String.valueOf(o.cuid));
+            return cmp;
+        }
+    }
+}
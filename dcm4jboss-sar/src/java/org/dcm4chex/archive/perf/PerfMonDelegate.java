@@ -9,7 +9,9 @@ import org.jboss.system.ServiceMBeanSupport;
 
 /**
  * This delegate passes all method calls to the real performance monitoring
- * MBean service.
+ * MBean service. Latencies measured by {@link #start} and {@link #stop} are
+ * also recorded in the in-process {@link PerfMetrics} registry, independent
+ * of the configuration of a performance monitoring MBean service.
  * 
  * @author Fang Yang (fang.yang@agfa.com)
  * @version $Id: PerfMonDelegate.java 9736 2009-02-13 02:51:36Z damien_evans $
@@ -121,6 +123,7 @@ public class PerfMonDelegate {
     }
 
     public void start(ActiveAssociation assoc, Dimse rq, int counterEnum) {
+        PerfMetrics.getInstance().start(assoc.getAssociation(), rq, counterEnum);
         if (perfMonServiceName == null)
             return;
 
@@ -179,6 +182,7 @@ public class PerfMonDelegate {
     }
 
     public void stop(ActiveAssociation assoc, Dimse rq, int counterEnum) {
+        PerfMetrics.getInstance().stop(assoc.getAssociation(), rq, counterEnum);
         if (perfMonServiceName == null)
             return;
 
@@ -42,14 +42,28 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Records accesses to files of a cache in journal files per period of time,
+ * to delete least recently accessed files first, if disk space is needed.
+ * <p>
+ * Existing journal files are indexed in memory on
+ * {@link #setJournalRootDir}, so {@link #free} does not need to list
+ * journal directories. Records and deletions of the same file are
+ * serialized by one of {@link #LOCK_STRIPES} locks, selected by the hash
+ * of the file path, so recording accesses is not blocked by deletions of
+ * other files. Journal file paths are formatted by a per thread instance of
+ * {@link SimpleDateFormat}, so only appending to the journal file of the
+ * current period, which is kept open until {@link #close}, is serialized.
+ *
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @version $Revision$ $Date$
  * @since Mar 4, 2009
@@ -57,14 +71,31 @@ import org.slf4j.LoggerFactory;
 public class CacheJournal {
 
     private static final String DEFAULT_FILE_PATH_PATTERN = "yyyy/MM/dd/HH";
+    private static final int LOCK_STRIPES = 64;
     private static final Logger log = 
             LoggerFactory.getLogger(CacheJournal.class);
 
     private File journalRootDir;
     private File dataRootDir;
-    private SimpleDateFormat journalFilePathFormat =
-            new SimpleDateFormat(DEFAULT_FILE_PATH_PATTERN);
+    private volatile String journalFilePathPattern = DEFAULT_FILE_PATH_PATTERN;
+    private final ThreadLocal<SimpleDateFormat> journalFilePathFormat =
+            new ThreadLocal<SimpleDateFormat>();
     private boolean freeIsRunning = false;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final TreeSet<File> journalFiles =
+            new TreeSet<File>(new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    return compareJournalFiles(f1, f2);
+                }
+            });
+    private File currentJournalFile;
+    private Writer currentJournal;
+
+    public CacheJournal() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
 
     public File getJournalRootDir() {
         return journalRootDir;
@@ -72,7 +103,43 @@ public class CacheJournal {
 
     public void setJournalRootDir(File journalRootDir) {
         assertWritableDiretory(journalRootDir);
+        closeJournal();
         this.journalRootDir = journalRootDir;
+        synchronized (journalFiles) {
+            journalFiles.clear();
+            addJournalFiles(journalRootDir);
+            log.info("Found {} journal files in {}",
+                    journalFiles.size(), journalRootDir);
+        }
+    }
+
+    private void addJournalFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    addJournalFiles(f);
+                } else {
+                    journalFiles.add(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares journal files path component by path component, so journal
+     * files are ordered as by a walk through the sorted journal directories.
+     */
+    private static int compareJournalFiles(File f1, File f2) {
+        String[] names1 = f1.getPath().split("\\Q" + File.separator + "\\E");
+        String[] names2 = f2.getPath().split("\\Q" + File.separator + "\\E");
+        for (int i = 0, n = Math.min(names1.length, names2.length); i < n; i++) {
+            int cmp = names1[i].compareTo(names2[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return names1.length - names2.length;
     }
 
     public File getDataRootDir() {
@@ -93,40 +160,79 @@ public class CacheJournal {
     }
 
     public String getJournalFilePathFormat() {
-        return journalFilePathFormat.toPattern();
+        return journalFilePathPattern;
     }
 
     public void setJournalFilePathFormat(String format) {
-        this.journalFilePathFormat = new SimpleDateFormat(format);
+        new SimpleDateFormat(format); // validate pattern
+        this.journalFilePathPattern = format;
     }
 
-    public synchronized void record(File f) throws IOException {
+    public void record(File f) throws IOException {
         record(f, false);
     }
 
-    public synchronized void record(File f, boolean update)
+    public void record(File f, boolean update)
             throws IOException {
         String path = f.getPath().substring(
                     dataRootDir.getPath().length() + 1);
-        long time = System.currentTimeMillis();
-        File journalFile = getJournalFile(time);
-        if (journalFile.exists()) {
-            if (update && journalFile.equals(getJournalFile(f.lastModified()))) {
+        synchronized (lockFor(path)) {
+            long time = System.currentTimeMillis();
+            File journalFile = getJournalFile(time);
+            if (update && journalFile.equals(getJournalFile(f.lastModified()))
+                    && journalFile.exists()) {
                 log.debug("{} already contains entry for {}", journalFile, f);
                 return;
             }
-            log.debug("M-UPDATE {}", journalFile);
-        } else {
-            mkdirs(journalFile.getParentFile());
-            log.debug("M-WRITE {}", journalFile);
+            append(journalFile, path);
+            f.setLastModified(time);
         }
-        FileWriter journal = new FileWriter(journalFile, true);
-        try {
-            journal.write(path + '\n');
-        } finally {
-            journal.close();
+    }
+
+    private Object lockFor(String path) {
+        return locks[(path.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private void append(File journalFile, String path) throws IOException {
+        synchronized (journalFiles) {
+            if (!journalFile.equals(currentJournalFile)) {
+                closeJournal();
+                if (journalFile.exists()) {
+                    log.debug("M-UPDATE {}", journalFile);
+                } else {
+                    mkdirs(journalFile.getParentFile());
+                    log.debug("M-WRITE {}", journalFile);
+                }
+                currentJournal = new FileWriter(journalFile, true);
+                currentJournalFile = journalFile;
+                journalFiles.add(journalFile);
+            }
+            currentJournal.write(path + '\n');
+            currentJournal.flush();
+        }
+    }
+
+    /**
+     * Closes the journal file of the current period, which is kept open for
+     * appending. It is reopened by the next {@link #record}.
+     */
+    public void close() {
+        closeJournal();
+    }
+
+    private void closeJournal() {
+        synchronized (journalFiles) {
+            if (currentJournal != null) {
+                try {
+                    currentJournal.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close journal file {}",
+                            currentJournalFile, e);
+                }
+                currentJournal = null;
+                currentJournalFile = null;
+            }
         }
-        f.setLastModified(time);
     }
 
     private static void mkdirs(File dir) {
@@ -139,11 +245,23 @@ public class CacheJournal {
         }
     }
 
-    private synchronized File getJournalFile(long time) {
-        return new File(journalRootDir,
-                journalFilePathFormat.format(new Date(time)));
+    private File getJournalFile(long time) {
+        String pattern = journalFilePathPattern;
+        SimpleDateFormat format = journalFilePathFormat.get();
+        if (format == null || !format.toPattern().equals(pattern)) {
+            format = new SimpleDateFormat(pattern);
+            journalFilePathFormat.set(format);
+        }
+        return new File(journalRootDir, format.format(new Date(time)));
     }
 
+    /**
+     * Deletes least recently accessed files, until the specified number
+     * of bytes is freed or all recorded files are deleted. Returns
+     * immediately, if another invocation is already running.
+     * 
+     * @return number of freed bytes
+     */
     public long free(long size) throws IOException {
         synchronized (this) {
             if (freeIsRunning) {
@@ -152,13 +270,36 @@ public class CacheJournal {
             freeIsRunning = true;
         }
         try {
-            return free(size, journalRootDir);
+            long free = 0L;
+            File journalFile;
+            while (free < size && (journalFile = pollJournalFile()) != null) {
+                free += free(journalFile);
+            }
+            return free;
         } finally {
             freeIsRunning = false;
         }
     }
 
+    private File pollJournalFile() {
+        synchronized (journalFiles) {
+            if (journalFiles.isEmpty()) {
+                return null;
+            }
+            File journalFile = journalFiles.first();
+            journalFiles.remove(journalFile);
+            if (journalFile.equals(currentJournalFile)) {
+                closeJournal();
+            }
+            return journalFile;
+        }
+    }
+
     public void clearCache() {
+        synchronized (journalFiles) {
+            closeJournal();
+            journalFiles.clear();
+        }
         deleteFilesOrDirectories(journalRootDir.listFiles());
         deleteFilesOrDirectories(dataRootDir.listFiles());
     }
@@ -185,29 +326,26 @@ public class CacheJournal {
         return true;
     }
 
-    private long free(long size, File dir) throws IOException {
+    private long free(File journalFile) throws IOException {
         long free = 0L;
-        if (dir.isDirectory()) {
-            String[] fnames = dir.list();
-            Arrays.sort(fnames);
-            for (String fname : fnames) {
-                free += free(size - free, new File(dir, fname));
-                if (free >= size) {
-                    break;
-                }
-            }
-        } else {
-            BufferedReader journal = new BufferedReader(new FileReader(dir));
-            try {
-                String path;
-                while ((path = journal.readLine()) != null) {
+        if (!journalFile.exists()) {
+            log.debug("{} already deleted", journalFile);
+            return 0L;
+        }
+        BufferedReader journal =
+                new BufferedReader(new FileReader(journalFile));
+        try {
+            String path;
+            while ((path = journal.readLine()) != null) {
+                synchronized (lockFor(path)) {
                     File f = new File(dataRootDir, path);
                     if (!f.exists()) {
                         log.debug("{} already deleted", f);
                         continue;
                     }
-                    if (!getJournalFile(f.lastModified()).equals(dir)) {
-                        log.debug("{} was accessed after record in {}", f, dir);
+                    if (!getJournalFile(f.lastModified()).equals(journalFile)) {
+                        log.debug("{} was accessed after record in {}",
+                                f, journalFile);
                         continue;
                     }
                     long flen = sizeOfFileOrDirectory(f);
@@ -215,10 +353,15 @@ public class CacheJournal {
                         free += flen;
                     }
                 }
-            } finally {
-                journal.close();
             }
-            deleteFileAndParents(dir, journalRootDir);
+        } finally {
+            journal.close();
+        }
+        synchronized (journalFiles) {
+            // keep journal file, if it was reopened by record() meanwhile
+            if (!journalFiles.contains(journalFile)) {
+                deleteFileAndParents(journalFile, journalRootDir);
+            }
         }
         return free;
     }
@@ -63,6 +63,7 @@ import org.dcm4che.dict.Tags;
 import org.dcm4che.dict.UIDs;
 import org.dcm4che.dict.VRs;
 import org.dcm4che.net.DataSource;
+import org.dcm4che.net.DirectTransfer;
 import org.dcm4che.util.UIDGenerator;
 import org.dcm4chex.archive.codec.DecompressCmd;
 import org.jboss.logging.Logger;
@@ -141,6 +142,7 @@ public class FileDataSource implements DataSource {
     private boolean writeFile = false;
     private boolean withoutPixeldata = false;
     private boolean excludePrivate = false;
+    private boolean directTransfer = false;
     private int[] simpleFrameList;
     private int[] calculatedFrameList;
     private Dataset contributingEquipment =
@@ -210,6 +212,19 @@ public class FileDataSource implements DataSource {
         this.excludePrivate = excludePrivate;
     }
 
+    public final boolean isDirectTransfer() {
+        return directTransfer;
+    }
+
+    /**
+     * Enables the transfer of native Pixel Data - which is neither
+     * transcoded nor reduced to a frame list - from the file channel directly
+     * to the socket, if supported by the output stream.
+     */
+    public final void setDirectTransfer(boolean directTransfer) {
+        this.directTransfer = directTransfer;
+    }
+
     public final void setSimpleFrameList(int[] simpleFrameList) {
         if (simpleFrameList != null) {
             if (calculatedFrameList != null) {
@@ -306,8 +321,9 @@ public class FileDataSource implements DataSource {
         boolean withoutPixeldata1 = withoutPixeldata 
                 || UIDs.NoPixelData.equals(tsUID)
                 || UIDs.NoPixelDataDeflate.equals(tsUID);
+        FileInputStream fis = new FileInputStream(file);
         DataInputStream dis = new DataInputStream(
-                new BufferedInputStream(new FileInputStream(file)));
+                new BufferedInputStream(fis));
         FileImageInputStream fiis = null;
         try {
             Dataset ds = DcmObjectFactory.getInstance().newDataset();
@@ -413,7 +429,16 @@ public class FileDataSource implements DataSource {
                 if (simpleFrameList == null) {
                     ds.writeHeader(out, enc, Tags.PixelData, VRs.OW,
                             pixelDataLen);
-                    copyBytes(dis, out, pixelDataLen, buffer);
+                    if (directTransfer && !enc.deflated
+                            && out instanceof DirectTransfer
+                            && ((DirectTransfer) out).transferFrom(
+                                    fis.getChannel(),
+                                    parser.getStreamPosition(),
+                                    pixelDataLen)) {
+                        dis.skipBytes(pixelDataLen);
+                    } else {
+                        copyBytes(dis, out, pixelDataLen, buffer);
+                    }
                 } else {
                     int frameLength = pixelDataLen / framesInFile;
                     int newPixelDataLength =
@@ -5,6 +5,14 @@ import static org.dcm4chex.archive.util.FileUtils.delete;
 import static org.dcm4chex.archive.util.FileUtils.toFile;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.dcm4chex.archive.ejb.interfaces.FileDTO;
 import org.dcm4chex.archive.ejb.interfaces.FileSystemMgt2Local;
@@ -22,25 +30,79 @@ public class FileDeleter {
 		int deletedFilesCount = 0;
 		
 		for (FileDTO fileDTO : fileDTOs) {
-			String directoryPath = fileDTO.getDirectoryPath();
-			File file = toFile(directoryPath, fileDTO.getFilePath());
-
-			if (delete(file, true, directoryPath)) {
+			if (unlink(fileDTO)) {
 				try {
 					fsMgt.deletePrivateFile(fileDTO.getPk());
 					
 					deletedFilesCount++;
                 } catch (Exception e) {
                     log.warn(format("Failed to remove file record [pk = %s] from DB", fileDTO.getPk()), e);
-                    log.info(format("-> Keep file [%s] on file system", file));
+                    log.info(format("-> Keep file [%s] on file system",
+                    		toFile(fileDTO.getDirectoryPath(), fileDTO.getFilePath())));
                 }
-			} else {
-				log.warn(format("Failed to remove file [%s]", file));
+			}
+		}
+
+		return deletedFilesCount;
+	}
+
+	/**
+	 * Unlinks the files concurrently by the given executor, and removes the
+	 * records of all successfully unlinked files from the DB in one call
+	 * after all files were processed.
+	 */
+	public int deleteFiles(FileSystemMgt2Local fsMgt,
+			Collection<FileDTO> fileDTOs, ExecutorService executor)
+			throws InterruptedException {
+		List<Future<Boolean>> unlinked =
+				new ArrayList<Future<Boolean>>(fileDTOs.size());
+		for (final FileDTO fileDTO : fileDTOs) {
+			unlinked.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					return unlink(fileDTO);
+				}
+			}));
+		}
+
+		List<Long> pks = new ArrayList<Long>(fileDTOs.size());
+		Iterator<Future<Boolean>> unlinkedIter = unlinked.iterator();
+		for (FileDTO fileDTO : fileDTOs) {
+			try {
+				if (unlinkedIter.next().get())
+					pks.add(fileDTO.getPk());
+			} catch (ExecutionException e) {
+				log.warn(format("Failed to remove file [%s]",
+						toFile(fileDTO.getDirectoryPath(), fileDTO.getFilePath())),
+						e.getCause());
 				log.info(format("-> Keep file record [pk = %s] in DB",
 						fileDTO.getPk()));
 			}
 		}
 
-		return deletedFilesCount;
+		if (pks.isEmpty())
+			return 0;
+
+		try {
+			fsMgt.deletePrivateFiles(pks);
+		} catch (Exception e) {
+			log.warn(format("Failed to remove %s file records from DB",
+					pks.size()), e);
+			log.info("-> Records will be removed by the cleanup of orphaned private files");
+			return 0;
+		}
+		return pks.size();
+	}
+
+	private boolean unlink(FileDTO fileDTO) {
+		String directoryPath = fileDTO.getDirectoryPath();
+		File file = toFile(directoryPath, fileDTO.getFilePath());
+
+		if (delete(file, true, directoryPath))
+			return true;
+
+		log.warn(format("Failed to remove file [%s]", file));
+		log.info(format("-> Keep file record [pk = %s] in DB",
+				fileDTO.getPk()));
+		return false;
 	}
 }
@@ -0,0 +1,155 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dcm4che.util.ThreadExecutor;
+
+/**
+ * Creates the executors, by which DICOM and HL7 servers and DICOM
+ * associations take their threads, according to a configured mode:
+ * <dl>
+ * <dt>{@value #THREADS}</dt>
+ * <dd>start a new thread for each connection and association handler,</dd>
+ * <dt>{@value #THREAD_POOL}</dt>
+ * <dd>take threads from a pool, which keeps idle threads for 60 seconds,</dd>
+ * <dt>{@value #VIRTUAL_THREADS}</dt>
+ * <dd>start a new virtual thread for each handler - requires Java 24.</dd>
+ * </dl>
+ * Handlers block in <code>synchronized</code> blocks - e.g. on reading the
+ * next PDU, or in the leader/follower pool of an association. Before Java
+ * 24 that pins the carrier thread of a virtual thread for the life time of
+ * the association, so {@value #VIRTUAL_THREADS} is rejected on older JVMs.
+ *
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class ThreadExecutors {
+
+    public static final String THREADS = "Threads";
+    public static final String THREAD_POOL = "ThreadPool";
+    public static final String VIRTUAL_THREADS = "VirtualThreads";
+
+    private static final int VIRTUAL_THREADS_MIN_JAVA = 24;
+
+    /**
+     * Checks if the mode is known and supported by the running JVM.
+     * 
+     * @throws IllegalArgumentException
+     *             if the mode is not supported by the running JVM
+     */
+    public static void checkMode(String mode) {
+        if (THREADS.equals(mode) || THREAD_POOL.equals(mode)) {
+            return;
+        }
+        if (VIRTUAL_THREADS.equals(mode)) {
+            if (javaVersion() < VIRTUAL_THREADS_MIN_JAVA) {
+                throw new IllegalArgumentException(
+                        "Virtual threads require Java "
+                        + VIRTUAL_THREADS_MIN_JAVA + " - running Java "
+                        + System.getProperty("java.version"));
+            }
+            return;
+        }
+        throw new IllegalArgumentException("mode: " + mode);
+    }
+
+    private static int javaVersion() {
+        String s = System.getProperty("java.specification.version");
+        try {
+            return s.startsWith("1.") ? Integer.parseInt(s.substring(2))
+                    : Integer.parseInt(s);
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a new executor service for the specified mode, or
+     * <code>null</code> for {@value #THREADS}.
+     * 
+     * @throws IllegalArgumentException
+     *             if the mode is not supported by the running JVM
+     */
+    public static ExecutorService newExecutorService(String mode,
+            final String name) {
+        checkMode(mode);
+        if (THREADS.equals(mode)) {
+            return null;
+        }
+        if (THREAD_POOL.equals(mode)) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger threadNo = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    return new Thread(r,
+                            name + "-" + threadNo.incrementAndGet());
+                }
+            });
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(mode, e);
+        }
+    }
+
+    /**
+     * Adapts the executor service to the {@link ThreadExecutor} interface
+     * of dcm4che, or returns <code>null</code> if <code>es</code> is
+     * <code>null</code>. Associations may outlive the executor service, so
+     * tasks rejected after its shutdown are run by a new thread.
+     */
+    public static ThreadExecutor toThreadExecutor(final ExecutorService es) {
+        return es == null ? null : new ThreadExecutor() {
+            public void execute(Runnable task) {
+                try {
+                    es.execute(task);
+                } catch (RejectedExecutionException e) {
+                    new Thread(task).start();
+                }
+            }
+        };
+    }
+}
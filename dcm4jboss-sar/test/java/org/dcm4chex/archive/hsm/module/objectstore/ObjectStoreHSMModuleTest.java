@@ -0,0 +1,233 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.archive.hsm.module.objectstore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.tar.TarEntry;
+import org.dcm4chex.archive.hsm.TarIndex;
+import org.dcm4chex.archive.hsm.module.HSMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests fetching single tar entries by {@link ObjectStoreHSMModule} from an
+ * object store simulated by the HTTP server of the JDK.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+public class ObjectStoreHSMModuleTest extends TestCase {
+
+    private static final String TAR_PATH = "2026/10/18/test.tar";
+    private static final String ENTRY_NAME = "1.2.3/1.2.3.4";
+    private static final byte[] CONTENT = "DICOM content".getBytes();
+
+    private HttpServer server;
+    private File dir;
+    private byte[] tar;
+    private byte[] index;
+    private int failures;
+    private int rangeRequests;
+    private ObjectStoreHSMModule module;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ObjectStoreHSMModuleTest.class);
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("objectstore", "");
+        dir.delete();
+        dir.mkdir();
+        tar = tar(ENTRY_NAME, CONTENT);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/bucket/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+        module = new ObjectStoreHSMModule();
+        module.setIncomingDir(dir.getPath());
+        module.setMaxRetries(3);
+        module.setRetryBackoff("0s");
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        deleteTree(dir);
+    }
+
+    public void testFetchEntry() throws Exception {
+        index = index(md5(CONTENT));
+        File f = new File(dir, "entry");
+        assertTrue(module.fetchHSMFileEntry(fsID(), TAR_PATH, ENTRY_NAME, f));
+        assertTrue(Arrays.equals(CONTENT, read(f)));
+        assertEquals(1, rangeRequests);
+    }
+
+    public void testRetryOnServerError() throws Exception {
+        index = index(md5(CONTENT));
+        failures = 2;
+        File f = new File(dir, "entry");
+        assertTrue(module.fetchHSMFileEntry(fsID(), TAR_PATH, ENTRY_NAME, f));
+        assertTrue(Arrays.equals(CONTENT, read(f)));
+        assertEquals(3, rangeRequests);
+    }
+
+    public void testNoRetryOnChecksumMismatch() throws Exception {
+        index = index(md5("other content".getBytes()));
+        File f = new File(dir, "entry");
+        try {
+            module.fetchHSMFileEntry(fsID(), TAR_PATH, ENTRY_NAME, f);
+            fail("HSMException expected");
+        } catch (HSMException e) {
+            assertTrue(e.getCause()
+                    instanceof ObjectStoreClient.ChecksumMismatchException);
+        }
+        assertEquals(1, rangeRequests);
+        assertFalse(f.exists());
+        assertFalse(new File(dir, "entry.part").exists());
+    }
+
+    private String fsID() {
+        return "tar:http://localhost:" + server.getAddress().getPort()
+                + "/bucket";
+    }
+
+    private synchronized void serve(HttpExchange exchange)
+            throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        byte[] body;
+        int status;
+        if (path.equals("/bucket/" + TAR_PATH + TarIndex.SUFFIX)) {
+            body = index;
+            status = 200;
+        } else if (path.equals("/bucket/" + TAR_PATH) && range != null) {
+            rangeRequests++;
+            if (failures > 0) {
+                failures--;
+                body = new byte[0];
+                status = 503;
+            } else {
+                String[] bounds = range.substring(6).split("-");
+                int from = Integer.parseInt(bounds[0]);
+                int to = Integer.parseInt(bounds[1]);
+                body = new byte[to - from + 1];
+                System.arraycopy(tar, from, body, 0, body.length);
+                status = 206;
+            }
+        } else {
+            body = new byte[0];
+            status = 404;
+        }
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length
+                : -1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] tar(String name, byte[] content) {
+        TarEntry entry = new TarEntry(name);
+        entry.setSize(content.length);
+        int blocks = (content.length + TarIndex.BLOCK_SIZE - 1)
+                / TarIndex.BLOCK_SIZE;
+        byte[] b = new byte[(blocks + 3) * TarIndex.BLOCK_SIZE];
+        byte[] header = new byte[TarIndex.BLOCK_SIZE];
+        entry.writeEntryHeader(header);
+        System.arraycopy(header, 0, b, 0, header.length);
+        System.arraycopy(content, 0, b, TarIndex.BLOCK_SIZE, content.length);
+        return b;
+    }
+
+    private byte[] index(byte[] md5sum) throws IOException {
+        TarIndex tarIndex = new TarIndex();
+        tarIndex.add(ENTRY_NAME, CONTENT.length, md5sum);
+        File f = new File(dir, "test.tar" + TarIndex.SUFFIX);
+        tarIndex.write(f);
+        try {
+            return read(f);
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static byte[] md5(byte[] b) throws Exception {
+        return MessageDigest.getInstance("MD5").digest(b);
+    }
+
+    private static byte[] read(File f) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                out.write(buf, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void deleteTree(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteTree(child);
+            }
+        }
+        f.delete();
+    }
+}
@@ -154,6 +154,30 @@ public abstract class AbstractCacheService extends ServiceMBeanSupport {
         ((WADOCacheImpl) cache).setDeleterThresholds(s);
     }
 
+    public String getMemoryCacheSize() {
+        return ((WADOCacheImpl) cache).getMemoryCacheSize();
+    }
+
+    public void setMemoryCacheSize(String s) {
+        ((WADOCacheImpl) cache).setMemoryCacheSize(s);
+    }
+
+    public int getMemoryCacheMaxEntrySize() {
+        return ((WADOCacheImpl) cache).getMemoryCacheMaxEntrySize();
+    }
+
+    public void setMemoryCacheMaxEntrySize(int maxEntrySize) {
+        ((WADOCacheImpl) cache).setMemoryCacheMaxEntrySize(maxEntrySize);
+    }
+
+    public String showMemoryCacheStatistics() {
+        return ((WADOCacheImpl) cache).showMemoryCacheStatistics();
+    }
+
+    public void resetMemoryCacheStatistics() {
+        ((WADOCacheImpl) cache).resetMemoryCacheStatistics();
+    }
+
     public String showMinFreeSpace() {
         return FileUtils.formatSize(cache.getMinFreeSpace());
     }
@@ -262,6 +286,7 @@ public abstract class AbstractCacheService extends ServiceMBeanSupport {
     protected void stopService() throws Exception {
         scheduler.stopScheduler(timerID, freeDiskSpaceListenerID,
                 freeDiskSpaceListener);
+        cache.closeJournal();
         super.stopService();
     }
 
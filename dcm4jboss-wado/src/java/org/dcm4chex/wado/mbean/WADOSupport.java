@@ -51,6 +51,7 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -451,6 +452,17 @@ public class WADOSupport implements NotificationListener {
             }
             String contentType = req.getContentTypes().contains(CONTENT_TYPE_JPEG) ? CONTENT_TYPE_JPEG : 
                 req.getContentTypes().contains(CONTENT_TYPE_PNG) ? CONTENT_TYPE_PNG : CONTENT_TYPE_PNG16;
+            byte[] bytes = WADOCacheImpl.getWADOCache().getImageBytes(req.getStudyUID(),
+                    req.getSeriesUID(), req.getObjectUID(),
+                    req.getRows(),req.getColumns(), req.getRegion(),
+                    req.getWindowWidth(), req.getWindowCenter(),
+                    req.getImageQuality(), contentType, suffix);
+            if(bytes != null) {
+                log.debug("short-circuit sucessful from memory cache!");
+                return new WADOStreamResponseObjectImpl(
+                        new ByteArrayInputStream(bytes), bytes.length,
+                        contentType, HttpServletResponse.SC_OK, null);
+            }
             File file = WADOCacheImpl.getWADOCache().getImageFile(req.getStudyUID(),
                     req.getSeriesUID(), req.getObjectUID(),
                     req.getRows(),req.getColumns(), req.getRegion(),
@@ -779,6 +791,17 @@ public class WADOSupport implements NotificationListener {
                         imageQuality != null ? imageQuality : WADOCacheImpl.getWADOCache().getImageQuality(),
                                 contentType, HttpServletResponse.SC_OK, "Info: Caching disabled!");
             } else {
+                byte[] bytes = WADOCacheImpl.getWADOCache().getImageBytes(
+                        studyUID, seriesUID, instanceUID, rows, columns,
+                        region, windowWidth, windowCenter, imageQuality,
+                        contentType, frame > 0 ? "-" + frame : null);
+                if (bytes != null) {
+                    WADOStreamResponseObjectImpl resp = new WADOStreamResponseObjectImpl(
+                            new ByteArrayInputStream(bytes), bytes.length,
+                            contentType, HttpServletResponse.SC_OK, null);
+                    resp.setPatInfo(req.getObjectInfo());
+                    return resp;
+                }
                 File file = getImage(studyUID, seriesUID, instanceUID, rows, columns,
                         frame, region, windowWidth, windowCenter,
                         imageQuality, contentType);
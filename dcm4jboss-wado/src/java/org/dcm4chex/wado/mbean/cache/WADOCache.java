@@ -104,6 +104,18 @@ public interface WADOCache {
             String rows, String columns, String region, String windowWidth,
             String windowCenter, String imageQuality, String contentType, String suffix2);
 
+    /**
+     * Get an image of special size from the memory tier of this cache.
+     * <p>
+     * Parameters are the same as for {@link #getImageFile}.
+     * 
+     * @return The encoded image if held in memory or null.
+     */
+    byte[] getImageBytes(String studyUID, String seriesUID,
+            String instanceUID, String rows, String columns, String region,
+            String windowWidth, String windowCenter, String imageQuality,
+            String contentType, String suffix);
+
     /**
      * Put a region of an image of special size to this cache.
      * <p>
@@ -185,6 +197,11 @@ public interface WADOCache {
 
     boolean isEmpty();
 
+    /**
+     * Closes the cache journal file kept open for appending.
+     */
+    void closeJournal();
+
     /**
      * Removes old entries to shrink this cache.
      * 
@@ -89,6 +89,8 @@ public class WADOCacheImpl implements WADOCache {
 
     private CacheJournal journal = new CacheJournal();
 
+    private final WADOMemoryCache memoryCache = new WADOMemoryCache();
+
     private int[] numberOfStudyBags = EMPTY_INTS;
 
     private DeleterThresholds deleterThresholds = new DeleterThresholds(
@@ -202,6 +204,30 @@ public class WADOCacheImpl implements WADOCache {
         numberOfStudyBags = tmp;
     }
 
+    public String getMemoryCacheSize() {
+        return FileUtils.formatSize(memoryCache.getMaxSize());
+    }
+
+    public void setMemoryCacheSize(String s) {
+        memoryCache.setMaxSize(FileUtils.parseSize(s, 0L));
+    }
+
+    public int getMemoryCacheMaxEntrySize() {
+        return memoryCache.getMaxEntrySize();
+    }
+
+    public void setMemoryCacheMaxEntrySize(int maxEntrySize) {
+        memoryCache.setMaxEntrySize(maxEntrySize);
+    }
+
+    public String showMemoryCacheStatistics() {
+        return memoryCache.showStatistics();
+    }
+
+    public void resetMemoryCacheStatistics() {
+        memoryCache.resetStatistics();
+    }
+
     public final String getImageQuality() {
         return imageQuality;
     }
@@ -287,9 +313,9 @@ public class WADOCacheImpl implements WADOCache {
             String instanceUID, String rows, String columns, String region,
             String windowWidth, String windowCenter, String imageQuality,
             String contentType, String suffix) {
-        File file = this._getImageFile(rows + "-" + columns + "-" + region
-                + "-" + windowWidth + "-" + windowCenter + "-"
-                + maskNull(imageQuality, this.imageQuality), studyUID,
+        String subdir = imageSubdir(rows, columns, region, windowWidth,
+                windowCenter, maskNull(imageQuality, this.imageQuality));
+        File file = this._getImageFile(subdir, studyUID,
                 seriesUID, instanceUID, suffix, contentType);
         if (log.isDebugEnabled())
             log.debug("check cache file(exist:" + file.exists() + "):" + file);
@@ -299,12 +325,59 @@ public class WADOCacheImpl implements WADOCache {
             } catch (IOException e) {
                 log.warn("Failed to record access to cache file: ", e);
             }
+            if (memoryCache.isEnabled()) {
+                memoryCache.put(memoryCacheKey(subdir, instanceUID, suffix,
+                        contentType), studyUID, file);
+            }
             return file;
         } else {
             return null;
         }
     }
 
+    /**
+     * Get an image of special size from the memory tier of this cache.
+     * <p>
+     * Only images, which were written to or read from the file cache after
+     * the memory tier was enabled by a non-zero <i>MemoryCacheSize</i>, and
+     * which do not exceed <i>MemoryCacheMaxEntrySize</i>, are kept in
+     * memory. Hits are served from memory without accessing the cache file.
+     * Their access is recorded in the cache journal before disk space is
+     * freed, so frequently requested images are not deleted from the file
+     * cache first. Images, whose cache files are deleted, are removed from
+     * memory afterwards.
+     * 
+     * @return The encoded image if in memory or null.
+     */
+    public byte[] getImageBytes(String studyUID, String seriesUID,
+            String instanceUID, String rows, String columns, String region,
+            String windowWidth, String windowCenter, String imageQuality,
+            String contentType, String suffix) {
+        if (!memoryCache.isEnabled()) {
+            return null;
+        }
+        String subdir = imageSubdir(rows, columns, region, windowWidth,
+                windowCenter, maskNull(imageQuality, this.imageQuality));
+        String key = memoryCacheKey(subdir, instanceUID, suffix, contentType);
+        return memoryCache.get(key);
+    }
+
+    private static String imageSubdir(String rows, String columns,
+            String region, String windowWidth, String windowCenter,
+            String imageQuality) {
+        return rows + "-" + columns + "-" + region + "-" + windowWidth + "-"
+                + windowCenter + "-" + imageQuality;
+    }
+
+    private static String memoryCacheKey(String subdir, String instanceUID,
+            String suffix, String contentType) {
+        StringBuilder sb = new StringBuilder(instanceUID);
+        if (suffix != null)
+            sb.append(suffix);
+        return sb.append('/').append(subdir).append('/')
+                .append(contentType).toString();
+    }
+
     private static String maskNull(String val, String defval) {
         return val != null ? val : defval;
     }
@@ -344,8 +417,9 @@ public class WADOCacheImpl implements WADOCache {
             String region, String windowWidth, String windowCenter,
             String imageQuality, String contentType, String suffix) throws IOException {
         imageQuality = maskNull(imageQuality, this.imageQuality);
-        File file = this._getImageFile(rows + "-" + columns + "-" + region
-                + "-" + windowWidth + "-" + windowCenter + "-" + imageQuality,
+        String subdir = imageSubdir(rows, columns, region, windowWidth,
+                windowCenter, imageQuality);
+        File file = this._getImageFile(subdir,
                 studyUID, seriesUID, instanceUID, suffix, contentType);
         _writeImageFile(image, file, contentType, imageQuality);
         try {
@@ -354,6 +428,10 @@ public class WADOCacheImpl implements WADOCache {
             file.delete();
             throw e;
         }
+        if (memoryCache.isEnabled()) {
+            memoryCache.put(memoryCacheKey(subdir, instanceUID, suffix,
+                    contentType), studyUID, file);
+        }
         return file;
     }
 
@@ -430,6 +508,7 @@ public class WADOCacheImpl implements WADOCache {
      * Remove all images in this cache.
      */
     public void clearCache() {
+        memoryCache.clear();
         journal.clearCache();
     }
 
@@ -437,6 +516,10 @@ public class WADOCacheImpl implements WADOCache {
         return journal.isEmpty();
     }
 
+    public void closeJournal() {
+        journal.close();
+    }
+
     /**
      * Removes old entries of this chache to free disk space.
      * <p>
@@ -466,7 +549,7 @@ public class WADOCacheImpl implements WADOCache {
                 Thread t = new Thread(new Runnable() {
                     public void run() {
                         try {
-                            journal.free(sizeToDel);
+                            free(sizeToDel);
                         } catch (IOException e) {
                             log.error("Failed to free disk space: ", e);
                         }
@@ -474,7 +557,7 @@ public class WADOCacheImpl implements WADOCache {
                 });
                 t.start();
             } else {
-                journal.free(sizeToDel);
+                free(sizeToDel);
             }
         } else {
             if (log.isDebugEnabled())
@@ -482,6 +565,18 @@ public class WADOCacheImpl implements WADOCache {
         }
     }
 
+    private void free(long sizeToDel) throws IOException {
+        for (File file : memoryCache.pollTouchedFiles()) {
+            try {
+                journal.record(file, true);
+            } catch (IOException e) {
+                log.warn("Failed to record access to cache file: ", e);
+            }
+        }
+        journal.free(sizeToDel);
+        memoryCache.removeDeleted();
+    }
+
     /**
      * Remove cache entries for given study!
      * <p>
@@ -490,6 +585,7 @@ public class WADOCacheImpl implements WADOCache {
      */
     public void purgeStudy(String studyIUID) {
         log.info("Delete WADO CACHE Entries for Study:" + studyIUID);
+        memoryCache.purgeStudy(studyIUID);
         File f = getStudyDir(studyIUID);
         if (f.exists()) {
             CacheJournal.deleteFileOrDirectory(f);
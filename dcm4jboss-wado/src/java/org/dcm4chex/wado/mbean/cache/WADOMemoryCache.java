@@ -0,0 +1,286 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), available at http://sourceforge.net/projects/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * TIANI Medgraph AG.
+ * Portions created by the Initial Developer are Copyright (C) 2005
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * Gunter Zeilinger <gunter.zeilinger@tiani.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.dcm4chex.wado.mbean.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.dcm4chex.archive.util.FileUtils;
+
+/**
+ * Memory tier in front of the WADO file cache, holding encoded images
+ * (JPEG, PNG) in least recently used order. The tier is bounded by the sum
+ * of the sizes of the cached images, not by the number of entries, so many
+ * small icons may be kept, but only few large images.
+ * <p>
+ * Hits are served from memory only, without accessing the cache file. They
+ * are collected per entry and passed to the cache journal by
+ * {@link #pollTouchedFiles()} before the file cache is cleaned up.
+ * 
+ * @version $Revision$ $Date$
+ * @since Oct 18, 2026
+ */
+class WADOMemoryCache {
+
+    private static final Logger log = Logger.getLogger(WADOMemoryCache.class);
+
+    private static final class Entry {
+        final String studyUID;
+        final File file;
+        final byte[] data;
+        boolean touched;
+
+        Entry(String studyUID, File file, byte[] data) {
+            this.studyUID = studyUID;
+            this.file = file;
+            this.data = data;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private long maxSize;
+    private int maxEntrySize = 65536;
+    private long size;
+    private long purges;
+    private long hits;
+    private long misses;
+    private long puts;
+    private long evictions;
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        evict(0);
+    }
+
+    public synchronized int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public synchronized void setMaxEntrySize(int maxEntrySize) {
+        if (maxEntrySize < 0) {
+            throw new IllegalArgumentException("maxEntrySize: "
+                    + maxEntrySize);
+        }
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public synchronized boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the cached image for the specified key, or <code>null</code>
+     * if it is not contained in this tier.
+     */
+    public synchronized byte[] get(String key) {
+        if (maxSize == 0) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.touched = true;
+        return entry.data;
+    }
+
+    /**
+     * Returns the cache files of images, which were hit since the previous
+     * invocation, to record their access in the cache journal.
+     */
+    public synchronized List<File> pollTouchedFiles() {
+        List<File> files = new ArrayList<File>();
+        for (Entry entry : entries.values()) {
+            if (entry.touched) {
+                files.add(entry.file);
+                entry.touched = false;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Removes images, whose cache files were deleted - e.g. by freeing disk
+     * space. The files are checked without holding the lock of this tier.
+     */
+    public void removeDeleted() {
+        List<String> keys = new ArrayList<String>();
+        List<Entry> values = new ArrayList<Entry>();
+        synchronized (this) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                keys.add(e.getKey());
+                values.add(e.getValue());
+            }
+        }
+        for (int i = 0, n = keys.size(); i < n; i++) {
+            Entry entry = values.get(i);
+            if (!entry.file.exists()) {
+                remove(keys.get(i), entry);
+            }
+        }
+    }
+
+    private synchronized void remove(String key, Entry entry) {
+        if (entries.get(key) == entry) {
+            entries.remove(key);
+            size -= entry.data.length;
+        }
+    }
+
+    /**
+     * Loads the specified cache file into this tier, if it does not exceed
+     * the maximal entry size. The file is read without holding the lock of
+     * this tier, so the image is dropped, if the tier was cleared or a study
+     * was purged meanwhile.
+     */
+    public void put(String key, String studyUID, File file) {
+        long len = file.length();
+        long purgesBefore;
+        synchronized (this) {
+            if (maxSize == 0 || len == 0 || len > maxEntrySize
+                    || len > maxSize) {
+                return;
+            }
+            purgesBefore = purges;
+        }
+        byte[] data = new byte[(int) len];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int off = 0;
+            int read;
+            while (off < data.length
+                    && (read = in.read(data, off, data.length - off)) > 0) {
+                off += read;
+            }
+            if (off < data.length) {
+                log.debug("Cache file truncated while reading: " + file);
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load cache file " + file
+                    + " into memory cache:", e);
+            return;
+        } finally {
+            FileUtils.saveClose(in);
+        }
+        put(key, studyUID, file, data, purgesBefore);
+    }
+
+    private synchronized void put(String key, String studyUID, File file,
+            byte[] data, long purgesBefore) {
+        if (purges != purgesBefore) {
+            log.debug("Cache purged while reading " + key);
+            return;
+        }
+        evict(data.length);
+        Entry prev = entries.put(key, new Entry(studyUID, file, data));
+        if (prev != null) {
+            size -= prev.data.length;
+        }
+        size += data.length;
+        puts++;
+    }
+
+    private void evict(int required) {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (size + required > maxSize && iter.hasNext()) {
+            size -= iter.next().data.length;
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void purgeStudy(String studyUID) {
+        purges++;
+        for (Iterator<Entry> iter = entries.values().iterator();
+                iter.hasNext();) {
+            Entry entry = iter.next();
+            if (entry.studyUID.equals(studyUID)) {
+                size -= entry.data.length;
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        purges++;
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized String showStatistics() {
+        long requests = hits + misses;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Entries: ").append(entries.size())
+          .append("\nSize: ").append(FileUtils.formatSize(size))
+          .append(" of ").append(FileUtils.formatSize(maxSize))
+          .append("\nHits: ").append(hits)
+          .append("\nMisses: ").append(misses)
+          .append("\nHit Rate: ")
+          .append(requests > 0 ? hits * 100 / requests : 0).append('%')
+          .append("\nPuts: ").append(puts)
+          .append("\nEvictions: ").append(evictions);
+        return sb.toString();
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        puts = 0;
+        evictions = 0;
+    }
+}